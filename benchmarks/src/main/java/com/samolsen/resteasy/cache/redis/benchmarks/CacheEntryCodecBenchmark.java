@@ -0,0 +1,140 @@
+package com.samolsen.resteasy.cache.redis.benchmarks;
+
+import com.samolsen.resteasy.cache.redis.BinaryCacheEntryCodec;
+import com.samolsen.resteasy.cache.redis.CacheEntry;
+import com.samolsen.resteasy.cache.redis.CacheEntryCodec;
+import com.samolsen.resteasy.cache.redis.JsonCacheEntryCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Compares {@link BinaryCacheEntryCodec} against the JSON path through
+ * {@link JsonCacheEntryCodec} (Jackson with the cache serialization module), over entity sizes
+ * from 100 bytes to 1MB and varying header counts.
+ *
+ * Run with `java -jar target/benchmarks.jar CacheEntryCodecBenchmark -prof gc` to also report
+ * bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheEntryCodecBenchmark {
+
+    @Param({"100", "1024", "10240", "102400", "1048576"})
+    int entitySize;
+
+    @Param({"4", "16", "64"})
+    int headerCount;
+
+    CacheEntryCodec _json;
+    CacheEntryCodec _binary;
+
+    CacheEntry _entry;
+    byte[] _jsonEncoded;
+    byte[] _binaryEncoded;
+
+    @Setup
+    public void setUp()
+    {
+        _json = new JsonCacheEntryCodec();
+        _binary = new BinaryCacheEntryCodec();
+
+        byte[] entity = new byte[entitySize];
+        new Random(42).nextBytes(entity);
+
+        _entry = new CacheEntry(headers(headerCount, entitySize), entity, 60, "\"1234567890\"",
+                MediaType.APPLICATION_JSON_TYPE, System.currentTimeMillis());
+        _jsonEncoded = _json.encode(_entry);
+        _binaryEncoded = _binary.encode(_entry);
+    }
+
+    /**
+     * @return typical response headers, padded with custom headers up to the count
+     */
+    static MultivaluedMap<String, Object> headers( int headerCount,
+                                                   int entitySize )
+    {
+        MultivaluedMap<String, Object> headers = new MultivaluedHashMap<String, Object>();
+        headers.add("Content-Type", "application/json");
+        headers.add("Content-Length", (long) entitySize);
+        headers.add("Vary", "Accept");
+        headers.add("X-Request-Id", "5f0c2d3e-8c1a-4f55-9d7b-2a64f0b3c1de");
+        for( int i = headers.size(); i < headerCount; i++ )
+        {
+            headers.add("X-Header-" + i, "value-" + i);
+        }
+        return headers;
+    }
+
+    @Benchmark
+    public byte[] encodeJson()
+    {
+        return _json.encode(_entry);
+    }
+
+    @Benchmark
+    public CacheEntry decodeJson()
+            throws IOException
+    {
+        return _json.decode(_jsonEncoded);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary()
+    {
+        return _binary.encode(_entry);
+    }
+
+    @Benchmark
+    public CacheEntry decodeBinary()
+            throws IOException
+    {
+        return _binary.decode(_binaryEncoded);
+    }
+
+    /**
+     * Binary decoding leaves the headers encoded until read, so this adds the header decoding
+     * which {@link #decodeBinary()} skips.
+     */
+    @Benchmark
+    public MultivaluedMap<String, Object> decodeBinaryHeaders()
+            throws IOException
+    {
+        return _binary.decode(_binaryEncoded).getHeaders();
+    }
+}
@@ -0,0 +1,106 @@
+package com.samolsen.resteasy.cache.redis.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samolsen.resteasy.cache.redis.JsonCacheEntryCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Measures the Jackson (de)serializers registered by {@link JsonCacheEntryCodec} on their own:
+ * response headers through MultivaluedMapDeserializer, and media types through
+ * MediaTypeSerializer and MediaTypeDeserializer. Each runs on every JSON encoded hit or miss.
+ *
+ * Run with `java -jar target/benchmarks.jar SerializationModuleBenchmark -prof gc` to also report
+ * bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationModuleBenchmark {
+
+    @Param({"4", "16", "64"})
+    int headerCount;
+
+    ObjectMapper _objectMapper;
+
+    MultivaluedMap<String, Object> _headers;
+    byte[] _headersJson;
+    MediaType _mediaType;
+    byte[] _mediaTypeJson;
+
+    @Setup
+    public void setUp()
+            throws JsonProcessingException
+    {
+        // registers the cache serialization module on the mapper
+        _objectMapper = new ObjectMapper();
+        new JsonCacheEntryCodec(_objectMapper);
+
+        _headers = CacheEntryCodecBenchmark.headers(headerCount, 1024);
+        _headersJson = _objectMapper.writeValueAsBytes(_headers);
+        _mediaType = new MediaType("application", "json", "UTF-8");
+        _mediaTypeJson = _objectMapper.writeValueAsBytes(_mediaType);
+    }
+
+    @Benchmark
+    public byte[] serializeHeaders()
+            throws JsonProcessingException
+    {
+        return _objectMapper.writeValueAsBytes(_headers);
+    }
+
+    @Benchmark
+    public MultivaluedMap deserializeHeaders()
+            throws IOException
+    {
+        return _objectMapper.readValue(_headersJson, MultivaluedMap.class);
+    }
+
+    @Benchmark
+    public byte[] serializeMediaType()
+            throws JsonProcessingException
+    {
+        return _objectMapper.writeValueAsBytes(_mediaType);
+    }
+
+    @Benchmark
+    public MediaType deserializeMediaType()
+            throws IOException
+    {
+        return _objectMapper.readValue(_mediaTypeJson, MediaType.class);
+    }
+}
@@ -0,0 +1,434 @@
+package com.samolsen.resteasy.cache.redis.benchmarks.load;
+
+import com.samolsen.resteasy.cache.redis.BinaryCacheEntryCodec;
+import com.samolsen.resteasy.cache.redis.CacheMetrics;
+import com.samolsen.resteasy.cache.redis.CacheOperation;
+import com.samolsen.resteasy.cache.redis.Histogram;
+import com.samolsen.resteasy.cache.redis.RedisCache;
+import com.samolsen.resteasy.cache.redis.RedisCacheConfig;
+import com.samolsen.resteasy.cache.redis.RedisCacheFeature;
+import com.samolsen.resteasy.cache.redis.StorageLayout;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.jboss.resteasy.core.Dispatcher;
+import org.jboss.resteasy.mock.MockDispatcherFactory;
+import org.jboss.resteasy.mock.MockHttpRequest;
+import org.jboss.resteasy.mock.MockHttpResponse;
+import redis.clients.jedis.JedisPool;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * End-to-end load test of the cache: requests run through RESTEasy with a {@link RedisCacheFeature} and
+ * a {@link RedisCache}, dispatched in-process, against the {@link RespServer} stand-in (or a real
+ * Redis with {@code redis=host:port}).
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.samolsen.resteasy.cache.redis.benchmarks.load.LoadHarness \
+ *      threads=16 duration=30 uris=10000 zipf=0.99 entityBytes=4096
+ * </pre>
+ *
+ * Each thread sends its next request when the previous completes, so latencies exclude queueing
+ * ahead of the cache. Latency, throughput and hit ratio are only measured after the warmup.
+ * Allocation per request is that of the request threads, so excludes the stand-in server.
+ */
+public class LoadHarness {
+
+    static final Map<String, String> DEFAULTS = new LinkedHashMap<String, String>();
+
+    static
+    {
+        DEFAULTS.put("threads", "16");
+        DEFAULTS.put("duration", "30");
+        DEFAULTS.put("warmup", "5");
+        DEFAULTS.put("uris", "10000");
+        DEFAULTS.put("zipf", "0.99");
+        DEFAULTS.put("entityBytes", "4096");
+        DEFAULTS.put("maxAge", "60");
+        DEFAULTS.put("variants", "application/json:70,text/plain:20,text/html:10");
+        DEFAULTS.put("layout", StorageLayout.SET_INDEX.name());
+        DEFAULTS.put("nearCacheBytes", "0");
+        DEFAULTS.put("admission", "0");
+        DEFAULTS.put("variantIndexUris", "0");
+        DEFAULTS.put("budgetMillis", "0");
+        DEFAULTS.put("breakerFailures", "0");
+        DEFAULTS.put("redis", "");
+        DEFAULTS.put("seed", "42");
+    }
+
+    public static void main( String[] args )
+            throws Exception
+    {
+        Map<String, String> options = new LinkedHashMap<String, String>(DEFAULTS);
+        for( String arg : args )
+        {
+            int equals = arg.indexOf('=');
+            if( equals < 0 || !DEFAULTS.containsKey(arg.substring(0, equals)) )
+            {
+                System.err.println("Unknown option: " + arg);
+                System.err.println("Options, with defaults: " + DEFAULTS);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        System.out.println(options);
+        new LoadHarness(options).run();
+    }
+
+    private final int _threads;
+    private final long _durationMillis;
+    private final long _warmupMillis;
+    private final int _uris;
+    private final double _zipf;
+    private final int _entityBytes;
+    private final int _maxAge;
+    private final List<MediaType> _variants = new ArrayList<MediaType>();
+    private final List<Integer> _variantWeights = new ArrayList<Integer>();
+    private final StorageLayout _layout;
+    private final long _nearCacheBytes;
+    private final int _admission;
+    private final int _variantIndexUris;
+    private final int _budgetMillis;
+    private final int _breakerFailures;
+    private final String _redis;
+    private final long _seed;
+
+    LoadHarness( Map<String, String> options )
+    {
+        _threads = Integer.parseInt(options.get("threads"));
+        _durationMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(options.get("duration")));
+        _warmupMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(options.get("warmup")));
+        _uris = Integer.parseInt(options.get("uris"));
+        _zipf = Double.parseDouble(options.get("zipf"));
+        _entityBytes = Integer.parseInt(options.get("entityBytes"));
+        _maxAge = Integer.parseInt(options.get("maxAge"));
+        for( String variant : options.get("variants").split(",") )
+        {
+            int colon = variant.lastIndexOf(':');
+            _variants.add(MediaType.valueOf(variant.substring(0, colon)));
+            _variantWeights.add(Integer.parseInt(variant.substring(colon + 1)));
+        }
+        _layout = StorageLayout.valueOf(options.get("layout").toUpperCase(Locale.ENGLISH));
+        _nearCacheBytes = Long.parseLong(options.get("nearCacheBytes"));
+        _admission = Integer.parseInt(options.get("admission"));
+        _variantIndexUris = Integer.parseInt(options.get("variantIndexUris"));
+        _budgetMillis = Integer.parseInt(options.get("budgetMillis"));
+        _breakerFailures = Integer.parseInt(options.get("breakerFailures"));
+        _redis = options.get("redis");
+        _seed = Long.parseLong(options.get("seed"));
+    }
+
+    void run()
+            throws Exception
+    {
+        RespServer server = null;
+        String host = "localhost";
+        int port;
+        if( _redis.isEmpty() )
+        {
+            server = new RespServer(0);
+            server.start();
+            port = server.getPort();
+        }
+        else
+        {
+            host = _redis.substring(0, _redis.lastIndexOf(':'));
+            port = Integer.parseInt(_redis.substring(_redis.lastIndexOf(':') + 1));
+        }
+
+        GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
+        poolConfig.setMaxTotal(_threads + 2);
+        poolConfig.setMaxIdle(_threads + 2);
+        JedisPool jedisPool = new JedisPool(poolConfig, host, port);
+
+        CacheMetrics metrics = new CacheMetrics();
+        RedisCacheConfig config = new RedisCacheConfig();
+        config.setMetricsListener(metrics);
+        config.setStorageLayout(_layout);
+        config.setNearCacheMaxBytes(_nearCacheBytes);
+        config.setAdmissionMinFrequency(_admission);
+        config.setVariantIndexMaxUris(_variantIndexUris);
+        config.setLatencyBudgetMillis(CacheOperation.GET, _budgetMillis);
+        config.setLatencyBudgetMillis(CacheOperation.ADD, _budgetMillis);
+        config.setCircuitBreakerFailureThreshold(_breakerFailures);
+        RedisCache cache = new RedisCache(jedisPool, "load-harness", new BinaryCacheEntryCodec(), config);
+        cache.clear();
+
+        OriginResource origin = new OriginResource(_entityBytes, _maxAge);
+        Dispatcher dispatcher = MockDispatcherFactory.createDispatcher();
+        dispatcher.getProviderFactory().register(new RedisCacheFeature(cache));
+        dispatcher.getRegistry().addSingletonResource(origin);
+
+        try
+        {
+            Result result = drive(dispatcher, metrics, origin);
+            result.print(metrics);
+        }
+        finally
+        {
+            cache.close();
+            jedisPool.destroy();
+            if( server != null )
+            {
+                server.close();
+            }
+        }
+    }
+
+    private Result drive( final Dispatcher dispatcher,
+                          final CacheMetrics metrics,
+                          final OriginResource origin )
+            throws InterruptedException
+    {
+        final ZipfDistribution popularity = new ZipfDistribution(_uris, _zipf);
+        final Result result = new Result();
+        final long start = System.currentTimeMillis();
+        final long measureFrom = start + _warmupMillis;
+        final long end = measureFrom + _durationMillis;
+        final CountDownLatch done = new CountDownLatch(_threads);
+
+        for( int t = 0; t < _threads; t++ )
+        {
+            final Random random = new Random(_seed + t);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        boolean measuring = false;
+                        long allocatedFrom = 0;
+                        long now;
+                        while( ( now = System.currentTimeMillis() ) < end )
+                        {
+                            if( !measuring && now >= measureFrom )
+                            {
+                                measuring = true;
+                                allocatedFrom = allocatedBytes();
+                                result.startMeasuring(metrics, origin);
+                            }
+                            request(dispatcher, random, popularity, measuring ? result : null);
+                        }
+                        if( measuring )
+                        {
+                            result._allocatedBytes.addAndGet(allocatedBytes() - allocatedFrom);
+                        }
+                    }
+                    catch( RuntimeException e )
+                    {
+                        result._failure = e;
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            }, "load-harness-" + t);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        done.await();
+        result.stopMeasuring(metrics, origin, System.currentTimeMillis() - measureFrom);
+        return result;
+    }
+
+    /**
+     * @return bytes allocated by the calling thread so far, or 0 when the JVM does not report it
+     */
+    private static long allocatedBytes()
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if( threads instanceof com.sun.management.ThreadMXBean )
+        {
+            return ( (com.sun.management.ThreadMXBean) threads ).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private void request( Dispatcher dispatcher,
+                          Random random,
+                          ZipfDistribution popularity,
+                          Result result )
+    {
+        MockHttpRequest request;
+        try
+        {
+            request = MockHttpRequest.get("/resources/" + popularity.sample(random));
+        }
+        catch( URISyntaxException e )
+        {
+            throw new IllegalStateException(e);
+        }
+        request.accept(variant(random));
+        MockHttpResponse response = new MockHttpResponse();
+
+        long started = System.nanoTime();
+        dispatcher.invoke(request, response);
+        long nanos = System.nanoTime() - started;
+
+        if( result != null )
+        {
+            result._latencyNanos.record(nanos);
+            if( response.getStatus() != 200 )
+            {
+                result._errors.incrementAndGet();
+            }
+        }
+    }
+
+    private MediaType variant( Random random )
+    {
+        int total = 0;
+        for( int weight : _variantWeights )
+        {
+            total += weight;
+        }
+        int pick = random.nextInt(total);
+        for( int i = 0; i < _variants.size(); i++ )
+        {
+            pick -= _variantWeights.get(i);
+            if( pick < 0 )
+            {
+                return _variants.get(i);
+            }
+        }
+        return _variants.get(_variants.size() - 1);
+    }
+
+    /**
+     * Generates a response of the accepted type. Each call is a cache miss.
+     */
+    @Path("/resources")
+    public static class OriginResource {
+
+        private final byte[] _entity;
+        private final CacheControl _cacheControl;
+        final AtomicLong _calls = new AtomicLong();
+
+        OriginResource( int entityBytes,
+                        int maxAge )
+        {
+            _entity = new byte[entityBytes];
+            Arrays.fill(_entity, (byte) 'x');
+            _cacheControl = new CacheControl();
+            _cacheControl.setMaxAge(maxAge);
+        }
+
+        @GET
+        @Path("{id}")
+        @Produces("*/*")
+        public Response get( @PathParam("id") String id,
+                             @Context HttpHeaders headers )
+        {
+            _calls.incrementAndGet();
+            MediaType accept = headers.getAcceptableMediaTypes().get(0);
+            return Response.ok(_entity, accept).cacheControl(_cacheControl).build();
+        }
+    }
+
+    private static class Result {
+
+        final Histogram _latencyNanos = new Histogram();
+        final AtomicLong _errors = new AtomicLong();
+        final AtomicLong _allocatedBytes = new AtomicLong();
+        volatile RuntimeException _failure;
+
+        private boolean _measuring;
+        private long _hitsBefore;
+        private long _missesBefore;
+        private long _originCallsBefore;
+        private long _hits;
+        private long _misses;
+        private long _originCalls;
+        private long _elapsedMillis;
+
+        synchronized void startMeasuring( CacheMetrics metrics,
+                                          OriginResource origin )
+        {
+            if( !_measuring )
+            {
+                _measuring = true;
+                _hitsBefore = metrics.getHits();
+                _missesBefore = metrics.getMisses();
+                _originCallsBefore = origin._calls.get();
+            }
+        }
+
+        synchronized void stopMeasuring( CacheMetrics metrics,
+                                         OriginResource origin,
+                                         long elapsedMillis )
+        {
+            _hits = metrics.getHits() - _hitsBefore;
+            _misses = metrics.getMisses() - _missesBefore;
+            _originCalls = origin._calls.get() - _originCallsBefore;
+            _elapsedMillis = elapsedMillis;
+        }
+
+        void print( CacheMetrics metrics )
+        {
+            if( _failure != null )
+            {
+                throw _failure;
+            }
+            long requests = _latencyNanos.getCount();
+            System.out.printf("requests        %d%n", requests);
+            System.out.printf("errors          %d%n", _errors.get());
+            System.out.printf("throughput      %.1f req/s%n", requests * 1000.0 / Math.max(1, _elapsedMillis));
+            System.out.printf("latency p50     %d us%n", micros(_latencyNanos.getPercentile(50)));
+            System.out.printf("latency p99     %d us%n", micros(_latencyNanos.getPercentile(99)));
+            System.out.printf("latency p999    %d us%n", micros(_latencyNanos.getPercentile(99.9)));
+            System.out.printf("latency max     %d us%n", micros(_latencyNanos.getMax()));
+            System.out.printf("alloc/request   %d bytes%n", requests == 0 ? 0 : _allocatedBytes.get() / requests);
+            System.out.printf("hit ratio       %.4f%n", _hits + _misses == 0 ? 0 : (double) _hits / ( _hits + _misses ));
+            System.out.printf("origin calls    %d%n", _originCalls);
+            // round trips and declined adds are counted from the start, including the warmup
+            System.out.printf("redis get p99   %d us%n", micros(metrics.getRoundTripNanos(CacheOperation.GET).getPercentile(99)));
+            System.out.printf("redis add p99   %d us%n", micros(metrics.getRoundTripNanos(CacheOperation.ADD).getPercentile(99)));
+            System.out.printf("declined adds   %d%n", metrics.getDeclined());
+            System.out.printf("failed open     %d%n", metrics.getFailedOpen(CacheOperation.GET) + metrics.getFailedOpen(CacheOperation.ADD));
+            System.out.printf("circuit opened  %d%n", metrics.getCircuitOpenedCount());
+        }
+
+        private static long micros( long nanos )
+        {
+            return TimeUnit.NANOSECONDS.toMicros(nanos);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.samolsen.resteasy.cache.redis.benchmarks.load;
+
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaString;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Lua scripting for {@link RespServer}: EVAL, EVALSHA and SCRIPT, run on LuaJ.
+ *
+ * Replies are converted between Redis and Lua as Redis does. LuaJ implements Lua 5.2, so
+ * {@code unpack} is aliased to {@code table.unpack} for scripts written for Redis's Lua 5.1.
+ * Scripts run under the server's lock, so one at a time.
+ */
+class LuaScripts {
+
+    private final RespServer _server;
+    private final Globals _globals;
+    private final Map<String, LuaValue> _scripts = new HashMap<String, LuaValue>();
+
+    LuaScripts( RespServer server )
+    {
+        _server = server;
+        _globals = JsePlatform.standardGlobals();
+        _globals.set("unpack", _globals.get("table").get("unpack"));
+
+        LuaTable redis = new LuaTable();
+        redis.set("call", new Call(true));
+        redis.set("pcall", new Call(false));
+        redis.set("error_reply", new VarArgFunction() {
+            @Override
+            public Varargs invoke( Varargs args )
+            {
+                return reply("err", args.arg1());
+            }
+        });
+        redis.set("status_reply", new VarArgFunction() {
+            @Override
+            public Varargs invoke( Varargs args )
+            {
+                return reply("ok", args.arg1());
+            }
+        });
+        _globals.set("redis", redis);
+    }
+
+    /**
+     * @param args key count, keys, then arguments
+     */
+    Object eval( byte[] script,
+                 List<byte[]> args )
+    {
+        String sha1 = sha1Hex(script);
+        LuaValue function = _scripts.get(sha1);
+        if( function == null )
+        {
+            try
+            {
+                function = load(script, sha1);
+            }
+            catch( LuaError e )
+            {
+                return new RespServer.Error("ERR Error compiling script: " + e.getMessage());
+            }
+        }
+        return run(function, sha1, args);
+    }
+
+    /**
+     * @param args key count, keys, then arguments
+     */
+    Object evalsha( String sha1,
+                    List<byte[]> args )
+    {
+        LuaValue function = _scripts.get(sha1.toLowerCase(Locale.ENGLISH));
+        if( function == null )
+        {
+            return new RespServer.Error("NOSCRIPT No matching script. Please use EVAL.");
+        }
+        return run(function, sha1, args);
+    }
+
+    /**
+     * @param args subcommand, then its arguments
+     */
+    Object script( List<byte[]> args )
+    {
+        String subcommand = RespServer.string(args.get(0)).toUpperCase(Locale.ENGLISH);
+        if( subcommand.equals("LOAD") )
+        {
+            String sha1 = sha1Hex(args.get(1));
+            if( !_scripts.containsKey(sha1) )
+            {
+                load(args.get(1), sha1);
+            }
+            return sha1.getBytes(RespServer.UTF_8);
+        }
+        if( subcommand.equals("EXISTS") )
+        {
+            List<Object> exists = new ArrayList<Object>();
+            for( byte[] sha1 : args.subList(1, args.size()) )
+            {
+                exists.add(_scripts.containsKey(RespServer.string(sha1).toLowerCase(Locale.ENGLISH)) ? 1L : 0L);
+            }
+            return exists;
+        }
+        if( subcommand.equals("FLUSH") )
+        {
+            _scripts.clear();
+            return RespServer.OK;
+        }
+        return new RespServer.Error("ERR unknown SCRIPT subcommand");
+    }
+
+    private LuaValue load( byte[] script,
+                           String sha1 )
+    {
+        LuaValue function = _globals.load(new String(script, RespServer.UTF_8), "=f_" + sha1);
+        _scripts.put(sha1, function);
+        return function;
+    }
+
+    private Object run( LuaValue function,
+                        String sha1,
+                        List<byte[]> args )
+    {
+        int keyCount = Integer.parseInt(RespServer.string(args.get(0)));
+        if( keyCount < 0 || keyCount > args.size() - 1 )
+        {
+            return new RespServer.Error("ERR Number of keys can't be greater than number of args");
+        }
+        _globals.set("KEYS", table(args.subList(1, 1 + keyCount)));
+        _globals.set("ARGV", table(args.subList(1 + keyCount, args.size())));
+        try
+        {
+            return toReply(function.call());
+        }
+        catch( LuaError e )
+        {
+            return new RespServer.Error("ERR Error running script (call to f_" + sha1 + "): " + e.getMessage());
+        }
+    }
+
+    private static LuaTable table( List<byte[]> values )
+    {
+        LuaTable table = new LuaTable();
+        for( int i = 0; i < values.size(); i++ )
+        {
+            table.set(i + 1, LuaString.valueOf(values.get(i)));
+        }
+        return table;
+    }
+
+    private static LuaTable reply( String field,
+                                   LuaValue message )
+    {
+        LuaTable table = new LuaTable();
+        table.set(field, message);
+        return table;
+    }
+
+    /**
+     * Converts a Lua value returned by a script to a Redis reply.
+     */
+    private static Object toReply( LuaValue value )
+    {
+        if( value.type() == LuaValue.TNUMBER )
+        {
+            return value.tolong();
+        }
+        if( value.isstring() )
+        {
+            return bytes(value.checkstring());
+        }
+        if( value.isboolean() )
+        {
+            return value.toboolean() ? 1L : null;
+        }
+        if( value.istable() )
+        {
+            LuaValue err = value.get("err");
+            if( err.isstring() )
+            {
+                return new RespServer.Error(err.tojstring());
+            }
+            LuaValue ok = value.get("ok");
+            if( ok.isstring() )
+            {
+                return new RespServer.Status(ok.tojstring());
+            }
+            List<Object> list = new ArrayList<Object>();
+            for( int i = 1; !value.get(i).isnil(); i++ )
+            {
+                list.add(toReply(value.get(i)));
+            }
+            return list;
+        }
+        return null;
+    }
+
+    /**
+     * Converts a Redis reply to the Lua value seen by a script.
+     */
+    private static LuaValue toLua( Object reply )
+    {
+        if( reply == null )
+        {
+            return LuaValue.FALSE;
+        }
+        if( reply instanceof Long )
+        {
+            return LuaValue.valueOf((Long) reply);
+        }
+        if( reply instanceof byte[] )
+        {
+            return LuaString.valueOf((byte[]) reply);
+        }
+        if( reply instanceof List )
+        {
+            LuaTable table = new LuaTable();
+            int i = 1;
+            for( Object element : (List<?>) reply )
+            {
+                table.set(i++, toLua(element));
+            }
+            return table;
+        }
+        if( reply instanceof RespServer.Status )
+        {
+            return reply("ok", LuaValue.valueOf(( (RespServer.Status) reply )._message));
+        }
+        return reply("err", LuaValue.valueOf(( (RespServer.Error) reply )._message));
+    }
+
+    private static byte[] bytes( LuaString string )
+    {
+        byte[] bytes = new byte[string.rawlen()];
+        string.copyInto(0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private static String sha1Hex( byte[] script )
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for( byte b : digest )
+            {
+                hex.append(Character.forDigit(( b >> 4 ) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    /**
+     * redis.call and redis.pcall. A failing command raises an error from call, and is returned as
+     * an error table from pcall.
+     */
+    private class Call extends VarArgFunction {
+
+        private final boolean _raise;
+
+        Call( boolean raise )
+        {
+            _raise = raise;
+        }
+
+        @Override
+        public Varargs invoke( Varargs varargs )
+        {
+            if( varargs.narg() == 0 )
+            {
+                throw new LuaError("Please specify at least one argument for redis.call()");
+            }
+            List<byte[]> args = new ArrayList<byte[]>(varargs.narg());
+            for( int i = 1; i <= varargs.narg(); i++ )
+            {
+                LuaValue arg = varargs.arg(i);
+                if( !arg.isstring() )
+                {
+                    throw new LuaError("Lua redis() command arguments must be strings or integers");
+                }
+                args.add(bytes(arg.checkstring()));
+            }
+            Object reply = _server.execute(args);
+            if( reply instanceof RespServer.Error && _raise )
+            {
+                throw new LuaError(( (RespServer.Error) reply )._message);
+            }
+            return toLua(reply);
+        }
+    }
+}
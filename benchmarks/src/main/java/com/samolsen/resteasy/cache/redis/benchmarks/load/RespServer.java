@@ -0,0 +1,1002 @@
+package com.samolsen.resteasy.cache.redis.benchmarks.load;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.regex.Pattern;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * In-process stand-in for a Redis server, speaking RESP over a local socket, for running the cache
+ * without external services.
+ *
+ * Implements the commands the cache sends: strings, sets, hashes, expiry, SCAN, pub/sub, and Lua
+ * scripts through {@link LuaScripts}. Commands run one at a time under a single lock, so each
+ * command and script is atomic, as in Redis. Expired keys are removed when next touched.
+ *
+ * Not a general purpose Redis: there is no persistence, replication, cluster support, or
+ * eviction.
+ */
+public class RespServer {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+
+    static final Status OK = new Status("OK");
+    static final Error WRONG_TYPE = new Error("WRONGTYPE Operation against a key holding the wrong kind of value");
+
+    /**
+     * Keys and set members are held as ISO-8859-1 strings, mapping each byte to one char, so
+     * binary keys survive the round trip.
+     */
+    private final TreeMap<String, Value> _keys = new TreeMap<String, Value>();
+    private final Map<String, Set<Connection>> _subscribers = new HashMap<String, Set<Connection>>();
+    private final LuaScripts _scripts = new LuaScripts(this);
+    private final Set<Connection> _connections = new CopyOnWriteArraySet<Connection>();
+
+    private final ServerSocket _serverSocket;
+    private volatile boolean _closed;
+
+    /**
+     * @param port port to listen on, on the loopback address. 0 picks a free port.
+     */
+    public RespServer( int port )
+            throws IOException
+    {
+        _serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+    }
+
+    public int getPort()
+    {
+        return _serverSocket.getLocalPort();
+    }
+
+    public void start()
+    {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                accept();
+            }
+        }, "resp-server-accept");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void close()
+    {
+        _closed = true;
+        try
+        {
+            _serverSocket.close();
+        }
+        catch( IOException e )
+        {
+            // closing anyway
+        }
+        for( Connection connection : _connections )
+        {
+            connection.close();
+        }
+    }
+
+    private void accept()
+    {
+        while( !_closed )
+        {
+            final Socket socket;
+            try
+            {
+                socket = _serverSocket.accept();
+                socket.setTcpNoDelay(true);
+            }
+            catch( IOException e )
+            {
+                // closed
+                return;
+            }
+            final Connection connection = new Connection(socket);
+            _connections.add(connection);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    connection.serve();
+                }
+            }, "resp-server-connection");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Runs a command. Also called by scripts, which already hold the lock.
+     *
+     * @param args command name, followed by its arguments
+     * @return reply: {@link Long}, byte[], null, {@link List}, {@link Status} or {@link Error}
+     */
+    synchronized Object execute( List<byte[]> args )
+    {
+        String name = string(args.get(0)).toUpperCase(Locale.ENGLISH);
+        try
+        {
+            if( name.equals("PING") )
+            {
+                return args.size() > 1 ? args.get(1) : new Status("PONG");
+            }
+            if( name.equals("ECHO") )
+            {
+                return arg(args, 1);
+            }
+            if( name.equals("SELECT") || name.equals("AUTH") || name.equals("CLIENT") )
+            {
+                return OK;
+            }
+            if( name.equals("GET") )
+            {
+                byte[] value = get(key(args, 1));
+                return value;
+            }
+            if( name.equals("SET") )
+            {
+                return set(args);
+            }
+            if( name.equals("SETEX") )
+            {
+                String key = key(args, 1);
+                _keys.put(key, new Value(arg(args, 3), now() + 1000 * integer(args, 2)));
+                return OK;
+            }
+            if( name.equals("INCR") )
+            {
+                return incr(key(args, 1));
+            }
+            if( name.equals("DEL") || name.equals("UNLINK") )
+            {
+                long removed = 0;
+                for( int i = 1; i < args.size(); i++ )
+                {
+                    if( live(key(args, i)) != null )
+                    {
+                        _keys.remove(key(args, i));
+                        removed++;
+                    }
+                }
+                return removed;
+            }
+            if( name.equals("EXISTS") )
+            {
+                long exists = 0;
+                for( int i = 1; i < args.size(); i++ )
+                {
+                    if( live(key(args, i)) != null )
+                    {
+                        exists++;
+                    }
+                }
+                return exists;
+            }
+            if( name.equals("EXPIRE") || name.equals("PEXPIRE") )
+            {
+                long millis = name.equals("EXPIRE") ? 1000 * integer(args, 2) : integer(args, 2);
+                return expire(key(args, 1), millis);
+            }
+            if( name.equals("TTL") || name.equals("PTTL") )
+            {
+                return ttl(key(args, 1), name.equals("TTL"));
+            }
+            if( name.equals("SADD") )
+            {
+                Set<String> set = set(key(args, 1), true);
+                long added = 0;
+                for( int i = 2; i < args.size(); i++ )
+                {
+                    if( set.add(key(args, i)) )
+                    {
+                        added++;
+                    }
+                }
+                return added;
+            }
+            if( name.equals("SREM") )
+            {
+                Set<String> set = set(key(args, 1), false);
+                long removed = 0;
+                for( int i = 2; set != null && i < args.size(); i++ )
+                {
+                    if( set.remove(key(args, i)) )
+                    {
+                        removed++;
+                    }
+                }
+                removeIfEmpty(key(args, 1), set);
+                return removed;
+            }
+            if( name.equals("SMEMBERS") )
+            {
+                Set<String> set = set(key(args, 1), false);
+                return set == null ? Collections.emptyList() : bulks(set);
+            }
+            if( name.equals("SCARD") )
+            {
+                Set<String> set = set(key(args, 1), false);
+                return set == null ? 0L : (long) set.size();
+            }
+            if( name.equals("HSET") )
+            {
+                Map<String, byte[]> hash = hash(key(args, 1), true);
+                return hash.put(key(args, 2), arg(args, 3)) == null ? 1L : 0L;
+            }
+            if( name.equals("HGET") )
+            {
+                Map<String, byte[]> hash = hash(key(args, 1), false);
+                return hash == null ? null : hash.get(key(args, 2));
+            }
+            if( name.equals("HINCRBY") )
+            {
+                Map<String, byte[]> hash = hash(key(args, 1), true);
+                byte[] current = hash.get(key(args, 2));
+                long next = ( current == null ? 0 : Long.parseLong(string(current)) ) + integer(args, 3);
+                hash.put(key(args, 2), Long.toString(next).getBytes(UTF_8));
+                return next;
+            }
+            if( name.equals("HDEL") )
+            {
+                Map<String, byte[]> hash = hash(key(args, 1), false);
+                long removed = 0;
+                for( int i = 2; hash != null && i < args.size(); i++ )
+                {
+                    if( hash.remove(key(args, i)) != null )
+                    {
+                        removed++;
+                    }
+                }
+                removeIfEmpty(key(args, 1), hash == null ? null : hash.keySet());
+                return removed;
+            }
+            if( name.equals("HKEYS") )
+            {
+                Map<String, byte[]> hash = hash(key(args, 1), false);
+                return hash == null ? Collections.emptyList() : bulks(hash.keySet());
+            }
+            if( name.equals("HGETALL") )
+            {
+                Map<String, byte[]> hash = hash(key(args, 1), false);
+                List<Object> reply = new ArrayList<Object>();
+                if( hash != null )
+                {
+                    for( Map.Entry<String, byte[]> field : hash.entrySet() )
+                    {
+                        reply.add(bytes(field.getKey()));
+                        reply.add(field.getValue());
+                    }
+                }
+                return reply;
+            }
+            if( name.equals("SCAN") )
+            {
+                return scan(args);
+            }
+            if( name.equals("DBSIZE") )
+            {
+                return (long) _keys.size();
+            }
+            if( name.equals("FLUSHDB") || name.equals("FLUSHALL") )
+            {
+                _keys.clear();
+                return OK;
+            }
+            if( name.equals("INFO") )
+            {
+                return ( "# Server\r\nredis_version:3.0.0\r\nredis_mode:standalone\r\n" +
+                         "# Replication\r\nrole:master\r\nconnected_slaves:0\r\n" ).getBytes(UTF_8);
+            }
+            if( name.equals("PUBLISH") )
+            {
+                return publish(string(arg(args, 1)), arg(args, 2));
+            }
+            if( name.equals("EVAL") )
+            {
+                return _scripts.eval(arg(args, 1), args.subList(2, args.size()));
+            }
+            if( name.equals("EVALSHA") )
+            {
+                return _scripts.evalsha(string(arg(args, 1)), args.subList(2, args.size()));
+            }
+            if( name.equals("SCRIPT") )
+            {
+                return _scripts.script(args.subList(1, args.size()));
+            }
+            return new Error("ERR unknown command '" + name.toLowerCase(Locale.ENGLISH) + "'");
+        }
+        catch( IndexOutOfBoundsException e )
+        {
+            return new Error("ERR wrong number of arguments for '" + name.toLowerCase(Locale.ENGLISH) + "' command");
+        }
+        catch( NumberFormatException e )
+        {
+            return new Error("ERR value is not an integer or out of range");
+        }
+        catch( WrongTypeException e )
+        {
+            return WRONG_TYPE;
+        }
+    }
+
+    private Object set( List<byte[]> args )
+    {
+        String key = key(args, 1);
+        byte[] value = arg(args, 2);
+        long expiresAt = 0;
+        boolean nx = false;
+        boolean xx = false;
+        for( int i = 3; i < args.size(); i++ )
+        {
+            String option = string(args.get(i)).toUpperCase(Locale.ENGLISH);
+            if( option.equals("NX") )
+            {
+                nx = true;
+            }
+            else if( option.equals("XX") )
+            {
+                xx = true;
+            }
+            else if( option.equals("EX") )
+            {
+                expiresAt = now() + 1000 * integer(args, ++i);
+            }
+            else if( option.equals("PX") )
+            {
+                expiresAt = now() + integer(args, ++i);
+            }
+            else
+            {
+                return new Error("ERR syntax error");
+            }
+        }
+        boolean exists = live(key) != null;
+        if( ( nx && exists ) || ( xx && !exists ) )
+        {
+            return null;
+        }
+        _keys.put(key, new Value(value, expiresAt));
+        return OK;
+    }
+
+    private Object incr( String key )
+    {
+        Value value = live(key);
+        long current = 0;
+        if( value != null )
+        {
+            if( !( value._data instanceof byte[] ) )
+            {
+                throw new WrongTypeException();
+            }
+            current = Long.parseLong(string((byte[]) value._data));
+        }
+        long next = current + 1;
+        _keys.put(key, new Value(Long.toString(next).getBytes(UTF_8), value == null ? 0 : value._expiresAt));
+        return next;
+    }
+
+    private long expire( String key,
+                         long millis )
+    {
+        Value value = live(key);
+        if( value == null )
+        {
+            return 0;
+        }
+        if( millis <= 0 )
+        {
+            _keys.remove(key);
+        }
+        else
+        {
+            value._expiresAt = now() + millis;
+        }
+        return 1;
+    }
+
+    private long ttl( String key,
+                      boolean seconds )
+    {
+        Value value = live(key);
+        if( value == null )
+        {
+            return -2;
+        }
+        if( value._expiresAt == 0 )
+        {
+            return -1;
+        }
+        long remaining = value._expiresAt - now();
+        return seconds ? ( remaining + 500 ) / 1000 : remaining;
+    }
+
+    /**
+     * Scans in key order. The cursor is the hex encoded last key returned, so keys present for the
+     * whole scan are returned once, whatever else changes.
+     */
+    private Object scan( List<byte[]> args )
+    {
+        String cursor = string(arg(args, 1));
+        Pattern match = null;
+        int count = 10;
+        for( int i = 2; i < args.size(); i++ )
+        {
+            String option = string(args.get(i)).toUpperCase(Locale.ENGLISH);
+            if( option.equals("MATCH") )
+            {
+                match = glob(string(arg(args, ++i)));
+            }
+            else if( option.equals("COUNT") )
+            {
+                count = (int) integer(args, ++i);
+            }
+        }
+
+        SortedMap<String, Value> remaining = cursor.equals("0") ? _keys : _keys.tailMap(unhex(cursor), false);
+        List<Object> keys = new ArrayList<Object>();
+        String last = null;
+        int scanned = 0;
+        for( Iterator<Map.Entry<String, Value>> it = remaining.entrySet().iterator(); it.hasNext() && scanned < count; scanned++ )
+        {
+            Map.Entry<String, Value> entry = it.next();
+            last = entry.getKey();
+            if( entry.getValue().isExpired(now()) )
+            {
+                it.remove();
+                continue;
+            }
+            if( match == null || match.matcher(last).matches() )
+            {
+                keys.add(bytes(last));
+            }
+        }
+
+        boolean done = last == null || _keys.higherKey(last) == null;
+        List<Object> reply = new ArrayList<Object>();
+        reply.add(( done ? "0" : hex(last) ).getBytes(UTF_8));
+        reply.add(keys);
+        return reply;
+    }
+
+    private long publish( String channel,
+                          byte[] message )
+    {
+        Set<Connection> subscribers = _subscribers.get(channel);
+        if( subscribers == null )
+        {
+            return 0;
+        }
+        List<Object> push = Arrays.<Object>asList("message".getBytes(UTF_8), channel.getBytes(UTF_8), message);
+        for( Connection subscriber : subscribers )
+        {
+            subscriber.push(push);
+        }
+        return subscribers.size();
+    }
+
+    private synchronized long subscribe( Connection connection,
+                                         String channel )
+    {
+        Set<Connection> subscribers = _subscribers.get(channel);
+        if( subscribers == null )
+        {
+            subscribers = new LinkedHashSet<Connection>();
+            _subscribers.put(channel, subscribers);
+        }
+        subscribers.add(connection);
+        connection._channels.add(channel);
+        return connection._channels.size();
+    }
+
+    private synchronized long unsubscribe( Connection connection,
+                                           String channel )
+    {
+        Set<Connection> subscribers = _subscribers.get(channel);
+        if( subscribers != null )
+        {
+            subscribers.remove(connection);
+            if( subscribers.isEmpty() )
+            {
+                _subscribers.remove(channel);
+            }
+        }
+        connection._channels.remove(channel);
+        return connection._channels.size();
+    }
+
+    private byte[] get( String key )
+    {
+        Value value = live(key);
+        if( value == null )
+        {
+            return null;
+        }
+        if( !( value._data instanceof byte[] ) )
+        {
+            throw new WrongTypeException();
+        }
+        return (byte[]) value._data;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private Set<String> set( String key,
+                             boolean create )
+    {
+        Value value = live(key);
+        if( value == null )
+        {
+            if( !create )
+            {
+                return null;
+            }
+            value = new Value(new LinkedHashSet<String>(), 0);
+            _keys.put(key, value);
+        }
+        if( !( value._data instanceof Set ) )
+        {
+            throw new WrongTypeException();
+        }
+        return (Set<String>) value._data;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private Map<String, byte[]> hash( String key,
+                                      boolean create )
+    {
+        Value value = live(key);
+        if( value == null )
+        {
+            if( !create )
+            {
+                return null;
+            }
+            value = new Value(new LinkedHashMap<String, byte[]>(), 0);
+            _keys.put(key, value);
+        }
+        if( !( value._data instanceof Map ) )
+        {
+            throw new WrongTypeException();
+        }
+        return (Map<String, byte[]>) value._data;
+    }
+
+    private void removeIfEmpty( String key,
+                                Set<String> members )
+    {
+        if( members != null && members.isEmpty() )
+        {
+            _keys.remove(key);
+        }
+    }
+
+    /**
+     * @return the key's value, or null when it is missing or has expired
+     */
+    private Value live( String key )
+    {
+        Value value = _keys.get(key);
+        if( value != null && value.isExpired(now()) )
+        {
+            _keys.remove(key);
+            return null;
+        }
+        return value;
+    }
+
+    private static long now()
+    {
+        return System.currentTimeMillis();
+    }
+
+    private static byte[] arg( List<byte[]> args,
+                               int index )
+    {
+        return args.get(index);
+    }
+
+    private static String key( List<byte[]> args,
+                               int index )
+    {
+        return new String(args.get(index), LATIN_1);
+    }
+
+    private static long integer( List<byte[]> args,
+                                 int index )
+    {
+        return Long.parseLong(string(args.get(index)));
+    }
+
+    static String string( byte[] bytes )
+    {
+        return new String(bytes, UTF_8);
+    }
+
+    private static byte[] bytes( String key )
+    {
+        return key.getBytes(LATIN_1);
+    }
+
+    private static List<Object> bulks( Set<String> keys )
+    {
+        List<Object> reply = new ArrayList<Object>(keys.size());
+        for( String key : keys )
+        {
+            reply.add(bytes(key));
+        }
+        return reply;
+    }
+
+    private static String hex( String key )
+    {
+        StringBuilder hex = new StringBuilder(key.length() * 2);
+        for( byte b : bytes(key) )
+        {
+            hex.append(Character.forDigit(( b >> 4 ) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static String unhex( String hex )
+    {
+        byte[] key = new byte[hex.length() / 2];
+        for( int i = 0; i < key.length; i++ )
+        {
+            key[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return new String(key, LATIN_1);
+    }
+
+    /**
+     * @return a pattern for a Redis glob, supporting * ? and [...]
+     */
+    private static Pattern glob( String glob )
+    {
+        StringBuilder regex = new StringBuilder();
+        for( int i = 0; i < glob.length(); i++ )
+        {
+            char c = glob.charAt(i);
+            if( c == '*' )
+            {
+                regex.append(".*");
+            }
+            else if( c == '?' )
+            {
+                regex.append('.');
+            }
+            else if( c == '[' || c == ']' )
+            {
+                regex.append(c);
+            }
+            else if( c == '\\' && i + 1 < glob.length() )
+            {
+                regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+            }
+            else
+            {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static class Value {
+
+        final Object _data;
+        /**
+         * epoch millis, or 0 for no expiry
+         */
+        long _expiresAt;
+
+        Value( Object data,
+               long expiresAt )
+        {
+            _data = data;
+            _expiresAt = expiresAt;
+        }
+
+        boolean isExpired( long now )
+        {
+            return _expiresAt != 0 && now >= _expiresAt;
+        }
+    }
+
+    static class Status {
+
+        final String _message;
+
+        Status( String message )
+        {
+            _message = message;
+        }
+    }
+
+    static class Error {
+
+        final String _message;
+
+        Error( String message )
+        {
+            _message = message;
+        }
+    }
+
+    private static class WrongTypeException extends RuntimeException {
+    }
+
+    private class Connection {
+
+        final Socket _socket;
+        final Set<String> _channels = new HashSet<String>();
+        OutputStream _out;
+
+        Connection( Socket socket )
+        {
+            _socket = socket;
+        }
+
+        void serve()
+        {
+            try
+            {
+                InputStream in = new BufferedInputStream(_socket.getInputStream());
+                _out = new BufferedOutputStream(_socket.getOutputStream());
+                while( true )
+                {
+                    List<byte[]> args = readCommand(in);
+                    if( args.isEmpty() )
+                    {
+                        continue;
+                    }
+                    String name = string(args.get(0)).toUpperCase(Locale.ENGLISH);
+                    if( name.equals("QUIT") )
+                    {
+                        reply(OK, true);
+                        return;
+                    }
+                    if( name.equals("SUBSCRIBE") || name.equals("UNSUBSCRIBE") )
+                    {
+                        subscription(name, args);
+                        continue;
+                    }
+                    // replies to pipelined commands are flushed together
+                    reply(execute(args), in.available() == 0);
+                }
+            }
+            catch( EOFException e )
+            {
+                // client disconnected
+            }
+            catch( SocketException e )
+            {
+                // client disconnected, or server closed
+            }
+            catch( IOException e )
+            {
+                // protocol error. The connection is dropped.
+            }
+            finally
+            {
+                for( String channel : new ArrayList<String>(_channels) )
+                {
+                    unsubscribe(this, channel);
+                }
+                _connections.remove(this);
+                close();
+            }
+        }
+
+        private void subscription( String name,
+                                   List<byte[]> args )
+                throws IOException
+        {
+            List<String> channels = new ArrayList<String>();
+            for( int i = 1; i < args.size(); i++ )
+            {
+                channels.add(string(args.get(i)));
+            }
+            if( name.equals("UNSUBSCRIBE") && channels.isEmpty() )
+            {
+                synchronized( RespServer.this )
+                {
+                    channels.addAll(_channels);
+                }
+            }
+            for( String channel : channels )
+            {
+                long count = name.equals("SUBSCRIBE") ? subscribe(this, channel) : unsubscribe(this, channel);
+                reply(Arrays.<Object>asList(name.toLowerCase(Locale.ENGLISH).getBytes(UTF_8),
+                                            channel.getBytes(UTF_8), count), true);
+            }
+        }
+
+        void push( List<Object> message )
+        {
+            try
+            {
+                reply(message, true);
+            }
+            catch( IOException e )
+            {
+                // subscriber gone. Dropped when its connection closes.
+            }
+        }
+
+        synchronized void reply( Object reply,
+                                 boolean flush )
+                throws IOException
+        {
+            write(_out, reply);
+            if( flush )
+            {
+                _out.flush();
+            }
+        }
+
+        void close()
+        {
+            try
+            {
+                _socket.close();
+            }
+            catch( IOException e )
+            {
+                // closing anyway
+            }
+        }
+    }
+
+    /**
+     * Reads a command as a RESP array of bulk strings, or an inline command.
+     */
+    static List<byte[]> readCommand( InputStream in )
+            throws IOException
+    {
+        int type = in.read();
+        if( type < 0 )
+        {
+            throw new EOFException();
+        }
+        if( type != '*' )
+        {
+            String inline = ( (char) type ) + readLine(in);
+            List<byte[]> args = new ArrayList<byte[]>();
+            for( String word : inline.trim().split("\\s+") )
+            {
+                if( !word.isEmpty() )
+                {
+                    args.add(word.getBytes(UTF_8));
+                }
+            }
+            return args;
+        }
+        int count = Integer.parseInt(readLine(in));
+        List<byte[]> args = new ArrayList<byte[]>(count);
+        for( int i = 0; i < count; i++ )
+        {
+            if( in.read() != '$' )
+            {
+                throw new IOException("Expected a bulk string");
+            }
+            int length = Integer.parseInt(readLine(in));
+            byte[] arg = new byte[length];
+            int read = 0;
+            while( read < length )
+            {
+                int n = in.read(arg, read, length - read);
+                if( n < 0 )
+                {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+            readLine(in);
+            args.add(arg);
+        }
+        return args;
+    }
+
+    private static String readLine( InputStream in )
+            throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while( ( c = in.read() ) != '\r' )
+        {
+            if( c < 0 )
+            {
+                throw new EOFException();
+            }
+            line.append((char) c);
+        }
+        in.read();
+        return line.toString();
+    }
+
+    static void write( OutputStream out,
+                       Object reply )
+            throws IOException
+    {
+        if( reply == null )
+        {
+            out.write("$-1\r\n".getBytes(UTF_8));
+        }
+        else if( reply instanceof Long )
+        {
+            out.write((":" + reply + "\r\n").getBytes(UTF_8));
+        }
+        else if( reply instanceof byte[] )
+        {
+            byte[] bytes = (byte[]) reply;
+            out.write(("$" + bytes.length + "\r\n").getBytes(UTF_8));
+            out.write(bytes);
+            out.write('\r');
+            out.write('\n');
+        }
+        else if( reply instanceof List )
+        {
+            List<?> list = (List<?>) reply;
+            out.write(("*" + list.size() + "\r\n").getBytes(UTF_8));
+            for( Object element : list )
+            {
+                write(out, element);
+            }
+        }
+        else if( reply instanceof Status )
+        {
+            out.write(("+" + ( (Status) reply )._message + "\r\n").getBytes(UTF_8));
+        }
+        else if( reply instanceof Error )
+        {
+            out.write(("-" + ( (Error) reply )._message + "\r\n").getBytes(UTF_8));
+        }
+        else
+        {
+            throw new IllegalArgumentException("Not a reply: " + reply);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.samolsen.resteasy.cache.redis.benchmarks.load;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Zipfian ranks 0 to n-1: rank k is drawn with probability proportional to 1 / (k + 1)^s. An
+ * exponent near 1 models the popularity of web resources, where a few URIs take most requests.
+ */
+class ZipfDistribution {
+
+    /**
+     * Cumulative probability of each rank.
+     */
+    private final double[] _cumulative;
+
+    /**
+     * @param n        number of ranks
+     * @param exponent skew. 0 is uniform; larger values concentrate on the lowest ranks.
+     */
+    ZipfDistribution( int n,
+                      double exponent )
+    {
+        if( n < 1 )
+        {
+            throw new IllegalArgumentException("n must be positive: " + n);
+        }
+        _cumulative = new double[n];
+        double total = 0;
+        for( int k = 0; k < n; k++ )
+        {
+            total += 1 / Math.pow(k + 1, exponent);
+            _cumulative[k] = total;
+        }
+        for( int k = 0; k < n; k++ )
+        {
+            _cumulative[k] /= total;
+        }
+    }
+
+    int sample( Random random )
+    {
+        int index = Arrays.binarySearch(_cumulative, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, _cumulative.length - 1);
+    }
+}
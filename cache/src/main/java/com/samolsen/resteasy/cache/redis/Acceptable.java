@@ -0,0 +1,251 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.ws.rs.core.MediaType;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * The media ranges of an `Accept:` header, choosing among cached variants. As in RFC 7231 section
+ * 5.3.2, a variant takes the quality (`q` parameter) of the most specific range matching it.
+ *
+ * Only variants matched by one of the most preferred ranges (highest quality, then most specific)
+ * are served. A cached variant of a less preferred range is passed over, as the resource may be able
+ * to produce the preferred type; it then misses and negotiates the response itself. Among the
+ * variants served, those matched by a range listed earlier come first.
+ */
+final class Acceptable {
+
+    static final String QUALITY_PARAMETER = "q";
+
+    @NotNull
+    private final MediaType[] _ranges;
+    @NotNull
+    private final double[] _qualities;
+    @NotNull
+    private final int[] _specificities;
+    /**
+     * One of the most preferred ranges.
+     */
+    private final int _preferred;
+
+    /**
+     * @param ranges accepted media ranges, most preferred first. Empty accepts anything.
+     */
+    Acceptable( @NotNull List<MediaType> ranges )
+    {
+        if( ranges.isEmpty() )
+        {
+            ranges = Collections.singletonList(MediaType.WILDCARD_TYPE);
+        }
+        _ranges = ranges.toArray(new MediaType[ranges.size()]);
+        _qualities = new double[_ranges.length];
+        _specificities = new int[_ranges.length];
+        for( int i = 0; i < _ranges.length; i++ )
+        {
+            _qualities[i] = rangeQuality(_ranges[i]);
+            _specificities[i] = specificity(_ranges[i]);
+        }
+        int preferred = 0;
+        for( int i = 1; i < _ranges.length; i++ )
+        {
+            if( _qualities[i] > _qualities[preferred]
+                    || _qualities[i] == _qualities[preferred] && _specificities[i] > _specificities[preferred] )
+            {
+                preferred = i;
+            }
+        }
+        _preferred = preferred;
+    }
+
+    /**
+     * @return the most preferred range when there is only one, otherwise the wildcard type. Every
+     * variant which may be served is compatible with it, so it may filter variants before ranking.
+     */
+    @NotNull
+    MediaType filter()
+    {
+        for( int i = 0; i < _ranges.length; i++ )
+        {
+            if( i != _preferred && served(i) )
+            {
+                return MediaType.WILDCARD_TYPE;
+            }
+        }
+        return _ranges[_preferred];
+    }
+
+    /**
+     * @return quality of the variant, 0 when no range matches it
+     */
+    double quality( @NotNull MediaType variant )
+    {
+        int range = match(variant);
+        return range < 0 ? 0 : _qualities[range];
+    }
+
+    /**
+     * @param variants media types of the variants
+     * @return indexes of the variants which may be served, most preferred first
+     */
+    @NotNull
+    int[] rank( @NotNull List<MediaType> variants )
+    {
+        int[] ranked = new int[variants.size()];
+        int[] ranges = new int[variants.size()];
+        int count = 0;
+        for( int i = 0; i < variants.size(); i++ )
+        {
+            int range = match(variants.get(i));
+            if( !served(range) )
+            {
+                continue;
+            }
+            // insertion sort; there are few variants per URI
+            int at = count;
+            while( at > 0 && range < ranges[at - 1] )
+            {
+                ranked[at] = ranked[at - 1];
+                ranges[at] = ranges[at - 1];
+                at--;
+            }
+            ranked[at] = i;
+            ranges[at] = range;
+            count++;
+        }
+        int[] result = new int[count];
+        System.arraycopy(ranked, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * @return index of the most preferred variant, or -1 when none may be served
+     */
+    int best( @NotNull List<MediaType> variants )
+    {
+        int best = -1;
+        int bestRange = -1;
+        for( int i = 0; i < variants.size(); i++ )
+        {
+            int range = match(variants.get(i));
+            if( served(range) && ( best < 0 || range < bestRange ) )
+            {
+                best = i;
+                bestRange = range;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return whether variants matched by the range are served: it is one of the most preferred
+     */
+    private boolean served( int range )
+    {
+        return range >= 0
+                && _qualities[range] > 0
+                && _qualities[range] == _qualities[_preferred]
+                && _specificities[range] == _specificities[_preferred];
+    }
+
+    /**
+     * @return index of the most specific range matching the variant, or -1
+     */
+    private int match( @NotNull MediaType variant )
+    {
+        int match = -1;
+        for( int i = 0; i < _ranges.length; i++ )
+        {
+            if( matches(_ranges[i], variant) && ( match < 0 || _specificities[i] > _specificities[match] ) )
+            {
+                match = i;
+            }
+        }
+        return match;
+    }
+
+    private static boolean matches( @NotNull MediaType range,
+                                    @NotNull MediaType variant )
+    {
+        if( !range.isCompatible(variant) )
+        {
+            return false;
+        }
+        for( Map.Entry<String, String> parameter : range.getParameters().entrySet() )
+        {
+            if( QUALITY_PARAMETER.equalsIgnoreCase(parameter.getKey()) )
+            {
+                continue;
+            }
+            String value = variant.getParameters().get(parameter.getKey());
+            if( value == null || !value.equalsIgnoreCase(parameter.getValue()) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the range's `q` parameter, 1 when absent or invalid
+     */
+    static double rangeQuality( @NotNull MediaType range )
+    {
+        String q = range.getParameters().get(QUALITY_PARAMETER);
+        if( q == null )
+        {
+            return 1;
+        }
+        try
+        {
+            double quality = Double.parseDouble(q);
+            return quality >= 0 && quality <= 1 ? quality : 1;
+        }
+        catch( NumberFormatException e )
+        {
+            return 1;
+        }
+    }
+
+    /**
+     * @return 0 for the wildcard type, 1 for a wildcard subtype, 2 for a type and subtype, and 3 when
+     * parameters other than `q` must also match
+     */
+    static int specificity( @NotNull MediaType range )
+    {
+        if( range.isWildcardType() )
+        {
+            return 0;
+        }
+        if( range.isWildcardSubtype() )
+        {
+            return 1;
+        }
+        for( String name : range.getParameters().keySet() )
+        {
+            if( !QUALITY_PARAMETER.equalsIgnoreCase(name) )
+            {
+                return 3;
+            }
+        }
+        return 2;
+    }
+}
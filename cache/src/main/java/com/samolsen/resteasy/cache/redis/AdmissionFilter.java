@@ -0,0 +1,82 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Frequency-based admission in front of {@link RedisCache#add}, after TinyLFU: an entry is only
+ * written once its URI has been seen enough times recently. Long-tail URIs requested once are not
+ * written, so they neither cost a write nor push useful entries out under Redis's maxmemory.
+ *
+ * Redis chooses its own eviction victims, so rather than comparing against a victim's frequency
+ * as TinyLFU does, URIs are admitted at a fixed minimum frequency. Only adds are counted: a URI
+ * which is not cached misses, and is added, on every request.
+ *
+ * @see RedisCacheConfig#setAdmissionMinFrequency(int)
+ * @see RedisCache#getAdmissionFilter()
+ */
+public class AdmissionFilter {
+
+    @NotNull
+    private final FrequencyCounter _counter;
+    private final int _minFrequency;
+
+    private final AtomicLong _admitted = new AtomicLong();
+    private final AtomicLong _rejected = new AtomicLong();
+
+    AdmissionFilter( @NotNull FrequencyCounter counter,
+                     int minFrequency )
+    {
+        _counter = counter;
+        _minFrequency = minFrequency;
+    }
+
+    /**
+     * Counts an add of the URI.
+     *
+     * @return whether the entry should be written
+     */
+    boolean admit( @NotNull String uri )
+    {
+        if( _counter.increment(uri) >= _minFrequency )
+        {
+            _admitted.incrementAndGet();
+            return true;
+        }
+        _rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @return number of adds written
+     */
+    public long getAdmittedCount()
+    {
+        return _admitted.get();
+    }
+
+    /**
+     * @return number of adds not written, their URI not yet being frequent enough
+     */
+    public long getRejectedCount()
+    {
+        return _rejected.get();
+    }
+}
@@ -0,0 +1,412 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.RuntimeDelegate;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Length-prefixed binary format for cache entries. The entity is stored as raw bytes, avoiding
+ * the base64 expansion and JSON parsing of {@link JsonCacheEntryCodec}.
+ *
+ * Layout (all integers big-endian):
+ * <pre>
+ * byte    magic ({@link #MAGIC})
+ * byte    version ({@link #VERSION})
+ * byte    flags ({@link #FLAG_DEFLATED})
+ * int     expires
+ * long    timestamp
+ * string  media type
+ * string  etag (length -1 when null)
+ * int     header block length, followed by the header block:
+ *           int count, then per header: string name, int value count, tagged values
+ * int     entity length, followed by the entity bytes. When deflated, followed instead
+ *           by int compressed length and the compressed bytes
+ * </pre>
+ * Strings are an int byte length followed by UTF-8 bytes.
+ *
+ * Header values keep the types produced by {@link MultivaluedMapDeserializer} (strings, longs,
+ * doubles, booleans, null, lists and maps). Other values are stored as their header string
+ * representation.
+ *
+ * The header block is kept encoded by the decoded {@link CacheEntry}, and only parsed into
+ * {@link CompactHeaders} when the headers are first read. Re-encoding an entry whose headers were
+ * never read copies the block as-is.
+ *
+ * The fields ahead of the entity are the entry's head. Redis cuts the head out of the stored value
+ * with {@link #LUA_HEAD}, so metadata lookups ({@link RedisCache#getHead(String, List)}) do not
+ * transfer the entity.
+ *
+ * Encoding goes through a per-thread {@link EncodeBuffer}, so the result array is the only
+ * allocation proportional to the entity, and the entity is copied once. Decoding reads fields in
+ * place and copies the entity once out of the stored value; as {@link CacheEntry#getCached()}
+ * returns an array, the entity cannot be a view of the stored value.
+ */
+public class BinaryCacheEntryCodec implements CacheEntryCodec {
+
+    static final byte MAGIC = (byte) 0xCE;
+    static final byte VERSION = 1;
+
+    /**
+     * Set when the entity is stored compressed.
+     *
+     * @see EntityCompression
+     */
+    static final int FLAG_DEFLATED = 0x01;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Reads compressed entries when this codec was not configured with compression.
+     */
+    private static final EntityCompression DECOMPRESSION = new EntityCompression();
+
+    /**
+     * Lua functions finding the head of an entry, the fields ahead of the entity (see
+     * {@link #decodeHead(byte[])}): `head_length(entry)` is the length of the head, nil when the
+     * entry ends before the head does, or false when it is not a binary cache entry; `head(entry)` is
+     * the head, or the entry unchanged when no head is found.
+     */
+    static final String LUA_HEAD =
+            "local function head_length(entry)\n" +
+            "  if #entry < 2 then return nil end\n" +
+            "  if string.byte(entry, 1) ~= " + ( MAGIC & 0xFF ) + " or string.byte(entry, 2) ~= " + VERSION + " then return false end\n" +
+            // media type, etag and header block follow the flags, expiry and timestamp
+            "  local i = 16\n" +
+            "  for _ = 1, 3 do\n" +
+            "    if i + 3 > #entry then return nil end\n" +
+            "    local a, b, c, d = string.byte(entry, i, i + 3)\n" +
+            "    if a < 128 then i = i + ((a * 256 + b) * 256 + c) * 256 + d end\n" +
+            "    i = i + 4\n" +
+            "  end\n" +
+            "  if i - 1 > #entry then return nil end\n" +
+            "  return i - 1\n" +
+            "end\n" +
+            "local function head(entry)\n" +
+            "  local length = head_length(entry)\n" +
+            "  if length then return string.sub(entry, 1, length) end\n" +
+            "  return entry\n" +
+            "end\n";
+
+    private static final byte[] NO_ENTITY = new byte[0];
+
+    static final byte TAG_NULL = 0;
+    static final byte TAG_STRING = 1;
+    static final byte TAG_LONG = 2;
+    static final byte TAG_DOUBLE = 3;
+    static final byte TAG_TRUE = 4;
+    static final byte TAG_FALSE = 5;
+    static final byte TAG_LIST = 6;
+    static final byte TAG_MAP = 7;
+
+    @Nullable
+    private final EntityCompression _compression;
+
+    public BinaryCacheEntryCodec()
+    {
+        this(null);
+    }
+
+    /**
+     * @param compression compression for stored entities, or null to store entities uncompressed.
+     *                    Compressed entries are readable either way.
+     */
+    public BinaryCacheEntryCodec( @Nullable EntityCompression compression )
+    {
+        _compression = compression;
+    }
+
+    @NotNull
+    @Override
+    public byte[] encode( @NotNull CacheEntry cacheEntry )
+    {
+        byte[] entity = cacheEntry._cached;
+
+        EncodeBuffer out = EncodeBuffer.get();
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        int flagsPosition = out.size();
+        out.writeByte(0);
+        out.writeInt(cacheEntry._expires);
+        out.writeLong(cacheEntry._timestamp);
+        out.writeString(cacheEntry._mediaType.toString());
+        out.writeString(cacheEntry._etag);
+
+        int headerLengthPosition = out.size();
+        out.writeInt(0);
+        byte[] headerBlock = cacheEntry.encodedHeaders();
+        if( headerBlock != null )
+        {
+            out.write(headerBlock);
+        }
+        else
+        {
+            writeHeaders(out, cacheEntry.getHeaders());
+        }
+        out.putInt(headerLengthPosition, out.size() - headerLengthPosition - 4);
+
+        out.writeInt(entity.length);
+        if( _compression != null && _compression.compress(entity, out) )
+        {
+            out.putByte(flagsPosition, FLAG_DEFLATED);
+            return out.toByteArray();
+        }
+
+        // the entity is copied once, straight into the result
+        byte[] encoded = new byte[out.size() + entity.length];
+        System.arraycopy(out.array(), 0, encoded, 0, out.size());
+        System.arraycopy(entity, 0, encoded, out.size(), entity.length);
+        return encoded;
+    }
+
+    @NotNull
+    @Override
+    public CacheEntry decode( @NotNull byte[] bytes )
+            throws IOException
+    {
+        DecodeBuffer in = new DecodeBuffer(bytes);
+        int flags = readFlags(in);
+        CacheEntry cacheEntry = readHead(in);
+
+        if( ( flags & FLAG_DEFLATED ) != 0 )
+        {
+            int originalLength = in.readInt();
+            if( originalLength < 0 )
+            {
+                throw new IOException("Error parsing " + CacheEntry.class.getName() + ": invalid length " + originalLength);
+            }
+            int length = in.readLength();
+            int offset = in.position();
+            in.skip(length);
+            cacheEntry._cached = ( _compression != null ? _compression : DECOMPRESSION ).decompress(bytes, offset, length, originalLength);
+        }
+        else
+        {
+            cacheEntry._cached = in.readBytes(in.readLength());
+        }
+        return cacheEntry;
+    }
+
+    /**
+     * Decodes the fields ahead of the entity, as returned by {@link #LUA_HEAD}. A whole entry may
+     * also be passed, and its entity is not read.
+     *
+     * @throws IOException when the bytes are not the head of a binary cache entry
+     */
+    @NotNull
+    static CacheEntryHead decodeHead( @NotNull byte[] bytes )
+            throws IOException
+    {
+        DecodeBuffer in = new DecodeBuffer(bytes);
+        readFlags(in);
+        return new CacheEntryHead(readHead(in));
+    }
+
+    /**
+     * @return length of the head of an encoded entry, as cut by {@link #LUA_HEAD}, or -1 when the
+     * bytes are not a binary cache entry
+     */
+    static int headLength( @NotNull byte[] encoded )
+    {
+        DecodeBuffer in = new DecodeBuffer(encoded);
+        try
+        {
+            readFlags(in);
+            // expires and timestamp
+            in.skip(4 + 8);
+            // media type and etag
+            for( int i = 0; i < 2; i++ )
+            {
+                int length = in.readInt();
+                if( length > 0 )
+                {
+                    in.skip(length);
+                }
+            }
+            in.skip(in.readLength());
+            return in.position();
+        }
+        catch( IOException e )
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the magic, version and flags.
+     *
+     * @return the flags
+     */
+    private static int readFlags( @NotNull DecodeBuffer in )
+            throws IOException
+    {
+        if( in.readByte() != MAGIC )
+        {
+            throw new IOException("Error parsing " + CacheEntry.class.getName() + ": not a binary cache entry");
+        }
+        byte version = in.readByte();
+        if( version != VERSION )
+        {
+            throw new IOException("Error parsing " + CacheEntry.class.getName() + ": unknown version " + version);
+        }
+        return in.readByte();
+    }
+
+    /**
+     * Reads the fields from the expiry to the header block.
+     *
+     * @return the entry, with an empty entity
+     */
+    @NotNull
+    private static CacheEntry readHead( @NotNull DecodeBuffer in )
+            throws IOException
+    {
+        int expires = in.readInt();
+        long timestamp = in.readLong();
+        String mediaTypeString = in.readString();
+        if( mediaTypeString == null )
+        {
+            throw new IOException("Error parsing " + CacheEntry.class.getName() + ": mediaType is null");
+        }
+        MediaType mediaType = MediaTypes.valueOf(mediaTypeString);
+        if( mediaType == null )
+        {
+            throw new IOException("Error parsing " + CacheEntry.class.getName() + ": invalid mediaType " + mediaTypeString);
+        }
+        String etag = in.readString();
+
+        byte[] headerBlock = in.readBytes(in.readLength());
+
+        return new CacheEntry(headerBlock, NO_ENTITY, expires, etag, mediaType, timestamp);
+    }
+
+    /**
+     * @return the header block for the headers, as decoded by {@link CompactHeaders#decode(byte[])}
+     */
+    @NotNull
+    static byte[] encodeHeaders( @NotNull MultivaluedMap<String, Object> headers )
+    {
+        EncodeBuffer out = new EncodeBuffer(32 * ( headers.size() + 1 ));
+        writeHeaders(out, headers);
+        return out.toByteArray();
+    }
+
+    private static void writeHeaders( @NotNull EncodeBuffer out,
+                                      @NotNull MultivaluedMap<String, Object> headers )
+    {
+        out.writeInt(headers.size());
+        for( Map.Entry<String, List<Object>> header : headers.entrySet() )
+        {
+            out.writeString(header.getKey());
+            List<Object> values = header.getValue();
+            if( values == null )
+            {
+                out.writeInt(0);
+                continue;
+            }
+            out.writeInt(values.size());
+            for( Object value : values )
+            {
+                writeValue(out, value);
+            }
+        }
+    }
+
+    private static void writeValue( @NotNull EncodeBuffer out,
+                                    @Nullable Object value )
+    {
+        if( value == null )
+        {
+            out.writeByte(TAG_NULL);
+        }
+        else if( value instanceof String )
+        {
+            out.writeByte(TAG_STRING);
+            out.writeString((String) value);
+        }
+        else if( value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte )
+        {
+            out.writeByte(TAG_LONG);
+            out.writeLong(( (Number) value ).longValue());
+        }
+        else if( value instanceof Double || value instanceof Float )
+        {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(( (Number) value ).doubleValue());
+        }
+        else if( value instanceof Boolean )
+        {
+            out.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        }
+        else if( value instanceof Collection )
+        {
+            Collection<?> collection = (Collection<?>) value;
+            out.writeByte(TAG_LIST);
+            out.writeInt(collection.size());
+            for( Object element : collection )
+            {
+                writeValue(out, element);
+            }
+        }
+        else if( value instanceof Map )
+        {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(TAG_MAP);
+            out.writeInt(map.size());
+            for( Map.Entry<?, ?> entry : map.entrySet() )
+            {
+                out.writeString(String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        }
+        else
+        {
+            out.writeByte(TAG_STRING);
+            out.writeString(headerString(value));
+        }
+    }
+
+    @NotNull
+    @SuppressWarnings("unchecked")
+    private static String headerString( @NotNull Object value )
+    {
+        try
+        {
+            RuntimeDelegate.HeaderDelegate<Object> delegate = (RuntimeDelegate.HeaderDelegate<Object>)
+                    RuntimeDelegate.getInstance().createHeaderDelegate(value.getClass());
+            if( delegate != null )
+            {
+                return delegate.toString(value);
+            }
+        }
+        catch( RuntimeException e )
+        {
+            // no delegate available for this type
+        }
+        return value.toString();
+    }
+}
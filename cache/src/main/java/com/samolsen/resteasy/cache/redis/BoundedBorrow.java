@@ -0,0 +1,147 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisSentinelPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.Pool;
+
+import java.lang.reflect.Field;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Borrows a connection from a {@link JedisPool} or {@link JedisSentinelPool}, waiting at most a
+ * given time, where {@link Pool#getResource()} waits the pool's `maxWaitMillis`. Jedis keeps the
+ * underlying {@link GenericObjectPool} protected, so it is read reflectively. A Sentinel pool's
+ * connection is checked against the current master, as its own getResource() does.
+ *
+ * Other pools, including subclasses of these which may override getResource(), borrow through
+ * {@link Pool#getResource()} with the pool's own wait. So do all pools if the field cannot be read,
+ * which is logged once.
+ *
+ * @see RedisCacheConfig#setLatencyBudgetMillis(CacheOperation, int)
+ */
+final class BoundedBorrow {
+
+    private static final Logger LOG = Logger.getLogger(BoundedBorrow.class.getName());
+
+    @Nullable
+    private static final Field INTERNAL_POOL = internalPoolField();
+
+    private BoundedBorrow()
+    {
+    }
+
+    /**
+     * @param pool          pool to borrow from
+     * @param maxWaitMillis longest wait for a connection, when the pool's own is not shorter
+     * @throws JedisConnectionException when no connection was free in time, or one could not be made
+     */
+    @NotNull
+    static Jedis borrow( @NotNull Pool<Jedis> pool,
+                         long maxWaitMillis )
+    {
+        GenericObjectPool<Jedis> internalPool = internalPool(pool);
+        if( internalPool == null )
+        {
+            return pool.getResource();
+        }
+
+        long poolMaxWaitMillis = internalPool.getMaxWaitMillis();
+        long waitMillis = poolMaxWaitMillis < 0 ? maxWaitMillis : Math.min(poolMaxWaitMillis, maxWaitMillis);
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while( true )
+        {
+            Jedis jedis;
+            try
+            {
+                jedis = internalPool.borrowObject(Math.max(0, deadline - System.currentTimeMillis()));
+            }
+            catch( NoSuchElementException e )
+            {
+                throw new JedisConnectionException("Could not get a resource from the pool within " + waitMillis + "ms", e);
+            }
+            catch( Exception e )
+            {
+                throw new JedisConnectionException("Could not get a resource from the pool", e);
+            }
+            // returned to the pool on close, as by getResource()
+            jedis.setDataSource(pool);
+            if( !( pool instanceof JedisSentinelPool ) || isMaster((JedisSentinelPool) pool, jedis) )
+            {
+                return jedis;
+            }
+            // connected to a former master
+            pool.returnBrokenResource(jedis);
+        }
+    }
+
+    private static boolean isMaster( @NotNull JedisSentinelPool pool,
+                                     @NotNull Jedis jedis )
+    {
+        HostAndPort master = pool.getCurrentHostMaster();
+        return master.equals(new HostAndPort(jedis.getClient().getHost(), jedis.getClient().getPort()));
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static GenericObjectPool<Jedis> internalPool( @NotNull Pool<Jedis> pool )
+    {
+        // subclasses may override getResource()
+        if( INTERNAL_POOL == null || pool.getClass() != JedisPool.class && pool.getClass() != JedisSentinelPool.class )
+        {
+            return null;
+        }
+        try
+        {
+            return (GenericObjectPool<Jedis>) INTERNAL_POOL.get(pool);
+        }
+        catch( IllegalAccessException e )
+        {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Field internalPoolField()
+    {
+        try
+        {
+            Field field = Pool.class.getDeclaredField("internalPool");
+            field.setAccessible(true);
+            return field;
+        }
+        catch( NoSuchFieldException e )
+        {
+            LOG.log(Level.WARNING, "Pool.internalPool not found. Borrows wait the pool's own maxWaitMillis.", e);
+            return null;
+        }
+        catch( SecurityException e )
+        {
+            LOG.log(Level.WARNING, "Pool.internalPool not accessible. Borrows wait the pool's own maxWaitMillis.", e);
+            return null;
+        }
+    }
+}
@@ -31,14 +31,28 @@ import java.io.IOException;
  * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
  * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
  */
-class CacheEntry implements ServerCache.Entry {
+/**
+ * A cached response, as stored in Redis by {@link RedisCache}.
+ *
+ * @see CacheEntryCodec
+ */
+public class CacheEntry implements ServerCache.Entry {
 
     @NotNull
     byte[] _cached;
     int _expires;
     long _timestamp;
-    @NotNull
-    MultivaluedMap<String, Object> _headers;
+    /**
+     * Decoded headers, null until first read when the entry was decoded with its headers encoded.
+     */
+    @Nullable
+    private volatile MultivaluedMap<String, Object> _headers;
+    /**
+     * Header block encoded by {@link BinaryCacheEntryCodec}, until decoded into {@link #_headers}.
+     * Guarded by this.
+     */
+    @Nullable
+    private byte[] _headerBlock;
     @Nullable
     String _etag;
     @NotNull
@@ -58,12 +72,20 @@ class CacheEntry implements ServerCache.Entry {
         _timestamp = System.currentTimeMillis();
     }
 
-    private CacheEntry( @NotNull MultivaluedMap<String, Object> headers,
-                        @NotNull byte[] cached,
-                        int expires,
-                        @Nullable String etag,
-                        @NotNull MediaType mediaType,
-                        long timestamp )
+    /**
+     * @param headers   response headers
+     * @param cached    response entity
+     * @param expires   max-age of the entry, in seconds
+     * @param etag      entity tag of the response
+     * @param mediaType media type of the response
+     * @param timestamp time the entry was created, in epoch milliseconds
+     */
+    public CacheEntry( @NotNull MultivaluedMap<String, Object> headers,
+                       @NotNull byte[] cached,
+                       int expires,
+                       @Nullable String etag,
+                       @NotNull MediaType mediaType,
+                       long timestamp )
     {
         _headers = headers;
         _cached = cached;
@@ -73,6 +95,51 @@ class CacheEntry implements ServerCache.Entry {
         _mediaType = mediaType;
     }
 
+    /**
+     * @param headerBlock response headers, encoded by {@link BinaryCacheEntryCodec#encodeHeaders}.
+     *                    Decoded on the first {@link #getHeaders()}.
+     */
+    CacheEntry( @NotNull byte[] headerBlock,
+                @NotNull byte[] cached,
+                int expires,
+                @Nullable String etag,
+                @NotNull MediaType mediaType,
+                long timestamp )
+    {
+        _headerBlock = headerBlock;
+        _cached = cached;
+        _expires = expires;
+        _timestamp = timestamp;
+        _etag = etag;
+        _mediaType = mediaType;
+    }
+
+    /**
+     * @return a copy of this entry, created now with the given max-age. Headers which are still
+     * encoded are shared without decoding them.
+     */
+    @NotNull
+    CacheEntry withExpires( int expires )
+    {
+        synchronized( this )
+        {
+            if( _headers == null )
+            {
+                return new CacheEntry(_headerBlock, _cached, expires, _etag, _mediaType, System.currentTimeMillis());
+            }
+        }
+        return new CacheEntry(_headers, _cached, expires, _etag, _mediaType);
+    }
+
+    /**
+     * @return the header block the entry was decoded from, or null once the headers have been read
+     * (and so may have been modified)
+     */
+    @Nullable
+    synchronized byte[] encodedHeaders()
+    {
+        return _headers == null ? _headerBlock : null;
+    }
 
     @Override
     public int getExpirationInSeconds()
@@ -97,7 +164,28 @@ class CacheEntry implements ServerCache.Entry {
     @Override
     public MultivaluedMap<String, Object> getHeaders()
     {
-        return _headers;
+        MultivaluedMap<String, Object> headers = _headers;
+        if( headers != null )
+        {
+            return headers;
+        }
+        synchronized( this )
+        {
+            if( _headers == null )
+            {
+                try
+                {
+                    _headers = CompactHeaders.decode(_headerBlock);
+                }
+                catch( IOException e )
+                {
+                    // the block length was checked when the entry was decoded, so this is corruption
+                    throw new IllegalStateException("Error parsing headers of " + CacheEntry.class.getName(), e);
+                }
+                _headerBlock = null;
+            }
+            return _headers;
+        }
     }
 
     @NotNull
@@ -124,7 +212,7 @@ class CacheEntry implements ServerCache.Entry {
             jsonGenerator.writeBinaryField("cached", cacheEntry._cached);
             jsonGenerator.writeNumberField("expires", cacheEntry._expires);
             jsonGenerator.writeNumberField("timestamp", cacheEntry._timestamp);
-            jsonGenerator.writeObjectField("headers", cacheEntry._headers);
+            jsonGenerator.writeObjectField("headers", cacheEntry.getHeaders());
             jsonGenerator.writeStringField("etag", cacheEntry._etag);
             jsonGenerator.writeObjectField("mediaType", cacheEntry._mediaType);
             jsonGenerator.writeEndObject();
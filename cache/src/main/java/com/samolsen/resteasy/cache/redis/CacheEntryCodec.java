@@ -0,0 +1,46 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Converts {@link CacheEntry} instances to and from the bytes stored in Redis.
+ *
+ * @see BinaryCacheEntryCodec
+ * @see JsonCacheEntryCodec
+ */
+public interface CacheEntryCodec {
+
+    /**
+     * @param cacheEntry entry to encode
+     * @return the stored representation of the entry
+     */
+    @NotNull
+    byte[] encode( @NotNull CacheEntry cacheEntry );
+
+    /**
+     * @param bytes stored representation, as produced by {@link #encode(CacheEntry)}
+     * @return the decoded entry
+     * @throws IOException when the bytes are not a valid representation
+     */
+    @NotNull
+    CacheEntry decode( @NotNull byte[] bytes )
+            throws IOException;
+}
@@ -0,0 +1,80 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * The metadata of a cached response, without its entity: enough to answer a conditional GET or a
+ * HEAD request.
+ *
+ * @see RedisCache#getHead(String, java.util.List)
+ */
+public class CacheEntryHead {
+
+    @NotNull
+    private final CacheEntry _cacheEntry;
+
+    /**
+     * @param cacheEntry entry whose entity is empty or ignored
+     */
+    CacheEntryHead( @NotNull CacheEntry cacheEntry )
+    {
+        _cacheEntry = cacheEntry;
+    }
+
+    /**
+     * @see CacheEntry#getExpirationInSeconds()
+     */
+    public int getExpirationInSeconds()
+    {
+        return _cacheEntry.getExpirationInSeconds();
+    }
+
+    public boolean isExpired()
+    {
+        return _cacheEntry.isExpired();
+    }
+
+    @Nullable
+    public String getEtag()
+    {
+        return _cacheEntry.getEtag();
+    }
+
+    @NotNull
+    public MultivaluedMap<String, Object> getHeaders()
+    {
+        return _cacheEntry.getHeaders();
+    }
+
+    @NotNull
+    public MediaType getMediaType()
+    {
+        return _cacheEntry.getMediaType();
+    }
+
+    @NotNull
+    CacheEntry cacheEntry()
+    {
+        return _cacheEntry;
+    }
+}
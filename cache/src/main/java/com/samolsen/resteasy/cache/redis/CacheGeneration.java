@@ -0,0 +1,187 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Pool;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Generation counter folded into cache keys, so {@link RedisCache#clear()} is a single INCR. Keys
+ * of earlier generations are no longer read, and expire through their TTLs (or are removed by a
+ * {@link GenerationReaper}).
+ *
+ * Each node caches the counter, and re-reads it every {@link #REFRESH_MILLIS}. A clear made on
+ * another node is seen within that interval.
+ *
+ * @see RedisCacheConfig#setGenerationalClear(boolean)
+ */
+class CacheGeneration {
+
+    /**
+     * Precedes the generation number in cache keys, e.g. {@code namespace:g3:uri}.
+     */
+    static final String KEY_PREFIX = "g";
+
+    static final long REFRESH_MILLIS = 1000;
+
+    @NotNull
+    private final Pool<Jedis> _jedisPool;
+    @NotNull
+    private final String _counterKey;
+
+    private volatile long _current;
+    private volatile boolean _closed;
+    @Nullable
+    private Thread _thread;
+
+    CacheGeneration( @NotNull Pool<Jedis> jedisPool,
+                     @NotNull String counterKey )
+    {
+        _jedisPool = jedisPool;
+        _counterKey = counterKey;
+    }
+
+    void start()
+    {
+        refresh();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                while( !_closed )
+                {
+                    try
+                    {
+                        Thread.sleep(REFRESH_MILLIS);
+                    }
+                    catch( InterruptedException e )
+                    {
+                        return;
+                    }
+                    refresh();
+                }
+            }
+        }, "redis-cache-generation");
+        thread.setDaemon(true);
+        thread.start();
+        _thread = thread;
+    }
+
+    void close()
+    {
+        _closed = true;
+        Thread thread = _thread;
+        if( thread != null )
+        {
+            thread.interrupt();
+        }
+    }
+
+    long current()
+    {
+        return _current;
+    }
+
+    /**
+     * @return prefix of cache keys in the current generation
+     */
+    @NotNull
+    String keyPrefix()
+    {
+        return KEY_PREFIX + _current + RedisCache.KEY_DELIMITER;
+    }
+
+    /**
+     * Starts a new generation, orphaning all cached entries.
+     */
+    void increment()
+    {
+        Jedis jedis = null;
+        try
+        {
+            jedis = _jedisPool.getResource();
+            _current = jedis.incr(_counterKey);
+        }
+        finally
+        {
+            if( jedis != null )
+            {
+                jedis.close();
+            }
+        }
+    }
+
+    private void refresh()
+    {
+        Jedis jedis = null;
+        try
+        {
+            jedis = _jedisPool.getResource();
+            String value = jedis.get(_counterKey);
+            _current = value == null ? 0 : Long.parseLong(value);
+        }
+        catch( JedisException e )
+        {
+            // Redis unavailable. Retried on the next refresh.
+        }
+        catch( NumberFormatException e )
+        {
+            // not a counter. Left as it is.
+        }
+        finally
+        {
+            if( jedis != null )
+            {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * @param key          a key in Redis
+     * @param keyNamespace namespace and delimiter preceding the generation
+     * @return the generation of a cache key, or -1 when the key does not belong to a generation
+     */
+    static long generationOf( @NotNull String key,
+                              @NotNull String keyNamespace )
+    {
+        int start = keyNamespace.length() + KEY_PREFIX.length();
+        if( !key.startsWith(keyNamespace) || !key.startsWith(KEY_PREFIX, keyNamespace.length()) )
+        {
+            return -1;
+        }
+        int end = key.indexOf(RedisCache.KEY_DELIMITER, start);
+        if( end <= start )
+        {
+            return -1;
+        }
+        long generation = 0;
+        for( int i = start; i < end; i++ )
+        {
+            char c = key.charAt(i);
+            if( c < '0' || c > '9' || generation > Long.MAX_VALUE / 10 )
+            {
+                return -1;
+            }
+            generation = generation * 10 + ( c - '0' );
+        }
+        return generation;
+    }
+}
@@ -0,0 +1,269 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Default {@link CacheMetricsListener}, keeping counters and {@link Histogram}s in memory. Recording
+ * is lock-free, so it may be left on in production. Read the getters to export the values.
+ *
+ * <pre>
+ * CacheMetrics metrics = new CacheMetrics();
+ * config.setMetricsListener(metrics);
+ * ...
+ * metrics.getRoundTripNanos(CacheOperation.GET).getPercentile(99);
+ * </pre>
+ */
+public class CacheMetrics implements CacheMetricsListener {
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _decodeErrors = new AtomicLong();
+    private final AtomicLong _declined = new AtomicLong();
+    private final AtomicReference<IOException> _lastDecodeError = new AtomicReference<IOException>();
+
+    private final Histogram _hitEntityBytes = new Histogram();
+    private final Histogram _addedEntityBytes = new Histogram();
+    private final Map<CacheOperation, Histogram> _roundTripNanos = new EnumMap<CacheOperation, Histogram>(CacheOperation.class);
+    private final Histogram _borrowNanos = new Histogram();
+    private final Histogram _encodeNanos = new Histogram();
+    private final Histogram _decodeNanos = new Histogram();
+    private final Map<CacheOperation, AtomicLong> _failedOpen = new EnumMap<CacheOperation, AtomicLong>(CacheOperation.class);
+    private final AtomicReference<CircuitState> _circuitState = new AtomicReference<CircuitState>(CircuitState.CLOSED);
+    private final AtomicLong _circuitOpened = new AtomicLong();
+
+    public CacheMetrics()
+    {
+        for( CacheOperation operation : CacheOperation.values() )
+        {
+            _roundTripNanos.put(operation, new Histogram());
+            _failedOpen.put(operation, new AtomicLong());
+        }
+    }
+
+    @Override
+    public void hit( int entityBytes )
+    {
+        _hits.incrementAndGet();
+        _hitEntityBytes.record(entityBytes);
+    }
+
+    @Override
+    public void miss()
+    {
+        _misses.incrementAndGet();
+    }
+
+    @Override
+    public void decodeFailed( @NotNull IOException e )
+    {
+        _decodeErrors.incrementAndGet();
+        _lastDecodeError.set(e);
+    }
+
+    @Override
+    public void added( int entityBytes )
+    {
+        _addedEntityBytes.record(entityBytes);
+    }
+
+    @Override
+    public void declined( int entityBytes )
+    {
+        _declined.incrementAndGet();
+    }
+
+    @Override
+    public void roundTrip( @NotNull CacheOperation operation,
+                           long nanos )
+    {
+        _roundTripNanos.get(operation).record(nanos);
+    }
+
+    @Override
+    public void borrowed( long nanos )
+    {
+        _borrowNanos.record(nanos);
+    }
+
+    @Override
+    public void encoded( long nanos )
+    {
+        _encodeNanos.record(nanos);
+    }
+
+    @Override
+    public void decoded( long nanos )
+    {
+        _decodeNanos.record(nanos);
+    }
+
+    @Override
+    public void failedOpen( @NotNull CacheOperation operation )
+    {
+        _failedOpen.get(operation).incrementAndGet();
+    }
+
+    @Override
+    public void circuitStateChanged( @NotNull CircuitState state )
+    {
+        _circuitState.set(state);
+        if( state == CircuitState.OPEN )
+        {
+            _circuitOpened.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of gets served from the cache
+     */
+    public long getHits()
+    {
+        return _hits.get();
+    }
+
+    /**
+     * @return number of gets not served from the cache, including those which failed to decode
+     */
+    public long getMisses()
+    {
+        return _misses.get();
+    }
+
+    /**
+     * @return hits / gets, or 0 when there were no gets
+     */
+    public double getHitRatio()
+    {
+        long hits = _hits.get();
+        long gets = hits + _misses.get();
+        return gets == 0 ? 0 : (double) hits / gets;
+    }
+
+    /**
+     * @return number of stored entries which could not be decoded
+     */
+    public long getDecodeErrors()
+    {
+        return _decodeErrors.get();
+    }
+
+    /**
+     * @return number of added entities which were not stored
+     */
+    public long getDeclined()
+    {
+        return _declined.get();
+    }
+
+    /**
+     * @return the most recent decode failure, or null when there has been none
+     */
+    @Nullable
+    public IOException getLastDecodeError()
+    {
+        return _lastDecodeError.get();
+    }
+
+    /**
+     * @return sizes of entities served, in bytes
+     */
+    @NotNull
+    public Histogram getHitEntityBytes()
+    {
+        return _hitEntityBytes;
+    }
+
+    /**
+     * @return sizes of entities added, in bytes
+     */
+    @NotNull
+    public Histogram getAddedEntityBytes()
+    {
+        return _addedEntityBytes;
+    }
+
+    /**
+     * @return Redis round-trip times of an operation, in nanoseconds
+     */
+    @NotNull
+    public Histogram getRoundTripNanos( @NotNull CacheOperation operation )
+    {
+        return _roundTripNanos.get(operation);
+    }
+
+    /**
+     * @return times taken to borrow a connection from the pool, in nanoseconds
+     */
+    @NotNull
+    public Histogram getBorrowNanos()
+    {
+        return _borrowNanos;
+    }
+
+    /**
+     * @return times taken to encode entries, in nanoseconds
+     */
+    @NotNull
+    public Histogram getEncodeNanos()
+    {
+        return _encodeNanos;
+    }
+
+    /**
+     * @return times taken to decode entries, in nanoseconds
+     */
+    @NotNull
+    public Histogram getDecodeNanos()
+    {
+        return _decodeNanos;
+    }
+
+    /**
+     * @return number of operations which went without Redis, as it failed or the circuit breaker was
+     * open
+     */
+    public long getFailedOpen( @NotNull CacheOperation operation )
+    {
+        return _failedOpen.get(operation).get();
+    }
+
+    /**
+     * @return the circuit breaker's current state
+     */
+    @NotNull
+    public CircuitState getCircuitState()
+    {
+        return _circuitState.get();
+    }
+
+    /**
+     * @return number of times the circuit breaker opened, including reopening after a failed probe
+     */
+    public long getCircuitOpenedCount()
+    {
+        return _circuitOpened.get();
+    }
+}
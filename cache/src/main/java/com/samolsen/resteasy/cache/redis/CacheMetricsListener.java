@@ -0,0 +1,156 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Receives measurements from {@link RedisCache}. Methods are called on request threads, so should
+ * be quick and must not block.
+ *
+ * Writes made by the write-behind queue are not reported.
+ *
+ * @see CacheMetrics
+ * @see RedisCacheConfig#setMetricsListener(CacheMetricsListener)
+ */
+public interface CacheMetricsListener {
+
+    /**
+     * Discards all measurements.
+     */
+    CacheMetricsListener NONE = new CacheMetricsListener() {
+        @Override
+        public void hit( int entityBytes )
+        {
+        }
+
+        @Override
+        public void miss()
+        {
+        }
+
+        @Override
+        public void decodeFailed( @NotNull IOException e )
+        {
+        }
+
+        @Override
+        public void added( int entityBytes )
+        {
+        }
+
+        @Override
+        public void declined( int entityBytes )
+        {
+        }
+
+        @Override
+        public void roundTrip( @NotNull CacheOperation operation,
+                               long nanos )
+        {
+        }
+
+        @Override
+        public void borrowed( long nanos )
+        {
+        }
+
+        @Override
+        public void encoded( long nanos )
+        {
+        }
+
+        @Override
+        public void decoded( long nanos )
+        {
+        }
+
+        @Override
+        public void failedOpen( @NotNull CacheOperation operation )
+        {
+        }
+
+        @Override
+        public void circuitStateChanged( @NotNull CircuitState state )
+        {
+        }
+    };
+
+    /**
+     * @param entityBytes size of the entity served
+     */
+    void hit( int entityBytes );
+
+    void miss();
+
+    /**
+     * A stored entry could not be decoded, and was treated as a miss.
+     */
+    void decodeFailed( @NotNull IOException e );
+
+    /**
+     * @param entityBytes size of the entity added
+     */
+    void added( int entityBytes );
+
+    /**
+     * An entity passed to add was not stored, being too large or its URI not yet frequent enough.
+     *
+     * @param entityBytes size of the entity declined
+     * @see RedisCacheConfig#setMaxEntityBytes(int)
+     * @see RedisCacheConfig#setAdmissionMinFrequency(int)
+     */
+    void declined( int entityBytes );
+
+    /**
+     * @param operation operation the commands were sent for
+     * @param nanos     time from sending the commands to reading their replies
+     */
+    void roundTrip( @NotNull CacheOperation operation,
+                    long nanos );
+
+    /**
+     * @param nanos time taken to borrow a connection from the pool
+     */
+    void borrowed( long nanos );
+
+    /**
+     * @param nanos time taken to encode an entry with the {@link CacheEntryCodec}
+     */
+    void encoded( long nanos );
+
+    /**
+     * @param nanos time taken to decode an entry with the {@link CacheEntryCodec}, including failures
+     */
+    void decoded( long nanos );
+
+    /**
+     * An operation went without Redis, as Redis failed or the circuit breaker was open: a get
+     * missed, or a write was skipped.
+     *
+     * @param operation operation which went without Redis
+     * @see RedisCacheConfig#setCircuitBreakerFailureThreshold(int)
+     */
+    void failedOpen( @NotNull CacheOperation operation );
+
+    /**
+     * @param state state the circuit breaker moved to
+     */
+    void circuitStateChanged( @NotNull CircuitState state );
+}
@@ -0,0 +1,375 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Stores large encoded entries as fixed-size chunks under their own keys, so no single command
+ * moves a multi-megabyte value and blocks Redis for other clients. The variant itself holds a small
+ * manifest naming the chunks, in whichever {@link StorageLayout} the wrapped store uses.
+ *
+ * Chunks are written in the same pipeline as the manifest, ahead of it, with the same TTL. Each
+ * write uses new chunk keys, so a reader never combines chunks of different writes; chunks of a
+ * replaced or removed entry are left to expire. A manifest whose chunks are missing reads as a miss.
+ *
+ * Chunk keys are prefixed with the URI key, so they share its Redis Cluster hash slot.
+ *
+ * @see RedisCacheConfig#setChunkThresholdBytes(int)
+ */
+class ChunkedVariantStore implements VariantStore {
+
+    /**
+     * Start of a manifest, distinguishing it from an encoded entry.
+     */
+    static final byte[] MANIFEST_MAGIC = {(byte) 0xC5, 'C', 'H', 'K'};
+    static final byte MANIFEST_VERSION = 1;
+
+    static final String CHUNK_KEY_INFIX = "chunk";
+
+    /**
+     * Reads the chunks KEYS[1..n] of an entry in order, until they hold the entry's head.
+     *
+     * @return the head, the whole entry when it has no head, or nil when a chunk has expired
+     */
+    static final RedisScript READ_HEAD_SCRIPT = new RedisScript(
+            BinaryCacheEntryCodec.LUA_HEAD +
+            "local entry = ''\n" +
+            "local binary = true\n" +
+            "for _, key in ipairs(KEYS) do\n" +
+            "  local chunk = redis.call('GET', key)\n" +
+            "  if not chunk then return false end\n" +
+            "  entry = entry .. chunk\n" +
+            "  if binary then\n" +
+            "    local length = head_length(entry)\n" +
+            "    if length then return string.sub(entry, 1, length) end\n" +
+            "    binary = length ~= false\n" +
+            "  end\n" +
+            "end\n" +
+            "return entry\n");
+
+    private static final Random WRITE_IDS = new Random();
+
+    @NotNull
+    private final VariantStore _store;
+    private final int _thresholdBytes;
+    private final int _chunkSizeBytes;
+
+    /**
+     * @param store          layout storing the variants, or their manifests
+     * @param thresholdBytes encoded entries larger than this are chunked
+     * @param chunkSizeBytes size of each chunk, but the last
+     */
+    ChunkedVariantStore( @NotNull VariantStore store,
+                         int thresholdBytes,
+                         int chunkSizeBytes )
+    {
+        if( chunkSizeBytes <= 0 )
+        {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSizeBytes);
+        }
+        _store = store;
+        _thresholdBytes = thresholdBytes;
+        _chunkSizeBytes = chunkSizeBytes;
+    }
+
+    /**
+     * Reads the variants, then the chunks of any chunked variants in one pipeline.
+     */
+    @NotNull
+    @Override
+    public List<EncodedVariant> read( @NotNull Jedis jedis,
+                                      @NotNull String uriCacheKey,
+                                      @NotNull MediaType accept )
+    {
+        List<EncodedVariant> variants = _store.read(jedis, uriCacheKey, accept);
+
+        Manifest[] manifests = new Manifest[variants.size()];
+        boolean chunked = false;
+        for( int i = 0; i < manifests.length; i++ )
+        {
+            manifests[i] = Manifest.parse(variants.get(i)._encoded);
+            chunked |= manifests[i] != null;
+        }
+        if( !chunked )
+        {
+            return variants;
+        }
+
+        Pipeline pipeline = jedis.pipelined();
+        List<List<Response<byte[]>>> chunks = new ArrayList<List<Response<byte[]>>>(manifests.length);
+        for( Manifest manifest : manifests )
+        {
+            chunks.add(manifest != null ? manifest.read(pipeline) : null);
+        }
+        pipeline.sync();
+
+        List<EncodedVariant> assembled = new ArrayList<EncodedVariant>(variants.size());
+        for( int i = 0; i < variants.size(); i++ )
+        {
+            EncodedVariant variant = variants.get(i);
+            Manifest manifest = manifests[i];
+            if( manifest == null )
+            {
+                assembled.add(variant);
+                continue;
+            }
+            byte[] encoded = manifest.assemble(chunks.get(i));
+            if( encoded != null )
+            {
+                assembled.add(new EncodedVariant(variant._mediaType, encoded));
+            }
+        }
+        return assembled;
+    }
+
+    /**
+     * Reads the heads of the variants, then the heads of any chunked variants from their leading
+     * chunks.
+     */
+    @NotNull
+    @Override
+    public List<EncodedVariant> readHeads( @NotNull Jedis jedis,
+                                           @NotNull String uriCacheKey,
+                                           @NotNull MediaType accept )
+    {
+        List<EncodedVariant> variants = _store.readHeads(jedis, uriCacheKey, accept);
+
+        List<EncodedVariant> heads = new ArrayList<EncodedVariant>(variants.size());
+        for( EncodedVariant variant : variants )
+        {
+            Manifest manifest = Manifest.parse(variant._encoded);
+            if( manifest == null )
+            {
+                heads.add(variant);
+                continue;
+            }
+            byte[][] chunkKeys = new byte[manifest._chunkCount][];
+            for( int i = 0; i < chunkKeys.length; i++ )
+            {
+                chunkKeys[i] = manifest.chunkKey(i);
+            }
+            Object head = READ_HEAD_SCRIPT.eval(jedis, chunkKeys.length, chunkKeys);
+            if( head instanceof byte[] )
+            {
+                heads.add(new EncodedVariant(variant._mediaType, (byte[]) head));
+            }
+        }
+        return heads;
+    }
+
+    /**
+     * Reads the variant, then its chunks in one pipeline when it is chunked.
+     */
+    @Nullable
+    @Override
+    public EncodedVariant readVariant( @NotNull Jedis jedis,
+                                       @NotNull String uriCacheKey,
+                                       @NotNull MediaType mediaType )
+    {
+        EncodedVariant variant = _store.readVariant(jedis, uriCacheKey, mediaType);
+        Manifest manifest = variant != null ? Manifest.parse(variant._encoded) : null;
+        if( manifest == null )
+        {
+            return variant;
+        }
+
+        Pipeline pipeline = jedis.pipelined();
+        List<Response<byte[]>> chunks = manifest.read(pipeline);
+        pipeline.sync();
+        byte[] encoded = manifest.assemble(chunks);
+        return encoded == null ? null : new EncodedVariant(mediaType, encoded);
+    }
+
+    @Override
+    public void write( @NotNull ScriptPipeline pipeline,
+                       @NotNull String uriCacheKey,
+                       @NotNull MediaType mediaType,
+                       int ttlSeconds,
+                       @NotNull byte[] encoded )
+    {
+        if( encoded.length <= _thresholdBytes )
+        {
+            _store.write(pipeline, uriCacheKey, mediaType, ttlSeconds, encoded);
+            return;
+        }
+
+        int chunkCount = ( encoded.length + _chunkSizeBytes - 1 ) / _chunkSizeBytes;
+        Manifest manifest = new Manifest(chunkKeyPrefix(uriCacheKey, mediaType), encoded.length, chunkCount);
+        for( int i = 0; i < chunkCount; i++ )
+        {
+            int offset = i * _chunkSizeBytes;
+            byte[] chunk = Arrays.copyOfRange(encoded, offset, Math.min(offset + _chunkSizeBytes, encoded.length));
+            pipeline.setex(manifest.chunkKey(i), ttlSeconds, chunk);
+        }
+        _store.write(pipeline, uriCacheKey, mediaType, ttlSeconds, manifest.encode());
+    }
+
+    /**
+     * Removes the variants. Their chunks expire with their TTL.
+     */
+    @Override
+    public void remove( @NotNull ScriptPipeline pipeline,
+                        @NotNull String uriCacheKey )
+    {
+        _store.remove(pipeline, uriCacheKey);
+    }
+
+    @NotNull
+    static String chunkKeyPrefix( @NotNull String uriCacheKey,
+                                  @NotNull MediaType mediaType )
+    {
+        long writeId;
+        synchronized( WRITE_IDS )
+        {
+            writeId = WRITE_IDS.nextLong();
+        }
+        return uriCacheKey + RedisCache.KEY_DELIMITER + CHUNK_KEY_INFIX + RedisCache.KEY_DELIMITER
+                + mediaType + RedisCache.KEY_DELIMITER + Long.toHexString(writeId) + RedisCache.KEY_DELIMITER;
+    }
+
+    /**
+     * Stored in place of a chunked entry. Layout (integers big-endian):
+     * <pre>
+     * byte[4] magic ({@link #MANIFEST_MAGIC})
+     * byte    version ({@link #MANIFEST_VERSION})
+     * int     length of the entry
+     * int     chunk count
+     * string  chunk key prefix. Chunk i is stored under the prefix followed by i.
+     * </pre>
+     */
+    static class Manifest {
+
+        @NotNull
+        final String _chunkKeyPrefix;
+        final int _length;
+        final int _chunkCount;
+
+        Manifest( @NotNull String chunkKeyPrefix,
+                  int length,
+                  int chunkCount )
+        {
+            _chunkKeyPrefix = chunkKeyPrefix;
+            _length = length;
+            _chunkCount = chunkCount;
+        }
+
+        @NotNull
+        byte[] chunkKey( int chunk )
+        {
+            return RedisCache.encodeKey(_chunkKeyPrefix + chunk);
+        }
+
+        /**
+         * Queues reads of the chunks.
+         */
+        @NotNull
+        List<Response<byte[]>> read( @NotNull Pipeline pipeline )
+        {
+            List<Response<byte[]>> chunks = new ArrayList<Response<byte[]>>(_chunkCount);
+            for( int i = 0; i < _chunkCount; i++ )
+            {
+                chunks.add(pipeline.get(chunkKey(i)));
+            }
+            return chunks;
+        }
+
+        @NotNull
+        byte[] encode()
+        {
+            EncodeBuffer out = new EncodeBuffer(MANIFEST_MAGIC.length + 13 + _chunkKeyPrefix.length() * 3);
+            out.write(MANIFEST_MAGIC);
+            out.writeByte(MANIFEST_VERSION);
+            out.writeInt(_length);
+            out.writeInt(_chunkCount);
+            out.writeString(_chunkKeyPrefix);
+            return out.toByteArray();
+        }
+
+        /**
+         * @return the manifest, or null when the value is not a manifest (so is an encoded entry)
+         */
+        @Nullable
+        static Manifest parse( @NotNull byte[] value )
+        {
+            if( value.length < MANIFEST_MAGIC.length + 1 )
+            {
+                return null;
+            }
+            for( int i = 0; i < MANIFEST_MAGIC.length; i++ )
+            {
+                if( value[i] != MANIFEST_MAGIC[i] )
+                {
+                    return null;
+                }
+            }
+            try
+            {
+                DecodeBuffer in = new DecodeBuffer(value);
+                in.skip(MANIFEST_MAGIC.length);
+                if( in.readByte() != MANIFEST_VERSION )
+                {
+                    return null;
+                }
+                int length = in.readInt();
+                int chunkCount = in.readInt();
+                String chunkKeyPrefix = in.readString();
+                if( length < 0 || chunkCount < 0 || chunkKeyPrefix == null )
+                {
+                    return null;
+                }
+                return new Manifest(chunkKeyPrefix, length, chunkCount);
+            }
+            catch( IOException e )
+            {
+                return null;
+            }
+        }
+
+        /**
+         * @return the entry, or null when a chunk has expired or the chunks do not add up
+         */
+        @Nullable
+        byte[] assemble( @NotNull List<Response<byte[]>> chunks )
+        {
+            byte[] encoded = new byte[_length];
+            int offset = 0;
+            for( Response<byte[]> response : chunks )
+            {
+                byte[] chunk = response.get();
+                if( chunk == null || offset + chunk.length > _length )
+                {
+                    return null;
+                }
+                System.arraycopy(chunk, 0, encoded, offset, chunk.length);
+                offset += chunk.length;
+            }
+            return offset == _length ? encoded : null;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Stops calling Redis after consecutive failures, so request threads do not queue up behind a slow
+ * or failing server. After the open period, one call at a time is let through as a probe: its
+ * success closes the breaker, and its failure opens it for another period.
+ *
+ * A probe which does not report back within the open period, such as one stuck borrowing a
+ * connection, is replaced by the next caller.
+ *
+ * @see RedisCacheConfig#setCircuitBreakerFailureThreshold(int)
+ */
+class CircuitBreaker {
+
+    private final int _failureThreshold;
+    private final long _openNanos;
+    @NotNull
+    private final CacheMetricsListener _metrics;
+
+    private final AtomicReference<CircuitState> _state = new AtomicReference<CircuitState>(CircuitState.CLOSED);
+    private final AtomicInteger _failures = new AtomicInteger();
+    /**
+     * When the breaker last opened, or the last probe was let through.
+     */
+    private final AtomicLong _since = new AtomicLong();
+
+    /**
+     * @param failureThreshold consecutive failures opening the breaker
+     * @param openMillis       time the breaker stays open before a probe
+     * @param metrics          listener told of state changes
+     */
+    CircuitBreaker( int failureThreshold,
+                    long openMillis,
+                    @NotNull CacheMetricsListener metrics )
+    {
+        _failureThreshold = failureThreshold;
+        _openNanos = openMillis * 1000000L;
+        _metrics = metrics;
+    }
+
+    /**
+     * @return whether Redis may be called. Each call allowed reports {@link #succeeded()} or
+     * {@link #failed()}.
+     */
+    boolean allow()
+    {
+        CircuitState state = _state.get();
+        if( state == CircuitState.CLOSED )
+        {
+            return true;
+        }
+        long since = _since.get();
+        long now = System.nanoTime();
+        if( now - since < _openNanos || !_since.compareAndSet(since, now) )
+        {
+            return false;
+        }
+        transition(CircuitState.OPEN, CircuitState.HALF_OPEN);
+        return true;
+    }
+
+    void succeeded()
+    {
+        _failures.set(0);
+        if( _state.get() == CircuitState.HALF_OPEN )
+        {
+            transition(CircuitState.HALF_OPEN, CircuitState.CLOSED);
+        }
+    }
+
+    void failed()
+    {
+        CircuitState state = _state.get();
+        if( state == CircuitState.CLOSED )
+        {
+            if( _failures.incrementAndGet() >= _failureThreshold )
+            {
+                _since.set(System.nanoTime());
+                transition(CircuitState.CLOSED, CircuitState.OPEN);
+            }
+        }
+        else
+        {
+            _since.set(System.nanoTime());
+            transition(CircuitState.HALF_OPEN, CircuitState.OPEN);
+        }
+    }
+
+    @NotNull
+    CircuitState state()
+    {
+        return _state.get();
+    }
+
+    private void transition( @NotNull CircuitState from,
+                             @NotNull CircuitState to )
+    {
+        if( _state.compareAndSet(from, to) )
+        {
+            _failures.set(0);
+            _metrics.circuitStateChanged(to);
+        }
+    }
+}
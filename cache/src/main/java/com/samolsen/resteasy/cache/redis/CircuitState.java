@@ -0,0 +1,37 @@
+package com.samolsen.resteasy.cache.redis;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * States of the circuit breaker around Redis calls, reported to a {@link CacheMetricsListener}.
+ *
+ * @see RedisCacheConfig#setCircuitBreakerFailureThreshold(int)
+ */
+public enum CircuitState {
+    /**
+     * Redis is called as usual.
+     */
+    CLOSED,
+    /**
+     * Redis is not called: gets miss, and writes are skipped.
+     */
+    OPEN,
+    /**
+     * A single call is let through to probe Redis. Others are treated as when open.
+     */
+    HALF_OPEN
+}
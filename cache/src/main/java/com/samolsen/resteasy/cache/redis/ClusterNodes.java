@@ -0,0 +1,175 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisClusterException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.Pool;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Keys spread over the masters of a Redis Cluster, by hash slot.
+ *
+ * URI keys are wrapped in a hash tag, so the variant index and variant entries of a URI share a
+ * slot, and are pipelined or scripted on one node. Connections come from the pools of a
+ * {@link JedisCluster}; the slot map is read with CLUSTER SLOTS, and re-read when a node redirects
+ * a command.
+ */
+class ClusterNodes implements RedisNodes {
+
+    @NotNull
+    private final JedisCluster _cluster;
+
+    private volatile SlotMap _slotMap;
+
+    ClusterNodes( @NotNull JedisCluster cluster )
+    {
+        _cluster = cluster;
+        _slotMap = discover();
+    }
+
+    @NotNull
+    @Override
+    public Pool<Jedis> poolFor( @NotNull String key )
+    {
+        return _slotMap.poolFor(JedisClusterCRC16.getSlot(key));
+    }
+
+    @NotNull
+    @Override
+    public Collection<Pool<Jedis>> primaries()
+    {
+        return _slotMap._primaries;
+    }
+
+    @NotNull
+    @Override
+    public String uriKey( @NotNull String uri )
+    {
+        return hashTag(uri);
+    }
+
+    /**
+     * @return the URI wrapped in a hash tag. Only the text up to the first closing brace is hashed,
+     * which is the same for every key extending the result.
+     */
+    @NotNull
+    static String hashTag( @NotNull String uri )
+    {
+        return "{" + uri + "}";
+    }
+
+    @Override
+    public void redirected( @NotNull String key )
+    {
+        // JedisCluster follows the redirect, and learns of any new nodes
+        _cluster.exists(key);
+        _slotMap = discover();
+    }
+
+    @NotNull
+    private SlotMap discover()
+    {
+        Map<String, JedisPool> nodes = _cluster.getClusterNodes();
+        JedisException lastError = new JedisClusterException("No reachable cluster nodes");
+        for( JedisPool pool : nodes.values() )
+        {
+            Jedis jedis = null;
+            try
+            {
+                jedis = pool.getResource();
+                return new SlotMap(jedis.clusterSlots(), nodes);
+            }
+            catch( JedisException e )
+            {
+                lastError = e;
+            }
+            finally
+            {
+                if( jedis != null )
+                {
+                    jedis.close();
+                }
+            }
+        }
+        throw lastError;
+    }
+
+    private static class SlotMap {
+
+        @NotNull
+        final Pool<Jedis>[] _slots;
+        @NotNull
+        final List<Pool<Jedis>> _primaries;
+
+        /**
+         * @param clusterSlots reply to CLUSTER SLOTS: [start, end, [host, port, ...], replicas...]
+         * @param nodes        pools by host:port
+         */
+        @SuppressWarnings( "unchecked" )
+        SlotMap( @NotNull List<Object> clusterSlots,
+                 @NotNull Map<String, JedisPool> nodes )
+        {
+            _slots = new Pool[JedisCluster.HASHSLOTS];
+            Set<Pool<Jedis>> primaries = new LinkedHashSet<Pool<Jedis>>();
+            for( Object range : clusterSlots )
+            {
+                List<Object> info = (List<Object>) range;
+                int start = ( (Long) info.get(0) ).intValue();
+                int end = ( (Long) info.get(1) ).intValue();
+                List<Object> master = (List<Object>) info.get(2);
+                String nodeKey = SafeEncoder.encode((byte[]) master.get(0)) + ":" + master.get(1);
+                JedisPool pool = nodes.get(nodeKey);
+                if( pool == null )
+                {
+                    // not yet known to JedisCluster. Commands are redirected until it is.
+                    continue;
+                }
+                primaries.add(pool);
+                for( int slot = start; slot <= end; slot++ )
+                {
+                    _slots[slot] = pool;
+                }
+            }
+            if( primaries.isEmpty() )
+            {
+                throw new JedisClusterException("No slots are assigned to known nodes");
+            }
+            _primaries = new ArrayList<Pool<Jedis>>(primaries);
+        }
+
+        @NotNull
+        Pool<Jedis> poolFor( int slot )
+        {
+            Pool<Jedis> pool = _slots[slot];
+            // an unassigned slot is redirected by whichever node is asked
+            return pool != null ? pool : _primaries.get(0);
+        }
+    }
+}
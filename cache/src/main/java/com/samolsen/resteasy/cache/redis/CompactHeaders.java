@@ -0,0 +1,353 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.ws.rs.core.AbstractMultivaluedMap;
+import javax.ws.rs.core.HttpHeaders;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Response headers decoded from a {@link BinaryCacheEntryCodec} header block.
+ *
+ * Names and value lists are held in parallel arrays and found by linear scan, which for the dozen
+ * or so headers of a response is cheaper than hashing and allocates no table or map entries.
+ * Common header names are shared constants rather than a new string per entry. The map is
+ * mutable, like the {@link javax.ws.rs.core.MultivaluedHashMap} it replaces.
+ */
+final class CompactHeaders extends AbstractMultivaluedMap<String, Object> {
+
+    /**
+     * Names returned as these instances when decoded, matched byte for byte (so case sensitive).
+     */
+    static final String[] COMMON_NAMES = {
+            HttpHeaders.CACHE_CONTROL,
+            HttpHeaders.CONTENT_DISPOSITION,
+            HttpHeaders.CONTENT_ENCODING,
+            HttpHeaders.CONTENT_LANGUAGE,
+            HttpHeaders.CONTENT_LENGTH,
+            HttpHeaders.CONTENT_LOCATION,
+            HttpHeaders.CONTENT_TYPE,
+            HttpHeaders.DATE,
+            HttpHeaders.ETAG,
+            HttpHeaders.EXPIRES,
+            HttpHeaders.LAST_MODIFIED,
+            HttpHeaders.LINK,
+            HttpHeaders.LOCATION,
+            HttpHeaders.VARY,
+            HttpHeaders.ALLOW,
+            "Accept-Ranges",
+            "Access-Control-Allow-Origin",
+            "Age",
+            "X-Content-Type-Options",
+    };
+
+    private static final byte[][] COMMON_NAME_BYTES = new byte[COMMON_NAMES.length][];
+
+    static
+    {
+        for( int i = 0; i < COMMON_NAMES.length; i++ )
+        {
+            COMMON_NAME_BYTES[i] = COMMON_NAMES[i].getBytes(BinaryCacheEntryCodec.UTF_8);
+        }
+    }
+
+    CompactHeaders( int capacity )
+    {
+        super(new ArrayStore(capacity));
+    }
+
+    /**
+     * @param block header block, as written by {@link BinaryCacheEntryCodec#encodeHeaders}
+     */
+    @NotNull
+    static CompactHeaders decode( @NotNull byte[] block )
+            throws IOException
+    {
+        return new Reader(block).headers();
+    }
+
+    /**
+     * Header names and values in insertion order.
+     */
+    private static final class ArrayStore extends AbstractMap<String, List<Object>> {
+
+        @NotNull
+        String[] _names;
+        @NotNull
+        List<Object>[] _values;
+        int _size;
+
+        @SuppressWarnings("unchecked")
+        ArrayStore( int capacity )
+        {
+            _names = new String[capacity];
+            _values = (List<Object>[]) new List[capacity];
+        }
+
+        int indexOf( @Nullable Object name )
+        {
+            for( int i = 0; i < _size; i++ )
+            {
+                if( _names[i] == name )
+                {
+                    return i;
+                }
+            }
+            if( name != null )
+            {
+                for( int i = 0; i < _size; i++ )
+                {
+                    if( name.equals(_names[i]) )
+                    {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int size()
+        {
+            return _size;
+        }
+
+        @Override
+        public boolean containsKey( @Nullable Object name )
+        {
+            return indexOf(name) >= 0;
+        }
+
+        @Nullable
+        @Override
+        public List<Object> get( @Nullable Object name )
+        {
+            int index = indexOf(name);
+            return index >= 0 ? _values[index] : null;
+        }
+
+        @Nullable
+        @Override
+        public List<Object> put( @Nullable String name,
+                                 @Nullable List<Object> values )
+        {
+            int index = indexOf(name);
+            if( index >= 0 )
+            {
+                List<Object> previous = _values[index];
+                _values[index] = values;
+                return previous;
+            }
+            if( _size == _names.length )
+            {
+                int capacity = Math.max(4, _size * 2);
+                _names = Arrays.copyOf(_names, capacity);
+                _values = Arrays.copyOf(_values, capacity);
+            }
+            _names[_size] = name;
+            _values[_size] = values;
+            _size++;
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public List<Object> remove( @Nullable Object name )
+        {
+            int index = indexOf(name);
+            if( index < 0 )
+            {
+                return null;
+            }
+            List<Object> previous = _values[index];
+            removeAt(index);
+            return previous;
+        }
+
+        void removeAt( int index )
+        {
+            int moved = _size - index - 1;
+            System.arraycopy(_names, index + 1, _names, index, moved);
+            System.arraycopy(_values, index + 1, _values, index, moved);
+            _size--;
+            _names[_size] = null;
+            _values[_size] = null;
+        }
+
+        @Override
+        public void clear()
+        {
+            Arrays.fill(_names, 0, _size, null);
+            Arrays.fill(_values, 0, _size, null);
+            _size = 0;
+        }
+
+        @NotNull
+        @Override
+        public Set<Entry<String, List<Object>>> entrySet()
+        {
+            return new AbstractSet<Entry<String, List<Object>>>() {
+                @Override
+                public Iterator<Entry<String, List<Object>>> iterator()
+                {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size()
+                {
+                    return _size;
+                }
+            };
+        }
+
+        private final class EntryIterator implements Iterator<Entry<String, List<Object>>> {
+
+            int _next;
+            int _last = -1;
+
+            @Override
+            public boolean hasNext()
+            {
+                return _next < _size;
+            }
+
+            @Override
+            public Entry<String, List<Object>> next()
+            {
+                if( _next >= _size )
+                {
+                    throw new NoSuchElementException();
+                }
+                _last = _next++;
+                final int index = _last;
+                return new SimpleEntry<String, List<Object>>(_names[index], _values[index]) {
+                    @Override
+                    public List<Object> setValue( List<Object> values )
+                    {
+                        _values[index] = values;
+                        return super.setValue(values);
+                    }
+                };
+            }
+
+            @Override
+            public void remove()
+            {
+                if( _last < 0 )
+                {
+                    throw new IllegalStateException();
+                }
+                removeAt(_last);
+                _next = _last;
+                _last = -1;
+            }
+        }
+    }
+
+    /**
+     * Parses a header block, in the layout documented on {@link BinaryCacheEntryCodec}.
+     */
+    private static final class Reader {
+
+        @NotNull
+        private final DecodeBuffer _in;
+
+        Reader( @NotNull byte[] block )
+        {
+            _in = new DecodeBuffer(block);
+        }
+
+        @NotNull
+        CompactHeaders headers()
+                throws IOException
+        {
+            int count = _in.readLength();
+            CompactHeaders headers = new CompactHeaders(count);
+            for( int i = 0; i < count; i++ )
+            {
+                String name = _in.readString(COMMON_NAMES, COMMON_NAME_BYTES);
+                int valueCount = _in.readLength();
+                List<Object> values = new ArrayList<Object>(valueCount);
+                for( int j = 0; j < valueCount; j++ )
+                {
+                    values.add(readValue());
+                }
+                headers.put(name, values);
+            }
+            return headers;
+        }
+
+        @Nullable
+        private Object readValue()
+                throws IOException
+        {
+            byte tag = _in.readByte();
+            switch( tag )
+            {
+                case BinaryCacheEntryCodec.TAG_NULL:
+                    return null;
+                case BinaryCacheEntryCodec.TAG_STRING:
+                    return _in.readString();
+                case BinaryCacheEntryCodec.TAG_LONG:
+                    return Long.valueOf(_in.readLong());
+                case BinaryCacheEntryCodec.TAG_DOUBLE:
+                    return Double.valueOf(_in.readDouble());
+                case BinaryCacheEntryCodec.TAG_TRUE:
+                    return Boolean.TRUE;
+                case BinaryCacheEntryCodec.TAG_FALSE:
+                    return Boolean.FALSE;
+                case BinaryCacheEntryCodec.TAG_LIST:
+                {
+                    int size = _in.readLength();
+                    List<Object> list = new ArrayList<Object>(size);
+                    for( int i = 0; i < size; i++ )
+                    {
+                        list.add(readValue());
+                    }
+                    return list;
+                }
+                case BinaryCacheEntryCodec.TAG_MAP:
+                {
+                    int size = _in.readLength();
+                    Map<String, Object> map = new HashMap<String, Object>(size * 4 / 3 + 1);
+                    for( int i = 0; i < size; i++ )
+                    {
+                        String key = _in.readString();
+                        map.put(key, readValue());
+                    }
+                    return map;
+                }
+                default:
+                    throw new IOException("Error parsing header value: unknown tag " + tag);
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Cursor over bytes written by {@link EncodeBuffer}. Reads straight from the array, so strings are
+ * decoded without copying their bytes out first. Reads past the end throw {@link IOException}.
+ */
+final class DecodeBuffer {
+
+    @NotNull
+    private final byte[] _bytes;
+    private int _position;
+
+    DecodeBuffer( @NotNull byte[] bytes )
+    {
+        _bytes = bytes;
+    }
+
+    int position()
+    {
+        return _position;
+    }
+
+    /**
+     * Advances past count bytes, e.g. read in place from the array this was created with.
+     */
+    void skip( int count )
+            throws IOException
+    {
+        require(count);
+        _position += count;
+    }
+
+    int remaining()
+    {
+        return _bytes.length - _position;
+    }
+
+    byte readByte()
+            throws IOException
+    {
+        require(1);
+        return _bytes[_position++];
+    }
+
+    int readInt()
+            throws IOException
+    {
+        require(4);
+        int value = peekInt();
+        _position += 4;
+        return value;
+    }
+
+    long readLong()
+            throws IOException
+    {
+        long high = readInt() & 0xFFFFFFFFL;
+        long low = readInt() & 0xFFFFFFFFL;
+        return high << 32 | low;
+    }
+
+    double readDouble()
+            throws IOException
+    {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    /**
+     * @return a length, checked against the remaining bytes
+     */
+    int readLength()
+            throws IOException
+    {
+        int length = readInt();
+        if( length < 0 || length > remaining() )
+        {
+            throw new IOException("Error parsing " + CacheEntry.class.getName() + ": invalid length " + length);
+        }
+        return length;
+    }
+
+    @Nullable
+    String readString()
+            throws IOException
+    {
+        int length = readInt();
+        if( length == -1 )
+        {
+            return null;
+        }
+        if( length < 0 || length > remaining() )
+        {
+            throw new IOException("Error parsing string: invalid length " + length);
+        }
+        String value = new String(_bytes, _position, length, BinaryCacheEntryCodec.UTF_8);
+        _position += length;
+        return value;
+    }
+
+    /**
+     * Reads a string, returning the matching instance of the candidates instead of a new string
+     * when its bytes equal one of them.
+     *
+     * @param candidates      strings to return
+     * @param candidatesBytes UTF-8 bytes of each candidate
+     */
+    @Nullable
+    String readString( @NotNull String[] candidates,
+                       @NotNull byte[][] candidatesBytes )
+            throws IOException
+    {
+        require(4);
+        int length = peekInt();
+        if( length > 0 && length <= remaining() - 4 )
+        {
+            for( int i = 0; i < candidatesBytes.length; i++ )
+            {
+                if( candidatesBytes[i].length == length && matches(candidatesBytes[i], _position + 4) )
+                {
+                    _position += 4 + length;
+                    return candidates[i];
+                }
+            }
+        }
+        return readString();
+    }
+
+    /**
+     * @return a copy of the next length bytes
+     */
+    @NotNull
+    byte[] readBytes( int length )
+            throws IOException
+    {
+        require(length);
+        byte[] bytes = Arrays.copyOfRange(_bytes, _position, _position + length);
+        _position += length;
+        return bytes;
+    }
+
+    private boolean matches( @NotNull byte[] candidate,
+                             int offset )
+    {
+        for( int i = 0; i < candidate.length; i++ )
+        {
+            if( _bytes[offset + i] != candidate[i] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int peekInt()
+    {
+        return ( _bytes[_position] & 0xFF ) << 24
+                | ( _bytes[_position + 1] & 0xFF ) << 16
+                | ( _bytes[_position + 2] & 0xFF ) << 8
+                | _bytes[_position + 3] & 0xFF;
+    }
+
+    private void require( int count )
+            throws IOException
+    {
+        if( count < 0 || remaining() < count )
+        {
+            throw new IOException("Error parsing " + CacheEntry.class.getName() + ": unexpected end of input");
+        }
+    }
+}
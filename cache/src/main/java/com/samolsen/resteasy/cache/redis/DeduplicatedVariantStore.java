@@ -0,0 +1,341 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Stores the bodies of binary encoded entries (see {@link BinaryCacheEntryCodec}) once per distinct
+ * content, under a SHA-256 digest of their bytes. The variant itself holds a reference: the body
+ * key, followed by the entry's head (its fields ahead of the entity). Identical entities cached
+ * under many URIs then share one body.
+ *
+ * A body is written in the same pipeline as the reference, ahead of it, and each write extends
+ * the body's TTL to at least the entry's. So a body outlives every reference to it, and is never
+ * deleted while referenced; bodies are left to expire rather than deleted with their entries. A
+ * reference whose body is missing (e.g. evicted) reads as a miss.
+ *
+ * Bodies are keyed by content alone, so are shared across URIs on the node holding them; not
+ * usable on Redis Cluster, where a body would not share its entries' hash slots.
+ *
+ * @see RedisCacheConfig#setDeduplicationThresholdBytes(int)
+ */
+class DeduplicatedVariantStore implements VariantStore {
+
+    /**
+     * Start of a reference, distinguishing it from an encoded entry.
+     */
+    static final byte[] REFERENCE_MAGIC = {(byte) 0xC5, 'D', 'U', 'P'};
+    static final byte REFERENCE_VERSION = 1;
+
+    /**
+     * Writes the body (ARGV[1]) under KEYS[1] with a TTL of ARGV[2] seconds, unless it is already
+     * stored, and otherwise extends its TTL to ARGV[2] unless it already lives longer.
+     */
+    static final RedisScript WRITE_BODY_SCRIPT = new RedisScript(
+            "local ttl = tonumber(ARGV[2])\n" +
+            "local current = redis.call('TTL', KEYS[1])\n" +
+            "if current == -2 then\n" +
+            "  redis.call('SETEX', KEYS[1], ttl, ARGV[1])\n" +
+            "elseif current >= 0 and current < ttl then\n" +
+            "  redis.call('EXPIRE', KEYS[1], ttl)\n" +
+            "end\n" +
+            "return 1\n");
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue()
+        {
+            try
+            {
+                return MessageDigest.getInstance("SHA-256");
+            }
+            catch( NoSuchAlgorithmException e )
+            {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+    };
+
+    @NotNull
+    private final VariantStore _store;
+    @NotNull
+    private final String _bodyKeyPrefix;
+    private final int _thresholdBytes;
+
+    /**
+     * @param store          layout storing the variants, or their references
+     * @param bodyKeyPrefix  prefix for body keys, followed by the digest
+     * @param thresholdBytes bodies of at least this size are deduplicated
+     */
+    DeduplicatedVariantStore( @NotNull VariantStore store,
+                              @NotNull String bodyKeyPrefix,
+                              int thresholdBytes )
+    {
+        if( thresholdBytes <= 0 )
+        {
+            throw new IllegalArgumentException("Deduplication threshold must be positive: " + thresholdBytes);
+        }
+        _store = store;
+        _bodyKeyPrefix = bodyKeyPrefix;
+        _thresholdBytes = thresholdBytes;
+    }
+
+    /**
+     * Reads the variants, then the bodies of any referenced variants in one pipeline.
+     */
+    @NotNull
+    @Override
+    public List<EncodedVariant> read( @NotNull Jedis jedis,
+                                      @NotNull String uriCacheKey,
+                                      @NotNull MediaType accept )
+    {
+        List<EncodedVariant> variants = _store.read(jedis, uriCacheKey, accept);
+
+        Reference[] references = new Reference[variants.size()];
+        boolean referenced = false;
+        for( int i = 0; i < references.length; i++ )
+        {
+            references[i] = Reference.parse(variants.get(i)._encoded);
+            referenced |= references[i] != null;
+        }
+        if( !referenced )
+        {
+            return variants;
+        }
+
+        Pipeline pipeline = jedis.pipelined();
+        List<Response<byte[]>> bodies = new ArrayList<Response<byte[]>>(references.length);
+        for( Reference reference : references )
+        {
+            bodies.add(reference != null ? pipeline.get(reference.bodyKey()) : null);
+        }
+        pipeline.sync();
+
+        List<EncodedVariant> assembled = new ArrayList<EncodedVariant>(variants.size());
+        for( int i = 0; i < variants.size(); i++ )
+        {
+            EncodedVariant variant = variants.get(i);
+            Reference reference = references[i];
+            if( reference == null )
+            {
+                assembled.add(variant);
+                continue;
+            }
+            byte[] encoded = reference.assemble(bodies.get(i).get());
+            if( encoded != null )
+            {
+                assembled.add(new EncodedVariant(variant._mediaType, encoded));
+            }
+        }
+        return assembled;
+    }
+
+    /**
+     * Reads the heads of the variants. A reference holds its entry's head, so no body is read.
+     */
+    @NotNull
+    @Override
+    public List<EncodedVariant> readHeads( @NotNull Jedis jedis,
+                                           @NotNull String uriCacheKey,
+                                           @NotNull MediaType accept )
+    {
+        List<EncodedVariant> variants = _store.readHeads(jedis, uriCacheKey, accept);
+
+        List<EncodedVariant> heads = new ArrayList<EncodedVariant>(variants.size());
+        for( EncodedVariant variant : variants )
+        {
+            Reference reference = Reference.parse(variant._encoded);
+            heads.add(reference != null ? new EncodedVariant(variant._mediaType, reference._head) : variant);
+        }
+        return heads;
+    }
+
+    /**
+     * Reads the variant, then its body when it is a reference.
+     */
+    @Nullable
+    @Override
+    public EncodedVariant readVariant( @NotNull Jedis jedis,
+                                       @NotNull String uriCacheKey,
+                                       @NotNull MediaType mediaType )
+    {
+        EncodedVariant variant = _store.readVariant(jedis, uriCacheKey, mediaType);
+        Reference reference = variant != null ? Reference.parse(variant._encoded) : null;
+        if( reference == null )
+        {
+            return variant;
+        }
+
+        byte[] encoded = reference.assemble(jedis.get(reference.bodyKey()));
+        return encoded == null ? null : new EncodedVariant(mediaType, encoded);
+    }
+
+    @Override
+    public void write( @NotNull ScriptPipeline pipeline,
+                       @NotNull String uriCacheKey,
+                       @NotNull MediaType mediaType,
+                       int ttlSeconds,
+                       @NotNull byte[] encoded )
+    {
+        int headLength = BinaryCacheEntryCodec.headLength(encoded);
+        if( headLength < 0 || encoded.length - headLength < _thresholdBytes )
+        {
+            _store.write(pipeline, uriCacheKey, mediaType, ttlSeconds, encoded);
+            return;
+        }
+
+        byte[] body = Arrays.copyOfRange(encoded, headLength, encoded.length);
+        Reference reference = new Reference(bodyKey(body), Arrays.copyOf(encoded, headLength));
+        pipeline.eval(WRITE_BODY_SCRIPT, 1,
+                reference.bodyKey(),
+                body,
+                SafeEncoder.encode(Integer.toString(ttlSeconds)));
+        _store.write(pipeline, uriCacheKey, mediaType, ttlSeconds, reference.encode());
+    }
+
+    /**
+     * Removes the variants. Their bodies may be shared, so expire with their TTL.
+     */
+    @Override
+    public void remove( @NotNull ScriptPipeline pipeline,
+                        @NotNull String uriCacheKey )
+    {
+        _store.remove(pipeline, uriCacheKey);
+    }
+
+    @NotNull
+    String bodyKey( @NotNull byte[] body )
+    {
+        byte[] digest = SHA_256.get().digest(body);
+        StringBuilder key = new StringBuilder(_bodyKeyPrefix.length() + digest.length * 2);
+        key.append(_bodyKeyPrefix);
+        for( byte b : digest )
+        {
+            key.append(Character.forDigit(( b >> 4 ) & 0xF, 16));
+            key.append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Stored in place of a deduplicated entry. Layout (integers big-endian):
+     * <pre>
+     * byte[4] magic ({@link #REFERENCE_MAGIC})
+     * byte    version ({@link #REFERENCE_VERSION})
+     * string  body key
+     * byte[]  head of the entry, to the end of the value
+     * </pre>
+     */
+    static class Reference {
+
+        @NotNull
+        final String _bodyKey;
+        @NotNull
+        final byte[] _head;
+
+        Reference( @NotNull String bodyKey,
+                   @NotNull byte[] head )
+        {
+            _bodyKey = bodyKey;
+            _head = head;
+        }
+
+        @NotNull
+        byte[] bodyKey()
+        {
+            return RedisCache.encodeKey(_bodyKey);
+        }
+
+        @NotNull
+        byte[] encode()
+        {
+            EncodeBuffer out = new EncodeBuffer(REFERENCE_MAGIC.length + 5 + _bodyKey.length() + _head.length);
+            out.write(REFERENCE_MAGIC);
+            out.writeByte(REFERENCE_VERSION);
+            out.writeString(_bodyKey);
+            out.write(_head);
+            return out.toByteArray();
+        }
+
+        /**
+         * @return the reference, or null when the value is not a reference (so is an encoded entry)
+         */
+        @Nullable
+        static Reference parse( @NotNull byte[] value )
+        {
+            if( value.length < REFERENCE_MAGIC.length + 1 )
+            {
+                return null;
+            }
+            for( int i = 0; i < REFERENCE_MAGIC.length; i++ )
+            {
+                if( value[i] != REFERENCE_MAGIC[i] )
+                {
+                    return null;
+                }
+            }
+            try
+            {
+                DecodeBuffer in = new DecodeBuffer(value);
+                in.skip(REFERENCE_MAGIC.length);
+                if( in.readByte() != REFERENCE_VERSION )
+                {
+                    return null;
+                }
+                String bodyKey = in.readString();
+                if( bodyKey == null )
+                {
+                    return null;
+                }
+                return new Reference(bodyKey, in.readBytes(in.remaining()));
+            }
+            catch( IOException e )
+            {
+                return null;
+            }
+        }
+
+        /**
+         * @return the entry, or null when the body has expired
+         */
+        @Nullable
+        byte[] assemble( @Nullable byte[] body )
+        {
+            if( body == null )
+            {
+                return null;
+            }
+            byte[] encoded = Arrays.copyOf(_head, _head.length + body.length);
+            System.arraycopy(body, 0, encoded, _head.length, body.length);
+            return encoded;
+        }
+    }
+}
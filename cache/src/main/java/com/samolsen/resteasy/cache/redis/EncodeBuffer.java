@@ -0,0 +1,214 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Growable byte buffer for {@link BinaryCacheEntryCodec}, reused by each thread across encodes so
+ * only the final, exactly sized array is allocated per entry. Integers are big-endian and strings
+ * are an int byte length followed by UTF-8 bytes, as written by {@link java.io.DataOutputStream}.
+ *
+ * Buffers grown past {@link #MAX_RETAINED_BYTES} (e.g. by a large compressed entity) are not kept
+ * for reuse.
+ */
+final class EncodeBuffer {
+
+    static final int INITIAL_CAPACITY = 4096;
+    static final int MAX_RETAINED_BYTES = 256 * 1024;
+
+    private static final ThreadLocal<EncodeBuffer> BUFFERS = new ThreadLocal<EncodeBuffer>() {
+        @Override
+        protected EncodeBuffer initialValue()
+        {
+            return new EncodeBuffer(INITIAL_CAPACITY);
+        }
+    };
+
+    @NotNull
+    private byte[] _bytes;
+    private int _size;
+
+    EncodeBuffer( int capacity )
+    {
+        _bytes = new byte[capacity];
+    }
+
+    /**
+     * @return the calling thread's buffer, emptied
+     */
+    @NotNull
+    static EncodeBuffer get()
+    {
+        EncodeBuffer buffer = BUFFERS.get();
+        if( buffer._bytes.length > MAX_RETAINED_BYTES )
+        {
+            buffer = new EncodeBuffer(INITIAL_CAPACITY);
+            BUFFERS.set(buffer);
+        }
+        buffer._size = 0;
+        return buffer;
+    }
+
+    int size()
+    {
+        return _size;
+    }
+
+    /**
+     * @return the backing array, valid up to {@link #size()} until the next write
+     */
+    @NotNull
+    byte[] array()
+    {
+        return _bytes;
+    }
+
+    /**
+     * Makes room for count bytes to be written directly into {@link #array()} at {@link #size()}.
+     */
+    void ensureRemaining( int count )
+    {
+        if( _bytes.length - _size < count )
+        {
+            _bytes = Arrays.copyOf(_bytes, Math.max(_bytes.length * 2, _size + count));
+        }
+    }
+
+    /**
+     * Advances past count bytes written directly into {@link #array()}.
+     */
+    void skip( int count )
+    {
+        _size += count;
+    }
+
+    void writeByte( int value )
+    {
+        ensureRemaining(1);
+        _bytes[_size++] = (byte) value;
+    }
+
+    void writeInt( int value )
+    {
+        ensureRemaining(4);
+        putInt(_size, value);
+        _size += 4;
+    }
+
+    /**
+     * Overwrites a byte written earlier, e.g. flags once they are known.
+     */
+    void putByte( int position,
+                  int value )
+    {
+        _bytes[position] = (byte) value;
+    }
+
+    /**
+     * Overwrites an int written earlier, e.g. a length once it is known.
+     */
+    void putInt( int position,
+                 int value )
+    {
+        _bytes[position] = (byte) ( value >>> 24 );
+        _bytes[position + 1] = (byte) ( value >>> 16 );
+        _bytes[position + 2] = (byte) ( value >>> 8 );
+        _bytes[position + 3] = (byte) value;
+    }
+
+    void writeLong( long value )
+    {
+        writeInt((int) ( value >>> 32 ));
+        writeInt((int) value);
+    }
+
+    void writeDouble( double value )
+    {
+        writeLong(Double.doubleToLongBits(value));
+    }
+
+    void write( @NotNull byte[] bytes )
+    {
+        ensureRemaining(bytes.length);
+        System.arraycopy(bytes, 0, _bytes, _size, bytes.length);
+        _size += bytes.length;
+    }
+
+    /**
+     * Writes the length and UTF-8 bytes of the string, or length -1 when null. Encodes in place
+     * rather than through {@link String#getBytes}.
+     */
+    void writeString( @Nullable String value )
+    {
+        if( value == null )
+        {
+            writeInt(-1);
+            return;
+        }
+        int length = value.length();
+        ensureRemaining(4 + length * 3);
+        int start = _size + 4;
+        int position = start;
+        for( int i = 0; i < length; i++ )
+        {
+            char c = value.charAt(i);
+            if( c < 0x80 )
+            {
+                _bytes[position++] = (byte) c;
+            }
+            else if( c < 0x800 )
+            {
+                _bytes[position++] = (byte) ( 0xC0 | c >> 6 );
+                _bytes[position++] = (byte) ( 0x80 | c & 0x3F );
+            }
+            else if( Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1)) )
+            {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                _bytes[position++] = (byte) ( 0xF0 | codePoint >> 18 );
+                _bytes[position++] = (byte) ( 0x80 | codePoint >> 12 & 0x3F );
+                _bytes[position++] = (byte) ( 0x80 | codePoint >> 6 & 0x3F );
+                _bytes[position++] = (byte) ( 0x80 | codePoint & 0x3F );
+            }
+            else if( c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE )
+            {
+                // unpaired, replaced as by String#getBytes
+                _bytes[position++] = '?';
+            }
+            else
+            {
+                _bytes[position++] = (byte) ( 0xE0 | c >> 12 );
+                _bytes[position++] = (byte) ( 0x80 | c >> 6 & 0x3F );
+                _bytes[position++] = (byte) ( 0x80 | c & 0x3F );
+            }
+        }
+        putInt(_size, position - start);
+        _size = position;
+    }
+
+    /**
+     * @return a copy of the buffer contents
+     */
+    @NotNull
+    byte[] toByteArray()
+    {
+        return Arrays.copyOf(_bytes, _size);
+    }
+}
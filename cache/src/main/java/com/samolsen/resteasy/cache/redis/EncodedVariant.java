@@ -0,0 +1,76 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+
+import redis.clients.util.SafeEncoder;
+
+import javax.ws.rs.core.MediaType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * A variant read from a {@link VariantStore}, with its media type taken from the variant index so
+ * it may be matched before the entry is decoded.
+ */
+class EncodedVariant {
+
+    @NotNull
+    final MediaType _mediaType;
+    @NotNull
+    final byte[] _encoded;
+
+    EncodedVariant( @NotNull MediaType mediaType,
+                    @NotNull byte[] encoded )
+    {
+        _mediaType = mediaType;
+        _encoded = encoded;
+    }
+
+    /**
+     * Converts the reply of a variant lookup script, alternating media types and entries.
+     * Variants with a nil entry or an unparseable media type are skipped.
+     */
+    @NotNull
+    @SuppressWarnings("unchecked")
+    static List<EncodedVariant> fromReply( Object reply )
+    {
+        if( !( reply instanceof List ) )
+        {
+            return new ArrayList<EncodedVariant>(0);
+        }
+
+        List<byte[]> pairs = (List<byte[]>) reply;
+        List<EncodedVariant> variants = new ArrayList<EncodedVariant>(pairs.size() / 2);
+        for( int i = 0; i + 1 < pairs.size(); i += 2 )
+        {
+            byte[] mediaType = pairs.get(i);
+            byte[] encoded = pairs.get(i + 1);
+            if( mediaType == null || encoded == null )
+            {
+                continue;
+            }
+            MediaType parsed = MediaTypes.valueOf(SafeEncoder.encode(mediaType));
+            if( parsed != null )
+            {
+                variants.add(new EncodedVariant(parsed, encoded));
+            }
+        }
+        return variants;
+    }
+}
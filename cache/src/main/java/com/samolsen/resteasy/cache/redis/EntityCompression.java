@@ -0,0 +1,244 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Deflate compression of cached entities, using the JDK {@link Deflater}.
+ *
+ * Entities smaller than the threshold, or which do not shrink when compressed, are stored as-is.
+ * Whether an entry is compressed is recorded per entry, so compressed and uncompressed entries
+ * may coexist (e.g. while changing the threshold).
+ *
+ * Counters are kept for the bytes saved and the time spent, to weigh Redis memory against CPU.
+ *
+ * @see BinaryCacheEntryCodec#BinaryCacheEntryCodec(EntityCompression)
+ */
+public class EntityCompression {
+
+    public static final int DEFAULT_THRESHOLD_BYTES = 1024;
+
+    private final int _thresholdBytes;
+    private final int _level;
+
+    private final ThreadLocal<Deflater> _deflater = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue()
+        {
+            return new Deflater(_level, true);
+        }
+    };
+    private final ThreadLocal<Inflater> _inflater = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue()
+        {
+            return new Inflater(true);
+        }
+    };
+
+    private final AtomicLong _compressed = new AtomicLong();
+    private final AtomicLong _skipped = new AtomicLong();
+    private final AtomicLong _uncompressedBytes = new AtomicLong();
+    private final AtomicLong _compressedBytes = new AtomicLong();
+    private final AtomicLong _compressNanos = new AtomicLong();
+    private final AtomicLong _decompressed = new AtomicLong();
+    private final AtomicLong _decompressNanos = new AtomicLong();
+
+    public EntityCompression()
+    {
+        this(DEFAULT_THRESHOLD_BYTES);
+    }
+
+    /**
+     * @param thresholdBytes entities smaller than this are not compressed
+     */
+    public EntityCompression( int thresholdBytes )
+    {
+        this(thresholdBytes, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param thresholdBytes entities smaller than this are not compressed
+     * @param level          {@link Deflater} compression level, 1 (fastest) to 9 (smallest)
+     */
+    public EntityCompression( int thresholdBytes,
+                              int level )
+    {
+        _thresholdBytes = thresholdBytes;
+        _level = level;
+    }
+
+    /**
+     * Writes the compressed length and compressed entity to the buffer, deflating in place.
+     *
+     * @return whether the entity was written, or false when it should be stored uncompressed
+     */
+    boolean compress( @NotNull byte[] entity,
+                      @NotNull EncodeBuffer out )
+    {
+        if( entity.length < _thresholdBytes )
+        {
+            _skipped.incrementAndGet();
+            return false;
+        }
+
+        long start = System.nanoTime();
+        Deflater deflater = _deflater.get();
+        out.ensureRemaining(4 + entity.length);
+        int length;
+        try
+        {
+            deflater.setInput(entity);
+            deflater.finish();
+            length = deflater.deflate(out.array(), out.size() + 4, entity.length);
+            if( !deflater.finished() )
+            {
+                // no smaller than the original
+                length = -1;
+            }
+        }
+        finally
+        {
+            deflater.reset();
+        }
+        _compressNanos.addAndGet(System.nanoTime() - start);
+
+        if( length < 0 )
+        {
+            _skipped.incrementAndGet();
+            return false;
+        }
+
+        out.writeInt(length);
+        out.skip(length);
+        _compressed.incrementAndGet();
+        _uncompressedBytes.addAndGet(entity.length);
+        _compressedBytes.addAndGet(length);
+        return true;
+    }
+
+    /**
+     * @param bytes          array holding the entity as written by {@link #compress(byte[], EncodeBuffer)}
+     * @param offset         start of the compressed entity
+     * @param length         length of the compressed entity
+     * @param originalLength length of the uncompressed entity
+     */
+    @NotNull
+    byte[] decompress( @NotNull byte[] bytes,
+                       int offset,
+                       int length,
+                       int originalLength )
+            throws IOException
+    {
+        long start = System.nanoTime();
+        Inflater inflater = _inflater.get();
+        byte[] entity = new byte[originalLength];
+        try
+        {
+            inflater.setInput(bytes, offset, length);
+            int inflated = inflater.inflate(entity);
+            if( inflated != originalLength || !inflater.finished() )
+            {
+                throw new IOException("Error inflating entity: expected " + originalLength + " bytes");
+            }
+        }
+        catch( DataFormatException e )
+        {
+            throw new IOException("Error inflating entity", e);
+        }
+        finally
+        {
+            inflater.reset();
+        }
+        _decompressed.incrementAndGet();
+        _decompressNanos.addAndGet(System.nanoTime() - start);
+        return entity;
+    }
+
+    /**
+     * @return number of entities stored compressed
+     */
+    public long getCompressedCount()
+    {
+        return _compressed.get();
+    }
+
+    /**
+     * @return number of entities stored uncompressed, being under the threshold or incompressible
+     */
+    public long getSkippedCount()
+    {
+        return _skipped.get();
+    }
+
+    /**
+     * @return total size of compressed entities before compression
+     */
+    public long getUncompressedBytes()
+    {
+        return _uncompressedBytes.get();
+    }
+
+    /**
+     * @return total size of compressed entities after compression
+     */
+    public long getCompressedBytes()
+    {
+        return _compressedBytes.get();
+    }
+
+    /**
+     * @return uncompressed bytes / compressed bytes, over all compressed entities. 1 when none.
+     */
+    public double getCompressionRatio()
+    {
+        long compressed = _compressedBytes.get();
+        return compressed == 0 ? 1.0 : (double) _uncompressedBytes.get() / compressed;
+    }
+
+    /**
+     * @return time spent compressing, including attempts which did not shrink the entity
+     */
+    public long getCompressNanos()
+    {
+        return _compressNanos.get();
+    }
+
+    /**
+     * @return number of entities decompressed
+     */
+    public long getDecompressedCount()
+    {
+        return _decompressed.get();
+    }
+
+    /**
+     * @return time spent decompressing
+     */
+    public long getDecompressNanos()
+    {
+        return _decompressNanos.get();
+    }
+}
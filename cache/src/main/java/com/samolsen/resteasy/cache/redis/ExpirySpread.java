@@ -0,0 +1,92 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Random;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Spreads out the expiry of entries added at the same time with the same max-age, so they are not
+ * all regenerated in the same second.
+ *
+ * Early expiration follows the XFetch algorithm (Vattani et al., "Optimal Probabilistic Cache
+ * Stampede Prevention"): a hit is reported as a miss when
+ * {@code remaining <= -delta * beta * ln(random)}, so one request regenerates a hot entry shortly
+ * before it expires.
+ *
+ * @see RedisCacheConfig#setEarlyExpirationBeta(double)
+ * @see RedisCacheConfig#setTtlJitterSeconds(int)
+ */
+class ExpirySpread {
+
+    private final double _beta;
+    private final long _deltaMillis;
+    private final int _ttlJitterSeconds;
+
+    private final ThreadLocal<Random> _random = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue()
+        {
+            return new Random();
+        }
+    };
+
+    /**
+     * @param beta             XFetch beta. 0 disables early expiration.
+     * @param deltaMillis      expected time to regenerate an entry
+     * @param ttlJitterSeconds most seconds taken off the max-age of an entry
+     */
+    ExpirySpread( double beta,
+                  long deltaMillis,
+                  int ttlJitterSeconds )
+    {
+        _beta = beta;
+        _deltaMillis = deltaMillis;
+        _ttlJitterSeconds = ttlJitterSeconds;
+    }
+
+    /**
+     * @param cacheEntry an entry which has not expired
+     * @return whether to treat the entry as expired
+     */
+    boolean expireEarly( @NotNull CacheEntry cacheEntry )
+    {
+        if( _beta <= 0 )
+        {
+            return false;
+        }
+        long remainingMillis = cacheEntry._timestamp + cacheEntry._expires * 1000L - System.currentTimeMillis();
+        // 1 - nextDouble() is in (0, 1], so the log is finite
+        double gapMillis = -_deltaMillis * _beta * Math.log(1.0 - _random.get().nextDouble());
+        return remainingMillis <= gapMillis;
+    }
+
+    /**
+     * @param ttlSeconds max-age of an entry, before any stale retention is added to its Redis TTL
+     * @return the max-age less up to the jitter, and at least 1 second
+     */
+    int jitterTtl( int ttlSeconds )
+    {
+        int bound = Math.min(_ttlJitterSeconds, ttlSeconds - 1);
+        if( bound <= 0 )
+        {
+            return ttlSeconds;
+        }
+        return ttlSeconds - _random.get().nextInt(bound + 1);
+    }
+}
@@ -0,0 +1,167 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Runs a command on several Redis nodes in parallel, for operations covering every node such as
+ * {@link RedisCache#clear()}.
+ */
+final class FanOut {
+
+    interface NodeTask {
+        void run( @NotNull Jedis jedis );
+    }
+
+    /**
+     * A task given the pool itself, for tasks which differ per node or manage their own connection.
+     */
+    interface PoolTask {
+        void run( @NotNull Pool<Jedis> pool );
+    }
+
+    private FanOut()
+    {
+    }
+
+    /**
+     * Runs the task once per pool, on a thread per pool beyond the first, and waits for all to
+     * finish.
+     *
+     * @throws RuntimeException the first failure, once all tasks have finished
+     */
+    static void forEach( @NotNull Collection<Pool<Jedis>> pools,
+                         @NotNull final NodeTask task )
+    {
+        forEachPool(pools, new PoolTask() {
+            @Override
+            public void run( @NotNull Pool<Jedis> pool )
+            {
+                runOn(pool, task);
+            }
+        });
+    }
+
+    /**
+     * Runs the task once per pool, as {@link #forEach(Collection, NodeTask)}.
+     *
+     * @throws RuntimeException the first failure, once all tasks have finished
+     */
+    static void forEachPool( @NotNull Collection<Pool<Jedis>> pools,
+                             @NotNull final PoolTask task )
+    {
+        Iterator<Pool<Jedis>> iterator = pools.iterator();
+        if( !iterator.hasNext() )
+        {
+            return;
+        }
+        Pool<Jedis> first = iterator.next();
+
+        final List<RuntimeException> errors = new ArrayList<RuntimeException>();
+        List<Thread> threads = new ArrayList<Thread>();
+        while( iterator.hasNext() )
+        {
+            final Pool<Jedis> pool = iterator.next();
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        task.run(pool);
+                    }
+                    catch( RuntimeException e )
+                    {
+                        synchronized( errors )
+                        {
+                            errors.add(e);
+                        }
+                    }
+                }
+            }, "redis-cache-fan-out");
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        try
+        {
+            task.run(first);
+        }
+        catch( RuntimeException e )
+        {
+            synchronized( errors )
+            {
+                errors.add(e);
+            }
+        }
+
+        boolean interrupted = false;
+        for( Thread thread : threads )
+        {
+            while( thread.isAlive() )
+            {
+                try
+                {
+                    thread.join();
+                }
+                catch( InterruptedException e )
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        if( interrupted )
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized( errors )
+        {
+            if( !errors.isEmpty() )
+            {
+                throw errors.get(0);
+            }
+        }
+    }
+
+    private static void runOn( @NotNull Pool<Jedis> pool,
+                               @NotNull NodeTask task )
+    {
+        Jedis jedis = null;
+        try
+        {
+            jedis = pool.getResource();
+            task.run(jedis);
+        }
+        finally
+        {
+            if( jedis != null )
+            {
+                jedis.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Approximate count of how often each key has been seen recently, for {@link AdmissionFilter}.
+ * Counts age, so keys which stop being seen are forgotten.
+ *
+ * Implementations are count-min sketches: {@link #DEPTH} rows of counters, each key incrementing
+ * one counter per row and estimated by the smallest of them.
+ */
+interface FrequencyCounter {
+
+    int DEPTH = 4;
+
+    /**
+     * Counts one occurrence of the key.
+     *
+     * @return estimated occurrences of the key, including this one
+     */
+    int increment( @NotNull String key );
+}
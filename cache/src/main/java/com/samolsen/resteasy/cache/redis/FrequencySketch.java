@@ -0,0 +1,157 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import redis.clients.util.Hashing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * In-process {@link FrequencyCounter}: 4-bit counters, sixteen to a long, updated lock-free.
+ *
+ * After every 10 x width increments all counters are halved, as in TinyLFU, so the sketch
+ * reflects recent popularity and its counters do not saturate.
+ */
+final class FrequencySketch implements FrequencyCounter {
+
+    static final int MAX_COUNT = 15;
+    static final int SAMPLE_SIZE_PER_COUNTER = 10;
+
+    private static final long HALF_MASK = 0x7777777777777777L;
+
+    private final int _width;
+    private final int _sampleSize;
+    @NotNull
+    private final AtomicLongArray _counters;
+    private final AtomicInteger _increments = new AtomicInteger();
+
+    /**
+     * @param width counters per row. Rounded up to a power of two.
+     */
+    FrequencySketch( int width )
+    {
+        _width = width(width);
+        _sampleSize = SAMPLE_SIZE_PER_COUNTER * _width;
+        _counters = new AtomicLongArray(_width * DEPTH / 16);
+    }
+
+    @Override
+    public int increment( @NotNull String key )
+    {
+        long hash = hash(key);
+        int estimate = MAX_COUNT;
+        for( int row = 0; row < DEPTH; row++ )
+        {
+            estimate = Math.min(estimate, incrementCell(cell(hash, row, _width)));
+        }
+        if( _increments.incrementAndGet() == _sampleSize )
+        {
+            age();
+            _increments.addAndGet(-_sampleSize);
+        }
+        return estimate;
+    }
+
+    /**
+     * @return estimated occurrences of the key, without counting one
+     */
+    int estimate( @NotNull String key )
+    {
+        long hash = hash(key);
+        int estimate = MAX_COUNT;
+        for( int row = 0; row < DEPTH; row++ )
+        {
+            int cell = cell(hash, row, _width);
+            estimate = Math.min(estimate, count(_counters.get(cell >>> 4), cell));
+        }
+        return estimate;
+    }
+
+    /**
+     * @return the counter's value after incrementing, saturating at {@link #MAX_COUNT}
+     */
+    private int incrementCell( int cell )
+    {
+        int index = cell >>> 4;
+        int shift = ( cell & 15 ) << 2;
+        while( true )
+        {
+            long word = _counters.get(index);
+            int count = count(word, cell);
+            if( count == MAX_COUNT )
+            {
+                return count;
+            }
+            if( _counters.compareAndSet(index, word, word + ( 1L << shift )) )
+            {
+                return count + 1;
+            }
+        }
+    }
+
+    private void age()
+    {
+        for( int i = 0; i < _counters.length(); i++ )
+        {
+            long word;
+            do
+            {
+                word = _counters.get(i);
+            }
+            while( !_counters.compareAndSet(i, word, ( word >>> 1 ) & HALF_MASK) );
+        }
+    }
+
+    static long hash( @NotNull String key )
+    {
+        return Hashing.MURMUR_HASH.hash(key);
+    }
+
+    /**
+     * @param width counters per row, a power of two
+     * @return index over all rows of the key's counter in the row
+     */
+    static int cell( long hash,
+                     int row,
+                     int width )
+    {
+        int h1 = (int) hash;
+        int h2 = (int) ( hash >>> 32 ) | 1;
+        return row * width + ( ( h1 + row * h2 ) & ( width - 1 ) );
+    }
+
+    /**
+     * @return the smallest power of two at least the requested width, and at least 16
+     */
+    static int width( int requested )
+    {
+        int width = 16;
+        while( width < requested && width < ( 1 << 24 ) )
+        {
+            width <<= 1;
+        }
+        return width;
+    }
+
+    private static int count( long word,
+                              int cell )
+    {
+        return (int) ( word >>> ( ( cell & 15 ) << 2 ) ) & MAX_COUNT;
+    }
+}
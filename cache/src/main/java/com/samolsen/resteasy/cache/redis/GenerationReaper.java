@@ -0,0 +1,164 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Pool;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Background thread unlinking keys of earlier {@link CacheGeneration}s, rather than waiting for
+ * them to expire. SCANs the namespace a batch at a time, one batch per second, so the load on
+ * Redis stays bounded however many keys are orphaned.
+ *
+ * @see RedisCacheConfig#setGenerationReaperKeysPerSecond(int)
+ */
+class GenerationReaper {
+
+    static final long INTERVAL_MILLIS = 1000;
+
+    /**
+     * Unlinks KEYS[1]. Keys are unlinked one per script, as keys found by a SCAN of a cluster node
+     * are in different slots.
+     */
+    private static final RedisScript UNLINK_SCRIPT = new RedisScript(
+            RedisScript.LUA_UNLINK +
+            "unlink(KEYS)\n");
+
+    @NotNull
+    private final Pool<Jedis> _jedisPool;
+    @NotNull
+    private final CacheGeneration _generation;
+    @NotNull
+    private final String _keyNamespace;
+    private final int _keysPerSecond;
+
+    private volatile boolean _closed;
+    @Nullable
+    private Thread _thread;
+
+    /**
+     * @param keyNamespace  namespace and delimiter preceding the generation in cache keys
+     * @param keysPerSecond keys scanned per second
+     */
+    GenerationReaper( @NotNull Pool<Jedis> jedisPool,
+                      @NotNull CacheGeneration generation,
+                      @NotNull String keyNamespace,
+                      int keysPerSecond )
+    {
+        _jedisPool = jedisPool;
+        _generation = generation;
+        _keyNamespace = keyNamespace;
+        _keysPerSecond = keysPerSecond;
+    }
+
+    void start()
+    {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                reap();
+            }
+        }, "redis-cache-reaper");
+        thread.setDaemon(true);
+        thread.start();
+        _thread = thread;
+    }
+
+    void close()
+    {
+        _closed = true;
+        Thread thread = _thread;
+        if( thread != null )
+        {
+            thread.interrupt();
+        }
+    }
+
+    private void reap()
+    {
+        ScanParams scanParams = new ScanParams()
+                .match(_keyNamespace + CacheGeneration.KEY_PREFIX + "*")
+                .count(_keysPerSecond);
+        // generation which was current when the last full pass started. Unknown at startup.
+        long reapedBelow = -1;
+        long passGeneration = 0;
+        String cursor = "0";
+
+        while( !_closed )
+        {
+            try
+            {
+                Thread.sleep(INTERVAL_MILLIS);
+            }
+            catch( InterruptedException e )
+            {
+                return;
+            }
+
+            if( cursor.equals("0") )
+            {
+                passGeneration = _generation.current();
+                if( passGeneration <= reapedBelow )
+                {
+                    // nothing cleared since the last pass
+                    continue;
+                }
+            }
+
+            Jedis jedis = null;
+            try
+            {
+                jedis = _jedisPool.getResource();
+                ScanResult<String> result = jedis.scan(cursor, scanParams);
+                ScriptPipeline pipeline = new ScriptPipeline(jedis);
+                for( String key : result.getResult() )
+                {
+                    long generation = CacheGeneration.generationOf(key, _keyNamespace);
+                    if( generation >= 0 && generation < passGeneration )
+                    {
+                        pipeline.eval(UNLINK_SCRIPT, 1, RedisCache.encodeKey(key));
+                    }
+                }
+                pipeline.sync();
+
+                cursor = result.getStringCursor();
+                if( cursor.equals("0") )
+                {
+                    reapedBelow = passGeneration;
+                }
+            }
+            catch( JedisException e )
+            {
+                // Redis unavailable. The pass restarts once it is back.
+                cursor = "0";
+            }
+            finally
+            {
+                if( jedis != null )
+                {
+                    jedis.close();
+                }
+            }
+        }
+    }
+}
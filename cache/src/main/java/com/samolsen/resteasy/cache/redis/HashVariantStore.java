@@ -0,0 +1,148 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.SafeEncoder;
+
+import javax.ws.rs.core.MediaType;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * {@link StorageLayout#HASH}: all variants in one hash under the URI key, with media types as
+ * fields.
+ */
+class HashVariantStore implements VariantStore {
+
+    /**
+     * Unlinks the hash KEYS[1].
+     */
+    static final RedisScript REMOVE_SCRIPT = new RedisScript(
+            RedisScript.LUA_UNLINK +
+            "unlink({KEYS[1]})\n");
+
+    /**
+     * Sets a variant (ARGV[1] = field, ARGV[2] = entry) in the hash KEYS[1], and extends the TTL of
+     * the hash to ARGV[3] seconds unless it already lives longer.
+     */
+    static final RedisScript WRITE_VARIANT_SCRIPT = new RedisScript(
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "local ttl = tonumber(ARGV[3])\n" +
+            "if redis.call('TTL', KEYS[1]) < ttl then\n" +
+            "  redis.call('EXPIRE', KEYS[1], ttl)\n" +
+            "end\n" +
+            "return 1\n");
+
+    /**
+     * Reads the fields of the hash KEYS[1] compatible with the accepted type and subtype (ARGV[1],
+     * ARGV[2]). Incompatible entries are not transferred.
+     *
+     * @return alternating media types and entries
+     */
+    static final RedisScript READ_VARIANTS_SCRIPT = new RedisScript(readVariantsScript("entry"));
+
+    /**
+     * As {@link #READ_VARIANTS_SCRIPT}, but returns the heads of binary entries.
+     */
+    static final RedisScript READ_HEADS_SCRIPT = new RedisScript(
+            BinaryCacheEntryCodec.LUA_HEAD + readVariantsScript("head(entry)"));
+
+    @NotNull
+    @Override
+    public List<EncodedVariant> read( @NotNull Jedis jedis,
+                                      @NotNull String uriCacheKey,
+                                      @NotNull MediaType accept )
+    {
+        return readVariants(READ_VARIANTS_SCRIPT, jedis, uriCacheKey, accept);
+    }
+
+    @NotNull
+    @Override
+    public List<EncodedVariant> readHeads( @NotNull Jedis jedis,
+                                           @NotNull String uriCacheKey,
+                                           @NotNull MediaType accept )
+    {
+        return readVariants(READ_HEADS_SCRIPT, jedis, uriCacheKey, accept);
+    }
+
+    @Nullable
+    @Override
+    public EncodedVariant readVariant( @NotNull Jedis jedis,
+                                       @NotNull String uriCacheKey,
+                                       @NotNull MediaType mediaType )
+    {
+        byte[] encoded = jedis.hget(RedisCache.encodeKey(uriCacheKey), SafeEncoder.encode(mediaType.toString()));
+        return encoded == null ? null : new EncodedVariant(mediaType, encoded);
+    }
+
+    @Override
+    public void write( @NotNull ScriptPipeline pipeline,
+                       @NotNull String uriCacheKey,
+                       @NotNull MediaType mediaType,
+                       int ttlSeconds,
+                       @NotNull byte[] encoded )
+    {
+        pipeline.eval(WRITE_VARIANT_SCRIPT, 1,
+                RedisCache.encodeKey(uriCacheKey),
+                SafeEncoder.encode(mediaType.toString()),
+                encoded,
+                SafeEncoder.encode(Integer.toString(ttlSeconds)));
+    }
+
+    @Override
+    public void remove( @NotNull ScriptPipeline pipeline,
+                        @NotNull String uriCacheKey )
+    {
+        pipeline.eval(REMOVE_SCRIPT, 1, RedisCache.encodeKey(uriCacheKey));
+    }
+
+    @NotNull
+    private static List<EncodedVariant> readVariants( @NotNull RedisScript script,
+                                                      @NotNull Jedis jedis,
+                                                      @NotNull String uriCacheKey,
+                                                      @NotNull MediaType accept )
+    {
+        Object reply = script.eval(jedis, 1,
+                RedisCache.encodeKey(uriCacheKey),
+                SafeEncoder.encode(accept.getType().toLowerCase(Locale.ENGLISH)),
+                SafeEncoder.encode(accept.getSubtype().toLowerCase(Locale.ENGLISH)));
+        return EncodedVariant.fromReply(reply);
+    }
+
+    /**
+     * @param value Lua expression for the value returned for each `entry`
+     */
+    @NotNull
+    private static String readVariantsScript( @NotNull String value )
+    {
+        return MediaTypes.LUA_COMPATIBLE +
+                "local result = {}\n" +
+                "for _, mediaType in ipairs(redis.call('HKEYS', KEYS[1])) do\n" +
+                "  if compatible(mediaType, ARGV[1], ARGV[2]) then\n" +
+                "    local entry = redis.call('HGET', KEYS[1], mediaType)\n" +
+                "    if entry then\n" +
+                "      result[#result + 1] = mediaType\n" +
+                "      result[#result + 1] = " + value + "\n" +
+                "    end\n" +
+                "  end\n" +
+                "end\n" +
+                "return result\n";
+    }
+}
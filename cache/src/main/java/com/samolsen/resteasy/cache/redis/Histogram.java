@@ -0,0 +1,158 @@
+package com.samolsen.resteasy.cache.redis;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Lock-free histogram of non-negative values, such as latencies in nanoseconds or sizes in bytes.
+ *
+ * Values are counted in log-linear buckets, as in an HDR histogram: values below 64 are exact, and
+ * larger values are bucketed to within 1/32 of their magnitude. Recording is a few atomic
+ * increments, and memory is fixed whatever the range of values.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong _count = new AtomicLong();
+    private final AtomicLong _sum = new AtomicLong();
+    private final AtomicLong _max = new AtomicLong();
+
+    /**
+     * @param value value to record. Negative values are recorded as 0.
+     */
+    public void record( long value )
+    {
+        if( value < 0 )
+        {
+            value = 0;
+        }
+        _counts.incrementAndGet(bucketOf(value));
+        _count.incrementAndGet();
+        _sum.addAndGet(value);
+
+        long max;
+        while( value > ( max = _max.get() ) )
+        {
+            if( _max.compareAndSet(max, value) )
+            {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    public long getCount()
+    {
+        return _count.get();
+    }
+
+    /**
+     * @return largest value recorded, or 0 when none
+     */
+    public long getMax()
+    {
+        return _max.get();
+    }
+
+    /**
+     * @return mean of the values recorded, or 0 when none
+     */
+    public double getMean()
+    {
+        long count = _count.get();
+        return count == 0 ? 0 : (double) _sum.get() / count;
+    }
+
+    /**
+     * Reads the buckets without stopping writers, so values recorded meanwhile may or may not be
+     * included.
+     *
+     * @param percentile percentile to report, from 0 to 100
+     * @return value at the percentile, to within the bucket precision. 0 when none recorded.
+     */
+    public long getPercentile( double percentile )
+    {
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        for( int i = 0; i < BUCKETS; i++ )
+        {
+            counts[i] = _counts.get(i);
+            total += counts[i];
+        }
+        if( total == 0 )
+        {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for( int i = 0; i < BUCKETS; i++ )
+        {
+            seen += counts[i];
+            if( seen >= rank )
+            {
+                return Math.min(highestValueIn(i), _max.get());
+            }
+        }
+        return _max.get();
+    }
+
+    /**
+     * Clears all values. Values recorded meanwhile may be partly cleared.
+     */
+    public void reset()
+    {
+        for( int i = 0; i < BUCKETS; i++ )
+        {
+            _counts.set(i, 0);
+        }
+        _count.set(0);
+        _sum.set(0);
+        _max.set(0);
+    }
+
+    static int bucketOf( long value )
+    {
+        if( value < SUB_BUCKETS )
+        {
+            return (int) value;
+        }
+        // keep the top SUB_BUCKET_BITS bits, and count the bits shifted out
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * HALF_SUB_BUCKETS + (int) ( value >>> shift );
+    }
+
+    static long highestValueIn( int bucket )
+    {
+        if( bucket < SUB_BUCKETS )
+        {
+            return bucket;
+        }
+        int shift = bucket / HALF_SUB_BUCKETS - 1;
+        long lowest = (long) ( bucket - shift * HALF_SUB_BUCKETS ) << shift;
+        return lowest + ( 1L << shift ) - 1;
+    }
+}
@@ -0,0 +1,79 @@
+package com.samolsen.resteasy.cache.redis;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Stores cache entries as JSON documents, with the entity base64 encoded.
+ *
+ * This was the only storage format prior to {@link BinaryCacheEntryCodec}, and remains
+ * available for readability of the stored values (e.g. from `redis-cli`).
+ *
+ * @see CacheSerializationModule
+ */
+public class JsonCacheEntryCodec implements CacheEntryCodec {
+
+    /**
+     * Mapper used for (de)serialization. Note: additional JSON serializers/deserializers are added
+     * to the mapper.
+     */
+    @NotNull
+    private final ObjectMapper _objectMapper;
+
+    public JsonCacheEntryCodec()
+    {
+        this(null);
+    }
+
+    /**
+     * @param objectMapper {@link ObjectMapper} instance for serializing cache entries
+     */
+    public JsonCacheEntryCodec( @Nullable ObjectMapper objectMapper )
+    {
+        _objectMapper = objectMapper != null ? objectMapper : new ObjectMapper();
+
+        _objectMapper.registerModule(new CacheSerializationModule());
+    }
+
+    @NotNull
+    @Override
+    public byte[] encode( @NotNull CacheEntry cacheEntry )
+    {
+        try
+        {
+            return _objectMapper.writeValueAsBytes(cacheEntry);
+        }
+        catch( JsonProcessingException e )
+        {
+            throw new IllegalStateException("Error serializing object", e);
+        }
+    }
+
+    @NotNull
+    @Override
+    public CacheEntry decode( @NotNull byte[] bytes )
+            throws IOException
+    {
+        return _objectMapper.readValue(bytes, CacheEntry.class);
+    }
+}
@@ -0,0 +1,82 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.ws.rs.core.MediaType;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Memoized parsing of the media types stored in variant indexes. A service produces a handful of
+ * media types, so each is parsed once rather than on every lookup.
+ */
+final class MediaTypes {
+
+    /**
+     * Bound on the memo table, in case of unexpectedly varied media types (e.g. parameters).
+     */
+    static final int MAX_MEMOIZED = 256;
+
+    /**
+     * Lua function matching {@link MediaType#isCompatible(MediaType)}: `compatible(mediaType,
+     * acceptType, acceptSubtype)`, where the accept type and subtype are lower case.
+     */
+    static final String LUA_COMPATIBLE =
+            "local function compatible(mediaType, acceptType, acceptSubtype)\n" +
+            "  local t, st = string.match(string.lower(mediaType), '^%s*([^/%s;]+)/([^%s;]+)')\n" +
+            "  if not t then return false end\n" +
+            "  if acceptType == '*' or t == '*' then return true end\n" +
+            "  if acceptType ~= t then return false end\n" +
+            "  return acceptSubtype == '*' or st == '*' or acceptSubtype == st\n" +
+            "end\n";
+
+    private static final ConcurrentMap<String, MediaType> PARSED = new ConcurrentHashMap<String, MediaType>();
+
+    private MediaTypes()
+    {
+    }
+
+    /**
+     * @return the parsed media type, or null when it cannot be parsed
+     */
+    @Nullable
+    static MediaType valueOf( @NotNull String mediaType )
+    {
+        MediaType parsed = PARSED.get(mediaType);
+        if( parsed != null )
+        {
+            return parsed;
+        }
+
+        try
+        {
+            parsed = MediaType.valueOf(mediaType);
+        }
+        catch( IllegalArgumentException e )
+        {
+            return null;
+        }
+        if( PARSED.size() < MAX_MEMOIZED )
+        {
+            PARSED.putIfAbsent(mediaType, parsed);
+        }
+        return parsed;
+    }
+}
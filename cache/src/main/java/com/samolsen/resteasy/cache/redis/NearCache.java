@@ -0,0 +1,420 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Pool;
+import redis.clients.util.SafeEncoder;
+
+import javax.ws.rs.core.MediaType;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Bounded, in-process LRU of cache entries, keyed by URI cache key. Each key holds the variants
+ * read from Redis for that URI.
+ *
+ * Invalidations are received on a Redis pub/sub channel. The near cache only serves entries while
+ * that subscription is established; when it drops, the near cache is emptied and bypassed until
+ * the subscription is restored.
+ *
+ * @see RedisCacheConfig#setNearCacheMaxBytes(long)
+ */
+class NearCache {
+
+    /**
+     * Estimated per-entry cost of headers and object overhead, in addition to the entity bytes.
+     */
+    static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    /**
+     * Invalidation message for {@link RedisCache#clear()}. Removals publish the cache key.
+     */
+    private static final byte[] CLEAR_MESSAGE = new byte[0];
+
+    private static final long RESUBSCRIBE_DELAY_MILLIS = 1000;
+
+    /**
+     * Longest {@link #close()} waits for a subscription being made, to end it.
+     */
+    static final long CLOSE_WAIT_MILLIS = 2000;
+
+    @NotNull
+    private final Pool<Jedis> _jedisPool;
+    @NotNull
+    private final byte[] _channel;
+    private final long _maxBytes;
+
+    @NotNull
+    private final LinkedHashMap<String, Variants> _entries =
+            new LinkedHashMap<String, Variants>(16, 0.75f, true);
+    private long _bytes;
+    /**
+     * Incremented on every invalidation. Entries read from Redis are only stored when no
+     * invalidation arrived while they were being read.
+     */
+    private long _epoch;
+
+    private volatile boolean _subscribed;
+    private volatile boolean _closed;
+    @Nullable
+    private volatile Subscriber _subscriber;
+    @Nullable
+    private Thread _thread;
+
+    NearCache( @NotNull Pool<Jedis> jedisPool,
+               @NotNull String channel,
+               long maxBytes )
+    {
+        _jedisPool = jedisPool;
+        _channel = SafeEncoder.encode(channel);
+        _maxBytes = maxBytes;
+    }
+
+    void start()
+    {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                subscribe();
+            }
+        }, "redis-cache-invalidation");
+        thread.setDaemon(true);
+        thread.start();
+        _thread = thread;
+    }
+
+    void close()
+    {
+        _closed = true;
+        Subscriber subscriber = _subscriber;
+        if( subscriber != null )
+        {
+            // an interrupt does not unblock the subscriber's socket read, so its subscription is
+            // ended once made. Otherwise the thread and its connection would be left behind.
+            try
+            {
+                subscriber._settled.await(CLOSE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            if( subscriber.isSubscribed() )
+            {
+                try
+                {
+                    subscriber.unsubscribe();
+                }
+                catch( JedisException e )
+                {
+                    // connection lost, which also ends the subscription
+                }
+            }
+        }
+        Thread thread = _thread;
+        if( thread != null )
+        {
+            thread.interrupt();
+        }
+        invalidateAll();
+    }
+
+    boolean isSubscribed()
+    {
+        return _subscribed;
+    }
+
+    /**
+     * Enables the near cache once invalidations are being received.
+     */
+    void subscribed()
+    {
+        // invalidations may have been missed while unsubscribed
+        invalidateAll();
+        _subscribed = true;
+    }
+
+    /**
+     * @return the most preferred unexpired variant, or null
+     */
+    @Nullable
+    synchronized CacheEntry get( @NotNull String key,
+                                 @NotNull Acceptable acceptable )
+    {
+        if( !_subscribed )
+        {
+            return null;
+        }
+        Variants variants = _entries.get(key);
+        if( variants == null )
+        {
+            return null;
+        }
+        for( int i : acceptable.rank(variants._mediaTypes) )
+        {
+            CacheEntry entry = variants._entries.get(i);
+            if( !entry.isExpired() )
+            {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return token to pass to {@link #put(String, List, long)} for entries about to be read
+     */
+    synchronized long epoch()
+    {
+        return _epoch;
+    }
+
+    /**
+     * Stores the variants read for a key, unless an invalidation arrived since `epoch`.
+     */
+    synchronized void put( @NotNull String key,
+                           @NotNull List<CacheEntry> entries,
+                           long epoch )
+    {
+        if( !_subscribed || epoch != _epoch || entries.isEmpty() )
+        {
+            return;
+        }
+
+        Variants variants = new Variants(entries);
+        if( variants._bytes > _maxBytes )
+        {
+            return;
+        }
+
+        Variants previous = _entries.put(key, variants);
+        if( previous != null )
+        {
+            _bytes -= previous._bytes;
+        }
+        _bytes += variants._bytes;
+
+        Iterator<Variants> eldest = _entries.values().iterator();
+        while( _bytes > _maxBytes && eldest.hasNext() )
+        {
+            _bytes -= eldest.next()._bytes;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Drops a key from this node only.
+     */
+    synchronized void invalidate( @NotNull String key )
+    {
+        _epoch++;
+        Variants previous = _entries.remove(key);
+        if( previous != null )
+        {
+            _bytes -= previous._bytes;
+        }
+    }
+
+    /**
+     * Drops all keys from this node only.
+     */
+    synchronized void invalidateAll()
+    {
+        _epoch++;
+        _entries.clear();
+        _bytes = 0;
+    }
+
+    synchronized long size()
+    {
+        return _bytes;
+    }
+
+    /**
+     * Drops a key from this node, and publishes the removal to other nodes.
+     */
+    void publishInvalidate( @NotNull Pipeline pipeline,
+                            @NotNull String key )
+    {
+        invalidate(key);
+        pipeline.publish(_channel, SafeEncoder.encode(key));
+    }
+
+    /**
+     * Drops keys from this node, and publishes the removals to other nodes.
+     */
+    void publishInvalidate( @NotNull List<String> keys )
+    {
+        Jedis jedis = null;
+        try
+        {
+            jedis = _jedisPool.getResource();
+            Pipeline pipeline = jedis.pipelined();
+            for( String key : keys )
+            {
+                publishInvalidate(pipeline, key);
+            }
+            pipeline.sync();
+        }
+        finally
+        {
+            if( jedis != null )
+            {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * Empties this node's near cache, and publishes the clear to other nodes.
+     */
+    void publishInvalidateAll()
+    {
+        invalidateAll();
+        Jedis jedis = null;
+        try
+        {
+            jedis = _jedisPool.getResource();
+            jedis.publish(_channel, CLEAR_MESSAGE);
+        }
+        finally
+        {
+            if( jedis != null )
+            {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * @return whether invalidations may be published through connections from the pool
+     */
+    boolean publishesOn( @NotNull Pool<Jedis> pool )
+    {
+        return pool == _jedisPool;
+    }
+
+    private void subscribe()
+    {
+        while( !_closed )
+        {
+            Subscriber subscriber = new Subscriber();
+            _subscriber = subscriber;
+            if( _closed )
+            {
+                // close() may not have seen this subscriber
+                return;
+            }
+
+            Jedis jedis = null;
+            try
+            {
+                jedis = _jedisPool.getResource();
+                jedis.subscribe(subscriber, _channel);
+            }
+            catch( JedisException e )
+            {
+                // connection lost, or Redis unavailable. Retried below.
+            }
+            finally
+            {
+                subscriber._settled.countDown();
+                _subscribed = false;
+                invalidateAll();
+                if( jedis != null )
+                {
+                    jedis.close();
+                }
+            }
+
+            if( !_closed )
+            {
+                try
+                {
+                    Thread.sleep(RESUBSCRIBE_DELAY_MILLIS);
+                }
+                catch( InterruptedException e )
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    private class Subscriber extends BinaryJedisPubSub {
+
+        /**
+         * Counted down once subscribed, or once the attempt to subscribe has ended
+         */
+        final CountDownLatch _settled = new CountDownLatch(1);
+
+        @Override
+        public void onSubscribe( byte[] channel,
+                                 int subscribedChannels )
+        {
+            subscribed();
+            _settled.countDown();
+        }
+
+        @Override
+        public void onMessage( byte[] channel,
+                               byte[] message )
+        {
+            if( message.length == 0 )
+            {
+                invalidateAll();
+            }
+            else
+            {
+                invalidate(SafeEncoder.encode(message));
+            }
+        }
+    }
+
+    private static class Variants {
+
+        @NotNull
+        final List<CacheEntry> _entries;
+        @NotNull
+        final List<MediaType> _mediaTypes;
+        final long _bytes;
+
+        Variants( @NotNull List<CacheEntry> entries )
+        {
+            _entries = new ArrayList<CacheEntry>(entries);
+            _mediaTypes = new ArrayList<MediaType>(entries.size());
+            long bytes = 0;
+            for( CacheEntry entry : _entries )
+            {
+                _mediaTypes.add(entry.getMediaType());
+                bytes += entry.getCached().length + ENTRY_OVERHEAD_BYTES;
+            }
+            _bytes = bytes;
+        }
+    }
+}
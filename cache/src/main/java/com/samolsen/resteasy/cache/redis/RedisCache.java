@@ -1,19 +1,29 @@
 package com.samolsen.resteasy.cache.redis;
 
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.jboss.resteasy.plugins.cache.server.ServerCache;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import redis.clients.jedis.*;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.Pool;
+import redis.clients.util.SafeEncoder;
 
 import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -39,29 +49,58 @@ import java.util.concurrent.TimeUnit;
  *
  * @see {https://github.com/xetorthio/jedis}
  */
-public class RedisCache implements ServerCache {
+public class RedisCache implements ServerCache, Closeable {
 
     static final String KEY_DELIMITER = ":";
 
     /**
-     * Caller provided {@link JedisPool}
+     * Pub/sub channel for near cache invalidations, under the cache namespace.
+     */
+    static final String INVALIDATION_CHANNEL = "resteasy-cache:invalidate";
+
+    /**
+     * Generation counter key, under the cache namespace.
+     */
+    static final String GENERATION_KEY = "resteasy-cache:generation";
+
+    /**
+     * Prefix of the shared admission sketch keys, under the cache namespace. Hash tagged, so every
+     * window lands in the same cluster slot.
+     */
+    static final String ADMISSION_KEY = "{resteasy-cache:admission}";
+
+    /**
+     * Prefix of deduplicated entity body keys, under the cache namespace.
+     *
+     * @see RedisCacheConfig#setDeduplicationThresholdBytes(int)
+     */
+    static final String BODY_KEY_PREFIX = "resteasy-cache:body:";
+
+    /**
+     * Most removals sent in one pipeline by {@link #removeAll(Collection)}.
+     */
+    static final int REMOVE_BATCH_SIZE = 1000;
+
+    /**
+     * Redis node, or nodes, holding the cache. A single caller provided {@link JedisPool}, unless
+     * constructed by a subclass.
      */
     @NotNull
-    protected final JedisPool _jedisPool;
+    final RedisNodes _nodes;
     /**
      * Namespace for cache keys. When not null, appended to the beginning of each key.
      */
     @Nullable
     protected final String _namespace;
     /**
-     * Cache entries are serialized using a Jackson {@link ObjectMapper}. The object mapper instance
-     * may be provided by the caller. Note: additional JSON serializers/deserializers are added
-     * to the mapper.
+     * Cache entries are converted to bytes by a {@link CacheEntryCodec}, and stored through the
+     * binary Jedis commands.
      *
-     * @see {@link CacheSerializationModule}
+     * @see BinaryCacheEntryCodec
+     * @see JsonCacheEntryCodec
      */
     @NotNull
-    protected final ObjectMapper _objectMapper;
+    protected final CacheEntryCodec _codec;
     /**
      * Cache responses are indexed by URI and content type. To support wildcard `Accepts:`,
      * references to all cached responses per-URI are stored in a set. This set is given an
@@ -70,6 +109,79 @@ public class RedisCache implements ServerCache {
      * @see {@link RedisCache#add(String, MediaType, CacheControl, MultivaluedMap, byte[], String)}
      */
     protected final int _contentTypeSetExpirationSeconds = (int) TimeUnit.DAYS.toSeconds(1);
+    /**
+     * Optional in-process cache in front of Redis.
+     *
+     * @see RedisCacheConfig#setNearCacheMaxBytes(long)
+     */
+    @Nullable
+    final NearCache _nearCache;
+    /**
+     * @see RedisCacheConfig#setStorageLayout(StorageLayout)
+     */
+    @NotNull
+    final VariantStore _variantStore;
+    /**
+     * @see RedisCacheConfig#setVariantIndexMaxUris(int)
+     */
+    @Nullable
+    final VariantIndex _variantIndex;
+    /**
+     * @see RedisCacheConfig#setWriteBehindQueueCapacity(int)
+     */
+    @Nullable
+    final WriteBehindQueue _writeBehindQueue;
+    /**
+     * @see RedisCacheConfig#setStampedeLeaseMillis(long)
+     */
+    @Nullable
+    final StampedeLease _stampedeLease;
+    /**
+     * @see RedisCacheConfig#setEarlyExpirationBeta(double)
+     * @see RedisCacheConfig#setTtlJitterSeconds(int)
+     */
+    @Nullable
+    final ExpirySpread _expirySpread;
+    /**
+     * @see RedisCacheConfig#setGenerationalClear(boolean)
+     */
+    @Nullable
+    final CacheGeneration _generation;
+    @NotNull
+    final List<GenerationReaper> _generationReapers = new ArrayList<GenerationReaper>();
+    /**
+     * @see RedisCacheConfig#setReadReplicas(List)
+     * @see RedisCacheConfig#setReadReplicaSentinels(String, java.util.Set)
+     */
+    @Nullable
+    final ReplicaReads _replicaReads;
+    /**
+     * @see RedisCacheConfig#setMaxEntityBytes(int)
+     */
+    final int _maxEntityBytes;
+    /**
+     * @see RedisCacheConfig#setAdmissionMinFrequency(int)
+     */
+    @Nullable
+    final AdmissionFilter _admissionFilter;
+    /**
+     * @see RedisCacheConfig#setMetricsListener(CacheMetricsListener)
+     */
+    @NotNull
+    final CacheMetricsListener _metrics;
+    /**
+     * @see RedisCacheConfig#setCircuitBreakerFailureThreshold(int)
+     */
+    @Nullable
+    final CircuitBreaker _circuitBreaker;
+    /**
+     * Budgets of the operations which have one, in milliseconds.
+     *
+     * @see RedisCacheConfig#setLatencyBudgetMillis(CacheOperation, int)
+     */
+    @NotNull
+    private final Map<CacheOperation, Integer> _latencyBudgetMillis = new EnumMap<CacheOperation, Integer>(CacheOperation.class);
+    private final long _writeBehindShutdownTimeoutMillis;
 
     /**
      * @param jedisPool pool for obtaining a Redis client
@@ -86,10 +198,12 @@ public class RedisCache implements ServerCache {
     public RedisCache( @NotNull JedisPool jedisPool,
                        @Nullable String namespace )
     {
-        this(jedisPool, namespace, null);
+        this(jedisPool, namespace, new BinaryCacheEntryCodec());
     }
 
     /**
+     * Stores entries as JSON, using {@link JsonCacheEntryCodec}.
+     *
      * @param jedisPool    pool for obtaining a Redis client
      * @param namespace    namespace for cache keys. When not null, appended to the beginning of each key
      * @param objectMapper {@link ObjectMapper} instance for serializing cache entries
@@ -98,188 +212,1333 @@ public class RedisCache implements ServerCache {
                        @Nullable String namespace,
                        @Nullable ObjectMapper objectMapper )
     {
-        _jedisPool = jedisPool;
-        _namespace = namespace;
-        _objectMapper = objectMapper != null ? objectMapper : new ObjectMapper();
+        this(jedisPool, namespace, new JsonCacheEntryCodec(objectMapper));
+    }
+
+    /**
+     * @param jedisPool pool for obtaining a Redis client
+     * @param namespace namespace for cache keys. When not null, appended to the beginning of each key
+     * @param codec     {@link CacheEntryCodec} for converting cache entries to and from bytes
+     */
+    public RedisCache( @NotNull JedisPool jedisPool,
+                       @Nullable String namespace,
+                       @NotNull CacheEntryCodec codec )
+    {
+        this(jedisPool, namespace, codec, new RedisCacheConfig());
+    }
 
-        _objectMapper.registerModule(new CacheSerializationModule());
+    /**
+     * @param jedisPool pool for obtaining a Redis client
+     * @param namespace namespace for cache keys. When not null, appended to the beginning of each key
+     * @param codec     {@link CacheEntryCodec} for converting cache entries to and from bytes
+     * @param config    optional cache features
+     */
+    public RedisCache( @NotNull JedisPool jedisPool,
+                       @Nullable String namespace,
+                       @NotNull CacheEntryCodec codec,
+                       @NotNull RedisCacheConfig config )
+    {
+        this((Pool<Jedis>) jedisPool, namespace, codec, config);
     }
 
-    @Nullable
-    @Override
-    public Entry get( @NotNull String uri,
-                      @NotNull MediaType accept )
+    /**
+     * @param jedisPool pool for obtaining a Redis client, such as a {@link JedisSentinelPool}
+     * @param namespace namespace for cache keys. When not null, appended to the beginning of each key
+     * @param codec     {@link CacheEntryCodec} for converting cache entries to and from bytes
+     * @param config    optional cache features
+     */
+    public RedisCache( @NotNull Pool<Jedis> jedisPool,
+                       @Nullable String namespace,
+                       @NotNull CacheEntryCodec codec,
+                       @NotNull RedisCacheConfig config )
     {
-        Jedis jedis = null;
-        try
+        this(new SingleNode(jedisPool), namespace, codec, config);
+    }
+
+    /**
+     * @param nodes     Redis nodes holding the cache
+     * @param namespace namespace for cache keys. When not null, appended to the beginning of each key
+     * @param codec     {@link CacheEntryCodec} for converting cache entries to and from bytes
+     * @param config    optional cache features
+     */
+    RedisCache( @NotNull RedisNodes nodes,
+                @Nullable String namespace,
+                @NotNull CacheEntryCodec codec,
+                @NotNull RedisCacheConfig config )
+    {
+        boolean readReplicas = !config.getReadReplicas().isEmpty() || config.getReadReplicaSentinelMaster() != null;
+        if( readReplicas && !( nodes instanceof SingleNode ) )
+        {
+            throw new IllegalArgumentException("Read replicas require a single primary");
+        }
+
+        _nodes = nodes;
+        _namespace = namespace;
+        _codec = codec;
+        _metrics = config.getMetricsListener();
+        _circuitBreaker = config.getCircuitBreakerFailureThreshold() > 0
+                ? new CircuitBreaker(config.getCircuitBreakerFailureThreshold(),
+                                     config.getCircuitBreakerOpenMillis(),
+                                     _metrics)
+                : null;
+        for( CacheOperation operation : CacheOperation.values() )
         {
-            jedis = _jedisPool.getResource();
-            Set<String> entries = jedis.smembers(toCacheKey(uri));
-            if( entries == null )
+            if( config.getLatencyBudgetMillis(operation) > 0 )
             {
-                return null;
+                _latencyBudgetMillis.put(operation, config.getLatencyBudgetMillis(operation));
             }
+        }
 
-            for( String entry : entries )
+        if( config.isGenerationalClear() )
+        {
+            String generationKey = toNamespacedKey(GENERATION_KEY);
+            _generation = new CacheGeneration(nodes.poolFor(generationKey), generationKey);
+            _generation.start();
+        }
+        else
+        {
+            _generation = null;
+        }
+        if( _generation != null && config.getGenerationReaperKeysPerSecond() > 0 )
+        {
+            if( namespace == null )
             {
-                String cacheEntryJSON = jedis.get(entry);
-                if( cacheEntryJSON == null )
-                {
-                    continue;
-                }
+                throw new IllegalArgumentException("The generation reaper requires a namespace");
+            }
+            for( Pool<Jedis> pool : nodes.primaries() )
+            {
+                GenerationReaper reaper = new GenerationReaper(pool, _generation, namespace + KEY_DELIMITER,
+                        config.getGenerationReaperKeysPerSecond());
+                reaper.start();
+                _generationReapers.add(reaper);
+            }
+        }
+        if( config.getDeduplicationThresholdBytes() > 0 && nodes instanceof ClusterNodes )
+        {
+            throw new IllegalArgumentException("Deduplication is not supported on Redis Cluster");
+        }
+        VariantStore variantStore = config.getStorageLayout() == StorageLayout.HASH
+                ? new HashVariantStore()
+                : new SetVariantStore(_contentTypeSetExpirationSeconds);
+        if( config.getDeduplicationThresholdBytes() > 0 )
+        {
+            variantStore = new DeduplicatedVariantStore(variantStore, toNamespacedKey(BODY_KEY_PREFIX),
+                    config.getDeduplicationThresholdBytes());
+        }
+        _variantStore = config.getChunkThresholdBytes() > 0
+                ? new ChunkedVariantStore(variantStore, config.getChunkThresholdBytes(), config.getChunkSizeBytes())
+                : variantStore;
+        _maxEntityBytes = config.getMaxEntityBytes();
 
-                CacheEntry cacheEntry = asObject(cacheEntryJSON, CacheEntry.class);
-                if( cacheEntry == null )
-                {
-                    continue;
-                }
-                if( accept.isCompatible(cacheEntry.getMediaType()) )
-                {
-                    return cacheEntry;
-                }
+        if( config.getAdmissionMinFrequency() > 1 )
+        {
+            FrequencyCounter counter;
+            if( config.isAdmissionShared() )
+            {
+                String admissionKey = toNamespacedKey(ADMISSION_KEY);
+                counter = new RedisFrequencySketch(nodes.poolFor(admissionKey), admissionKey + KEY_DELIMITER,
+                        config.getAdmissionSketchWidth(), config.getAdmissionWindowSeconds());
             }
-            return null;
+            else
+            {
+                counter = new FrequencySketch(config.getAdmissionSketchWidth());
+            }
+            _admissionFilter = new AdmissionFilter(counter, config.getAdmissionMinFrequency());
         }
-        finally
+        else
         {
-            close(jedis);
+            _admissionFilter = null;
         }
-    }
 
-    @NotNull
-    @Override
-    public Entry add( @NotNull String uri,
-                      @NotNull MediaType mediaType,
-                      @NotNull CacheControl cc,
-                      @NotNull MultivaluedMap<String, Object> headers,
-                      @NotNull byte[] entity,
-                      @Nullable String etag )
-    {
-        String entryName = toCacheKey(uri + KEY_DELIMITER + mediaType.toString());
-        int entryMaxAge = cc.getMaxAge();
-        CacheEntry cacheEntry = new CacheEntry(headers, entity, entryMaxAge, etag, mediaType);
+        if( config.getNearCacheMaxBytes() > 0 )
+        {
+            String channel = toNamespacedKey(INVALIDATION_CHANNEL);
+            _nearCache = new NearCache(nodes.poolFor(channel), channel, config.getNearCacheMaxBytes());
+            _nearCache.start();
+        }
+        else
+        {
+            _nearCache = null;
+        }
+        // the near cache holds every variant already
+        _variantIndex = config.getVariantIndexMaxUris() > 0 && _nearCache == null
+                ? new VariantIndex(config.getVariantIndexMaxUris(), config.getVariantIndexTtlMillis())
+                : null;
 
-        String uriCacheKey = toCacheKey(uri);
-        int uriMaxAge = Math.max(_contentTypeSetExpirationSeconds, entryMaxAge);
+        _stampedeLease = config.getStampedeLeaseMillis() > 0
+                ? new StampedeLease(config.getStampedeLeaseMillis(),
+                                    config.getStampedeWaitMillis(),
+                                    config.getStaleRetentionSeconds())
+                : null;
+        _expirySpread = config.getEarlyExpirationBeta() > 0 || config.getTtlJitterSeconds() > 0
+                ? new ExpirySpread(config.getEarlyExpirationBeta(),
+                                   config.getEarlyExpirationDeltaMillis(),
+                                   config.getTtlJitterSeconds())
+                : null;
 
-        Jedis jedis = null;
-        try
+        if( readReplicas )
         {
-            jedis = _jedisPool.getResource();
-            Pipeline pipeline = jedis.pipelined();
-            pipeline.sadd(uriCacheKey, entryName);
-            pipeline.expire(uriCacheKey, uriMaxAge);
-            pipeline.setex(entryName, entryMaxAge, stringRepresentation(cacheEntry));
-            pipeline.sync();
-            return cacheEntry;
+            Pool<Jedis> primary = nodes.primaries().iterator().next();
+            _replicaReads = config.getReadReplicaSentinelMaster() != null
+                    ? new ReplicaReads(primary,
+                                       config.getReadReplicaSentinelMaster(),
+                                       config.getReadReplicaSentinels(),
+                                       config.getReplicaSelection(),
+                                       config.getReplicaMaxLagSeconds(),
+                                       config.isReplicaFallbackToPrimary())
+                    : new ReplicaReads(primary,
+                                       config.getReadReplicas(),
+                                       config.getReplicaSelection(),
+                                       config.getReplicaMaxLagSeconds(),
+                                       config.isReplicaFallbackToPrimary());
+            _replicaReads.start();
         }
-        finally
+        else
+        {
+            _replicaReads = null;
+        }
+
+        _writeBehindShutdownTimeoutMillis = config.getWriteBehindShutdownTimeoutMillis();
+        if( config.getWriteBehindQueueCapacity() > 0 )
+        {
+            _writeBehindQueue = new WriteBehindQueue(nodes, _variantStore, _nearCache, _stampedeLease,
+                    config.getWriteBehindQueueCapacity(),
+                    config.getWriteBehindOverflowPolicy(),
+                    config.getWriteBehindBatchSize());
+            _writeBehindQueue.start();
+        }
+        else
         {
-            close(jedis);
+            _writeBehindQueue = null;
         }
     }
 
+    /**
+     * Looks up a variant compatible with a single accepted media type. {@link RedisCacheFeature}
+     * passes every accepted media range instead, through {@link #get(String, List)}.
+     */
+    @Nullable
     @Override
-    public void remove( @NotNull String uri )
+    public Entry get( @NotNull String uri,
+                      @NotNull MediaType accept )
     {
-        deletePrefixedKeys(toCacheKey(uri));
+        return get(uri, Collections.singletonList(accept));
     }
 
-    @Override
-    public void clear()
+    /**
+     * Looks up the variant best matching the accepted media ranges: the highest quality (`q`), then
+     * the most specific matching range, then the range listed first.
+     *
+     * @param uri        request URI
+     * @param acceptable accepted media ranges, as sent in `Accept:`. Empty accepts any variant.
+     * @return the most preferred variant, or null on a miss
+     */
+    @Nullable
+    public Entry get( @NotNull final String uri,
+                      @NotNull List<MediaType> acceptable )
     {
-        if( _namespace == null )
+        final Acceptable accept = new Acceptable(acceptable);
+        CacheEntry cacheEntry = guard(CacheOperation.GET, new Guarded<CacheEntry>() {
+            @Override
+            CacheEntry call()
+            {
+                return lookup(uri, accept);
+            }
+
+            @Override
+            CacheEntry failOpen()
+            {
+                return nearCached(uri, accept);
+            }
+        });
+        if( cacheEntry != null )
         {
-            flushDB();
+            _metrics.hit(cacheEntry.getCached().length);
         }
         else
         {
-            deletePrefixedKeys(_namespace);
+            _metrics.miss();
         }
+        return cacheEntry;
     }
 
-    @NotNull
-    private String toCacheKey( @NotNull String key )
+    /**
+     * Looks up the metadata of the variant best matching the accepted media ranges, as chosen by
+     * {@link #get(String, List)}. With the {@link BinaryCacheEntryCodec}, only the fields ahead of
+     * each entity are read from Redis, so a conditional GET or HEAD request does not transfer it.
+     *
+     * Only a fresh variant is returned. Expired variants, and stale serving, are left to
+     * {@link #get(String, List)}, which a miss here is expected to be followed by; so only hits are
+     * recorded, as serving no entity.
+     *
+     * @param uri        request URI
+     * @param acceptable accepted media ranges, as sent in `Accept:`. Empty accepts any variant.
+     * @return the metadata of the most preferred variant, or null when none is fresh
+     */
+    @Nullable
+    public CacheEntryHead getHead( @NotNull final String uri,
+                                   @NotNull List<MediaType> acceptable )
     {
-        return _namespace == null ? key : _namespace + KEY_DELIMITER + key;
+        final Acceptable accept = new Acceptable(acceptable);
+        CacheEntryHead head = guard(CacheOperation.GET, new Guarded<CacheEntryHead>() {
+            @Override
+            CacheEntryHead call()
+            {
+                return lookupHead(uri, accept);
+            }
+
+            @Override
+            CacheEntryHead failOpen()
+            {
+                CacheEntry cacheEntry = nearCached(uri, accept);
+                return cacheEntry != null && isFresh(cacheEntry) ? new CacheEntryHead(cacheEntry) : null;
+            }
+        });
+        if( head != null )
+        {
+            _metrics.hit(0);
+        }
+        return head;
     }
 
     @Nullable
-    protected <T> T asObject( String json,
-                              Class<T> clazz )
+    private CacheEntryHead lookupHead( @NotNull String uri,
+                                       @NotNull Acceptable acceptable )
     {
+        String uriCacheKey = toCacheKey(uri);
+        if( _nearCache != null || !( _codec instanceof BinaryCacheEntryCodec ) )
+        {
+            // the near cache already holds the entity, and other codecs cannot be cut to a head
+            CacheEntry cacheEntry = find(uriCacheKey, acceptable);
+            return cacheEntry != null && isFresh(cacheEntry) ? new CacheEntryHead(cacheEntry) : null;
+        }
+
+        List<EncodedVariant> heads;
         try
         {
-            return _objectMapper.readValue(json, clazz);
+            heads = readHeads(uriCacheKey, acceptable.filter());
         }
-        catch( IOException e )
+        catch( JedisRedirectionException e )
         {
-            // TODO: Log something?
-            return null;
+            _nodes.redirected(uriCacheKey);
+            heads = readHeads(uriCacheKey, acceptable.filter());
         }
-    }
 
-    @NotNull
-    protected String stringRepresentation( @NotNull Object o )
-    {
-        try
+        List<MediaType> mediaTypes = new ArrayList<MediaType>(heads.size());
+        for( EncodedVariant head : heads )
         {
-            return _objectMapper.writeValueAsString(o);
+            mediaTypes.add(head._mediaType);
         }
-        catch( JsonProcessingException e )
+        for( int i : acceptable.rank(mediaTypes) )
         {
-            throw new IllegalStateException("Error serializing object", e);
+            CacheEntryHead head;
+            try
+            {
+                head = BinaryCacheEntryCodec.decodeHead(heads.get(i)._encoded);
+            }
+            catch( IOException e )
+            {
+                // not a binary entry, so left to the full lookup to decode or report
+                continue;
+            }
+            if( isFresh(head.cacheEntry()) )
+            {
+                return head;
+            }
         }
+        return null;
     }
 
-    void deletePrefixedKeys( @NotNull String keyMatch )
+    /**
+     * @return the near cached entry, served while Redis is not called
+     */
+    @Nullable
+    private CacheEntry nearCached( @NotNull String uri,
+                                   @NotNull Acceptable acceptable )
     {
-        Jedis jedis = null;
-        try
+        return _nearCache != null ? _nearCache.get(toCacheKey(uri), acceptable) : null;
+    }
+
+    /**
+     * @return whether the entry has not expired, and is not to be regenerated ahead of expiry
+     */
+    private boolean isFresh( @NotNull CacheEntry cacheEntry )
+    {
+        return !cacheEntry.isExpired() && ( _expirySpread == null || !_expirySpread.expireEarly(cacheEntry) );
+    }
+
+    @Nullable
+    private CacheEntry lookup( @NotNull String uri,
+                               @NotNull Acceptable acceptable )
+    {
+        String uriCacheKey = toCacheKey(uri);
+        CacheEntry cacheEntry = find(uriCacheKey, acceptable);
+        if( cacheEntry == null )
+        {
+            return null;
+        }
+
+        if( !cacheEntry.isExpired() )
         {
-            jedis = _jedisPool.getResource();
+            if( _expirySpread == null || !_expirySpread.expireEarly(cacheEntry) )
+            {
+                return cacheEntry;
+            }
+            // regenerate ahead of expiry. With a lease, only its holder misses.
+            if( _stampedeLease == null || acquireLease(_stampedeLease, uriCacheKey) )
+            {
+                return null;
+            }
+            return cacheEntry;
+        }
 
-            ScanParams scanParams = new ScanParams()
-                    .match(keyMatch + "*");
+        return _stampedeLease != null ? awaitRecompute(_stampedeLease, uriCacheKey, acceptable, cacheEntry) : null;
+    }
 
-            String cursor = "0";
-            do
+    /**
+     * @return the most preferred acceptable entry which has not expired, or else the most preferred
+     * expired one
+     */
+    @Nullable
+    private CacheEntry find( @NotNull String uriCacheKey,
+                             @NotNull Acceptable acceptable )
+    {
+        long nearCacheEpoch = 0;
+        if( _nearCache != null )
+        {
+            CacheEntry cacheEntry = _nearCache.get(uriCacheKey, acceptable);
+            if( cacheEntry != null )
             {
-                ScanResult<String> result = jedis.scan(cursor, scanParams);
-                List<String> keys = result.getResult();
-                if( !keys.isEmpty() )
-                {
-                    jedis.del(keys.toArray(new String[keys.size()]));
-                }
-                cursor = result.getStringCursor();
+                return cacheEntry;
             }
-            while( !cursor.equals("0") );
+            nearCacheEpoch = _nearCache.epoch();
         }
-        finally
+
+        long variantIndexEpoch = 0;
+        if( _variantIndex != null )
         {
-            close(jedis);
+            CacheEntry cacheEntry = findIndexed(_variantIndex, uriCacheKey, acceptable);
+            if( cacheEntry != null )
+            {
+                return cacheEntry;
+            }
+            variantIndexEpoch = _variantIndex.epoch();
         }
-    }
 
-    private void flushDB()
-    {
-        Jedis jedis = null;
+        // the near cache and variant index cover every variant of a URI, so all are read when enabled
+        MediaType readAccept = _nearCache != null || _variantIndex != null ? MediaType.WILDCARD_TYPE : acceptable.filter();
+
+        VariantRead<List<EncodedVariant>> variantsRead = variantsRead(uriCacheKey, readAccept);
+        List<EncodedVariant> variants;
         try
         {
-            jedis = _jedisPool.getResource();
-            jedis.flushDB();
+            variants = read(uriCacheKey, variantsRead);
         }
-        finally
+        catch( JedisRedirectionException e )
         {
-            close(jedis);
+            // retried once, with the new location of the key
+            _nodes.redirected(uriCacheKey);
+            variants = read(uriCacheKey, variantsRead);
         }
-    }
+        // a lagging replica may still hold variants just removed on the primary, which would
+        // outlive the invalidation if cached locally
+        boolean cacheLocally = !variantsRead._fromReplica;
 
-    private void close( @Nullable Jedis jedis )
-    {
-        if( jedis != null )
+        List<MediaType> mediaTypes = new ArrayList<MediaType>(variants.size());
+        for( EncodedVariant variant : variants )
         {
-            jedis.close();
+            mediaTypes.add(variant._mediaType);
+        }
+        if( _variantIndex != null && cacheLocally )
+        {
+            _variantIndex.put(uriCacheKey, mediaTypes, variantIndexEpoch);
+        }
+
+        CacheEntry expired = null;
+        if( _nearCache != null )
+        {
+            List<CacheEntry> cacheEntries = decodeVariants(variants);
+            if( cacheLocally )
+            {
+                _nearCache.put(uriCacheKey, cacheEntries, nearCacheEpoch);
+            }
+            List<MediaType> decodedMediaTypes = new ArrayList<MediaType>(cacheEntries.size());
+            for( CacheEntry cacheEntry : cacheEntries )
+            {
+                decodedMediaTypes.add(cacheEntry.getMediaType());
+            }
+            for( int i : acceptable.rank(decodedMediaTypes) )
+            {
+                CacheEntry cacheEntry = cacheEntries.get(i);
+                if( !cacheEntry.isExpired() )
+                {
+                    return cacheEntry;
+                }
+                if( expired == null )
+                {
+                    expired = cacheEntry;
+                }
+            }
+            return expired;
+        }
+
+        // variants are decoded in order of preference, until one has not expired
+        for( int i : acceptable.rank(mediaTypes) )
+        {
+            CacheEntry cacheEntry = decode(variants.get(i)._encoded);
+            if( cacheEntry == null )
+            {
+                continue;
+            }
+            if( !cacheEntry.isExpired() )
+            {
+                return cacheEntry;
+            }
+            if( expired == null )
+            {
+                expired = cacheEntry;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Reads only the preferred variant among those the index lists for the URI.
+     *
+     * @return the variant, or null when the URI is not indexed, or the variant is missing or has
+     * expired and every variant should be read
+     */
+    @Nullable
+    private CacheEntry findIndexed( @NotNull VariantIndex variantIndex,
+                                    @NotNull String uriCacheKey,
+                                    @NotNull Acceptable acceptable )
+    {
+        List<MediaType> mediaTypes = variantIndex.get(uriCacheKey);
+        if( mediaTypes == null )
+        {
+            return null;
+        }
+        int best = acceptable.best(mediaTypes);
+        if( best < 0 )
+        {
+            return null;
+        }
+
+        EncodedVariant variant;
+        try
+        {
+            variant = readVariant(uriCacheKey, mediaTypes.get(best));
+        }
+        catch( JedisRedirectionException e )
+        {
+            _nodes.redirected(uriCacheKey);
+            variant = readVariant(uriCacheKey, mediaTypes.get(best));
+        }
+
+        CacheEntry cacheEntry = variant != null ? decode(variant._encoded) : null;
+        if( cacheEntry == null || cacheEntry.isExpired() )
+        {
+            // the index is out of date, or a less preferred variant may still be fresh
+            variantIndex.invalidate(uriCacheKey);
+            return null;
+        }
+        return cacheEntry;
+    }
+
+    @NotNull
+    private VariantRead<List<EncodedVariant>> variantsRead( @NotNull final String uriCacheKey,
+                                                            @NotNull final MediaType accept )
+    {
+        return new VariantRead<List<EncodedVariant>>() {
+            @Override
+            public List<EncodedVariant> read( @NotNull Jedis jedis )
+            {
+                return _variantStore.read(jedis, uriCacheKey, accept);
+            }
+        };
+    }
+
+    @NotNull
+    private List<EncodedVariant> readHeads( @NotNull final String uriCacheKey,
+                                           @NotNull final MediaType accept )
+    {
+        return read(uriCacheKey, new VariantRead<List<EncodedVariant>>() {
+            @Override
+            public List<EncodedVariant> read( @NotNull Jedis jedis )
+            {
+                return _variantStore.readHeads(jedis, uriCacheKey, accept);
+            }
+        });
+    }
+
+    @Nullable
+    private EncodedVariant readVariant( @NotNull final String uriCacheKey,
+                                        @NotNull final MediaType mediaType )
+    {
+        return read(uriCacheKey, new VariantRead<EncodedVariant>() {
+            @Override
+            public EncodedVariant read( @NotNull Jedis jedis )
+            {
+                return _variantStore.readVariant(jedis, uriCacheKey, mediaType);
+            }
+        });
+    }
+
+    /**
+     * Runs a read on a read replica when one is available, otherwise on the node holding the key.
+     */
+    private <T> T read( @NotNull String uriCacheKey,
+                        @NotNull VariantRead<T> read )
+    {
+        read._fromReplica = false;
+        if( _replicaReads != null )
+        {
+            Pool<Jedis> replica = _replicaReads.select();
+            if( replica != null )
+            {
+                try
+                {
+                    T result = read(replica, read);
+                    read._fromReplica = true;
+                    return result;
+                }
+                catch( JedisException e )
+                {
+                    _replicaReads.failed(replica);
+                    if( !_replicaReads.fallsBackToPrimary() )
+                    {
+                        throw e;
+                    }
+                }
+            }
+        }
+        return read(_nodes.poolFor(uriCacheKey), read);
+    }
+
+    private <T> T read( @NotNull Pool<Jedis> pool,
+                        @NotNull VariantRead<T> read )
+    {
+        Jedis jedis = null;
+        try
+        {
+            jedis = borrow(pool, CacheOperation.GET);
+            long start = System.nanoTime();
+            T result = read.read(jedis);
+            _metrics.roundTrip(CacheOperation.GET, System.nanoTime() - start);
+            return result;
+        }
+        finally
+        {
+            close(jedis, CacheOperation.GET);
+        }
+    }
+
+    private abstract static class VariantRead<T> {
+
+        /**
+         * Whether the last read was served by a read replica, which may lag the primary.
+         */
+        boolean _fromReplica;
+
+        abstract T read( @NotNull Jedis jedis );
+    }
+
+    /**
+     * Called on a miss for an expired entry. The caller which takes the lease gets a miss, and
+     * regenerates the entry. Others are served the stale entry if it is retained, or wait for the
+     * regenerated one.
+     *
+     * @return the entry to serve, or null when the caller should regenerate it
+     */
+    @Nullable
+    private CacheEntry awaitRecompute( @NotNull StampedeLease stampedeLease,
+                                       @NotNull String uriCacheKey,
+                                       @NotNull Acceptable acceptable,
+                                       @NotNull CacheEntry expired )
+    {
+        if( acquireLease(stampedeLease, uriCacheKey) )
+        {
+            return null;
+        }
+
+        CacheEntry stale = stampedeLease.stale(expired);
+        if( stale != null )
+        {
+            return stale;
+        }
+
+        long deadline = System.currentTimeMillis() + stampedeLease.waitMillis();
+        try
+        {
+            long remaining;
+            while( ( remaining = deadline - System.currentTimeMillis() ) > 0 )
+            {
+                Thread.sleep(Math.min(StampedeLease.POLL_MILLIS, remaining));
+                CacheEntry cacheEntry = find(uriCacheKey, acceptable);
+                if( cacheEntry != null && !cacheEntry.isExpired() )
+                {
+                    return cacheEntry;
+                }
+            }
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private boolean acquireLease( @NotNull StampedeLease stampedeLease,
+                                  @NotNull String uriCacheKey )
+    {
+        Jedis jedis = null;
+        try
+        {
+            jedis = borrow(_nodes.poolFor(uriCacheKey), CacheOperation.GET);
+            long start = System.nanoTime();
+            boolean acquired = stampedeLease.tryAcquire(jedis, uriCacheKey);
+            _metrics.roundTrip(CacheOperation.GET, System.nanoTime() - start);
+            return acquired;
+        }
+        finally
+        {
+            close(jedis, CacheOperation.GET);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Entry add( @NotNull String uri,
+                      @NotNull final MediaType mediaType,
+                      @NotNull CacheControl cc,
+                      @NotNull MultivaluedMap<String, Object> headers,
+                      @NotNull byte[] entity,
+                      @Nullable String etag )
+    {
+        // jittered before retention is added, so entries added together expire, and are
+        // regenerated, at different times
+        int entryMaxAge = _expirySpread != null ? _expirySpread.jitterTtl(cc.getMaxAge()) : cc.getMaxAge();
+        CacheEntry cacheEntry = new CacheEntry(headers, entity, entryMaxAge, etag, mediaType);
+        if( _maxEntityBytes > 0 && entity.length > _maxEntityBytes )
+        {
+            _metrics.declined(entity.length);
+            return cacheEntry;
+        }
+        if( _admissionFilter != null && !_admissionFilter.admit(uri) )
+        {
+            _metrics.declined(entity.length);
+            return cacheEntry;
+        }
+        final String uriCacheKey = toCacheKey(uri);
+        long encodeStart = System.nanoTime();
+        final byte[] encoded = _codec.encode(cacheEntry);
+        _metrics.encoded(System.nanoTime() - encodeStart);
+        int ttlSeconds = entryMaxAge;
+        if( _stampedeLease != null )
+        {
+            ttlSeconds += _stampedeLease.retentionSeconds();
+        }
+
+        if( _writeBehindQueue != null )
+        {
+            // the near cache is invalidated once the write lands
+            if( _writeBehindQueue.enqueue(uriCacheKey, mediaType, ttlSeconds, encoded) )
+            {
+                _metrics.added(entity.length);
+            }
+            if( _variantIndex != null )
+            {
+                _variantIndex.invalidate(uriCacheKey);
+            }
+            return cacheEntry;
+        }
+
+        final int writeTtlSeconds = ttlSeconds;
+        final int entityBytes = entity.length;
+        // a write skipped by the circuit breaker is reported as failed open, not added
+        guard(CacheOperation.ADD, new Guarded<Void>() {
+            @Override
+            Void call()
+            {
+                write(uriCacheKey, mediaType, writeTtlSeconds, encoded);
+                _metrics.added(entityBytes);
+                return null;
+            }
+        });
+        return cacheEntry;
+    }
+
+    private void write( @NotNull String uriCacheKey,
+                        @NotNull MediaType mediaType,
+                        int ttlSeconds,
+                        @NotNull byte[] encoded )
+    {
+        try
+        {
+            writeVariant(uriCacheKey, mediaType, ttlSeconds, encoded);
+        }
+        catch( JedisRedirectionException e )
+        {
+            _nodes.redirected(uriCacheKey);
+            writeVariant(uriCacheKey, mediaType, ttlSeconds, encoded);
+        }
+
+        if( _nearCache != null )
+        {
+            _nearCache.invalidate(uriCacheKey);
+        }
+        if( _variantIndex != null )
+        {
+            _variantIndex.added(uriCacheKey, mediaType);
+        }
+    }
+
+    private void writeVariant( @NotNull String uriCacheKey,
+                               @NotNull MediaType mediaType,
+                               int ttlSeconds,
+                               @NotNull byte[] encoded )
+    {
+        Jedis jedis = null;
+        try
+        {
+            jedis = borrow(_nodes.poolFor(uriCacheKey), CacheOperation.ADD);
+            long start = System.nanoTime();
+            ScriptPipeline pipeline = new ScriptPipeline(jedis);
+            _variantStore.write(pipeline, uriCacheKey, mediaType, ttlSeconds, encoded);
+            if( _stampedeLease != null )
+            {
+                _stampedeLease.release(pipeline, uriCacheKey);
+            }
+            pipeline.sync();
+            _metrics.roundTrip(CacheOperation.ADD, System.nanoTime() - start);
+        }
+        finally
+        {
+            close(jedis, CacheOperation.ADD);
+        }
+    }
+
+    @Override
+    public void remove( @NotNull String uri )
+    {
+        removeAll(Collections.singletonList(uri));
+    }
+
+    /**
+     * Removes many URIs, sending up to {@link #REMOVE_BATCH_SIZE} removals per round trip. URIs held
+     * on different nodes are removed in parallel.
+     *
+     * @param uris URIs to remove
+     */
+    public void removeAll( @NotNull Collection<String> uris )
+    {
+        final Map<Pool<Jedis>, List<String>> byNode = new LinkedHashMap<Pool<Jedis>, List<String>>();
+        for( String uri : uris )
+        {
+            String uriCacheKey = toCacheKey(uri);
+            Pool<Jedis> pool = _nodes.poolFor(uriCacheKey);
+            List<String> keys = byNode.get(pool);
+            if( keys == null )
+            {
+                keys = new ArrayList<String>();
+                byNode.put(pool, keys);
+            }
+            keys.add(uriCacheKey);
+        }
+        if( _writeBehindQueue != null )
+        {
+            // a queued write would bring the entry back
+            for( List<String> uriCacheKeys : byNode.values() )
+            {
+                _writeBehindQueue.discard(uriCacheKeys);
+            }
+        }
+
+        guard(CacheOperation.REMOVE, new Guarded<Void>() {
+            @Override
+            Void call()
+            {
+                FanOut.forEachPool(byNode.keySet(), new FanOut.PoolTask() {
+                    @Override
+                    public void run( @NotNull Pool<Jedis> pool )
+                    {
+                        removeAll(pool, byNode.get(pool));
+                    }
+                });
+                return null;
+            }
+
+            @Override
+            Void failOpen()
+            {
+                // entries left in Redis expire; the local copies go at once
+                for( List<String> uriCacheKeys : byNode.values() )
+                {
+                    invalidateLocally(uriCacheKeys);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @param pool         node holding the keys
+     * @param uriCacheKeys keys of URIs to remove
+     */
+    private void removeAll( @NotNull Pool<Jedis> pool,
+                            @NotNull List<String> uriCacheKeys )
+    {
+        // invalidations are pipelined on this connection when this node carries the channel
+        boolean publish = _nearCache != null && _nearCache.publishesOn(pool);
+
+        Jedis jedis = null;
+        try
+        {
+            jedis = borrow(pool, CacheOperation.REMOVE);
+            long start = System.nanoTime();
+            ScriptPipeline pipeline = new ScriptPipeline(jedis);
+            // A removal script missing from Redis is only re-run by sync, so each batch is published
+            // with the next, once its removal has succeeded. Otherwise a peer could re-read the
+            // entries between the invalidation and the removal.
+            int queued = 0;
+            int published = 0;
+            for( String uriCacheKey : uriCacheKeys )
+            {
+                _variantStore.remove(pipeline, uriCacheKey);
+                if( ++queued % REMOVE_BATCH_SIZE == 0 )
+                {
+                    pipeline.sync();
+                    if( publish )
+                    {
+                        publishInvalidate(pipeline, uriCacheKeys.subList(published, queued));
+                        published = queued;
+                    }
+                }
+            }
+            pipeline.sync();
+            if( publish && published < queued )
+            {
+                publishInvalidate(pipeline, uriCacheKeys.subList(published, queued));
+                pipeline.sync();
+            }
+            _metrics.roundTrip(CacheOperation.REMOVE, System.nanoTime() - start);
+        }
+        catch( JedisRedirectionException e )
+        {
+            _nodes.redirected(uriCacheKeys.get(0));
+            throw e;
+        }
+        finally
+        {
+            close(jedis, CacheOperation.REMOVE);
+        }
+
+        if( _nearCache != null && !publish )
+        {
+            _nearCache.publishInvalidate(uriCacheKeys);
+        }
+        if( _variantIndex != null )
+        {
+            for( String uriCacheKey : uriCacheKeys )
+            {
+                _variantIndex.invalidate(uriCacheKey);
+            }
+        }
+    }
+
+    /**
+     * Queues the invalidation of removed keys, for the node carrying the near cache channel.
+     */
+    private void publishInvalidate( @NotNull ScriptPipeline pipeline,
+                                    @NotNull List<String> uriCacheKeys )
+    {
+        for( String uriCacheKey : uriCacheKeys )
+        {
+            _nearCache.publishInvalidate(pipeline, uriCacheKey);
+        }
+    }
+
+    private void invalidateLocally( @NotNull List<String> uriCacheKeys )
+    {
+        for( String uriCacheKey : uriCacheKeys )
+        {
+            if( _nearCache != null )
+            {
+                _nearCache.invalidate(uriCacheKey);
+            }
+            if( _variantIndex != null )
+            {
+                _variantIndex.invalidate(uriCacheKey);
+            }
+        }
+    }
+
+    /**
+     * Deletes all entries. With {@link RedisCacheConfig#setGenerationalClear(boolean)}, starts a new
+     * generation instead, leaving earlier entries to expire.
+     */
+    @Override
+    public void clear()
+    {
+        if( _writeBehindQueue != null )
+        {
+            _writeBehindQueue.discardAll();
+        }
+        guard(CacheOperation.CLEAR, new Guarded<Void>() {
+            @Override
+            Void call()
+            {
+                clearNodes();
+                return null;
+            }
+
+            @Override
+            Void failOpen()
+            {
+                if( _nearCache != null )
+                {
+                    _nearCache.invalidateAll();
+                }
+                if( _variantIndex != null )
+                {
+                    _variantIndex.invalidateAll();
+                }
+                return null;
+            }
+        });
+    }
+
+    private void clearNodes()
+    {
+        long start = System.nanoTime();
+        if( _generation != null )
+        {
+            _generation.increment();
+        }
+        else if( _namespace == null )
+        {
+            flushDB();
+        }
+        else
+        {
+            deletePrefixedKeys(_namespace);
+        }
+        _metrics.roundTrip(CacheOperation.CLEAR, System.nanoTime() - start);
+
+        if( _nearCache != null )
+        {
+            _nearCache.publishInvalidateAll();
+        }
+        if( _variantIndex != null )
+        {
+            _variantIndex.invalidateAll();
+        }
+    }
+
+    /**
+     * @return the write-behind queue, for its counters. Null when writes are synchronous.
+     */
+    @Nullable
+    public WriteBehindQueue getWriteBehindQueue()
+    {
+        return _writeBehindQueue;
+    }
+
+    /**
+     * @return the admission filter, for its counters. Null when every entry is written.
+     */
+    @Nullable
+    public AdmissionFilter getAdmissionFilter()
+    {
+        return _admissionFilter;
+    }
+
+    /**
+     * Flushes queued writes and stops background threads, when enabled. The {@link JedisPool} is
+     * owned by the caller, and is not closed.
+     */
+    @Override
+    public void close()
+    {
+        if( _writeBehindQueue != null )
+        {
+            _writeBehindQueue.close(_writeBehindShutdownTimeoutMillis);
+        }
+        for( GenerationReaper reaper : _generationReapers )
+        {
+            reaper.close();
+        }
+        if( _replicaReads != null )
+        {
+            _replicaReads.close();
+        }
+        if( _generation != null )
+        {
+            _generation.close();
+        }
+        if( _nearCache != null )
+        {
+            _nearCache.close();
+        }
+    }
+
+    /**
+     * @param variants variants read from the {@link VariantStore}
+     * @return the entries which could be decoded
+     */
+    @NotNull
+    List<CacheEntry> decodeVariants( @NotNull List<EncodedVariant> variants )
+    {
+        List<CacheEntry> cacheEntries = new ArrayList<CacheEntry>(variants.size());
+        for( EncodedVariant variant : variants )
+        {
+            CacheEntry cacheEntry = decode(variant._encoded);
+            if( cacheEntry != null )
+            {
+                cacheEntries.add(cacheEntry);
+            }
+        }
+        return cacheEntries;
+    }
+
+    /**
+     * @return the key of a URI, which the keys of its variants, lease and chunks extend. Routed as
+     * one by the {@link RedisNodes}, e.g. in a single cluster slot.
+     */
+    @NotNull
+    String toCacheKey( @NotNull String uri )
+    {
+        String uriKey = _nodes.uriKey(uri);
+        return toNamespacedKey(_generation == null ? uriKey : _generation.keyPrefix() + uriKey);
+    }
+
+    @NotNull
+    private String toNamespacedKey( @NotNull String key )
+    {
+        return _namespace == null ? key : _namespace + KEY_DELIMITER + key;
+    }
+
+    @NotNull
+    static byte[] encodeKey( @NotNull String key )
+    {
+        return SafeEncoder.encode(key);
+    }
+
+    @Nullable
+    protected CacheEntry decode( @NotNull byte[] encoded )
+    {
+        long start = System.nanoTime();
+        try
+        {
+            return _codec.decode(encoded);
+        }
+        catch( IOException e )
+        {
+            // treated as a miss, and overwritten when the entry is regenerated
+            _metrics.decodeFailed(e);
+            return null;
+        }
+        finally
+        {
+            _metrics.decoded(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Deletes keys matching a prefix from every node, scanning the nodes in parallel.
+     */
+    void deletePrefixedKeys( @NotNull final String keyMatch )
+    {
+        FanOut.forEach(_nodes.primaries(), new FanOut.NodeTask() {
+            @Override
+            public void run( @NotNull Jedis jedis )
+            {
+                limit(jedis, CacheOperation.CLEAR, System.nanoTime());
+                try
+                {
+                    deletePrefixedKeys(jedis, keyMatch);
+                }
+                finally
+                {
+                    unlimit(jedis, CacheOperation.CLEAR);
+                }
+            }
+        });
+    }
+
+    private static void deletePrefixedKeys( @NotNull Jedis jedis,
+                                            @NotNull String keyMatch )
+    {
+        ScanParams scanParams = new ScanParams()
+                .match(keyMatch + "*");
+
+        String cursor = "0";
+        do
+        {
+            ScanResult<String> result = jedis.scan(cursor, scanParams);
+            List<String> keys = result.getResult();
+            if( !keys.isEmpty() )
+            {
+                // one key per DEL, as keys on a cluster node are in different slots
+                Pipeline pipeline = jedis.pipelined();
+                for( String key : keys )
+                {
+                    pipeline.del(key);
+                }
+                pipeline.sync();
+            }
+            cursor = result.getStringCursor();
+        }
+        while( !cursor.equals("0") );
+    }
+
+    private void flushDB()
+    {
+        FanOut.forEach(_nodes.primaries(), new FanOut.NodeTask() {
+            @Override
+            public void run( @NotNull Jedis jedis )
+            {
+                limit(jedis, CacheOperation.CLEAR, System.nanoTime());
+                try
+                {
+                    jedis.flushDB();
+                }
+                finally
+                {
+                    unlimit(jedis, CacheOperation.CLEAR);
+                }
+            }
+        });
+    }
+
+    /**
+     * A Redis operation, failing open when the circuit breaker is enabled.
+     */
+    private abstract static class Guarded<T> {
+
+        abstract T call();
+
+        /**
+         * @return the result when Redis is not called, or fails
+         */
+        T failOpen()
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Runs the operation unless the circuit breaker is open, reporting its outcome to the breaker.
+     * Without a breaker, it is run as is, and failures are thrown.
+     */
+    private <T> T guard( @NotNull CacheOperation operation,
+                         @NotNull Guarded<T> guarded )
+    {
+        if( _circuitBreaker == null )
+        {
+            return guarded.call();
+        }
+        if( !_circuitBreaker.allow() )
+        {
+            _metrics.failedOpen(operation);
+            return guarded.failOpen();
+        }
+
+        T result;
+        try
+        {
+            result = guarded.call();
+        }
+        catch( JedisException e )
+        {
+            _circuitBreaker.failed();
+            _metrics.failedOpen(operation);
+            return guarded.failOpen();
+        }
+        _circuitBreaker.succeeded();
+        return result;
+    }
+
+    /**
+     * Borrows a connection, bounded by the operation's latency budget from the start of the borrow.
+     * A pool with no connection free within the budget fails the borrow, and so counts against the
+     * circuit breaker.
+     *
+     * @throws JedisConnectionException when borrowing spent the budget
+     */
+    @NotNull
+    private Jedis borrow( @NotNull Pool<Jedis> pool,
+                          @NotNull CacheOperation operation )
+    {
+        long start = System.nanoTime();
+        Integer budgetMillis = _latencyBudgetMillis.get(operation);
+        Jedis jedis = budgetMillis == null ? pool.getResource() : BoundedBorrow.borrow(pool, budgetMillis);
+        _metrics.borrowed(System.nanoTime() - start);
+        try
+        {
+            limit(jedis, operation, start);
+        }
+        catch( JedisException e )
+        {
+            jedis.close();
+            throw e;
+        }
+        return jedis;
+    }
+
+    private void close( @Nullable Jedis jedis,
+                        @NotNull CacheOperation operation )
+    {
+        if( jedis != null )
+        {
+            try
+            {
+                unlimit(jedis, operation);
+            }
+            finally
+            {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * Bounds the wait for each reply on the connection to what remains of the operation's latency
+     * budget. The configured timeout is left on the client, for {@link #unlimit(Jedis, CacheOperation)}
+     * to restore before the connection goes back to the pool.
+     *
+     * @param start when the operation started, from {@link System#nanoTime()}
+     * @throws JedisConnectionException when no budget remains
+     */
+    private void limit( @NotNull Jedis jedis,
+                        @NotNull CacheOperation operation,
+                        long start )
+    {
+        Integer budgetMillis = _latencyBudgetMillis.get(operation);
+        if( budgetMillis == null )
+        {
+            return;
+        }
+        long remainingMillis = budgetMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if( remainingMillis <= 0 )
+        {
+            throw new JedisConnectionException("Latency budget of " + budgetMillis + "ms spent for " + operation);
+        }
+        Client client = jedis.getClient();
+        int soTimeout = client.getSoTimeout();
+        client.setSoTimeout((int) remainingMillis);
+        client.rollbackTimeout();
+        client.setSoTimeout(soTimeout);
+    }
+
+    private void unlimit( @NotNull Jedis jedis,
+                          @NotNull CacheOperation operation )
+    {
+        Client client = jedis.getClient();
+        // a broken connection is discarded by the pool
+        if( _latencyBudgetMillis.containsKey(operation) && client.isConnected() && !client.isBroken() )
+        {
+            client.rollbackTimeout();
         }
     }
 
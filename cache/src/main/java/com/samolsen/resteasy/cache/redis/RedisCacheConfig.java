@@ -0,0 +1,809 @@
+package com.samolsen.resteasy.cache.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Optional features and settings of {@link RedisCache}. All features are disabled by default.
+ *
+ * Settings are read when the cache is constructed; changes made afterwards have no effect.
+ */
+public class RedisCacheConfig {
+
+    private long _nearCacheMaxBytes = 0;
+    private StorageLayout _storageLayout = StorageLayout.SET_INDEX;
+    private int _writeBehindQueueCapacity = 0;
+    private OverflowPolicy _writeBehindOverflowPolicy = OverflowPolicy.DROP;
+    private int _writeBehindBatchSize = 100;
+    private long _writeBehindShutdownTimeoutMillis = 5000;
+    private long _stampedeLeaseMillis = 0;
+    private long _stampedeWaitMillis = 200;
+    private int _staleRetentionSeconds = 0;
+    private double _earlyExpirationBeta = 0;
+    private long _earlyExpirationDeltaMillis = 100;
+    private int _ttlJitterSeconds = 0;
+    private boolean _generationalClear = false;
+    private int _generationReaperKeysPerSecond = 0;
+    private List<? extends Pool<Jedis>> _readReplicas = Collections.emptyList();
+    private String _readReplicaSentinelMaster = null;
+    private Set<String> _readReplicaSentinels = Collections.emptySet();
+    private ReplicaSelection _replicaSelection = ReplicaSelection.ROUND_ROBIN;
+    private int _replicaMaxLagSeconds = 10;
+    private boolean _replicaFallbackToPrimary = true;
+    private CacheMetricsListener _metricsListener = CacheMetricsListener.NONE;
+    private int _chunkThresholdBytes = 0;
+    private int _chunkSizeBytes = 512 * 1024;
+    private int _maxEntityBytes = 0;
+    private int _admissionMinFrequency = 0;
+    private int _admissionSketchWidth = 1 << 16;
+    private boolean _admissionShared = false;
+    private int _admissionWindowSeconds = 600;
+    private int _variantIndexMaxUris = 0;
+    private long _variantIndexTtlMillis = 1000;
+    private int _deduplicationThresholdBytes = 0;
+    private final Map<CacheOperation, Integer> _latencyBudgetMillis = new EnumMap<CacheOperation, Integer>(CacheOperation.class);
+    private int _circuitBreakerFailureThreshold = 0;
+    private long _circuitBreakerOpenMillis = 5000;
+
+    /**
+     * @return maximum size of the in-process near cache, in bytes
+     * @see #setNearCacheMaxBytes(long)
+     */
+    public long getNearCacheMaxBytes()
+    {
+        return _nearCacheMaxBytes;
+    }
+
+    /**
+     * Enables an in-process near cache, holding recently read entries in front of Redis. Calls to
+     * {@link RedisCache#remove(String)} and {@link RedisCache#clear()} are broadcast over Redis
+     * pub/sub so other nodes drop their copies. While the subscription is down the near cache is
+     * bypassed.
+     *
+     * Note: the subscription holds one connection from the pool for the life of the cache.
+     *
+     * @param nearCacheMaxBytes maximum size of the near cache, in bytes. 0 disables the near cache.
+     */
+    public void setNearCacheMaxBytes( long nearCacheMaxBytes )
+    {
+        _nearCacheMaxBytes = nearCacheMaxBytes;
+    }
+
+    /**
+     * @return how variants of a URI are stored
+     * @see #setStorageLayout(StorageLayout)
+     */
+    public StorageLayout getStorageLayout()
+    {
+        return _storageLayout;
+    }
+
+    /**
+     * Note: entries written under one layout are not readable under another. Clear the cache
+     * when changing layouts.
+     *
+     * @param storageLayout how variants of a URI are stored. Defaults to {@link StorageLayout#SET_INDEX}.
+     */
+    public void setStorageLayout( StorageLayout storageLayout )
+    {
+        _storageLayout = storageLayout;
+    }
+
+    /**
+     * @return capacity of the write-behind queue
+     * @see #setWriteBehindQueueCapacity(int)
+     */
+    public int getWriteBehindQueueCapacity()
+    {
+        return _writeBehindQueueCapacity;
+    }
+
+    /**
+     * Enables write-behind: {@link RedisCache#add} returns once the entry is encoded and queued, and
+     * a background thread writes queued entries to Redis in batches. A read immediately after an
+     * add may miss.
+     *
+     * @param writeBehindQueueCapacity maximum number of queued writes. 0 writes synchronously.
+     * @see RedisCache#getWriteBehindQueue()
+     */
+    public void setWriteBehindQueueCapacity( int writeBehindQueueCapacity )
+    {
+        _writeBehindQueueCapacity = writeBehindQueueCapacity;
+    }
+
+    /**
+     * @return what happens to writes when the write-behind queue is full
+     * @see #setWriteBehindOverflowPolicy(OverflowPolicy)
+     */
+    public OverflowPolicy getWriteBehindOverflowPolicy()
+    {
+        return _writeBehindOverflowPolicy;
+    }
+
+    /**
+     * @param writeBehindOverflowPolicy what happens to writes when the write-behind queue is full.
+     *                                  Defaults to {@link OverflowPolicy#DROP}.
+     */
+    public void setWriteBehindOverflowPolicy( OverflowPolicy writeBehindOverflowPolicy )
+    {
+        _writeBehindOverflowPolicy = writeBehindOverflowPolicy;
+    }
+
+    /**
+     * @return maximum number of writes sent in one pipeline
+     * @see #setWriteBehindBatchSize(int)
+     */
+    public int getWriteBehindBatchSize()
+    {
+        return _writeBehindBatchSize;
+    }
+
+    /**
+     * @param writeBehindBatchSize maximum number of writes sent in one pipeline. Defaults to 100.
+     */
+    public void setWriteBehindBatchSize( int writeBehindBatchSize )
+    {
+        _writeBehindBatchSize = writeBehindBatchSize;
+    }
+
+    /**
+     * @return how long {@link RedisCache#close()} waits for queued writes
+     * @see #setWriteBehindShutdownTimeoutMillis(long)
+     */
+    public long getWriteBehindShutdownTimeoutMillis()
+    {
+        return _writeBehindShutdownTimeoutMillis;
+    }
+
+    /**
+     * @param writeBehindShutdownTimeoutMillis how long {@link RedisCache#close()} waits for queued
+     *                                         writes to be flushed. Defaults to 5 seconds.
+     */
+    public void setWriteBehindShutdownTimeoutMillis( long writeBehindShutdownTimeoutMillis )
+    {
+        _writeBehindShutdownTimeoutMillis = writeBehindShutdownTimeoutMillis;
+    }
+
+    /**
+     * @return how long a recompute lease is held
+     * @see #setStampedeLeaseMillis(long)
+     */
+    public long getStampedeLeaseMillis()
+    {
+        return _stampedeLeaseMillis;
+    }
+
+    /**
+     * Enables stampede protection. When an entry expires, the first caller to miss takes a lease in
+     * Redis and regenerates it. Other callers, on any node, are served the previous entry (see
+     * {@link #setStaleRetentionSeconds(int)}) or wait up to {@link #setStampedeWaitMillis(long)}
+     * for the new one.
+     *
+     * The lease is per URI, and is released when any variant of the URI is added.
+     *
+     * @param stampedeLeaseMillis how long a lease is held if the entry is never added, in
+     *                            milliseconds. Should exceed the time taken to generate a response.
+     *                            0 disables stampede protection.
+     */
+    public void setStampedeLeaseMillis( long stampedeLeaseMillis )
+    {
+        _stampedeLeaseMillis = stampedeLeaseMillis;
+    }
+
+    /**
+     * @return how long callers wait for an entry being regenerated
+     * @see #setStampedeWaitMillis(long)
+     */
+    public long getStampedeWaitMillis()
+    {
+        return _stampedeWaitMillis;
+    }
+
+    /**
+     * @param stampedeWaitMillis how long callers wait for an entry being regenerated by another
+     *                           caller, before regenerating it themselves. Defaults to 200ms.
+     */
+    public void setStampedeWaitMillis( long stampedeWaitMillis )
+    {
+        _stampedeWaitMillis = stampedeWaitMillis;
+    }
+
+    /**
+     * @return how long expired entries may be served while being regenerated
+     * @see #setStaleRetentionSeconds(int)
+     */
+    public int getStaleRetentionSeconds()
+    {
+        return _staleRetentionSeconds;
+    }
+
+    /**
+     * Keeps entries in Redis past their max-age, to be served while another caller regenerates
+     * them. Stale entries are served with a max-age of 1 second. Only used with
+     * {@link #setStampedeLeaseMillis(long)}.
+     *
+     * @param staleRetentionSeconds seconds past max-age an entry may be served. Defaults to 0.
+     */
+    public void setStaleRetentionSeconds( int staleRetentionSeconds )
+    {
+        _staleRetentionSeconds = staleRetentionSeconds;
+    }
+
+    /**
+     * @return XFetch beta for early expiration
+     * @see #setEarlyExpirationBeta(double)
+     */
+    public double getEarlyExpirationBeta()
+    {
+        return _earlyExpirationBeta;
+    }
+
+    /**
+     * Enables probabilistic early expiration (XFetch). A hit may be reported as a miss shortly
+     * before the entry expires, with a probability growing as expiry nears, so one request
+     * regenerates a hot entry ahead of the others. With {@link #setStampedeLeaseMillis(long)},
+     * only the lease holder misses.
+     *
+     * @param earlyExpirationBeta scales how early entries expire. 1.0 is typical; larger values
+     *                            expire earlier. 0 disables early expiration.
+     */
+    public void setEarlyExpirationBeta( double earlyExpirationBeta )
+    {
+        _earlyExpirationBeta = earlyExpirationBeta;
+    }
+
+    /**
+     * @return expected time to regenerate an entry
+     * @see #setEarlyExpirationDeltaMillis(long)
+     */
+    public long getEarlyExpirationDeltaMillis()
+    {
+        return _earlyExpirationDeltaMillis;
+    }
+
+    /**
+     * @param earlyExpirationDeltaMillis expected time to regenerate an entry, in milliseconds.
+     *                                   Entries expire early on the order of this much before
+     *                                   their max-age. Defaults to 100ms.
+     */
+    public void setEarlyExpirationDeltaMillis( long earlyExpirationDeltaMillis )
+    {
+        _earlyExpirationDeltaMillis = earlyExpirationDeltaMillis;
+    }
+
+    /**
+     * @return most seconds taken off the max-age of an entry
+     * @see #setTtlJitterSeconds(int)
+     */
+    public int getTtlJitterSeconds()
+    {
+        return _ttlJitterSeconds;
+    }
+
+    /**
+     * Takes a random number of seconds off the max-age of each entry, so entries added together do
+     * not all expire, and get regenerated or evicted from Redis, in the same second. Clients are sent
+     * the jittered time remaining as their max-age. {@link #setStaleRetentionSeconds(int)} is added
+     * to the Redis TTL after the jitter, so retained entries keep the spread.
+     *
+     * @param ttlJitterSeconds most seconds taken off the max-age, which is never less than 1 second.
+     *                         0 disables jitter.
+     */
+    public void setTtlJitterSeconds( int ttlJitterSeconds )
+    {
+        _ttlJitterSeconds = ttlJitterSeconds;
+    }
+
+    /**
+     * @return whether {@link RedisCache#clear()} starts a new generation
+     * @see #setGenerationalClear(boolean)
+     */
+    public boolean isGenerationalClear()
+    {
+        return _generationalClear;
+    }
+
+    /**
+     * Folds a generation counter into cache keys, so {@link RedisCache#clear()} is a single INCR
+     * rather than a SCAN of the namespace, or a FLUSHDB without one. Earlier generations are no
+     * longer read, and expire through their TTLs.
+     *
+     * Each node re-reads the counter every second, so a clear made on another node takes up to a
+     * second to be seen. Entries stored without a generation are not readable; clear the cache
+     * when enabling this.
+     *
+     * @param generationalClear whether clear() starts a new generation. Defaults to false.
+     */
+    public void setGenerationalClear( boolean generationalClear )
+    {
+        _generationalClear = generationalClear;
+    }
+
+    /**
+     * @return keys scanned per second by the generation reaper
+     * @see #setGenerationReaperKeysPerSecond(int)
+     */
+    public int getGenerationReaperKeysPerSecond()
+    {
+        return _generationReaperKeysPerSecond;
+    }
+
+    /**
+     * Starts a background thread which unlinks keys of earlier generations, rather than leaving
+     * them to expire. Requires {@link #setGenerationalClear(boolean)} and a namespace.
+     *
+     * @param generationReaperKeysPerSecond keys scanned per second, bounding the load on Redis.
+     *                                      0 disables the reaper.
+     */
+    public void setGenerationReaperKeysPerSecond( int generationReaperKeysPerSecond )
+    {
+        _generationReaperKeysPerSecond = generationReaperKeysPerSecond;
+    }
+
+    /**
+     * @return pools of replicas read from
+     * @see #setReadReplicas(List)
+     */
+    public List<? extends Pool<Jedis>> getReadReplicas()
+    {
+        return _readReplicas;
+    }
+
+    /**
+     * Sends {@link RedisCache#get} to replicas of the primary, leaving it to writes and
+     * invalidations. A read just after an add may miss, or return the previous entry, while the
+     * replica catches up. Replica reads do not fill the near cache or the variant index, so a
+     * lagging replica cannot put back an entry just removed on the primary. Only supported with a
+     * single primary.
+     *
+     * @param readReplicas pools of replicas to read from. Owned by the caller, and not closed.
+     *                     Empty reads from the primary.
+     * @see #setReplicaSelection(ReplicaSelection)
+     */
+    public void setReadReplicas( List<? extends Pool<Jedis>> readReplicas )
+    {
+        _readReplicas = readReplicas;
+    }
+
+    /**
+     * @return name of the master whose replicas are discovered through Sentinel
+     * @see #setReadReplicaSentinels(String, Set)
+     */
+    public String getReadReplicaSentinelMaster()
+    {
+        return _readReplicaSentinelMaster;
+    }
+
+    /**
+     * @return Sentinel addresses replicas are discovered from
+     * @see #setReadReplicaSentinels(String, Set)
+     */
+    public Set<String> getReadReplicaSentinels()
+    {
+        return _readReplicaSentinels;
+    }
+
+    /**
+     * Reads from replicas as {@link #setReadReplicas(List)}, discovering them through Sentinel.
+     * The list is refreshed every second, and replicas Sentinel reports down are skipped.
+     * Connections are made without a password; pass pools to {@link #setReadReplicas(List)} for
+     * replicas requiring AUTH.
+     *
+     * @param masterName name of the master monitored by Sentinel
+     * @param sentinels  Sentinel addresses, as host:port
+     * @throws IllegalArgumentException when an address is not host:port
+     */
+    public void setReadReplicaSentinels( String masterName,
+                                         Set<String> sentinels )
+    {
+        for( String sentinel : sentinels )
+        {
+            ReplicaReads.parseAddress(sentinel);
+        }
+        _readReplicaSentinelMaster = masterName;
+        _readReplicaSentinels = sentinels;
+    }
+
+    /**
+     * @return how a replica is picked for each read
+     * @see #setReplicaSelection(ReplicaSelection)
+     */
+    public ReplicaSelection getReplicaSelection()
+    {
+        return _replicaSelection;
+    }
+
+    /**
+     * @param replicaSelection how a replica is picked for each read. Defaults to
+     *                         {@link ReplicaSelection#ROUND_ROBIN}.
+     */
+    public void setReplicaSelection( ReplicaSelection replicaSelection )
+    {
+        _replicaSelection = replicaSelection;
+    }
+
+    /**
+     * @return most seconds a replica may lag the primary and still be read from
+     * @see #setReplicaMaxLagSeconds(int)
+     */
+    public int getReplicaMaxLagSeconds()
+    {
+        return _replicaMaxLagSeconds;
+    }
+
+    /**
+     * @param replicaMaxLagSeconds most seconds a replica may lag the primary, as reported in the
+     *                             primary's INFO, and still be read from. Defaults to 10. 0 only
+     *                             requires the replica's link to the primary to be up.
+     */
+    public void setReplicaMaxLagSeconds( int replicaMaxLagSeconds )
+    {
+        _replicaMaxLagSeconds = replicaMaxLagSeconds;
+    }
+
+    /**
+     * @return whether reads go to the primary when no replica is healthy
+     * @see #setReplicaFallbackToPrimary(boolean)
+     */
+    public boolean isReplicaFallbackToPrimary()
+    {
+        return _replicaFallbackToPrimary;
+    }
+
+    /**
+     * @param replicaFallbackToPrimary whether reads go to the primary when no replica is healthy,
+     *                                 or a read from a replica fails. When false, reads stay on the
+     *                                 replicas and their errors are thrown. Defaults to true.
+     */
+    public void setReplicaFallbackToPrimary( boolean replicaFallbackToPrimary )
+    {
+        _replicaFallbackToPrimary = replicaFallbackToPrimary;
+    }
+
+    /**
+     * @return listener receiving hit, miss and timing measurements
+     * @see #setMetricsListener(CacheMetricsListener)
+     */
+    public CacheMetricsListener getMetricsListener()
+    {
+        return _metricsListener;
+    }
+
+    /**
+     * @param metricsListener listener receiving hit, miss and timing measurements, such as
+     *                        {@link CacheMetrics}. Defaults to {@link CacheMetricsListener#NONE}.
+     */
+    public void setMetricsListener( CacheMetricsListener metricsListener )
+    {
+        _metricsListener = metricsListener;
+    }
+
+    /**
+     * @return size above which encoded entries are stored in chunks
+     * @see #setChunkThresholdBytes(int)
+     */
+    public int getChunkThresholdBytes()
+    {
+        return _chunkThresholdBytes;
+    }
+
+    /**
+     * Stores large entries as a manifest plus chunks of {@link #setChunkSizeBytes(int)} bytes under
+     * their own keys, all with the entry's TTL. Chunks are read back in one pipeline. Moving a
+     * multi-megabyte value in one command blocks Redis for its other clients.
+     *
+     * Note: chunks of a replaced or removed entry are not deleted, but left to expire.
+     *
+     * @param chunkThresholdBytes encoded entries larger than this are chunked. 0 stores every
+     *                            entry as a single value.
+     */
+    public void setChunkThresholdBytes( int chunkThresholdBytes )
+    {
+        _chunkThresholdBytes = chunkThresholdBytes;
+    }
+
+    /**
+     * @return size of each chunk of a chunked entry
+     * @see #setChunkSizeBytes(int)
+     */
+    public int getChunkSizeBytes()
+    {
+        return _chunkSizeBytes;
+    }
+
+    /**
+     * @param chunkSizeBytes size of each chunk of a chunked entry. Defaults to 512KB.
+     * @see #setChunkThresholdBytes(int)
+     */
+    public void setChunkSizeBytes( int chunkSizeBytes )
+    {
+        _chunkSizeBytes = chunkSizeBytes;
+    }
+
+    /**
+     * @return size from which entity bodies are stored once per distinct content
+     * @see #setDeduplicationThresholdBytes(int)
+     */
+    public int getDeduplicationThresholdBytes()
+    {
+        return _deduplicationThresholdBytes;
+    }
+
+    /**
+     * Stores each distinct entity body once, under a SHA-256 digest of its bytes, rather than once
+     * per URI and media type. Entries then hold their metadata and a reference to the body. URIs
+     * differing only by ignored query parameters share one copy, so Redis memory grows with
+     * distinct content rather than with URIs.
+     *
+     * Each write extends the body's TTL to that of the entry, so a body outlives every entry
+     * referencing it; it is not deleted with them, but left to expire. Requires the
+     * {@link BinaryCacheEntryCodec}, and is not supported on Redis Cluster, where a body would not
+     * share its entries' slots. Entries large enough to be chunked are not deduplicated.
+     *
+     * @param deduplicationThresholdBytes encoded bodies of at least this size are deduplicated. 0
+     *                                    stores every entry whole.
+     */
+    public void setDeduplicationThresholdBytes( int deduplicationThresholdBytes )
+    {
+        _deduplicationThresholdBytes = deduplicationThresholdBytes;
+    }
+
+    /**
+     * @return largest entity which is cached
+     * @see #setMaxEntityBytes(int)
+     */
+    public int getMaxEntityBytes()
+    {
+        return _maxEntityBytes;
+    }
+
+    /**
+     * @param maxEntityBytes largest entity {@link RedisCache#add} stores; larger entities are
+     *                       served but not cached. 0 caches entities of any size.
+     */
+    public void setMaxEntityBytes( int maxEntityBytes )
+    {
+        _maxEntityBytes = maxEntityBytes;
+    }
+
+    /**
+     * @return times a URI must be added before its entries are written
+     * @see #setAdmissionMinFrequency(int)
+     */
+    public int getAdmissionMinFrequency()
+    {
+        return _admissionMinFrequency;
+    }
+
+    /**
+     * Only writes entries for URIs which have been added at least this many times recently, as
+     * counted by a count-min sketch whose counts are halved as it fills. URIs requested once are then
+     * served without being written, leaving Redis's memory to the entries which are requested again.
+     *
+     * @param admissionMinFrequency recent adds of a URI, including the current one, before its
+     *                              entries are written. At most 15. 0 or 1 writes every entry.
+     * @see RedisCache#getAdmissionFilter()
+     */
+    public void setAdmissionMinFrequency( int admissionMinFrequency )
+    {
+        if( admissionMinFrequency > FrequencySketch.MAX_COUNT )
+        {
+            throw new IllegalArgumentException("Admission frequency must be at most " + FrequencySketch.MAX_COUNT);
+        }
+        _admissionMinFrequency = admissionMinFrequency;
+    }
+
+    /**
+     * @return counters per row of the admission sketch
+     * @see #setAdmissionSketchWidth(int)
+     */
+    public int getAdmissionSketchWidth()
+    {
+        return _admissionSketchWidth;
+    }
+
+    /**
+     * @param admissionSketchWidth counters per row of the admission sketch, rounded up to a power of
+     *                             two. Should be of the order of the number of URIs requested in a
+     *                             window; the in-process sketch uses two bytes per counter. Defaults to
+     *                             65536.
+     * @see #setAdmissionMinFrequency(int)
+     */
+    public void setAdmissionSketchWidth( int admissionSketchWidth )
+    {
+        _admissionSketchWidth = admissionSketchWidth;
+    }
+
+    /**
+     * @return whether the admission sketch is kept in Redis
+     * @see #setAdmissionShared(boolean)
+     */
+    public boolean isAdmissionShared()
+    {
+        return _admissionShared;
+    }
+
+    /**
+     * @param admissionShared whether to keep the admission sketch in Redis, shared by every node,
+     *                        rather than in-process. Counts adds across nodes, at the cost of a
+     *                        script call per add. Defaults to false.
+     * @see #setAdmissionWindowSeconds(int)
+     */
+    public void setAdmissionShared( boolean admissionShared )
+    {
+        _admissionShared = admissionShared;
+    }
+
+    /**
+     * @return length of each window of the shared admission sketch
+     * @see #setAdmissionWindowSeconds(int)
+     */
+    public int getAdmissionWindowSeconds()
+    {
+        return _admissionWindowSeconds;
+    }
+
+    /**
+     * @param admissionWindowSeconds length of each window of the shared admission sketch. Counts from
+     *                               the previous window are halved, and older counts dropped.
+     *                               Defaults to 600.
+     * @see #setAdmissionShared(boolean)
+     */
+    public void setAdmissionWindowSeconds( int admissionWindowSeconds )
+    {
+        _admissionWindowSeconds = admissionWindowSeconds;
+    }
+
+    /**
+     * @return most URIs held by the variant index
+     * @see #setVariantIndexMaxUris(int)
+     */
+    public int getVariantIndexMaxUris()
+    {
+        return _variantIndexMaxUris;
+    }
+
+    /**
+     * Keeps an in-process index of the media types cached per URI, so a lookup reads only the
+     * preferred variant with a single GET. A URI missing from the index has all its variants read,
+     * which fills the index.
+     *
+     * Variants written or removed through this cache update the index at once; changes made by other
+     * nodes are picked up after {@link #setVariantIndexTtlMillis(long)}. Not used with the near cache,
+     * which already holds every variant.
+     *
+     * @param variantIndexMaxUris most URIs indexed, least recently used first out. 0 disables the
+     *                            index.
+     */
+    public void setVariantIndexMaxUris( int variantIndexMaxUris )
+    {
+        _variantIndexMaxUris = variantIndexMaxUris;
+    }
+
+    /**
+     * @return time a URI stays in the variant index
+     * @see #setVariantIndexTtlMillis(long)
+     */
+    public long getVariantIndexTtlMillis()
+    {
+        return _variantIndexTtlMillis;
+    }
+
+    /**
+     * @param variantIndexTtlMillis time a URI stays in the variant index before its variants are
+     *                              read again, bounding how long variants added by other nodes go
+     *                              unselected. Defaults to 1 second.
+     * @see #setVariantIndexMaxUris(int)
+     */
+    public void setVariantIndexTtlMillis( long variantIndexTtlMillis )
+    {
+        _variantIndexTtlMillis = variantIndexTtlMillis;
+    }
+
+    /**
+     * @return latency budget of an operation, or 0 when it has none
+     * @see #setLatencyBudgetMillis(CacheOperation, int)
+     */
+    public int getLatencyBudgetMillis( CacheOperation operation )
+    {
+        Integer latencyBudgetMillis = _latencyBudgetMillis.get(operation);
+        return latencyBudgetMillis == null ? 0 : latencyBudgetMillis;
+    }
+
+    /**
+     * Bounds the time an operation waits on Redis, below the Jedis socket timeout. The time taken to
+     * borrow a connection counts against the budget, and each reply is then waited for up to what
+     * remains of it, failing with a {@link redis.clients.jedis.exceptions.JedisConnectionException}
+     * beyond. The connection is then discarded, as its reply is still to come.
+     *
+     * A {@link redis.clients.jedis.JedisPool} or {@link redis.clients.jedis.JedisSentinelPool} with
+     * no connection free within the budget fails the borrow. Other pools, including subclasses of
+     * these, wait their own `maxWaitMillis`, which should then be set no higher than the budget. A
+     * {@link #setCircuitBreakerFailureThreshold(int)} circuit breaker turns failures into misses and
+     * skipped writes; without one, they are thrown as before.
+     *
+     * @param operation           operation to bound. For {@link CacheOperation#CLEAR}, the budget
+     *                            applies to each node's commands once connected, and not to a
+     *                            generational clear.
+     * @param latencyBudgetMillis budget in milliseconds. 0, the default, leaves the operation bounded
+     *                            by the socket timeout alone.
+     */
+    public void setLatencyBudgetMillis( CacheOperation operation,
+                                        int latencyBudgetMillis )
+    {
+        _latencyBudgetMillis.put(operation, latencyBudgetMillis);
+    }
+
+    /**
+     * @return consecutive failures opening the circuit breaker
+     * @see #setCircuitBreakerFailureThreshold(int)
+     */
+    public int getCircuitBreakerFailureThreshold()
+    {
+        return _circuitBreakerFailureThreshold;
+    }
+
+    /**
+     * Fails open while Redis is unhealthy: once this many calls in a row fail, or exceed their
+     * {@link #setLatencyBudgetMillis(CacheOperation, int)} budget, Redis is not called for
+     * {@link #setCircuitBreakerOpenMillis(long)}. Gets miss, or are served from the near cache, and
+     * adds, removes and clears are skipped. One call is then let through as a probe, closing the
+     * breaker when it succeeds.
+     *
+     * While enabled, a Redis failure is never thrown to the caller: the operation fails open as
+     * though the breaker were open. Operations gone without Redis, and state changes, are reported
+     * to the {@link #setMetricsListener(CacheMetricsListener)} listener.
+     *
+     * A skipped remove or clear leaves entries in Redis until they expire, so the breaker suits
+     * caches whose entries may be served a little stale.
+     *
+     * @param circuitBreakerFailureThreshold consecutive failures opening the breaker. 0 disables the
+     *                                       breaker.
+     */
+    public void setCircuitBreakerFailureThreshold( int circuitBreakerFailureThreshold )
+    {
+        _circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+    }
+
+    /**
+     * @return time the circuit breaker stays open before probing Redis
+     * @see #setCircuitBreakerOpenMillis(long)
+     */
+    public long getCircuitBreakerOpenMillis()
+    {
+        return _circuitBreakerOpenMillis;
+    }
+
+    /**
+     * @param circuitBreakerOpenMillis time the circuit breaker stays open before probing Redis, and
+     *                                 between probes. Defaults to 5 seconds.
+     * @see #setCircuitBreakerFailureThreshold(int)
+     */
+    public void setCircuitBreakerOpenMillis( long circuitBreakerOpenMillis )
+    {
+        _circuitBreakerOpenMillis = circuitBreakerOpenMillis;
+    }
+
+}
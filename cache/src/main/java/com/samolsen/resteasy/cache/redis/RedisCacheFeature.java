@@ -0,0 +1,52 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jboss.resteasy.plugins.cache.server.ServerCacheInterceptor;
+import org.jetbrains.annotations.NotNull;
+
+import javax.ws.rs.core.Feature;
+import javax.ws.rs.core.FeatureContext;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Registers a {@link RedisCache} with RESTEasy, in place of
+ * {@link org.jboss.resteasy.plugins.cache.server.ServerCacheFeature}. Cached responses are chosen by
+ * the whole `Accept:` header, through {@link RedisCacheHitFilter}, rather than its first media
+ * type only.
+ *
+ * <pre>
+ * providerFactory.register(new RedisCacheFeature(redisCache));
+ * </pre>
+ */
+public class RedisCacheFeature implements Feature {
+
+    @NotNull
+    private final RedisCache _redisCache;
+
+    public RedisCacheFeature( @NotNull RedisCache redisCache )
+    {
+        _redisCache = redisCache;
+    }
+
+    @Override
+    public boolean configure( FeatureContext context )
+    {
+        context.register(new RedisCacheHitFilter(_redisCache));
+        context.register(new ServerCacheInterceptor(_redisCache));
+        return true;
+    }
+}
@@ -0,0 +1,143 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jboss.resteasy.plugins.cache.server.ServerCache;
+import org.jboss.resteasy.plugins.cache.server.ServerCacheHitFilter;
+import org.jetbrains.annotations.NotNull;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * {@link ServerCacheHitFilter} looking up cached responses by every media range of the request's
+ * `Accept:` header, so the variant best matching its quality values is served. The stock filter
+ * passes only the first media type.
+ *
+ * Conditional GETs (`If-None-Match:`) and HEAD requests are first answered from the cached
+ * metadata alone, through {@link RedisCache#getHead(String, List)}, so a 304 or HEAD response does
+ * not read the entity. A GET whose entity tag no longer matches then looks up the whole entry.
+ *
+ * Responses are otherwise served as by {@link ServerCacheHitFilter}.
+ *
+ * @see RedisCacheFeature
+ */
+public class RedisCacheHitFilter extends ServerCacheHitFilter {
+
+    @NotNull
+    private final RedisCache _redisCache;
+
+    public RedisCacheHitFilter( @NotNull RedisCache redisCache )
+    {
+        super(redisCache);
+        _redisCache = redisCache;
+    }
+
+    @Override
+    public void filter( ContainerRequestContext request )
+            throws IOException
+    {
+        boolean head = HttpMethod.HEAD.equalsIgnoreCase(request.getMethod());
+        if( !head && !HttpMethod.GET.equalsIgnoreCase(request.getMethod()) )
+        {
+            super.filter(request);
+            return;
+        }
+
+        String key = request.getUriInfo().getRequestUri().toString();
+        List<MediaType> acceptable = request.getAcceptableMediaTypes();
+
+        if( head || request.getHeaders().containsKey(HttpHeaders.IF_NONE_MATCH) )
+        {
+            // answered from the metadata alone when not modified, or for HEAD
+            CacheEntryHead cacheEntryHead = _redisCache.getHead(key, acceptable);
+            if( cacheEntryHead != null )
+            {
+                CacheControl cc = new CacheControl();
+                cc.setMaxAge(cacheEntryHead.getExpirationInSeconds());
+
+                Response.ResponseBuilder notModified = validation.evaluatePreconditions(new EntityTag(cacheEntryHead.getEtag()));
+                if( notModified != null )
+                {
+                    request.abortWith(notModified.cacheControl(cc).build());
+                    return;
+                }
+                if( head )
+                {
+                    request.setProperty(DO_NOT_CACHE_RESPONSE, Boolean.TRUE);
+                    request.abortWith(ok(cacheEntryHead.getHeaders(), cc).build());
+                    return;
+                }
+            }
+            if( head )
+            {
+                return;
+            }
+        }
+
+        ServerCache.Entry entry = _redisCache.get(key, acceptable);
+        if( entry == null )
+        {
+            return;
+        }
+        if( entry.isExpired() )
+        {
+            _redisCache.remove(key);
+            return;
+        }
+
+        CacheControl cc = new CacheControl();
+        cc.setMaxAge(entry.getExpirationInSeconds());
+
+        Response.ResponseBuilder notModified = validation.evaluatePreconditions(new EntityTag(entry.getEtag()));
+        if( notModified != null )
+        {
+            request.abortWith(notModified.cacheControl(cc).build());
+            return;
+        }
+
+        Response.ResponseBuilder builder = ok(entry.getHeaders(), cc);
+        builder.entity(entry.getCached());
+        request.setProperty(DO_NOT_CACHE_RESPONSE, Boolean.TRUE);
+        request.abortWith(builder.build());
+    }
+
+    @NotNull
+    private static Response.ResponseBuilder ok( @NotNull MultivaluedMap<String, Object> headers,
+                                                @NotNull CacheControl cc )
+    {
+        Response.ResponseBuilder builder = Response.ok();
+        for( Map.Entry<String, List<Object>> header : headers.entrySet() )
+        {
+            for( Object value : header.getValue() )
+            {
+                builder.header(header.getKey(), value);
+            }
+        }
+        builder.cacheControl(cc);
+        return builder;
+    }
+}
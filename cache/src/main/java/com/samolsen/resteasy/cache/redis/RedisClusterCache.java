@@ -0,0 +1,57 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.JedisCluster;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * {@link RedisCache} spread over a Redis Cluster.
+ *
+ * Keys of a URI carry a hash tag, e.g. {@code namespace:{http://host/path}:text/plain}, so the
+ * variant index and entries of a URI are in one slot. Reads and writes of a URI each go to a single
+ * node, in one round trip. {@link #clear()} runs on every master in parallel.
+ *
+ * Keys are not compatible with those of a {@link RedisCache} on a single node.
+ */
+public class RedisClusterCache extends RedisCache {
+
+    /**
+     * @param cluster   cluster to store entries in. Owned by the caller, and not closed.
+     * @param namespace namespace for cache keys. When not null, appended to the beginning of each key
+     */
+    public RedisClusterCache( @NotNull JedisCluster cluster,
+                              @Nullable String namespace )
+    {
+        this(cluster, namespace, new BinaryCacheEntryCodec(), new RedisCacheConfig());
+    }
+
+    /**
+     * @param cluster   cluster to store entries in. Owned by the caller, and not closed.
+     * @param namespace namespace for cache keys. When not null, appended to the beginning of each key
+     * @param codec     {@link CacheEntryCodec} for converting cache entries to and from bytes
+     * @param config    optional cache features
+     */
+    public RedisClusterCache( @NotNull JedisCluster cluster,
+                              @Nullable String namespace,
+                              @NotNull CacheEntryCodec codec,
+                              @NotNull RedisCacheConfig config )
+    {
+        super(new ClusterNodes(cluster), namespace, codec, config);
+    }
+}
@@ -0,0 +1,105 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * {@link FrequencyCounter} shared by every node through Redis, so a URI requested once on each of
+ * several nodes counts as requested several times.
+ *
+ * Counters are hash fields, in one hash per time window. A key's count is its count in the current
+ * window plus half its count in the previous one, so counts age over two windows. Each increment is
+ * a single script call.
+ */
+class RedisFrequencySketch implements FrequencyCounter {
+
+    /**
+     * Increments the cells ARGV[2..] in the hash KEYS[1], which expires after ARGV[1] seconds, and
+     * returns the smallest of each cell's count plus half its count in the hash KEYS[2].
+     */
+    static final RedisScript INCREMENT_SCRIPT = new RedisScript(
+            "local estimate\n" +
+            "for i = 2, #ARGV do\n" +
+            "  local count = redis.call('HINCRBY', KEYS[1], ARGV[i], 1)\n" +
+            "  local previous = tonumber(redis.call('HGET', KEYS[2], ARGV[i]) or '0')\n" +
+            "  count = count + math.floor(previous / 2)\n" +
+            "  if not estimate or count < estimate then\n" +
+            "    estimate = count\n" +
+            "  end\n" +
+            "end\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+            "return estimate\n");
+
+    @NotNull
+    private final Pool<Jedis> _jedisPool;
+    @NotNull
+    private final String _keyPrefix;
+    private final int _width;
+    private final int _windowSeconds;
+
+    /**
+     * @param jedisPool     pool for the node holding the sketch
+     * @param keyPrefix     prefix of the window keys, to which the window number is appended
+     * @param width         counters per row. Rounded up to a power of two.
+     * @param windowSeconds length of each window
+     */
+    RedisFrequencySketch( @NotNull Pool<Jedis> jedisPool,
+                          @NotNull String keyPrefix,
+                          int width,
+                          int windowSeconds )
+    {
+        if( windowSeconds <= 0 )
+        {
+            throw new IllegalArgumentException("Window must be positive: " + windowSeconds);
+        }
+        _jedisPool = jedisPool;
+        _keyPrefix = keyPrefix;
+        _width = FrequencySketch.width(width);
+        _windowSeconds = windowSeconds;
+    }
+
+    @Override
+    public int increment( @NotNull String key )
+    {
+        long window = System.currentTimeMillis() / 1000 / _windowSeconds;
+        long hash = FrequencySketch.hash(key);
+
+        byte[][] params = new byte[2 + 1 + DEPTH][];
+        params[0] = SafeEncoder.encode(_keyPrefix + window);
+        params[1] = SafeEncoder.encode(_keyPrefix + ( window - 1 ));
+        params[2] = SafeEncoder.encode(Integer.toString(2 * _windowSeconds));
+        for( int row = 0; row < DEPTH; row++ )
+        {
+            params[3 + row] = SafeEncoder.encode(Integer.toString(FrequencySketch.cell(hash, row, _width)));
+        }
+
+        Jedis jedis = _jedisPool.getResource();
+        try
+        {
+            Object reply = INCREMENT_SCRIPT.eval(jedis, 2, params);
+            return reply instanceof Long ? (int) Math.min(Integer.MAX_VALUE, (Long) reply) : 0;
+        }
+        finally
+        {
+            jedis.close();
+        }
+    }
+}
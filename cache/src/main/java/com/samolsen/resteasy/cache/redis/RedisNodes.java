@@ -0,0 +1,61 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+import java.util.Collection;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * The Redis nodes cache keys are stored on, and how keys are routed to them. All keys of a URI are
+ * routed to the same node, so a URI is read or written in a single round trip.
+ *
+ * @see SingleNode
+ * @see ClusterNodes
+ */
+interface RedisNodes {
+
+    /**
+     * @param key a cache key, or a key derived from one
+     * @return pool for the node holding the key
+     */
+    @NotNull
+    Pool<Jedis> poolFor( @NotNull String key );
+
+    /**
+     * @return pools for every node holding cache keys, for commands which cover all keys
+     */
+    @NotNull
+    Collection<Pool<Jedis>> primaries();
+
+    /**
+     * @param uri request URI
+     * @return the part of a cache key identifying the URI. Keys derived from it route together.
+     */
+    @NotNull
+    String uriKey( @NotNull String uri );
+
+    /**
+     * Called when a node reported it does not hold a key, e.g. while a Redis Cluster is
+     * resharding.
+     *
+     * @param key the key which was redirected
+     */
+    void redirected( @NotNull String key );
+}
@@ -0,0 +1,118 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * A Lua script run with EVALSHA. The SHA1 digest is computed locally, so the script body is only
+ * sent to Redis when the server does not have it cached (after a restart or SCRIPT FLUSH).
+ */
+class RedisScript {
+
+    /**
+     * Lua function deleting a list of keys: `unlink(keys)`. Uses UNLINK, so large values are freed
+     * off the main thread, and falls back to DEL before Redis 4.0. Keys are sent in chunks to stay
+     * within the Lua stack limit.
+     */
+    static final String LUA_UNLINK =
+            "local function unlink(keys)\n" +
+            "  for i = 1, #keys, 1000 do\n" +
+            "    local chunk = {unpack(keys, i, math.min(i + 999, #keys))}\n" +
+            "    local reply = redis.pcall('UNLINK', unpack(chunk))\n" +
+            "    if type(reply) == 'table' and reply.err then\n" +
+            "      redis.call('DEL', unpack(chunk))\n" +
+            "    end\n" +
+            "  end\n" +
+            "end\n";
+
+    @NotNull
+    private final byte[] _script;
+    @NotNull
+    private final byte[] _sha1;
+
+    RedisScript( @NotNull String script )
+    {
+        _script = SafeEncoder.encode(script);
+        _sha1 = SafeEncoder.encode(sha1Hex(_script));
+    }
+
+    /**
+     * @param jedis    client to run the script on
+     * @param keyCount number of leading params which are keys
+     * @param params   keys, followed by arguments
+     * @return the script's reply
+     */
+    Object eval( @NotNull Jedis jedis,
+                 int keyCount,
+                 @NotNull byte[]... params )
+    {
+        try
+        {
+            return jedis.evalsha(_sha1, keyCount, params);
+        }
+        catch( JedisDataException e )
+        {
+            if( !isNoScript(e) )
+            {
+                throw e;
+            }
+            return jedis.eval(_script, keyCount, params);
+        }
+    }
+
+    @NotNull
+    byte[] sha1()
+    {
+        return _sha1;
+    }
+
+    /**
+     * @return whether the error is Redis reporting the script is not cached
+     */
+    static boolean isNoScript( @NotNull JedisDataException e )
+    {
+        String message = e.getMessage();
+        return message != null && message.startsWith("NOSCRIPT");
+    }
+
+    @NotNull
+    private static String sha1Hex( @NotNull byte[] bytes )
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for( byte b : digest )
+            {
+                hex.append(Character.forDigit(( b >> 4 ) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+}
@@ -0,0 +1,519 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Pool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Read replicas for {@link RedisCache#get}. Writes and invalidations stay on the primary.
+ *
+ * A background thread checks each replica every {@link #CHECK_MILLIS}, timing an
+ * {@code INFO replication} for its latency. A replica is healthy while it answers, its link to the
+ * primary is up, and the primary reports it no more than the maximum lag behind. A replica which
+ * fails a read is unhealthy until its next check.
+ *
+ * Replicas are either given, or discovered through Sentinel on each check.
+ *
+ * @see RedisCacheConfig#setReadReplicas(List)
+ * @see RedisCacheConfig#setReadReplicaSentinels(String, Set)
+ */
+class ReplicaReads {
+
+    private static final Logger LOG = Logger.getLogger(ReplicaReads.class.getName());
+
+    static final long CHECK_MILLIS = 1000;
+
+    /**
+     * Weight of the latest latency sample in the moving average.
+     */
+    static final double LATENCY_WEIGHT = 0.2;
+
+    @NotNull
+    private final Pool<Jedis> _primary;
+    @NotNull
+    private final ReplicaSelection _selection;
+    private final int _maxLagSeconds;
+    private final boolean _fallbackToPrimary;
+    @Nullable
+    private final String _sentinelMaster;
+    @NotNull
+    private final Set<String> _sentinels;
+
+    private final AtomicInteger _next = new AtomicInteger();
+    @NotNull
+    private volatile List<Replica> _replicas;
+    private volatile boolean _closed;
+    @Nullable
+    private Thread _thread;
+
+    /**
+     * @param primary           primary, for the lag of each replica
+     * @param replicas          replicas to read from. Owned by the caller, and not closed.
+     * @param selection         how a replica is picked for each read
+     * @param maxLagSeconds     most seconds a replica may lag the primary. 0 only checks its link.
+     * @param fallbackToPrimary whether to read from the primary when no replica is healthy
+     */
+    ReplicaReads( @NotNull Pool<Jedis> primary,
+                  @NotNull List<? extends Pool<Jedis>> replicas,
+                  @NotNull ReplicaSelection selection,
+                  int maxLagSeconds,
+                  boolean fallbackToPrimary )
+    {
+        this(primary, selection, maxLagSeconds, fallbackToPrimary, null, Collections.<String>emptySet());
+        List<Replica> given = new ArrayList<Replica>(replicas.size());
+        for( Pool<Jedis> pool : replicas )
+        {
+            given.add(new Replica(pool, false));
+        }
+        _replicas = Collections.unmodifiableList(given);
+    }
+
+    /**
+     * @param primary           primary, for the lag of each replica
+     * @param sentinelMaster    name of the master monitored by Sentinel
+     * @param sentinels         Sentinel addresses, as host:port
+     * @param selection         how a replica is picked for each read
+     * @param maxLagSeconds     most seconds a replica may lag the primary. 0 only checks its link.
+     * @param fallbackToPrimary whether to read from the primary when no replica is healthy
+     */
+    ReplicaReads( @NotNull Pool<Jedis> primary,
+                  @NotNull String sentinelMaster,
+                  @NotNull Set<String> sentinels,
+                  @NotNull ReplicaSelection selection,
+                  int maxLagSeconds,
+                  boolean fallbackToPrimary )
+    {
+        this(primary, selection, maxLagSeconds, fallbackToPrimary, sentinelMaster, sentinels);
+    }
+
+    private ReplicaReads( @NotNull Pool<Jedis> primary,
+                          @NotNull ReplicaSelection selection,
+                          int maxLagSeconds,
+                          boolean fallbackToPrimary,
+                          @Nullable String sentinelMaster,
+                          @NotNull Set<String> sentinels )
+    {
+        _primary = primary;
+        _selection = selection;
+        _maxLagSeconds = maxLagSeconds;
+        _fallbackToPrimary = fallbackToPrimary;
+        _sentinelMaster = sentinelMaster;
+        _sentinels = sentinels;
+        _replicas = Collections.emptyList();
+    }
+
+    void start()
+    {
+        checkLogged();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                while( !_closed )
+                {
+                    try
+                    {
+                        Thread.sleep(CHECK_MILLIS);
+                    }
+                    catch( InterruptedException e )
+                    {
+                        return;
+                    }
+                    checkLogged();
+                }
+            }
+        }, "redis-cache-replica-monitor");
+        thread.setDaemon(true);
+        thread.start();
+        _thread = thread;
+    }
+
+    /**
+     * Stops the checks, and destroys pools for replicas discovered through Sentinel.
+     */
+    void close()
+    {
+        _closed = true;
+        Thread thread = _thread;
+        if( thread != null )
+        {
+            thread.interrupt();
+        }
+        destroyOwned(_replicas);
+        _replicas = Collections.emptyList();
+    }
+
+    /**
+     * @return the replica to read from, or null to read from the primary
+     */
+    @Nullable
+    Pool<Jedis> select()
+    {
+        List<Replica> replicas = _replicas;
+        int count = replicas.size();
+        if( count == 0 )
+        {
+            return null;
+        }
+
+        int start = ( _next.getAndIncrement() & Integer.MAX_VALUE ) % count;
+        Replica selected = null;
+        for( int i = 0; i < count; i++ )
+        {
+            Replica replica = replicas.get(( start + i ) % count);
+            if( !replica._healthy )
+            {
+                continue;
+            }
+            if( _selection == ReplicaSelection.ROUND_ROBIN )
+            {
+                return replica._pool;
+            }
+            if( selected == null || replica._latencyNanos < selected._latencyNanos )
+            {
+                selected = replica;
+            }
+        }
+
+        if( selected != null )
+        {
+            return selected._pool;
+        }
+        return _fallbackToPrimary ? null : replicas.get(start)._pool;
+    }
+
+    /**
+     * Marks a replica unhealthy until its next check, after a read from it failed.
+     */
+    void failed( @NotNull Pool<Jedis> pool )
+    {
+        for( Replica replica : _replicas )
+        {
+            if( replica._pool == pool )
+            {
+                replica._healthy = false;
+            }
+        }
+    }
+
+    /**
+     * @return whether a read which failed on a replica is retried on the primary
+     */
+    boolean fallsBackToPrimary()
+    {
+        return _fallbackToPrimary;
+    }
+
+    @NotNull
+    List<Replica> replicas()
+    {
+        return _replicas;
+    }
+
+    void check()
+    {
+        if( _sentinelMaster != null )
+        {
+            discover(_sentinelMaster);
+        }
+        Map<String, Long> lags = _maxLagSeconds > 0 ? primaryLags() : Collections.<String, Long>emptyMap();
+        for( Replica replica : _replicas )
+        {
+            replica.check(lags, _maxLagSeconds);
+        }
+    }
+
+    /**
+     * Checks the replicas, logging an unexpected failure rather than stopping the monitor, which
+     * would leave replicas marked failed unhealthy for good.
+     */
+    private void checkLogged()
+    {
+        try
+        {
+            check();
+        }
+        catch( RuntimeException e )
+        {
+            LOG.log(Level.WARNING, "Replica check failed", e);
+        }
+    }
+
+    /**
+     * @return lag in seconds of each replica, by host:port, as reported by the primary
+     */
+    @NotNull
+    private Map<String, Long> primaryLags()
+    {
+        Jedis jedis = null;
+        try
+        {
+            jedis = _primary.getResource();
+            return parseReplicaLags(jedis.info("replication"));
+        }
+        catch( JedisException e )
+        {
+            // primary unavailable. Replicas are judged by their own link.
+            return Collections.emptyMap();
+        }
+        finally
+        {
+            if( jedis != null )
+            {
+                jedis.close();
+            }
+        }
+    }
+
+    private void discover( @NotNull String sentinelMaster )
+    {
+        for( String sentinel : _sentinels )
+        {
+            HostAndPort address = parseAddress(sentinel);
+            Jedis jedis = new Jedis(address.getHost(), address.getPort());
+            List<Map<String, String>> slaves;
+            try
+            {
+                slaves = jedis.sentinelSlaves(sentinelMaster);
+            }
+            catch( JedisException e )
+            {
+                // try the next Sentinel
+                continue;
+            }
+            finally
+            {
+                jedis.close();
+            }
+            update(slaves);
+            return;
+        }
+        // no Sentinel reachable. The last known replicas are kept, and checked.
+    }
+
+    /**
+     * Replaces the replica list with those reported by Sentinel, keeping the pools of known ones.
+     *
+     * @param slaves reply to SENTINEL SLAVES
+     */
+    private void update( @NotNull List<Map<String, String>> slaves )
+    {
+        Map<String, Replica> known = new HashMap<String, Replica>();
+        for( Replica replica : _replicas )
+        {
+            known.put(replica._address, replica);
+        }
+
+        Map<String, Replica> replicas = new LinkedHashMap<String, Replica>();
+        for( Map<String, String> slave : slaves )
+        {
+            String flags = slave.get("flags");
+            if( flags != null && ( flags.contains("s_down") || flags.contains("o_down") || flags.contains("disconnected") ) )
+            {
+                continue;
+            }
+            String host = slave.get("ip");
+            int port = Integer.parseInt(slave.get("port"));
+            String address = host + ":" + port;
+            Replica replica = known.remove(address);
+            if( replica == null )
+            {
+                replica = new Replica(new JedisPool(new GenericObjectPoolConfig(), host, port), true);
+                replica._address = address;
+            }
+            replicas.put(address, replica);
+        }
+
+        _replicas = Collections.unmodifiableList(new ArrayList<Replica>(replicas.values()));
+        destroyOwned(known.values());
+    }
+
+    private static void destroyOwned( @NotNull Collection<Replica> replicas )
+    {
+        for( Replica replica : replicas )
+        {
+            if( replica._owned )
+            {
+                replica._pool.destroy();
+            }
+        }
+    }
+
+    /**
+     * @param address host:port
+     * @throws IllegalArgumentException when the address has no port, or the port is not valid
+     */
+    @NotNull
+    static HostAndPort parseAddress( @NotNull String address )
+    {
+        int colon = address.lastIndexOf(':');
+        if( colon > 0 )
+        {
+            try
+            {
+                int port = Integer.parseInt(address.substring(colon + 1));
+                if( port > 0 && port <= 65535 )
+                {
+                    return new HostAndPort(address.substring(0, colon), port);
+                }
+            }
+            catch( NumberFormatException e )
+            {
+                // reported below
+            }
+        }
+        throw new IllegalArgumentException("Address must be host:port: " + address);
+    }
+
+    /**
+     * @param info reply to {@code INFO replication} from the primary
+     * @return lag in seconds of each replica, by host:port
+     */
+    @NotNull
+    static Map<String, Long> parseReplicaLags( @NotNull String info )
+    {
+        // e.g. slave0:ip=10.0.0.2,port=6380,state=online,offset=1234,lag=0
+        Map<String, Long> lags = new HashMap<String, Long>();
+        for( String line : info.split("\r?\n") )
+        {
+            if( !line.startsWith("slave") || line.indexOf(':') < 0 )
+            {
+                continue;
+            }
+            Map<String, String> fields = new HashMap<String, String>();
+            for( String field : line.substring(line.indexOf(':') + 1).split(",") )
+            {
+                int equals = field.indexOf('=');
+                if( equals > 0 )
+                {
+                    fields.put(field.substring(0, equals), field.substring(equals + 1));
+                }
+            }
+            String ip = fields.get("ip");
+            String port = fields.get("port");
+            String lag = fields.get("lag");
+            if( ip != null && port != null && lag != null )
+            {
+                try
+                {
+                    lags.put(ip + ":" + port, Long.parseLong(lag));
+                }
+                catch( NumberFormatException e )
+                {
+                    // not a lag. Judged by its own link.
+                }
+            }
+        }
+        return lags;
+    }
+
+    /**
+     * @param info reply to {@code INFO replication} from a replica
+     * @return whether the replica's link to the primary is up
+     */
+    static boolean isLinkUp( @NotNull String info )
+    {
+        for( String line : info.split("\r?\n") )
+        {
+            if( line.startsWith("master_link_status:") )
+            {
+                return line.substring("master_link_status:".length()).trim().equals("up");
+            }
+        }
+        return false;
+    }
+
+    static class Replica {
+
+        @NotNull
+        final Pool<Jedis> _pool;
+        /**
+         * Whether the pool was created from Sentinel, and is destroyed with it.
+         */
+        final boolean _owned;
+        /**
+         * host:port, learnt from Sentinel or from the first check.
+         */
+        @Nullable
+        volatile String _address;
+        volatile boolean _healthy;
+        volatile long _latencyNanos = Long.MAX_VALUE;
+
+        Replica( @NotNull Pool<Jedis> pool,
+                 boolean owned )
+        {
+            _pool = pool;
+            _owned = owned;
+        }
+
+        void check( @NotNull Map<String, Long> lags,
+                    int maxLagSeconds )
+        {
+            Jedis jedis = null;
+            try
+            {
+                jedis = _pool.getResource();
+                long start = System.nanoTime();
+                String info = jedis.info("replication");
+                long latency = System.nanoTime() - start;
+                _latencyNanos = _latencyNanos == Long.MAX_VALUE
+                        ? latency
+                        : (long) ( _latencyNanos * ( 1 - LATENCY_WEIGHT ) + latency * LATENCY_WEIGHT );
+
+                if( _address == null )
+                {
+                    Client client = jedis.getClient();
+                    _address = client.getHost() + ":" + client.getPort();
+                }
+                // a replica the primary does not list, e.g. behind NAT, is judged by its own link
+                Long lag = lags.get(_address);
+                _healthy = isLinkUp(info) && ( maxLagSeconds <= 0 || lag == null || lag <= maxLagSeconds );
+            }
+            catch( JedisException e )
+            {
+                _healthy = false;
+            }
+            finally
+            {
+                if( jedis != null )
+                {
+                    jedis.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.samolsen.resteasy.cache.redis;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * How {@link RedisCache#get} picks a read replica.
+ *
+ * @see RedisCacheConfig#setReplicaSelection(ReplicaSelection)
+ */
+public enum ReplicaSelection {
+
+    /**
+     * Each read goes to the next healthy replica in turn.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * Reads go to the healthy replica with the lowest recent latency, as measured by the health
+     * checks.
+     */
+    LEAST_LATENCY
+}
@@ -0,0 +1,133 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * A {@link Pipeline} which can also run {@link RedisScript}s with binary arguments.
+ *
+ * Scripts are sent with EVALSHA. Any which fail because Redis does not have the script cached are
+ * re-run by {@link #sync()}, so a script is only sent in full after a restart or SCRIPT FLUSH.
+ * Commands queued after a script have then already run before it, so a command which must follow a
+ * script, such as an invalidation, is queued once {@link #sync()} returns.
+ * Unlike {@link Pipeline#sync()}, cluster redirections and script errors are thrown rather than
+ * ignored.
+ */
+class ScriptPipeline extends Pipeline {
+
+    private static final Builder<Object> REPLY = new Builder<Object>() {
+        @Override
+        public Object build( Object data )
+        {
+            return data;
+        }
+    };
+
+    @NotNull
+    private final Jedis _jedis;
+    @NotNull
+    private final List<PendingScript> _scripts = new ArrayList<PendingScript>();
+
+    ScriptPipeline( @NotNull Jedis jedis )
+    {
+        _jedis = jedis;
+        setClient(jedis.getClient());
+    }
+
+    /**
+     * Queues a script. The reply is not available to the caller.
+     *
+     * @param keyCount number of leading params which are keys
+     * @param params   keys, followed by arguments
+     */
+    void eval( @NotNull RedisScript script,
+               int keyCount,
+               @NotNull byte[]... params )
+    {
+        int index = getPipelinedResponseLength();
+        _jedis.getClient().evalsha(script.sha1(), keyCount, params);
+        getResponse(REPLY);
+        _scripts.add(new PendingScript(script, keyCount, params, index));
+    }
+
+    /**
+     * @throws JedisRedirectionException when a Redis Cluster node does not hold a key
+     * @throws JedisDataException        when a script fails
+     */
+    @Override
+    public void sync()
+    {
+        List<Object> replies = syncAndReturnAll();
+        List<PendingScript> scripts = new ArrayList<PendingScript>(_scripts);
+        _scripts.clear();
+
+        for( Object reply : replies )
+        {
+            if( reply instanceof JedisRedirectionException )
+            {
+                throw (JedisRedirectionException) reply;
+            }
+        }
+
+        for( PendingScript pending : scripts )
+        {
+            Object reply = replies.get(pending._index);
+            if( reply instanceof JedisDataException )
+            {
+                JedisDataException e = (JedisDataException) reply;
+                if( !RedisScript.isNoScript(e) )
+                {
+                    throw e;
+                }
+                pending._script.eval(_jedis, pending._keyCount, pending._params);
+            }
+        }
+    }
+
+    private static class PendingScript {
+
+        @NotNull
+        final RedisScript _script;
+        final int _keyCount;
+        @NotNull
+        final byte[][] _params;
+        /**
+         * position of the reply among the pipeline's replies
+         */
+        final int _index;
+
+        PendingScript( @NotNull RedisScript script,
+                       int keyCount,
+                       @NotNull byte[][] params,
+                       int index )
+        {
+            _script = script;
+            _keyCount = keyCount;
+            _params = params;
+            _index = index;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.SafeEncoder;
+
+import javax.ws.rs.core.MediaType;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * {@link StorageLayout#SET_INDEX}: one key per variant, referenced from a set under the URI key.
+ */
+class SetVariantStore implements VariantStore {
+
+    /**
+     * Unlinks the variants listed in the set KEYS[1], and the set. Only the URI's own keys are
+     * touched, however many keys are in the database.
+     */
+    static final RedisScript REMOVE_SCRIPT = new RedisScript(
+            RedisScript.LUA_UNLINK +
+            "local keys = redis.call('SMEMBERS', KEYS[1])\n" +
+            "keys[#keys + 1] = KEYS[1]\n" +
+            "unlink(keys)\n");
+
+    /**
+     * Reads the variant set for a URI (KEYS[1]) along with each variant entry compatible with the
+     * accepted type and subtype (ARGV[1], ARGV[2]), so a lookup costs a single round trip
+     * regardless of the number of cached media types. Variant keys are the URI key, a delimiter and
+     * the media type.
+     *
+     * @return alternating media types and entries
+     */
+    static final RedisScript READ_VARIANTS_SCRIPT = new RedisScript(readVariantsScript("entry"));
+
+    /**
+     * As {@link #READ_VARIANTS_SCRIPT}, but returns the heads of binary entries.
+     */
+    static final RedisScript READ_HEADS_SCRIPT = new RedisScript(
+            BinaryCacheEntryCodec.LUA_HEAD + readVariantsScript("head(entry)"));
+
+    private final int _setExpirationSeconds;
+
+    /**
+     * @param setExpirationSeconds minimum TTL of the variant set
+     */
+    SetVariantStore( int setExpirationSeconds )
+    {
+        _setExpirationSeconds = setExpirationSeconds;
+    }
+
+    @NotNull
+    @Override
+    public List<EncodedVariant> read( @NotNull Jedis jedis,
+                                      @NotNull String uriCacheKey,
+                                      @NotNull MediaType accept )
+    {
+        return readVariants(READ_VARIANTS_SCRIPT, jedis, uriCacheKey, accept);
+    }
+
+    @NotNull
+    @Override
+    public List<EncodedVariant> readHeads( @NotNull Jedis jedis,
+                                           @NotNull String uriCacheKey,
+                                           @NotNull MediaType accept )
+    {
+        return readVariants(READ_HEADS_SCRIPT, jedis, uriCacheKey, accept);
+    }
+
+    @Nullable
+    @Override
+    public EncodedVariant readVariant( @NotNull Jedis jedis,
+                                       @NotNull String uriCacheKey,
+                                       @NotNull MediaType mediaType )
+    {
+        byte[] encoded = jedis.get(RedisCache.encodeKey(entryKey(uriCacheKey, mediaType)));
+        return encoded == null ? null : new EncodedVariant(mediaType, encoded);
+    }
+
+    @Override
+    public void write( @NotNull ScriptPipeline pipeline,
+                       @NotNull String uriCacheKey,
+                       @NotNull MediaType mediaType,
+                       int ttlSeconds,
+                       @NotNull byte[] encoded )
+    {
+        byte[] setKey = RedisCache.encodeKey(uriCacheKey);
+        byte[] entryName = RedisCache.encodeKey(entryKey(uriCacheKey, mediaType));
+
+        pipeline.sadd(setKey, entryName);
+        pipeline.expire(setKey, Math.max(_setExpirationSeconds, ttlSeconds));
+        pipeline.setex(entryName, ttlSeconds, encoded);
+    }
+
+    @Override
+    public void remove( @NotNull ScriptPipeline pipeline,
+                        @NotNull String uriCacheKey )
+    {
+        pipeline.eval(REMOVE_SCRIPT, 1, RedisCache.encodeKey(uriCacheKey));
+    }
+
+    /**
+     * @return key of a variant's entry, a member of the URI's set
+     */
+    @NotNull
+    static String entryKey( @NotNull String uriCacheKey,
+                            @NotNull MediaType mediaType )
+    {
+        return uriCacheKey + RedisCache.KEY_DELIMITER + mediaType.toString();
+    }
+
+    @NotNull
+    private static List<EncodedVariant> readVariants( @NotNull RedisScript script,
+                                                      @NotNull Jedis jedis,
+                                                      @NotNull String uriCacheKey,
+                                                      @NotNull MediaType accept )
+    {
+        Object reply = script.eval(jedis, 1,
+                RedisCache.encodeKey(uriCacheKey),
+                SafeEncoder.encode(accept.getType().toLowerCase(Locale.ENGLISH)),
+                SafeEncoder.encode(accept.getSubtype().toLowerCase(Locale.ENGLISH)));
+        return EncodedVariant.fromReply(reply);
+    }
+
+    /**
+     * @param value Lua expression for the value returned for each `entry`
+     */
+    @NotNull
+    private static String readVariantsScript( @NotNull String value )
+    {
+        return MediaTypes.LUA_COMPATIBLE +
+                "local prefixLength = #KEYS[1] + 2\n" +
+                "local result = {}\n" +
+                "for _, member in ipairs(redis.call('SMEMBERS', KEYS[1])) do\n" +
+                "  local mediaType = string.sub(member, prefixLength)\n" +
+                "  if compatible(mediaType, ARGV[1], ARGV[2]) then\n" +
+                "    local entry = redis.call('GET', member)\n" +
+                "    if entry then\n" +
+                "      result[#result + 1] = mediaType\n" +
+                "      result[#result + 1] = " + value + "\n" +
+                "    end\n" +
+                "  end\n" +
+                "end\n" +
+                "return result\n";
+    }
+}
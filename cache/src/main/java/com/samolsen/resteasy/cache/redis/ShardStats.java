@@ -0,0 +1,83 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Distribution of keys and load on one shard of a {@link ShardedRedisCache}.
+ *
+ * @see ShardedRedisCache#getShardStats()
+ */
+public class ShardStats {
+
+    @NotNull
+    private final String _name;
+    private final double _ringShare;
+    private final long _operations;
+    private final long _keys;
+
+    ShardStats( @NotNull String name,
+                double ringShare,
+                long operations,
+                long keys )
+    {
+        _name = name;
+        _ringShare = ringShare;
+        _operations = operations;
+        _keys = keys;
+    }
+
+    /**
+     * @return the shard's name, which places it on the hash ring
+     */
+    @NotNull
+    public String getName()
+    {
+        return _name;
+    }
+
+    /**
+     * @return fraction of the hash ring owned by the shard, and so the expected fraction of keys
+     */
+    public double getRingShare()
+    {
+        return _ringShare;
+    }
+
+    /**
+     * @return number of operations routed to the shard since the cache was constructed
+     */
+    public long getOperations()
+    {
+        return _operations;
+    }
+
+    /**
+     * @return number of keys in the shard's database (DBSIZE), including keys outside the cache
+     */
+    public long getKeys()
+    {
+        return _keys;
+    }
+
+    @Override
+    public String toString()
+    {
+        return _name + "{ringShare=" + _ringShare + ", operations=" + _operations + ", keys=" + _keys + "}";
+    }
+}
@@ -0,0 +1,213 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Hashing;
+import redis.clients.util.Pool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Standalone Redis nodes sharded on the client, through a consistent-hash ring.
+ *
+ * Each shard is placed on the ring at a number of points (virtual nodes), hashed from its name.
+ * A key belongs to the shard at the first point at or after the key's hash. Adding or removing a
+ * shard moves only the keys in the arcs it gains or loses, about 1/N of all keys.
+ *
+ * Keys are routed by URI cache key, so every variant of a URI, and its lease, is on one shard.
+ */
+class ShardedNodes implements RedisNodes {
+
+    static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private static final Hashing HASHING = Hashing.MURMUR_HASH;
+
+    @NotNull
+    private final List<Shard> _shards;
+    @NotNull
+    private final List<Pool<Jedis>> _pools;
+    /**
+     * Ring points, in ascending order, and the shard owning each.
+     */
+    @NotNull
+    private final long[] _points;
+    @NotNull
+    private final Shard[] _owners;
+
+    /**
+     * @param pools        pools by shard name. Names place shards on the ring, so must be kept
+     *                     when shards are added or removed.
+     * @param virtualNodes points on the ring per shard. More points spread keys more evenly.
+     */
+    ShardedNodes( @NotNull Map<String, ? extends Pool<Jedis>> pools,
+                  int virtualNodes )
+    {
+        if( pools.isEmpty() )
+        {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        if( virtualNodes < 1 )
+        {
+            throw new IllegalArgumentException("virtualNodes must be positive: " + virtualNodes);
+        }
+
+        List<Shard> shards = new ArrayList<Shard>(pools.size());
+        List<Pool<Jedis>> poolList = new ArrayList<Pool<Jedis>>(pools.size());
+        for( Map.Entry<String, ? extends Pool<Jedis>> entry : pools.entrySet() )
+        {
+            shards.add(new Shard(entry.getKey(), entry.getValue()));
+            poolList.add(entry.getValue());
+        }
+        _shards = Collections.unmodifiableList(shards);
+        _pools = Collections.unmodifiableList(poolList);
+
+        List<Point> points = new ArrayList<Point>(shards.size() * virtualNodes);
+        for( Shard shard : shards )
+        {
+            for( int i = 0; i < virtualNodes; i++ )
+            {
+                points.add(new Point(HASHING.hash(shard._name + "#" + i), shard));
+            }
+        }
+        Collections.sort(points, new Comparator<Point>() {
+            @Override
+            public int compare( Point a,
+                                Point b )
+            {
+                return a._hash < b._hash ? -1 : a._hash == b._hash ? 0 : 1;
+            }
+        });
+
+        _points = new long[points.size()];
+        _owners = new Shard[points.size()];
+        for( int i = 0; i < _points.length; i++ )
+        {
+            _points[i] = points.get(i)._hash;
+            _owners[i] = points.get(i)._shard;
+        }
+
+        // each point owns the arc back to the point before it, wrapping around from the first
+        for( int i = 0; i < _points.length; i++ )
+        {
+            long previous = _points[i == 0 ? _points.length - 1 : i - 1];
+            long arc = _points[i] - previous;
+            _owners[i]._ringShare += arc == 0 && _points.length == 1 ? 1.0 : unsignedFraction(arc);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Pool<Jedis> poolFor( @NotNull String key )
+    {
+        Shard shard = shardFor(key);
+        shard._operations.incrementAndGet();
+        return shard._pool;
+    }
+
+    @NotNull
+    @Override
+    public Collection<Pool<Jedis>> primaries()
+    {
+        return _pools;
+    }
+
+    @NotNull
+    @Override
+    public String uriKey( @NotNull String uri )
+    {
+        return uri;
+    }
+
+    @Override
+    public void redirected( @NotNull String key )
+    {
+        // standalone nodes do not redirect
+    }
+
+    @NotNull
+    List<Shard> shards()
+    {
+        return _shards;
+    }
+
+    @NotNull
+    Shard shardFor( @NotNull String key )
+    {
+        int index = Arrays.binarySearch(_points, HASHING.hash(key));
+        if( index < 0 )
+        {
+            index = -index - 1;
+            if( index == _points.length )
+            {
+                index = 0;
+            }
+        }
+        return _owners[index];
+    }
+
+    /**
+     * @return the arc, read as an unsigned 64 bit length, as a fraction of the ring
+     */
+    private static double unsignedFraction( long arc )
+    {
+        double length = ( arc >>> 1 ) * 2.0 + ( arc & 1 );
+        return length / 18446744073709551616.0;
+    }
+
+    static class Shard {
+
+        @NotNull
+        final String _name;
+        @NotNull
+        final Pool<Jedis> _pool;
+        final AtomicLong _operations = new AtomicLong();
+        /**
+         * Fraction of the ring owned, set while the ring is built.
+         */
+        double _ringShare;
+
+        Shard( @NotNull String name,
+               @NotNull Pool<Jedis> pool )
+        {
+            _name = name;
+            _pool = pool;
+        }
+    }
+
+    private static class Point {
+
+        final long _hash;
+        @NotNull
+        final Shard _shard;
+
+        Point( long hash,
+               @NotNull Shard shard )
+        {
+            _hash = hash;
+            _shard = shard;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Pool;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * {@link RedisCache} sharded across standalone Redis nodes, for deployments without Redis Cluster.
+ *
+ * Each URI is routed to a shard through a consistent-hash ring with virtual nodes, so all variants
+ * of a URI are on one shard, and each get and add is a single round trip to it. Adding or removing
+ * a shard moves about 1/N of the URIs; moved entries miss until regenerated.
+ *
+ * {@link #clear()} and {@link #removeAll} run on the shards in parallel. The near cache channel and
+ * the generation counter are each held on one shard.
+ *
+ * @see #getShardStats()
+ */
+public class ShardedRedisCache extends RedisCache {
+
+    /**
+     * @param shards    pools for the shards. Shards are named by position, so add new shards at the
+     *                  end of the list. Owned by the caller, and not closed.
+     * @param namespace namespace for cache keys. When not null, appended to the beginning of each key
+     */
+    public ShardedRedisCache( @NotNull List<JedisPool> shards,
+                              @Nullable String namespace )
+    {
+        this(shards, namespace, new BinaryCacheEntryCodec(), new RedisCacheConfig());
+    }
+
+    /**
+     * @param shards    pools for the shards. Shards are named by position, so add new shards at the
+     *                  end of the list. Owned by the caller, and not closed.
+     * @param namespace namespace for cache keys. When not null, appended to the beginning of each key
+     * @param codec     {@link CacheEntryCodec} for converting cache entries to and from bytes
+     * @param config    optional cache features
+     */
+    public ShardedRedisCache( @NotNull List<JedisPool> shards,
+                              @Nullable String namespace,
+                              @NotNull CacheEntryCodec codec,
+                              @NotNull RedisCacheConfig config )
+    {
+        this(nameByPosition(shards), namespace, codec, config, ShardedNodes.DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param shards       pools by shard name. A shard keeps its keys while its name is unchanged,
+     *                     whatever other shards are added or removed. Owned by the caller, and not
+     *                     closed.
+     * @param namespace    namespace for cache keys. When not null, appended to the beginning of each key
+     * @param codec        {@link CacheEntryCodec} for converting cache entries to and from bytes
+     * @param config       optional cache features
+     * @param virtualNodes points on the hash ring per shard. Defaults to 160; more spread keys more
+     *                     evenly, at the cost of memory.
+     */
+    public ShardedRedisCache( @NotNull Map<String, JedisPool> shards,
+                              @Nullable String namespace,
+                              @NotNull CacheEntryCodec codec,
+                              @NotNull RedisCacheConfig config,
+                              int virtualNodes )
+    {
+        super(new ShardedNodes(shards, virtualNodes), namespace, codec, config);
+    }
+
+    /**
+     * Reports how keys and operations are spread across the shards. Counts keys with DBSIZE, on all
+     * shards in parallel.
+     *
+     * @return stats per shard, in the order the shards were given
+     */
+    @NotNull
+    public List<ShardStats> getShardStats()
+    {
+        final Map<Pool<Jedis>, Long> keys = new HashMap<Pool<Jedis>, Long>();
+        FanOut.forEachPool(_nodes.primaries(), new FanOut.PoolTask() {
+            @Override
+            public void run( @NotNull Pool<Jedis> pool )
+            {
+                Jedis jedis = null;
+                try
+                {
+                    jedis = pool.getResource();
+                    Long dbSize = jedis.dbSize();
+                    synchronized( keys )
+                    {
+                        keys.put(pool, dbSize);
+                    }
+                }
+                finally
+                {
+                    if( jedis != null )
+                    {
+                        jedis.close();
+                    }
+                }
+            }
+        });
+
+        List<ShardedNodes.Shard> shards = ( (ShardedNodes) _nodes ).shards();
+        List<ShardStats> stats = new ArrayList<ShardStats>(shards.size());
+        for( ShardedNodes.Shard shard : shards )
+        {
+            stats.add(new ShardStats(shard._name, shard._ringShare, shard._operations.get(), keys.get(shard._pool)));
+        }
+        return stats;
+    }
+
+    @NotNull
+    private static Map<String, JedisPool> nameByPosition( @NotNull List<JedisPool> shards )
+    {
+        Map<String, JedisPool> named = new LinkedHashMap<String, JedisPool>();
+        for( int i = 0; i < shards.size(); i++ )
+        {
+            named.put("shard-" + i, shards.get(i));
+        }
+        return named;
+    }
+}
@@ -0,0 +1,64 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * All keys on one Redis server.
+ */
+class SingleNode implements RedisNodes {
+
+    @NotNull
+    private final Pool<Jedis> _pool;
+
+    SingleNode( @NotNull Pool<Jedis> pool )
+    {
+        _pool = pool;
+    }
+
+    @NotNull
+    @Override
+    public Pool<Jedis> poolFor( @NotNull String key )
+    {
+        return _pool;
+    }
+
+    @NotNull
+    @Override
+    public Collection<Pool<Jedis>> primaries()
+    {
+        return Collections.singletonList(_pool);
+    }
+
+    @NotNull
+    @Override
+    public String uriKey( @NotNull String uri )
+    {
+        return uri;
+    }
+
+    @Override
+    public void redirected( @NotNull String key )
+    {
+    }
+}
@@ -0,0 +1,103 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Recompute lease for expired entries, so one caller regenerates a hot entry while the others wait
+ * for it or are served the previous value.
+ *
+ * The lease is a key next to the URI key, set with SET NX PX and deleted when the entry is
+ * written. It is only taken for URIs with an expired entry still in Redis, so URIs which are never
+ * cached are not held up. Expired entries are kept in Redis for {@link #retentionSeconds()} past
+ * their max-age for this purpose.
+ *
+ * @see RedisCacheConfig#setStampedeLeaseMillis(long)
+ */
+class StampedeLease {
+
+    static final String LEASE_SUFFIX = RedisCache.KEY_DELIMITER + "lease";
+
+    /**
+     * Max-age given to stale entries served while another caller regenerates them.
+     */
+    static final int STALE_MAX_AGE_SECONDS = 1;
+
+    static final long POLL_MILLIS = 20;
+
+    private final long _leaseMillis;
+    private final long _waitMillis;
+    private final int _staleRetentionSeconds;
+
+    StampedeLease( long leaseMillis,
+                   long waitMillis,
+                   int staleRetentionSeconds )
+    {
+        _leaseMillis = leaseMillis;
+        _waitMillis = waitMillis;
+        _staleRetentionSeconds = staleRetentionSeconds;
+    }
+
+    /**
+     * @return seconds entries are kept in Redis past their max-age
+     */
+    int retentionSeconds()
+    {
+        int leaseSeconds = (int) ( ( _leaseMillis + 999 ) / 1000 );
+        return Math.max(_staleRetentionSeconds, leaseSeconds);
+    }
+
+    long waitMillis()
+    {
+        return _waitMillis;
+    }
+
+    /**
+     * @return whether the caller holds the lease, and should regenerate the entry
+     */
+    boolean tryAcquire( @NotNull Jedis jedis,
+                        @NotNull String uriCacheKey )
+    {
+        return "OK".equals(jedis.set(uriCacheKey + LEASE_SUFFIX, "1", "NX", "PX", _leaseMillis));
+    }
+
+    /**
+     * Queues deletion of the lease, once the regenerated entry is written.
+     */
+    void release( @NotNull Pipeline pipeline,
+                  @NotNull String uriCacheKey )
+    {
+        pipeline.del(RedisCache.encodeKey(uriCacheKey + LEASE_SUFFIX));
+    }
+
+    /**
+     * @return a copy of the expired entry which may be served, or null when it is too old
+     */
+    @Nullable
+    CacheEntry stale( @NotNull CacheEntry expired )
+    {
+        if( -expired.getExpirationInSeconds() >= _staleRetentionSeconds )
+        {
+            return null;
+        }
+        return expired.withExpires(STALE_MAX_AGE_SECONDS);
+    }
+}
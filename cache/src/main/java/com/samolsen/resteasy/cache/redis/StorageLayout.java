@@ -0,0 +1,38 @@
+package com.samolsen.resteasy.cache.redis;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * How the variants (one per media type) of a cached URI are stored in Redis.
+ *
+ * @see RedisCacheConfig#setStorageLayout(StorageLayout)
+ */
+public enum StorageLayout {
+
+    /**
+     * Each variant is stored under its own key (`uri:mediaType`), and a set stored under the URI
+     * key references the variant keys. Each variant key expires with its max-age.
+     */
+    SET_INDEX,
+
+    /**
+     * All variants are stored in a single hash under the URI key, with media types as fields.
+     * Lookups and removals touch a single key. The hash expires with its longest lived variant;
+     * expiry of the other variants is enforced when they are read.
+     */
+    HASH
+}
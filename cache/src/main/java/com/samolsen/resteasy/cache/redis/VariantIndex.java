@@ -0,0 +1,166 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.ws.rs.core.MediaType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Bounded, in-process LRU of the media types cached per URI cache key, so the preferred variant can
+ * be chosen locally and read with a single GET rather than reading every variant.
+ *
+ * Only media types are held, not entries. The index is updated by this node's writes and removals;
+ * variants added or removed by other nodes are noticed when an index entry reaches its TTL, or when
+ * the chosen variant turns out to be missing.
+ *
+ * @see RedisCacheConfig#setVariantIndexMaxUris(int)
+ */
+class VariantIndex {
+
+    private final int _maxUris;
+    private final long _ttlMillis;
+
+    @NotNull
+    private final LinkedHashMap<String, Variants> _entries = new LinkedHashMap<String, Variants>(16, 0.75f, true);
+    /**
+     * Incremented on every invalidation. Media types read from Redis are only stored when no
+     * invalidation happened while they were being read.
+     */
+    private long _epoch;
+
+    /**
+     * @param maxUris   most URIs indexed
+     * @param ttlMillis time after which an index entry is read again from Redis
+     */
+    VariantIndex( int maxUris,
+                  long ttlMillis )
+    {
+        _maxUris = maxUris;
+        _ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return media types cached for the key, or null when not indexed
+     */
+    @Nullable
+    synchronized List<MediaType> get( @NotNull String key )
+    {
+        Variants variants = _entries.get(key);
+        if( variants == null )
+        {
+            return null;
+        }
+        if( System.currentTimeMillis() - variants._indexedAt >= _ttlMillis )
+        {
+            _entries.remove(key);
+            return null;
+        }
+        return variants._mediaTypes;
+    }
+
+    /**
+     * @return token to pass to {@link #put(String, List, long)} for media types about to be read
+     */
+    synchronized long epoch()
+    {
+        return _epoch;
+    }
+
+    /**
+     * Stores every media type cached for a key, unless it was invalidated since `epoch`.
+     */
+    synchronized void put( @NotNull String key,
+                           @NotNull List<MediaType> mediaTypes,
+                           long epoch )
+    {
+        if( epoch != _epoch )
+        {
+            return;
+        }
+        _entries.put(key, new Variants(Collections.unmodifiableList(new ArrayList<MediaType>(mediaTypes))));
+
+        Iterator<Variants> eldest = _entries.values().iterator();
+        while( _entries.size() > _maxUris && eldest.hasNext() )
+        {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Records a variant written by this node, when the key is indexed.
+     */
+    synchronized void added( @NotNull String key,
+                             @NotNull MediaType mediaType )
+    {
+        // media types being read may predate the write
+        _epoch++;
+        Variants variants = _entries.get(key);
+        if( variants == null || variants._mediaTypes.contains(mediaType) )
+        {
+            return;
+        }
+        List<MediaType> mediaTypes = new ArrayList<MediaType>(variants._mediaTypes.size() + 1);
+        mediaTypes.addAll(variants._mediaTypes);
+        mediaTypes.add(mediaType);
+        // keeps the original TTL, so other nodes' changes are still picked up
+        _entries.put(key, new Variants(Collections.unmodifiableList(mediaTypes), variants._indexedAt));
+    }
+
+    synchronized void invalidate( @NotNull String key )
+    {
+        _epoch++;
+        _entries.remove(key);
+    }
+
+    synchronized void invalidateAll()
+    {
+        _epoch++;
+        _entries.clear();
+    }
+
+    synchronized int size()
+    {
+        return _entries.size();
+    }
+
+    private static class Variants {
+
+        @NotNull
+        final List<MediaType> _mediaTypes;
+        final long _indexedAt;
+
+        Variants( @NotNull List<MediaType> mediaTypes )
+        {
+            this(mediaTypes, System.currentTimeMillis());
+        }
+
+        Variants( @NotNull List<MediaType> mediaTypes,
+                  long indexedAt )
+        {
+            _mediaTypes = mediaTypes;
+            _indexedAt = indexedAt;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+
+import javax.ws.rs.core.MediaType;
+import java.util.List;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Storage of the encoded variants of a URI, according to a {@link StorageLayout}.
+ */
+interface VariantStore {
+
+    /**
+     * Reads the variants of a URI compatible with `accept`, in a single round trip. Media types
+     * are matched against the variant index, so incompatible entries are not transferred.
+     *
+     * @param uriCacheKey namespaced URI key
+     * @param accept      requested media type
+     * @return compatible variants. Entries may have expired.
+     */
+    @NotNull
+    List<EncodedVariant> read( @NotNull Jedis jedis,
+                               @NotNull String uriCacheKey,
+                               @NotNull MediaType accept );
+
+    /**
+     * Reads the heads of the variants of a URI compatible with `accept`, in a single round trip.
+     * Binary entries are cut to their head ({@link BinaryCacheEntryCodec#LUA_HEAD}) by Redis, so
+     * their entities are not transferred; other values are read whole.
+     *
+     * @param uriCacheKey namespaced URI key
+     * @param accept      requested media type
+     * @return heads of compatible variants. Entries may have expired.
+     */
+    @NotNull
+    List<EncodedVariant> readHeads( @NotNull Jedis jedis,
+                                    @NotNull String uriCacheKey,
+                                    @NotNull MediaType accept );
+
+    /**
+     * Reads one variant of a URI, by its exact media type, in a single round trip.
+     *
+     * @param uriCacheKey namespaced URI key
+     * @param mediaType   media type of the variant, as written
+     * @return the variant, or null when it is not cached. The entry may have expired.
+     */
+    @Nullable
+    EncodedVariant readVariant( @NotNull Jedis jedis,
+                                @NotNull String uriCacheKey,
+                                @NotNull MediaType mediaType );
+
+    /**
+     * Queues the commands writing a variant. Writes of many variants may share a pipeline.
+     *
+     * @param uriCacheKey namespaced URI key
+     * @param mediaType   media type of the variant
+     * @param ttlSeconds  seconds until Redis expires the variant
+     * @param encoded     encoded entry
+     */
+    void write( @NotNull ScriptPipeline pipeline,
+                @NotNull String uriCacheKey,
+                @NotNull MediaType mediaType,
+                int ttlSeconds,
+                @NotNull byte[] encoded );
+
+    /**
+     * Queues the commands removing all variants of a URI. Removals of many URIs may share a
+     * pipeline.
+     *
+     * @param uriCacheKey namespaced URI key
+     */
+    void remove( @NotNull ScriptPipeline pipeline,
+                 @NotNull String uriCacheKey );
+}
@@ -0,0 +1,437 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.Pool;
+
+import javax.ws.rs.core.MediaType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Bounded queue of cache writes, drained by a background thread. Writes are sent to Redis in
+ * batches, one pipeline per batch and node.
+ *
+ * Entries are encoded on the calling thread, so the writer only does I/O. A write which fails is
+ * not retried; the entry is simply not cached. Writes queued before a URI is removed, or the cache
+ * cleared, are discarded, so they cannot bring back what was just invalidated.
+ *
+ * @see RedisCacheConfig#setWriteBehindQueueCapacity(int)
+ */
+public class WriteBehindQueue {
+
+    private static final Logger LOG = Logger.getLogger(WriteBehindQueue.class.getName());
+
+    private static final long POLL_MILLIS = 100;
+
+    @NotNull
+    private final RedisNodes _nodes;
+    @NotNull
+    private final VariantStore _variantStore;
+    @Nullable
+    private final NearCache _nearCache;
+    @Nullable
+    private final StampedeLease _stampedeLease;
+    @NotNull
+    private final BlockingQueue<PendingWrite> _queue;
+    @NotNull
+    private final OverflowPolicy _overflowPolicy;
+    private final int _batchSize;
+
+    private final AtomicLong _dropped = new AtomicLong();
+    private final AtomicLong _written = new AtomicLong();
+    private final AtomicLong _failed = new AtomicLong();
+    private final AtomicLong _batches = new AtomicLong();
+    private final AtomicLong _sequence = new AtomicLong();
+
+    /**
+     * Held while the writer takes a batch and writes it, so a discard waits for a batch in flight
+     */
+    private final Object _writeLock = new Object();
+    /**
+     * Last sequence queued before each discarded key, for a write taken before the discard. Cleared
+     * each time the writer takes a batch.
+     */
+    private final Map<String, Long> _discarded = new HashMap<String, Long>();
+    /**
+     * Last sequence queued before the cache was cleared
+     */
+    private long _discardedAllThrough;
+
+    private volatile boolean _closed;
+    @Nullable
+    private Thread _thread;
+
+    WriteBehindQueue( @NotNull RedisNodes nodes,
+                      @NotNull VariantStore variantStore,
+                      @Nullable NearCache nearCache,
+                      @Nullable StampedeLease stampedeLease,
+                      int capacity,
+                      @NotNull OverflowPolicy overflowPolicy,
+                      int batchSize )
+    {
+        _nodes = nodes;
+        _variantStore = variantStore;
+        _nearCache = nearCache;
+        _stampedeLease = stampedeLease;
+        _queue = new ArrayBlockingQueue<PendingWrite>(capacity);
+        _overflowPolicy = overflowPolicy;
+        _batchSize = Math.max(1, batchSize);
+    }
+
+    void start()
+    {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                drain();
+            }
+        }, "redis-cache-write-behind");
+        thread.setDaemon(true);
+        thread.start();
+        _thread = thread;
+    }
+
+    /**
+     * Stops accepting writes, and waits for those queued to be written. Writes still queued after
+     * the timeout are dropped.
+     */
+    void close( long timeoutMillis )
+    {
+        _closed = true;
+        Thread thread = _thread;
+        if( thread != null )
+        {
+            try
+            {
+                thread.join(timeoutMillis);
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            thread.interrupt();
+        }
+
+        List<PendingWrite> remaining = new ArrayList<PendingWrite>();
+        _queue.drainTo(remaining);
+        _dropped.addAndGet(remaining.size());
+    }
+
+    /**
+     * @return whether the write was queued
+     */
+    boolean enqueue( @NotNull String uriCacheKey,
+                     @NotNull MediaType mediaType,
+                     int ttlSeconds,
+                     @NotNull byte[] encoded )
+    {
+        PendingWrite write = new PendingWrite(uriCacheKey, mediaType, ttlSeconds, encoded, _sequence.incrementAndGet());
+        boolean queued = false;
+        if( !_closed )
+        {
+            if( _overflowPolicy == OverflowPolicy.BLOCK )
+            {
+                try
+                {
+                    _queue.put(write);
+                    queued = true;
+                }
+                catch( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            else
+            {
+                queued = _queue.offer(write);
+            }
+        }
+
+        if( !queued )
+        {
+            _dropped.incrementAndGet();
+        }
+        return queued;
+    }
+
+    /**
+     * Discards writes of the keys queued so far. A batch being written is finished first, so once
+     * this returns nothing queued before it reaches Redis.
+     *
+     * @param uriCacheKeys keys of removed URIs
+     */
+    void discard( @NotNull Collection<String> uriCacheKeys )
+    {
+        Set<String> keys = new HashSet<String>(uriCacheKeys);
+        synchronized( _writeLock )
+        {
+            long through = _sequence.get();
+            for( String key : keys )
+            {
+                _discarded.put(key, through);
+            }
+            for( PendingWrite write : _queue )
+            {
+                // the iterator may return a write the writer has since taken
+                if( keys.contains(write._uriCacheKey) && _queue.remove(write) )
+                {
+                    _dropped.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards all writes queued so far, as {@link #discard(Collection)}.
+     */
+    void discardAll()
+    {
+        synchronized( _writeLock )
+        {
+            _discardedAllThrough = _sequence.get();
+            List<PendingWrite> queued = new ArrayList<PendingWrite>();
+            _queue.drainTo(queued);
+            _dropped.addAndGet(queued.size());
+        }
+    }
+
+    private void drain()
+    {
+        List<PendingWrite> batch = new ArrayList<PendingWrite>(_batchSize);
+        try
+        {
+            while( true )
+            {
+                PendingWrite first = _queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if( first == null )
+                {
+                    if( _closed )
+                    {
+                        return;
+                    }
+                    continue;
+                }
+
+                synchronized( _writeLock )
+                {
+                    batch.add(first);
+                    _queue.drainTo(batch, _batchSize - 1);
+                    removeDiscarded(batch);
+                    try
+                    {
+                        if( !batch.isEmpty() )
+                        {
+                            write(batch);
+                        }
+                    }
+                    catch( RuntimeException e )
+                    {
+                        // the writer thread carries on, or the queue would fill and never drain
+                        _failed.addAndGet(batch.size());
+                        LOG.log(Level.WARNING, "Write-behind batch failed", e);
+                    }
+                    batch.clear();
+                }
+            }
+        }
+        catch( InterruptedException e )
+        {
+            // closing
+        }
+    }
+
+    /**
+     * Removes writes discarded after they were taken from the queue, but before the lock was held.
+     * Those discarded while still queued were removed by the discard.
+     */
+    private void removeDiscarded( @NotNull List<PendingWrite> batch )
+    {
+        for( Iterator<PendingWrite> it = batch.iterator(); it.hasNext(); )
+        {
+            PendingWrite write = it.next();
+            Long through = _discarded.get(write._uriCacheKey);
+            if( write._sequence <= _discardedAllThrough || through != null && write._sequence <= through )
+            {
+                it.remove();
+                _dropped.incrementAndGet();
+            }
+        }
+        _discarded.clear();
+    }
+
+    private void write( @NotNull List<PendingWrite> batch )
+    {
+        // one pipeline per node
+        Map<Pool<Jedis>, List<PendingWrite>> byNode = new LinkedHashMap<Pool<Jedis>, List<PendingWrite>>();
+        for( PendingWrite write : batch )
+        {
+            Pool<Jedis> pool = _nodes.poolFor(write._uriCacheKey);
+            List<PendingWrite> writes = byNode.get(pool);
+            if( writes == null )
+            {
+                writes = new ArrayList<PendingWrite>();
+                byNode.put(pool, writes);
+            }
+            writes.add(write);
+        }
+        for( Map.Entry<Pool<Jedis>, List<PendingWrite>> node : byNode.entrySet() )
+        {
+            write(node.getKey(), node.getValue());
+        }
+
+        if( _nearCache != null )
+        {
+            for( PendingWrite write : batch )
+            {
+                _nearCache.invalidate(write._uriCacheKey);
+            }
+        }
+    }
+
+    private void write( @NotNull Pool<Jedis> pool,
+                        @NotNull List<PendingWrite> writes )
+    {
+        Jedis jedis = null;
+        try
+        {
+            jedis = pool.getResource();
+            ScriptPipeline pipeline = new ScriptPipeline(jedis);
+            for( PendingWrite write : writes )
+            {
+                _variantStore.write(pipeline, write._uriCacheKey, write._mediaType, write._ttlSeconds, write._encoded);
+                if( _stampedeLease != null )
+                {
+                    _stampedeLease.release(pipeline, write._uriCacheKey);
+                }
+            }
+            pipeline.sync();
+            _written.addAndGet(writes.size());
+        }
+        catch( JedisRedirectionException e )
+        {
+            _nodes.redirected(writes.get(0)._uriCacheKey);
+            _failed.addAndGet(writes.size());
+        }
+        catch( JedisException e )
+        {
+            _failed.addAndGet(writes.size());
+        }
+        catch( RuntimeException e )
+        {
+            // e.g. from a store or codec. The other nodes' writes are still sent.
+            _failed.addAndGet(writes.size());
+            LOG.log(Level.WARNING, "Write-behind writes failed", e);
+        }
+        finally
+        {
+            if( jedis != null )
+            {
+                jedis.close();
+            }
+            _batches.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of writes waiting in the queue
+     */
+    public int getQueueDepth()
+    {
+        return _queue.size();
+    }
+
+    /**
+     * @return number of writes discarded, because the queue was full, the cache was closed, or the
+     * URI was removed
+     */
+    public long getDroppedCount()
+    {
+        return _dropped.get();
+    }
+
+    /**
+     * @return number of writes sent to Redis
+     */
+    public long getWrittenCount()
+    {
+        return _written.get();
+    }
+
+    /**
+     * @return number of writes lost to Redis errors, or to unexpected failures, which are logged
+     */
+    public long getFailedCount()
+    {
+        return _failed.get();
+    }
+
+    /**
+     * @return number of pipelines sent to Redis
+     */
+    public long getBatchCount()
+    {
+        return _batches.get();
+    }
+
+    private static class PendingWrite {
+
+        @NotNull
+        final String _uriCacheKey;
+        @NotNull
+        final MediaType _mediaType;
+        final int _ttlSeconds;
+        @NotNull
+        final byte[] _encoded;
+        /**
+         * order the write was queued in
+         */
+        final long _sequence;
+
+        PendingWrite( @NotNull String uriCacheKey,
+                      @NotNull MediaType mediaType,
+                      int ttlSeconds,
+                      @NotNull byte[] encoded,
+                      long sequence )
+        {
+            _uriCacheKey = uriCacheKey;
+            _mediaType = mediaType;
+            _ttlSeconds = ttlSeconds;
+            _encoded = encoded;
+            _sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class AcceptableTest {
+
+    static final List<MediaType> VARIANTS = Arrays.asList(
+            MediaType.TEXT_PLAIN_TYPE,
+            MediaType.TEXT_HTML_TYPE,
+            MediaType.APPLICATION_JSON_TYPE);
+
+    @Test
+    public void testQualityValues()
+    {
+        Acceptable acceptable = acceptable("text/html;q=0.9", "application/json");
+
+        Assert.assertEquals(2, acceptable.best(VARIANTS));
+        Assert.assertEquals(0.9, acceptable.quality(MediaType.TEXT_HTML_TYPE), 0);
+        Assert.assertEquals(0, acceptable.quality(MediaType.TEXT_PLAIN_TYPE), 0);
+    }
+
+    @Test
+    public void testLessPreferredNotServed()
+    {
+        // the resource may produce JSON, so cached HTML is not served
+        Acceptable acceptable = acceptable("text/html;q=0.9", "application/json");
+        Assert.assertEquals(-1, acceptable.best(VARIANTS.subList(0, 2)));
+
+        acceptable = acceptable("text/*", "text/html");
+        Assert.assertArrayEquals(new int[]{1}, acceptable.rank(VARIANTS));
+        Assert.assertEquals(-1, acceptable.best(Collections.singletonList(MediaType.TEXT_PLAIN_TYPE)));
+    }
+
+    @Test
+    public void testMostSpecificRangeApplies()
+    {
+        Acceptable acceptable = acceptable("text/*;q=0.5", "text/plain;q=0.1", "*/*;q=0.8");
+
+        Assert.assertEquals(0.1, acceptable.quality(MediaType.TEXT_PLAIN_TYPE), 0);
+        Assert.assertEquals(0.5, acceptable.quality(MediaType.TEXT_HTML_TYPE), 0);
+        Assert.assertEquals(0.8, acceptable.quality(MediaType.APPLICATION_JSON_TYPE), 0);
+        Assert.assertArrayEquals(new int[]{2}, acceptable.rank(VARIANTS));
+    }
+
+    @Test
+    public void testEquallyPreferredInHeaderOrder()
+    {
+        Assert.assertArrayEquals(new int[]{2, 1}, acceptable("application/json", "text/html").rank(VARIANTS));
+        Assert.assertArrayEquals(new int[]{1, 2}, acceptable("text/html", "application/json").rank(VARIANTS));
+        Assert.assertEquals(2, acceptable("text/html", "application/json")
+                .best(Arrays.asList(MediaType.TEXT_PLAIN_TYPE, MediaType.TEXT_XML_TYPE, MediaType.APPLICATION_JSON_TYPE)));
+        Assert.assertArrayEquals(new int[]{0, 1, 2}, acceptable("*/*").rank(VARIANTS));
+    }
+
+    @Test
+    public void testNotAcceptable()
+    {
+        Assert.assertArrayEquals(new int[]{1}, acceptable("text/plain;q=0", "text/*").rank(VARIANTS));
+        Assert.assertEquals(-1, acceptable("text/*;q=0").best(VARIANTS));
+        Assert.assertEquals(-1, acceptable("image/png").best(VARIANTS));
+    }
+
+    @Test
+    public void testParameters()
+    {
+        List<MediaType> variants = Arrays.asList(
+                MediaType.valueOf("text/plain;charset=ISO-8859-1"),
+                MediaType.valueOf("text/plain;charset=UTF-8"));
+
+        Assert.assertEquals(1, acceptable("text/plain;charset=utf-8").best(variants));
+        Assert.assertEquals(0, acceptable("text/plain").best(variants));
+        Assert.assertEquals(-1, acceptable("text/plain;charset=US-ASCII").best(variants));
+    }
+
+    @Test
+    public void testFilter()
+    {
+        Assert.assertEquals(MediaType.TEXT_HTML_TYPE, acceptable("text/html").filter());
+        Assert.assertEquals(MediaType.TEXT_HTML_TYPE, acceptable("text/plain;q=0.5", "text/html").filter());
+        Assert.assertEquals(MediaType.WILDCARD_TYPE, acceptable("text/html", "text/plain").filter());
+        Assert.assertEquals(MediaType.WILDCARD_TYPE, new Acceptable(Collections.<MediaType>emptyList()).filter());
+    }
+
+    @Test
+    public void testInvalidQuality()
+    {
+        Assert.assertEquals(1, Acceptable.rangeQuality(MediaType.valueOf("text/plain;q=abc")), 0);
+        Assert.assertEquals(1, Acceptable.rangeQuality(MediaType.valueOf("text/plain;q=2")), 0);
+    }
+
+    private static Acceptable acceptable( String... ranges )
+    {
+        List<MediaType> mediaTypes = new ArrayList<MediaType>();
+        for( String range : ranges )
+        {
+            mediaTypes.add(MediaType.valueOf(range));
+        }
+        return new Acceptable(mediaTypes);
+    }
+}
@@ -0,0 +1,198 @@
+package com.samolsen.resteasy.cache.redis;
+
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class BinaryCacheEntryCodecTest {
+
+    BinaryCacheEntryCodec _codec;
+    MultivaluedMap<String, Object> _headers;
+
+    @Before
+    public void beforeEach()
+    {
+        _codec = new BinaryCacheEntryCodec();
+        _headers = new MultivaluedHashMap<String, Object>();
+    }
+
+    @Test
+    public void testEntryFields()
+            throws IOException
+    {
+        byte[] entity = "hello world".getBytes("UTF-8");
+        CacheEntry entry = new CacheEntry(_headers, entity, 30, "\"etag\"", MediaType.APPLICATION_JSON_TYPE, 1234L);
+
+        CacheEntry decoded = _codec.decode(_codec.encode(entry));
+
+        Assert.assertArrayEquals("entity equal", entity, decoded.getCached());
+        Assert.assertEquals("expires equal", 30, decoded._expires);
+        Assert.assertEquals("timestamp equal", 1234L, decoded._timestamp);
+        Assert.assertEquals("etag equal", "\"etag\"", decoded.getEtag());
+        Assert.assertEquals("mediaType equal", MediaType.APPLICATION_JSON_TYPE, decoded.getMediaType());
+    }
+
+    @Test
+    public void testNullEtagAndEmptyEntity()
+            throws IOException
+    {
+        CacheEntry entry = new CacheEntry(_headers, new byte[0], 1, null, MediaType.TEXT_PLAIN_TYPE);
+
+        CacheEntry decoded = _codec.decode(_codec.encode(entry));
+
+        Assert.assertNull("etag null", decoded.getEtag());
+        Assert.assertEquals("entity empty", 0, decoded.getCached().length);
+    }
+
+    @Test
+    public void testDecodeHead()
+            throws IOException
+    {
+        _headers.add("X-Custom", "value");
+        byte[] entity = "hello world".getBytes("UTF-8");
+        byte[] encoded = _codec.encode(new CacheEntry(_headers, entity, 30, "\"etag\"", MediaType.TEXT_PLAIN_TYPE));
+
+        // the head ends ahead of the entity length
+        byte[] head = Arrays.copyOf(encoded, encoded.length - entity.length - 4);
+        CacheEntryHead decoded = BinaryCacheEntryCodec.decodeHead(head);
+
+        Assert.assertEquals("etag equal", "\"etag\"", decoded.getEtag());
+        Assert.assertEquals("mediaType equal", MediaType.TEXT_PLAIN_TYPE, decoded.getMediaType());
+        Assert.assertEquals("headers equal", _headers, decoded.getHeaders());
+        Assert.assertEquals("etag equal from whole entry", "\"etag\"", BinaryCacheEntryCodec.decodeHead(encoded).getEtag());
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecodeTruncatedHead()
+            throws IOException
+    {
+        _headers.add("X-Custom", "value");
+        byte[] encoded = _codec.encode(new CacheEntry(_headers, new byte[]{1}, 30, null, MediaType.TEXT_PLAIN_TYPE));
+
+        BinaryCacheEntryCodec.decodeHead(Arrays.copyOf(encoded, encoded.length - 6));
+    }
+
+    @Test
+    public void testHeaderValues()
+            throws IOException
+    {
+        List<Object> list = new ArrayList<Object>();
+        list.add("bar");
+        list.add(2L);
+
+        HashMap<String, Object> map = new HashMap<String, Object>();
+        map.put("abc", 123L);
+        map.put("def", null);
+
+        _headers.addAll("foo", "bar", 2L, 4.4, true, false, list, map);
+        _headers.add("baz", "qux");
+
+        CacheEntry entry = new CacheEntry(_headers, new byte[]{1, 2, 3}, 1, null, MediaType.TEXT_PLAIN_TYPE);
+
+        CacheEntry decoded = _codec.decode(_codec.encode(entry));
+
+        Assert.assertEquals("headers equal", _headers, decoded.getHeaders());
+    }
+
+    @Test
+    public void testHeaderDelegateValues()
+            throws IOException
+    {
+        _headers.add("Content-Type", MediaType.TEXT_HTML_TYPE);
+        _headers.add("Content-Length", 42);
+
+        CacheEntry entry = new CacheEntry(_headers, new byte[0], 1, null, MediaType.TEXT_HTML_TYPE);
+
+        CacheEntry decoded = _codec.decode(_codec.encode(entry));
+
+        Assert.assertEquals("text/html", decoded.getHeaders().getFirst("Content-Type"));
+        Assert.assertEquals(42L, decoded.getHeaders().getFirst("Content-Length"));
+    }
+
+    @Test
+    public void testHeadersDecodedLazily()
+            throws IOException
+    {
+        _headers.add("Cache-Control", "max-age=30");
+        _headers.add(new String("Content-Type"), "text/plain");
+        _headers.add("X-Custom", "value");
+
+        byte[] encoded = _codec.encode(new CacheEntry(_headers, new byte[]{1}, 1, null, MediaType.TEXT_PLAIN_TYPE));
+        CacheEntry decoded = _codec.decode(encoded);
+
+        Assert.assertArrayEquals("re-encoded without decoding headers", encoded, _codec.encode(decoded));
+
+        MultivaluedMap<String, Object> headers = decoded.getHeaders();
+        Assert.assertEquals(_headers, headers);
+        Assert.assertSame("decoded once", headers, decoded.getHeaders());
+        for( String name : headers.keySet() )
+        {
+            if( name.equals("Content-Type") )
+            {
+                Assert.assertSame("common name shared", "Content-Type", name);
+            }
+        }
+        Assert.assertArrayEquals("re-encoded after decoding headers", encoded, _codec.encode(decoded));
+    }
+
+    @Test
+    public void testModifiedHeadersEncoded()
+            throws IOException
+    {
+        _headers.add("foo", "bar");
+        CacheEntry decoded = _codec.decode(_codec.encode(new CacheEntry(_headers, new byte[0], 1, null, MediaType.TEXT_PLAIN_TYPE)));
+
+        decoded.getHeaders().add("foo", "baz");
+        _headers.add("foo", "baz");
+
+        Assert.assertEquals(_headers, _codec.decode(_codec.encode(decoded)).getHeaders());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsJson()
+            throws IOException
+    {
+        CacheEntry entry = new CacheEntry(_headers, new byte[0], 1, null, MediaType.TEXT_PLAIN_TYPE);
+        byte[] json = new JsonCacheEntryCodec().encode(entry);
+
+        _codec.decode(json);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsTruncated()
+            throws IOException
+    {
+        CacheEntry entry = new CacheEntry(_headers, "hello world".getBytes("UTF-8"), 1, null, MediaType.TEXT_PLAIN_TYPE);
+        byte[] encoded = _codec.encode(entry);
+        byte[] truncated = new byte[encoded.length - 4];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+
+        _codec.decode(truncated);
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+public class BoundedBorrowTest {
+
+    @Test
+    public void testBorrowBounded()
+    {
+        // no connection is ever free, and the pool itself would wait forever
+        JedisPool pool = new JedisPool(exhausted(), "localhost", 1);
+        long start = System.currentTimeMillis();
+        try
+        {
+            BoundedBorrow.borrow(pool, 50);
+            Assert.fail();
+        }
+        catch( JedisConnectionException e )
+        {
+            Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testSubclassBorrowsThroughGetResource()
+    {
+        final Jedis jedis = new Jedis("localhost", 1);
+        JedisPool pool = new JedisPool(exhausted(), "localhost", 1) {
+            @Override
+            public Jedis getResource()
+            {
+                return jedis;
+            }
+        };
+        try
+        {
+            Assert.assertSame(jedis, BoundedBorrow.borrow(pool, 50));
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+
+    private static JedisPoolConfig exhausted()
+    {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(0);
+        config.setMaxWaitMillis(-1);
+        return config;
+    }
+}
@@ -0,0 +1,42 @@
+package com.samolsen.resteasy.cache.redis;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class CacheGenerationTest {
+
+    @Test
+    public void testGenerationOf()
+    {
+        Assert.assertEquals(0, CacheGeneration.generationOf("ns:g0:http://host/a", "ns:"));
+        Assert.assertEquals(42, CacheGeneration.generationOf("ns:g42:http://host/a:text/plain", "ns:"));
+    }
+
+    @Test
+    public void testNotAGeneration()
+    {
+        Assert.assertEquals(-1, CacheGeneration.generationOf("other:g1:http://host/a", "ns:"));
+        Assert.assertEquals(-1, CacheGeneration.generationOf("ns:resteasy-cache:generation", "ns:"));
+        Assert.assertEquals(-1, CacheGeneration.generationOf("ns:g:http://host/a", "ns:"));
+        Assert.assertEquals(-1, CacheGeneration.generationOf("ns:gx1:http://host/a", "ns:"));
+        Assert.assertEquals(-1, CacheGeneration.generationOf("ns:g12", "ns:"));
+        Assert.assertEquals(-1, CacheGeneration.generationOf("ns:g99999999999999999999:a", "ns:"));
+    }
+
+}
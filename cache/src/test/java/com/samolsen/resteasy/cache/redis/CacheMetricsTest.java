@@ -0,0 +1,83 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class CacheMetricsTest {
+
+    @Test
+    public void testHitRatio()
+    {
+        CacheMetrics metrics = new CacheMetrics();
+        Assert.assertEquals(0, metrics.getHitRatio(), 0);
+
+        metrics.hit(100);
+        metrics.hit(300);
+        metrics.hit(200);
+        metrics.miss();
+
+        Assert.assertEquals(3, metrics.getHits());
+        Assert.assertEquals(1, metrics.getMisses());
+        Assert.assertEquals(0.75, metrics.getHitRatio(), 0);
+        Assert.assertEquals(300, metrics.getHitEntityBytes().getMax());
+    }
+
+    @Test
+    public void testDecodeFailed()
+    {
+        CacheMetrics metrics = new CacheMetrics();
+        IOException error = new IOException("Unknown format");
+        metrics.decodeFailed(error);
+
+        Assert.assertEquals(1, metrics.getDecodeErrors());
+        Assert.assertSame(error, metrics.getLastDecodeError());
+    }
+
+    @Test
+    public void testRoundTripsByOperation()
+    {
+        CacheMetrics metrics = new CacheMetrics();
+        metrics.roundTrip(CacheOperation.GET, 1000);
+        metrics.roundTrip(CacheOperation.GET, 2000);
+        metrics.roundTrip(CacheOperation.CLEAR, 5000);
+
+        Assert.assertEquals(2, metrics.getRoundTripNanos(CacheOperation.GET).getCount());
+        Assert.assertEquals(0, metrics.getRoundTripNanos(CacheOperation.ADD).getCount());
+        Assert.assertEquals(5000, metrics.getRoundTripNanos(CacheOperation.CLEAR).getMax());
+    }
+
+    @Test
+    public void testFailedOpenByOperation()
+    {
+        CacheMetrics metrics = new CacheMetrics();
+        metrics.failedOpen(CacheOperation.GET);
+        metrics.failedOpen(CacheOperation.GET);
+        metrics.failedOpen(CacheOperation.ADD);
+        metrics.circuitStateChanged(CircuitState.OPEN);
+        metrics.circuitStateChanged(CircuitState.HALF_OPEN);
+
+        Assert.assertEquals(2, metrics.getFailedOpen(CacheOperation.GET));
+        Assert.assertEquals(1, metrics.getFailedOpen(CacheOperation.ADD));
+        Assert.assertEquals(0, metrics.getFailedOpen(CacheOperation.CLEAR));
+        Assert.assertEquals(CircuitState.HALF_OPEN, metrics.getCircuitState());
+        Assert.assertEquals(1, metrics.getCircuitOpenedCount());
+    }
+
+}
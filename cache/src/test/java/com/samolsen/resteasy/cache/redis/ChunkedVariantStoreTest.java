@@ -0,0 +1,70 @@
+package com.samolsen.resteasy.cache.redis;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class ChunkedVariantStoreTest {
+
+    @Test
+    public void testManifestRoundTrip()
+    {
+        ChunkedVariantStore.Manifest manifest = new ChunkedVariantStore.Manifest("key:chunk:text/plain:1f:", 1000, 4);
+
+        ChunkedVariantStore.Manifest parsed = ChunkedVariantStore.Manifest.parse(manifest.encode());
+
+        Assert.assertNotNull(parsed);
+        Assert.assertEquals(1000, parsed._length);
+        Assert.assertEquals(4, parsed._chunkCount);
+        Assert.assertArrayEquals("key:chunk:text/plain:1f:3".getBytes(), parsed.chunkKey(3));
+    }
+
+    @Test
+    public void testEntryIsNotManifest()
+    {
+        CacheEntry entry = new CacheEntry(new MultivaluedHashMap<String, Object>(), new byte[10], 1, null, MediaType.TEXT_PLAIN_TYPE);
+
+        Assert.assertNull(ChunkedVariantStore.Manifest.parse(new BinaryCacheEntryCodec().encode(entry)));
+        Assert.assertNull(ChunkedVariantStore.Manifest.parse(new JsonCacheEntryCodec().encode(entry)));
+        Assert.assertNull(ChunkedVariantStore.Manifest.parse(new byte[0]));
+    }
+
+    @Test
+    public void testTruncatedManifest()
+    {
+        byte[] encoded = new ChunkedVariantStore.Manifest("prefix:", 10, 2).encode();
+        byte[] truncated = new byte[encoded.length - 1];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+
+        Assert.assertNull(ChunkedVariantStore.Manifest.parse(truncated));
+    }
+
+    @Test
+    public void testChunkKeysUnderUriKey()
+    {
+        String first = ChunkedVariantStore.chunkKeyPrefix("{/uri}", MediaType.TEXT_PLAIN_TYPE);
+        String second = ChunkedVariantStore.chunkKeyPrefix("{/uri}", MediaType.TEXT_PLAIN_TYPE);
+
+        Assert.assertTrue(first, first.startsWith("{/uri}:chunk:text/plain:"));
+        Assert.assertFalse("new keys per write", first.equals(second));
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpensAfterConsecutiveFailures()
+    {
+        CacheMetrics metrics = new CacheMetrics();
+        CircuitBreaker breaker = new CircuitBreaker(3, 60000, metrics);
+
+        breaker.failed();
+        breaker.failed();
+        breaker.succeeded();
+        breaker.failed();
+        breaker.failed();
+        Assert.assertEquals(CircuitState.CLOSED, breaker.state());
+        Assert.assertTrue(breaker.allow());
+
+        breaker.failed();
+        Assert.assertEquals(CircuitState.OPEN, breaker.state());
+        Assert.assertFalse(breaker.allow());
+        Assert.assertEquals(CircuitState.OPEN, metrics.getCircuitState());
+        Assert.assertEquals(1, metrics.getCircuitOpenedCount());
+    }
+
+    @Test
+    public void testProbeCloses()
+            throws InterruptedException
+    {
+        CacheMetrics metrics = new CacheMetrics();
+        CircuitBreaker breaker = new CircuitBreaker(1, 20, metrics);
+        breaker.failed();
+        Thread.sleep(30);
+
+        Assert.assertTrue(breaker.allow());
+        Assert.assertEquals(CircuitState.HALF_OPEN, breaker.state());
+        // one probe at a time
+        Assert.assertFalse(breaker.allow());
+
+        breaker.succeeded();
+        Assert.assertEquals(CircuitState.CLOSED, breaker.state());
+        Assert.assertEquals(CircuitState.CLOSED, metrics.getCircuitState());
+        Assert.assertTrue(breaker.allow());
+    }
+
+    @Test
+    public void testProbeFailureReopens()
+            throws InterruptedException
+    {
+        CacheMetrics metrics = new CacheMetrics();
+        CircuitBreaker breaker = new CircuitBreaker(1, 20, metrics);
+        breaker.failed();
+        Thread.sleep(30);
+
+        Assert.assertTrue(breaker.allow());
+        breaker.failed();
+        Assert.assertEquals(CircuitState.OPEN, breaker.state());
+        Assert.assertFalse(breaker.allow());
+        Assert.assertEquals(2, metrics.getCircuitOpenedCount());
+    }
+
+    @Test
+    public void testUnreportedProbeReplaced()
+            throws InterruptedException
+    {
+        CircuitBreaker breaker = new CircuitBreaker(1, 20, CacheMetricsListener.NONE);
+        breaker.failed();
+        Thread.sleep(30);
+        Assert.assertTrue(breaker.allow());
+
+        Thread.sleep(30);
+        Assert.assertTrue(breaker.allow());
+        Assert.assertEquals(CircuitState.HALF_OPEN, breaker.state());
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.Pool;
+
+import javax.ws.rs.core.MediaType;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class ClusterNodesTest {
+
+    @Test
+    public void testUriKeysShareSlot()
+    {
+        RedisCache redisCache = new RedisCache(new TaggedNodes(), "namespace", new BinaryCacheEntryCodec(),
+                new RedisCacheConfig());
+        try
+        {
+            for( String uri : Arrays.asList("http://host/path", "http://host/path?q=1", "http://host/a}b{c") )
+            {
+                String uriCacheKey = redisCache.toCacheKey(uri);
+                int slot = JedisClusterCRC16.getSlot(uriCacheKey);
+                List<String> derived = Arrays.asList(
+                        SetVariantStore.entryKey(uriCacheKey, MediaType.TEXT_PLAIN_TYPE),
+                        SetVariantStore.entryKey(uriCacheKey, MediaType.APPLICATION_JSON_TYPE),
+                        uriCacheKey + StampedeLease.LEASE_SUFFIX,
+                        ChunkedVariantStore.chunkKeyPrefix(uriCacheKey, MediaType.TEXT_PLAIN_TYPE) + 0,
+                        ChunkedVariantStore.chunkKeyPrefix(uriCacheKey, MediaType.TEXT_PLAIN_TYPE) + 7);
+                for( String key : derived )
+                {
+                    Assert.assertEquals(key, slot, JedisClusterCRC16.getSlot(key));
+                }
+            }
+
+            // a different URI is free to land elsewhere
+            Assert.assertNotEquals(JedisClusterCRC16.getSlot(redisCache.toCacheKey("http://host/path")),
+                    JedisClusterCRC16.getSlot(redisCache.toCacheKey("http://host/other")));
+        }
+        finally
+        {
+            redisCache.close();
+        }
+    }
+
+    /**
+     * Cluster keys, without connecting to a cluster.
+     */
+    private static class TaggedNodes implements RedisNodes {
+
+        // never used, so no connection is made
+        private final Pool<Jedis> _pool = new JedisPool();
+
+        @NotNull
+        @Override
+        public Pool<Jedis> poolFor( @NotNull String key )
+        {
+            return _pool;
+        }
+
+        @NotNull
+        @Override
+        public Collection<Pool<Jedis>> primaries()
+        {
+            return Collections.singletonList(_pool);
+        }
+
+        @NotNull
+        @Override
+        public String uriKey( @NotNull String uri )
+        {
+            return ClusterNodes.hashTag(uri);
+        }
+
+        @Override
+        public void redirected( @NotNull String key )
+        {
+        }
+    }
+}
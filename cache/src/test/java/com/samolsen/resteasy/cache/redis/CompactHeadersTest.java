@@ -0,0 +1,108 @@
+package com.samolsen.resteasy.cache.redis;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class CompactHeadersTest {
+
+    @Test
+    public void testMultivaluedMap()
+    {
+        MultivaluedMap<String, Object> headers = new CompactHeaders(1);
+        headers.add("a", "1");
+        headers.add("b", "2");
+        headers.add("a", "3");
+        headers.putSingle("c", 4L);
+        headers.addFirst("b", "0");
+
+        Assert.assertEquals(Arrays.<Object>asList("1", "3"), headers.get("a"));
+        Assert.assertEquals("0", headers.getFirst("b"));
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), Arrays.asList(headers.keySet().toArray()));
+
+        Assert.assertEquals(Arrays.<Object>asList("0", "2"), headers.remove("b"));
+        Assert.assertNull(headers.get("b"));
+        Assert.assertEquals(2, headers.size());
+
+        MultivaluedMap<String, Object> expected = new MultivaluedHashMap<String, Object>();
+        expected.addAll("a", "1", "3");
+        expected.add("c", 4L);
+        Assert.assertEquals(expected, headers);
+        Assert.assertEquals(headers, expected);
+        Assert.assertEquals(expected.hashCode(), headers.hashCode());
+    }
+
+    @Test
+    public void testEntryIterator()
+    {
+        MultivaluedMap<String, Object> headers = new CompactHeaders(4);
+        headers.add("a", "1");
+        headers.add("b", "2");
+        headers.add("c", "3");
+
+        Iterator<Map.Entry<String, List<Object>>> entries = headers.entrySet().iterator();
+        entries.next().setValue(Arrays.<Object>asList("x"));
+        entries.next();
+        entries.remove();
+        Assert.assertEquals("c", entries.next().getKey());
+        Assert.assertFalse(entries.hasNext());
+
+        Assert.assertEquals("x", headers.getFirst("a"));
+        Assert.assertFalse(headers.containsKey("b"));
+        Assert.assertEquals("3", headers.getFirst("c"));
+    }
+
+    @Test
+    public void testDecode()
+            throws IOException
+    {
+        MultivaluedMap<String, Object> headers = new MultivaluedHashMap<String, Object>();
+        headers.add("ETag", "\"abc\"");
+        headers.add("Content-Length", 42L);
+        headers.add("Expires", null);
+
+        MultivaluedMap<String, Object> decoded = CompactHeaders.decode(BinaryCacheEntryCodec.encodeHeaders(headers));
+
+        Assert.assertEquals(headers, decoded);
+        for( String name : decoded.keySet() )
+        {
+            Assert.assertTrue(name, Arrays.asList(CompactHeaders.COMMON_NAMES).contains(name));
+            Assert.assertSame(name, CompactHeaders.COMMON_NAMES[Arrays.asList(CompactHeaders.COMMON_NAMES).indexOf(name)], name);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsTruncated()
+            throws IOException
+    {
+        MultivaluedMap<String, Object> headers = new MultivaluedHashMap<String, Object>();
+        headers.add("Content-Type", "text/plain");
+        byte[] block = BinaryCacheEntryCodec.encodeHeaders(headers);
+
+        CompactHeaders.decode(Arrays.copyOf(block, block.length - 1));
+    }
+
+}
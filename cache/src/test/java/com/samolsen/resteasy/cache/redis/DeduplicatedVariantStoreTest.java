@@ -0,0 +1,78 @@
+package com.samolsen.resteasy.cache.redis;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import java.util.Arrays;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class DeduplicatedVariantStoreTest {
+
+    @Test
+    public void testReferenceRoundTrip()
+    {
+        DeduplicatedVariantStore.Reference reference = new DeduplicatedVariantStore.Reference("body:1f", new byte[]{1, 2, 3});
+
+        DeduplicatedVariantStore.Reference parsed = DeduplicatedVariantStore.Reference.parse(reference.encode());
+
+        Assert.assertNotNull(parsed);
+        Assert.assertArrayEquals("body:1f".getBytes(), parsed.bodyKey());
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, parsed._head);
+    }
+
+    @Test
+    public void testEntryIsNotReference()
+    {
+        CacheEntry entry = new CacheEntry(new MultivaluedHashMap<String, Object>(), new byte[10], 1, null, MediaType.TEXT_PLAIN_TYPE);
+
+        Assert.assertNull(DeduplicatedVariantStore.Reference.parse(new BinaryCacheEntryCodec().encode(entry)));
+        Assert.assertNull(DeduplicatedVariantStore.Reference.parse(new JsonCacheEntryCodec().encode(entry)));
+        Assert.assertNull(DeduplicatedVariantStore.Reference.parse(new byte[0]));
+    }
+
+    @Test
+    public void testSplitEntryReassembles()
+    {
+        CacheEntry entry = new CacheEntry(new MultivaluedHashMap<String, Object>(), "entity".getBytes(), 1, "1", MediaType.TEXT_PLAIN_TYPE);
+        byte[] encoded = new BinaryCacheEntryCodec().encode(entry);
+
+        int headLength = BinaryCacheEntryCodec.headLength(encoded);
+        DeduplicatedVariantStore.Reference reference = new DeduplicatedVariantStore.Reference("body:1f",
+                Arrays.copyOf(encoded, headLength));
+
+        Assert.assertArrayEquals(encoded, reference.assemble(Arrays.copyOfRange(encoded, headLength, encoded.length)));
+        Assert.assertNull("body expired", reference.assemble(null));
+        Assert.assertEquals(-1, BinaryCacheEntryCodec.headLength(new JsonCacheEntryCodec().encode(entry)));
+    }
+
+    @Test
+    public void testBodyKeyByContent()
+    {
+        DeduplicatedVariantStore store = new DeduplicatedVariantStore(new HashVariantStore(), "ns:body:", 1);
+
+        String key = store.bodyKey("same".getBytes());
+
+        Assert.assertTrue(key, key.startsWith("ns:body:"));
+        Assert.assertEquals("ns:body:".length() + 64, key.length());
+        Assert.assertEquals(key, store.bodyKey("same".getBytes()));
+        Assert.assertFalse(key.equals(store.bodyKey("different".getBytes())));
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.samolsen.resteasy.cache.redis;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class EncodeBufferTest {
+
+    static final String[] STRINGS = {"", "plain", "café", "€ 10", "😀 emoji", "\u0000", "unpaired \ud83d"};
+
+    @Test
+    public void testStringsMatchDataOutputStream()
+            throws IOException
+    {
+        EncodeBuffer buffer = new EncodeBuffer(1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for( String string : STRINGS )
+        {
+            buffer.writeString(string);
+            byte[] encoded = string.getBytes(BinaryCacheEntryCodec.UTF_8);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+        buffer.writeString(null);
+        out.writeInt(-1);
+
+        Assert.assertArrayEquals(bytes.toByteArray(), buffer.toByteArray());
+    }
+
+    @Test
+    public void testRoundTrip()
+            throws IOException
+    {
+        EncodeBuffer buffer = new EncodeBuffer(1);
+        buffer.writeByte(-3);
+        buffer.writeInt(0);
+        buffer.writeLong(Long.MIN_VALUE + 7);
+        buffer.writeDouble(4.4);
+        buffer.writeString(STRINGS[4]);
+        buffer.putInt(1, 123456789);
+
+        DecodeBuffer in = new DecodeBuffer(buffer.toByteArray());
+        Assert.assertEquals(-3, in.readByte());
+        Assert.assertEquals(123456789, in.readInt());
+        Assert.assertEquals(Long.MIN_VALUE + 7, in.readLong());
+        Assert.assertEquals(4.4, in.readDouble(), 0);
+        Assert.assertEquals(STRINGS[4], in.readString());
+        Assert.assertEquals(0, in.remaining());
+    }
+
+    @Test
+    public void testLargeBufferNotRetained()
+    {
+        EncodeBuffer buffer = EncodeBuffer.get();
+        buffer.ensureRemaining(EncodeBuffer.MAX_RETAINED_BYTES - 10);
+        buffer.skip(10);
+
+        Assert.assertSame(buffer, EncodeBuffer.get());
+        Assert.assertEquals(0, buffer.size());
+
+        buffer.ensureRemaining(2 * EncodeBuffer.MAX_RETAINED_BYTES);
+        EncodeBuffer next = EncodeBuffer.get();
+        Assert.assertNotSame(buffer, next);
+        Assert.assertEquals(EncodeBuffer.INITIAL_CAPACITY, next.array().length);
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecodePastEnd()
+            throws IOException
+    {
+        new DecodeBuffer(new byte[3]).readInt();
+    }
+
+}
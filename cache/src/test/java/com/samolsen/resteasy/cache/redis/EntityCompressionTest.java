@@ -0,0 +1,111 @@
+package com.samolsen.resteasy.cache.redis;
+
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class EntityCompressionTest {
+
+    EntityCompression _compression;
+    BinaryCacheEntryCodec _codec;
+
+    @Before
+    public void beforeEach()
+    {
+        _compression = new EntityCompression(100);
+        _codec = new BinaryCacheEntryCodec(_compression);
+    }
+
+    @Test
+    public void testCompressed()
+            throws IOException
+    {
+        byte[] entity = repetitive(10000);
+        byte[] encoded = _codec.encode(entry(entity));
+
+        Assert.assertTrue("stored compressed", encoded.length < entity.length / 5);
+        Assert.assertArrayEquals(entity, _codec.decode(encoded).getCached());
+        Assert.assertEquals(1, _compression.getCompressedCount());
+        Assert.assertEquals(10000, _compression.getUncompressedBytes());
+        Assert.assertTrue("ratio reported", _compression.getCompressionRatio() > 5);
+        Assert.assertEquals(1, _compression.getDecompressedCount());
+    }
+
+    @Test
+    public void testBelowThreshold()
+            throws IOException
+    {
+        byte[] entity = repetitive(99);
+        byte[] encoded = _codec.encode(entry(entity));
+
+        Assert.assertTrue("stored uncompressed", encoded.length > entity.length);
+        Assert.assertArrayEquals(entity, _codec.decode(encoded).getCached());
+        Assert.assertEquals(0, _compression.getCompressedCount());
+        Assert.assertEquals(1, _compression.getSkippedCount());
+    }
+
+    @Test
+    public void testIncompressible()
+            throws IOException
+    {
+        byte[] entity = new byte[10000];
+        new Random(42).nextBytes(entity);
+        byte[] encoded = _codec.encode(entry(entity));
+
+        Assert.assertArrayEquals(entity, _codec.decode(encoded).getCached());
+        Assert.assertEquals(0, _compression.getCompressedCount());
+        Assert.assertEquals(1, _compression.getSkippedCount());
+    }
+
+    @Test
+    public void testMixedEntries()
+            throws IOException
+    {
+        BinaryCacheEntryCodec uncompressedCodec = new BinaryCacheEntryCodec();
+        byte[] entity = repetitive(10000);
+
+        byte[] compressed = _codec.encode(entry(entity));
+        byte[] uncompressed = uncompressedCodec.encode(entry(entity));
+
+        Assert.assertArrayEquals(entity, uncompressedCodec.decode(compressed).getCached());
+        Assert.assertArrayEquals(entity, _codec.decode(uncompressed).getCached());
+    }
+
+    private static byte[] repetitive( int length )
+    {
+        byte[] pattern = "{\"name\":\"value\",\"count\":12345},".getBytes(BinaryCacheEntryCodec.UTF_8);
+        byte[] entity = new byte[length];
+        for( int i = 0; i < length; i++ )
+        {
+            entity[i] = pattern[i % pattern.length];
+        }
+        return entity;
+    }
+
+    private static CacheEntry entry( byte[] entity )
+    {
+        return new CacheEntry(new MultivaluedHashMap<String, Object>(), entity, 60, null, MediaType.APPLICATION_JSON_TYPE);
+    }
+
+}
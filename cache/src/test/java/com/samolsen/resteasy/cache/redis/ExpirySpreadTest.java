@@ -0,0 +1,94 @@
+package com.samolsen.resteasy.cache.redis;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class ExpirySpreadTest {
+
+    static final int TRIALS = 1000;
+
+    @Test
+    public void testFarFromExpiry()
+    {
+        ExpirySpread spread = new ExpirySpread(1.0, 100, 0);
+        CacheEntry cacheEntry = entry(System.currentTimeMillis(), 3600);
+
+        for( int i = 0; i < TRIALS; i++ )
+        {
+            Assert.assertFalse(spread.expireEarly(cacheEntry));
+        }
+    }
+
+    @Test
+    public void testNearExpiry()
+    {
+        ExpirySpread spread = new ExpirySpread(1.0, 1000, 0);
+        // 100ms left: expires early unless -ln(r) < 0.1, about 10% of the time
+        CacheEntry cacheEntry = entry(System.currentTimeMillis() - 900, 1);
+
+        int early = 0;
+        for( int i = 0; i < TRIALS; i++ )
+        {
+            if( spread.expireEarly(cacheEntry) )
+            {
+                early++;
+            }
+        }
+        Assert.assertTrue(early > TRIALS / 2);
+        Assert.assertTrue(early < TRIALS);
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        ExpirySpread spread = new ExpirySpread(0, 100, 0);
+        CacheEntry cacheEntry = entry(System.currentTimeMillis() - 999, 1);
+
+        Assert.assertFalse(spread.expireEarly(cacheEntry));
+        Assert.assertEquals(60, spread.jitterTtl(60));
+    }
+
+    @Test
+    public void testJitterTtl()
+    {
+        ExpirySpread spread = new ExpirySpread(0, 100, 10);
+
+        boolean jittered = false;
+        for( int i = 0; i < TRIALS; i++ )
+        {
+            int ttl = spread.jitterTtl(60);
+            Assert.assertTrue(ttl >= 50 && ttl <= 60);
+            jittered |= ttl != 60;
+
+            Assert.assertTrue(spread.jitterTtl(3) >= 1);
+        }
+        Assert.assertTrue(jittered);
+        Assert.assertEquals(1, spread.jitterTtl(1));
+    }
+
+    private static CacheEntry entry( long timestamp,
+                                     int expires )
+    {
+        return new CacheEntry(new MultivaluedHashMap<String, Object>(), new byte[0], expires, null, MediaType.TEXT_PLAIN_TYPE, timestamp);
+    }
+
+}
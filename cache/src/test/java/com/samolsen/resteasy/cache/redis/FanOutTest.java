@@ -0,0 +1,73 @@
+package com.samolsen.resteasy.cache.redis;
+
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.Pool;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class FanOutTest {
+
+    @Test
+    public void testNoNodes()
+    {
+        FanOut.forEach(Collections.<Pool<Jedis>>emptyList(), new FanOut.NodeTask() {
+            @Override
+            public void run( @NotNull Jedis jedis )
+            {
+                Assert.fail();
+            }
+        });
+    }
+
+    @Test
+    public void testFailureThrownAfterAllNodes()
+    {
+        // nothing listens on port 1, so every node fails to connect
+        final AtomicInteger ran = new AtomicInteger();
+        Pool<Jedis> unreachable = new JedisPool("localhost", 1);
+        try
+        {
+            FanOut.forEach(Arrays.asList(unreachable, unreachable, unreachable), new FanOut.NodeTask() {
+                @Override
+                public void run( @NotNull Jedis jedis )
+                {
+                    ran.incrementAndGet();
+                }
+            });
+            Assert.fail();
+        }
+        catch( JedisConnectionException e )
+        {
+            // expected
+        }
+        finally
+        {
+            unreachable.destroy();
+        }
+        Assert.assertEquals(0, ran.get());
+    }
+
+}
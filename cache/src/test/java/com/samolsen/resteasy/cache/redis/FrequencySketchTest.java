@@ -0,0 +1,105 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class FrequencySketchTest {
+
+    @Test
+    public void testIncrement()
+    {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for( int i = 1; i <= 5; i++ )
+        {
+            Assert.assertEquals(i, sketch.increment("/popular"));
+        }
+        Assert.assertEquals(5, sketch.estimate("/popular"));
+        Assert.assertEquals(0, sketch.estimate("/unseen"));
+    }
+
+    @Test
+    public void testSaturates()
+    {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for( int i = 0; i < 100; i++ )
+        {
+            sketch.increment("/popular");
+        }
+        Assert.assertEquals(FrequencySketch.MAX_COUNT, sketch.estimate("/popular"));
+    }
+
+    @Test
+    public void testFewCollisions()
+    {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for( int i = 0; i < 500; i++ )
+        {
+            sketch.increment("/uri/" + i);
+        }
+        int overestimated = 0;
+        for( int i = 0; i < 500; i++ )
+        {
+            if( sketch.estimate("/uri/" + i) > 1 )
+            {
+                overestimated++;
+            }
+        }
+        Assert.assertTrue("overestimated " + overestimated, overestimated < 25);
+    }
+
+    @Test
+    public void testAging()
+    {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for( int i = 0; i < 8; i++ )
+        {
+            sketch.increment("/popular");
+        }
+        Assert.assertEquals(8, sketch.estimate("/popular"));
+
+        // the sample size is 10 x 16 increments
+        for( int i = 8; i < FrequencySketch.SAMPLE_SIZE_PER_COUNTER * 16; i++ )
+        {
+            sketch.increment("/other");
+        }
+        Assert.assertEquals(4, sketch.estimate("/popular"));
+    }
+
+    @Test
+    public void testWidth()
+    {
+        Assert.assertEquals(16, FrequencySketch.width(0));
+        Assert.assertEquals(1024, FrequencySketch.width(1000));
+        Assert.assertEquals(1024, FrequencySketch.width(1024));
+    }
+
+    @Test
+    public void testAdmissionFilter()
+    {
+        AdmissionFilter filter = new AdmissionFilter(new FrequencySketch(1024), 3);
+
+        Assert.assertFalse(filter.admit("/uri"));
+        Assert.assertFalse(filter.admit("/uri"));
+        Assert.assertTrue(filter.admit("/uri"));
+        Assert.assertTrue(filter.admit("/uri"));
+        Assert.assertFalse(filter.admit("/other"));
+
+        Assert.assertEquals(2, filter.getAdmittedCount());
+        Assert.assertEquals(3, filter.getRejectedCount());
+    }
+}
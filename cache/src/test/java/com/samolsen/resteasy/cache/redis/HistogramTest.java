@@ -0,0 +1,85 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class HistogramTest {
+
+    @Test
+    public void testBucketsAreContiguous()
+    {
+        for( int bucket = 0; bucket < Histogram.bucketOf(Long.MAX_VALUE); bucket++ )
+        {
+            long highest = Histogram.highestValueIn(bucket);
+            Assert.assertEquals(bucket, Histogram.bucketOf(highest));
+            Assert.assertEquals(bucket + 1, Histogram.bucketOf(highest + 1));
+        }
+        Assert.assertEquals(Long.MAX_VALUE, Histogram.highestValueIn(Histogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testPercentiles()
+    {
+        Histogram histogram = new Histogram();
+        for( long value = 1; value <= 10000; value++ )
+        {
+            histogram.record(value);
+        }
+
+        Assert.assertEquals(10000, histogram.getCount());
+        Assert.assertEquals(10000, histogram.getMax());
+        Assert.assertEquals(5000.5, histogram.getMean(), 0.001);
+        assertWithinBucket(5000, histogram.getPercentile(50));
+        assertWithinBucket(9900, histogram.getPercentile(99));
+        assertWithinBucket(9990, histogram.getPercentile(99.9));
+        Assert.assertEquals(10000, histogram.getPercentile(100));
+        Assert.assertEquals(1, histogram.getPercentile(0));
+    }
+
+    @Test
+    public void testExactBelowSixtyFour()
+    {
+        Histogram histogram = new Histogram();
+        histogram.record(3);
+        histogram.record(7);
+        histogram.record(-1);
+
+        Assert.assertEquals(0, histogram.getPercentile(10));
+        Assert.assertEquals(3, histogram.getPercentile(50));
+        Assert.assertEquals(7, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testReset()
+    {
+        Histogram histogram = new Histogram();
+        histogram.record(100);
+        histogram.reset();
+
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getMax());
+        Assert.assertEquals(0, histogram.getPercentile(99));
+    }
+
+    private static void assertWithinBucket( long expected,
+                                            long actual )
+    {
+        Assert.assertEquals(expected, actual, expected / 32.0);
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.samolsen.resteasy.cache.redis;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class MediaTypesTest {
+
+    @Test
+    public void testMemoized()
+    {
+        MediaType first = MediaTypes.valueOf("text/html;charset=UTF-8");
+        MediaType second = MediaTypes.valueOf("text/html;charset=UTF-8");
+
+        Assert.assertEquals(MediaType.valueOf("text/html;charset=UTF-8"), first);
+        Assert.assertSame("parsed once", first, second);
+    }
+
+    @Test
+    public void testUnparseable()
+    {
+        Assert.assertNull(MediaTypes.valueOf("text"));
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.samolsen.resteasy.cache.redis;
+
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class NearCacheTest {
+
+    static final int ENTITY_BYTES = 1000;
+    static final int ENTRY_BYTES = ENTITY_BYTES + NearCache.ENTRY_OVERHEAD_BYTES;
+
+    NearCache _nearCache;
+
+    @Before
+    public void beforeEach()
+    {
+        // never started, so no connection is made
+        _nearCache = new NearCache(new JedisPool(), "channel", 2 * ENTRY_BYTES);
+        _nearCache.subscribed();
+    }
+
+    @Test
+    public void testGetCompatible()
+    {
+        CacheEntry plain = entry(MediaType.TEXT_PLAIN_TYPE, 60);
+        CacheEntry html = entry(MediaType.TEXT_HTML_TYPE, 60);
+        _nearCache.put("key", Arrays.asList(plain, html), _nearCache.epoch());
+
+        Assert.assertSame(html, _nearCache.get("key", accept(MediaType.TEXT_HTML_TYPE)));
+        Assert.assertSame(plain, _nearCache.get("key", accept(MediaType.TEXT_PLAIN_TYPE)));
+        Assert.assertNull(_nearCache.get("key", accept(MediaType.APPLICATION_JSON_TYPE)));
+        Assert.assertNull(_nearCache.get("other", accept(MediaType.TEXT_HTML_TYPE)));
+    }
+
+    @Test
+    public void testExpired()
+    {
+        _nearCache.put("key", Collections.singletonList(entry(MediaType.TEXT_PLAIN_TYPE, 0)), _nearCache.epoch());
+
+        Assert.assertNull(_nearCache.get("key", accept(MediaType.TEXT_PLAIN_TYPE)));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed()
+    {
+        _nearCache.put("a", Collections.singletonList(entry(MediaType.TEXT_PLAIN_TYPE, 60)), _nearCache.epoch());
+        _nearCache.put("b", Collections.singletonList(entry(MediaType.TEXT_PLAIN_TYPE, 60)), _nearCache.epoch());
+        Assert.assertNotNull(_nearCache.get("a", accept(MediaType.TEXT_PLAIN_TYPE)));
+
+        _nearCache.put("c", Collections.singletonList(entry(MediaType.TEXT_PLAIN_TYPE, 60)), _nearCache.epoch());
+
+        Assert.assertNotNull(_nearCache.get("a", accept(MediaType.TEXT_PLAIN_TYPE)));
+        Assert.assertNull(_nearCache.get("b", accept(MediaType.TEXT_PLAIN_TYPE)));
+        Assert.assertNotNull(_nearCache.get("c", accept(MediaType.TEXT_PLAIN_TYPE)));
+        Assert.assertEquals(2 * ENTRY_BYTES, _nearCache.size());
+    }
+
+    @Test
+    public void testInvalidatedWhileReading()
+    {
+        long epoch = _nearCache.epoch();
+        _nearCache.invalidate("key");
+        _nearCache.put("key", Collections.singletonList(entry(MediaType.TEXT_PLAIN_TYPE, 60)), epoch);
+
+        Assert.assertNull(_nearCache.get("key", accept(MediaType.TEXT_PLAIN_TYPE)));
+    }
+
+    @Test
+    public void testInvalidate()
+    {
+        _nearCache.put("a", Collections.singletonList(entry(MediaType.TEXT_PLAIN_TYPE, 60)), _nearCache.epoch());
+        _nearCache.put("b", Collections.singletonList(entry(MediaType.TEXT_PLAIN_TYPE, 60)), _nearCache.epoch());
+
+        _nearCache.invalidate("a");
+        Assert.assertNull(_nearCache.get("a", accept(MediaType.TEXT_PLAIN_TYPE)));
+        Assert.assertNotNull(_nearCache.get("b", accept(MediaType.TEXT_PLAIN_TYPE)));
+
+        _nearCache.invalidateAll();
+        Assert.assertNull(_nearCache.get("b", accept(MediaType.TEXT_PLAIN_TYPE)));
+        Assert.assertEquals(0, _nearCache.size());
+    }
+
+    @Test
+    public void testBypassedWhenUnsubscribed()
+    {
+        NearCache nearCache = new NearCache(new JedisPool(), "channel", 2 * ENTRY_BYTES);
+        nearCache.put("key", Collections.singletonList(entry(MediaType.TEXT_PLAIN_TYPE, 60)), nearCache.epoch());
+
+        Assert.assertNull(nearCache.get("key", accept(MediaType.TEXT_PLAIN_TYPE)));
+        Assert.assertEquals(0, nearCache.size());
+    }
+
+    @Test
+    public void testGetPreferred()
+    {
+        CacheEntry plain = entry(MediaType.TEXT_PLAIN_TYPE, 60);
+        CacheEntry html = entry(MediaType.TEXT_HTML_TYPE, 60);
+        _nearCache.put("key", Arrays.asList(plain, html), _nearCache.epoch());
+
+        Acceptable acceptable = new Acceptable(Arrays.asList(MediaType.valueOf("text/plain;q=0.5"), MediaType.TEXT_HTML_TYPE));
+        Assert.assertSame(html, _nearCache.get("key", acceptable));
+    }
+
+    private static Acceptable accept( MediaType mediaType )
+    {
+        return new Acceptable(Collections.singletonList(mediaType));
+    }
+
+    private static CacheEntry entry( MediaType mediaType,
+                                     int expires )
+    {
+        return new CacheEntry(new MultivaluedHashMap<String, Object>(), new byte[ENTITY_BYTES], expires, null, mediaType);
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import java.util.ResourceBundle;
+import java.util.UUID;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Frequency-based admission, with the sketch shared through Redis.
+ *
+ * Integration test requires Redis to be running. Connection configuration in
+ * src/test/resources/redis.properties
+ */
+public class RedisCacheAdmissionIT {
+
+    private JedisPool _jedisPool;
+    private RedisCache _redisCache;
+
+    @Before
+    public void setUp()
+    {
+        ResourceBundle bundle = ResourceBundle.getBundle("redis");
+        String password = bundle.getString("password");
+        _jedisPool = new JedisPool(new JedisPoolConfig(), bundle.getString("host"),
+                Integer.parseInt(bundle.getString("port")), Integer.parseInt(bundle.getString("timeout")),
+                "".equals(password) ? null : password);
+
+        RedisCacheConfig config = new RedisCacheConfig();
+        config.setAdmissionMinFrequency(3);
+        config.setAdmissionShared(true);
+        _redisCache = new RedisCache(_jedisPool, "cacheTest", new BinaryCacheEntryCodec(), config);
+    }
+
+    @After
+    public void tearDown()
+    {
+        _redisCache.clear();
+        _redisCache.close();
+        _jedisPool.close();
+    }
+
+    @Test
+    public void testWrittenOnceFrequent()
+    {
+        String uri = "/admission/" + UUID.randomUUID();
+
+        add(_redisCache, uri);
+        Assert.assertNull(_redisCache.get(uri, MediaType.TEXT_PLAIN_TYPE));
+        add(_redisCache, uri);
+        Assert.assertNull(_redisCache.get(uri, MediaType.TEXT_PLAIN_TYPE));
+        add(_redisCache, uri);
+        Assert.assertNotNull(_redisCache.get(uri, MediaType.TEXT_PLAIN_TYPE));
+
+        AdmissionFilter filter = _redisCache.getAdmissionFilter();
+        Assert.assertNotNull(filter);
+        Assert.assertEquals(1, filter.getAdmittedCount());
+        Assert.assertEquals(2, filter.getRejectedCount());
+    }
+
+    @Test
+    public void testCountsShared()
+    {
+        String uri = "/admission/" + UUID.randomUUID();
+        RedisCacheConfig config = new RedisCacheConfig();
+        config.setAdmissionMinFrequency(3);
+        config.setAdmissionShared(true);
+        RedisCache otherNode = new RedisCache(_jedisPool, "cacheTest", new BinaryCacheEntryCodec(), config);
+        try
+        {
+            add(_redisCache, uri);
+            add(otherNode, uri);
+            add(_redisCache, uri);
+            Assert.assertNotNull(otherNode.get(uri, MediaType.TEXT_PLAIN_TYPE));
+        }
+        finally
+        {
+            otherNode.close();
+        }
+    }
+
+    private static void add( RedisCache redisCache,
+                             String uri )
+    {
+        CacheControl cc = new CacheControl();
+        cc.setMaxAge(60);
+        redisCache.add(uri, MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<String, Object>(), "entity".getBytes(), "1");
+    }
+}
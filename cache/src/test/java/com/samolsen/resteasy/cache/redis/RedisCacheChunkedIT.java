@@ -0,0 +1,96 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ScanParams;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Runs {@link RedisCacheIT} with every entry stored in chunks.
+ */
+public class RedisCacheChunkedIT extends RedisCacheIT {
+
+    static final int MAX_ENTITY_BYTES = 100000;
+
+    @Override
+    protected RedisCache createRedisCache( JedisPool jedisPool )
+    {
+        RedisCacheConfig config = new RedisCacheConfig();
+        config.setChunkThresholdBytes(1);
+        config.setChunkSizeBytes(7);
+        config.setMaxEntityBytes(MAX_ENTITY_BYTES);
+        return new RedisCache(jedisPool, "cacheTest", new BinaryCacheEntryCodec(), config);
+    }
+
+    @Test
+    public void testChunkedRoundTrip()
+    {
+        byte[] entity = new byte[MAX_ENTITY_BYTES];
+        new Random(42).nextBytes(entity);
+        _redisCache.add("/chunked", MediaType.TEXT_PLAIN_TYPE, maxAge(60), new MultivaluedHashMap<String, Object>(), entity, "1");
+
+        Assert.assertArrayEquals(entity, _redisCache.get("/chunked", MediaType.TEXT_PLAIN_TYPE).getCached());
+    }
+
+    @Test
+    public void testMissingChunkIsMiss()
+    {
+        _redisCache.add("/chunked/missing", MediaType.TEXT_PLAIN_TYPE, maxAge(60), new MultivaluedHashMap<String, Object>(),
+                "some entity bytes".getBytes(), "1");
+
+        Jedis jedis = _jedisPool.getResource();
+        try
+        {
+            List<String> chunks = jedis.scan("0", new ScanParams().match("cacheTest:/chunked/missing:chunk:*").count(1000))
+                    .getResult();
+            Assert.assertFalse(chunks.isEmpty());
+            jedis.del(chunks.get(0));
+        }
+        finally
+        {
+            jedis.close();
+        }
+
+        Assert.assertNull(_redisCache.get("/chunked/missing", MediaType.TEXT_PLAIN_TYPE));
+    }
+
+    @Test
+    public void testDeclinesLargeEntity()
+    {
+        byte[] entity = new byte[MAX_ENTITY_BYTES + 1];
+        Assert.assertNotNull(_redisCache.add("/chunked/large", MediaType.TEXT_PLAIN_TYPE, maxAge(60),
+                new MultivaluedHashMap<String, Object>(), entity, "1"));
+
+        Assert.assertNull(_redisCache.get("/chunked/large", MediaType.TEXT_PLAIN_TYPE));
+    }
+
+    private static CacheControl maxAge( int seconds )
+    {
+        CacheControl cc = new CacheControl();
+        cc.setMaxAge(seconds);
+        return cc;
+    }
+}
@@ -0,0 +1,161 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import java.net.SocketException;
+import java.util.ResourceBundle;
+import java.util.UUID;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Latency budgets, and the circuit breaker failing open. Redis is made unavailable by holding the
+ * only connection of the pool, which waits for a connection without limit.
+ *
+ * Integration test requires Redis to be running. Connection configuration in
+ * src/test/resources/redis.properties
+ */
+public class RedisCacheCircuitBreakerIT {
+
+    private int _timeout;
+    private JedisPool _jedisPool;
+    private CacheMetrics _metrics;
+    private RedisCache _redisCache;
+
+    @Before
+    public void setUp()
+    {
+        ResourceBundle bundle = ResourceBundle.getBundle("redis");
+        String password = bundle.getString("password");
+        _timeout = Integer.parseInt(bundle.getString("timeout"));
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(1);
+        poolConfig.setMaxWaitMillis(-1);
+        _jedisPool = new JedisPool(poolConfig, bundle.getString("host"),
+                Integer.parseInt(bundle.getString("port")), _timeout,
+                "".equals(password) ? null : password);
+
+        _metrics = new CacheMetrics();
+        RedisCacheConfig config = new RedisCacheConfig();
+        config.setCircuitBreakerFailureThreshold(2);
+        config.setCircuitBreakerOpenMillis(100);
+        config.setLatencyBudgetMillis(CacheOperation.GET, 50);
+        config.setLatencyBudgetMillis(CacheOperation.ADD, 50);
+        config.setLatencyBudgetMillis(CacheOperation.REMOVE, 50);
+        config.setMetricsListener(_metrics);
+        _redisCache = new RedisCache(_jedisPool, "cacheTest", new BinaryCacheEntryCodec(), config);
+    }
+
+    @After
+    public void tearDown()
+    {
+        _redisCache.clear();
+        _redisCache.close();
+        _jedisPool.close();
+    }
+
+    @Test
+    public void testFailsOpen()
+            throws InterruptedException
+    {
+        String uri = "/breaker/" + UUID.randomUUID();
+
+        Jedis held = _jedisPool.getResource();
+        try
+        {
+            Assert.assertNull(_redisCache.get(uri, MediaType.TEXT_PLAIN_TYPE));
+            Assert.assertNull(_redisCache.get(uri, MediaType.TEXT_PLAIN_TYPE));
+            Assert.assertEquals(CircuitState.OPEN, _metrics.getCircuitState());
+
+            add(uri);
+            _redisCache.remove(uri);
+            Assert.assertEquals(2, _metrics.getFailedOpen(CacheOperation.GET));
+            Assert.assertEquals(1, _metrics.getFailedOpen(CacheOperation.ADD));
+            Assert.assertEquals(1, _metrics.getFailedOpen(CacheOperation.REMOVE));
+            Assert.assertEquals(0, _metrics.getAddedEntityBytes().getCount());
+        }
+        finally
+        {
+            held.close();
+        }
+
+        Thread.sleep(150);
+        // the probe closes the breaker, and finds the skipped write missing
+        Assert.assertNull(_redisCache.get(uri, MediaType.TEXT_PLAIN_TYPE));
+        Assert.assertEquals(CircuitState.CLOSED, _metrics.getCircuitState());
+        Assert.assertEquals(1, _metrics.getCircuitOpenedCount());
+
+        add(uri);
+        Assert.assertNotNull(_redisCache.get(uri, MediaType.TEXT_PLAIN_TYPE));
+        Assert.assertEquals(1, _metrics.getAddedEntityBytes().getCount());
+    }
+
+    @Test
+    public void testBorrowWithinBudget()
+    {
+        String uri = "/breaker/" + UUID.randomUUID();
+
+        Jedis held = _jedisPool.getResource();
+        try
+        {
+            long start = System.currentTimeMillis();
+            Assert.assertNull(_redisCache.get(uri, MediaType.TEXT_PLAIN_TYPE));
+            Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+            Assert.assertEquals(1, _metrics.getFailedOpen(CacheOperation.GET));
+            Assert.assertEquals(CircuitState.CLOSED, _metrics.getCircuitState());
+        }
+        finally
+        {
+            held.close();
+        }
+    }
+
+    @Test
+    public void testBudgetLeavesTimeout()
+            throws SocketException
+    {
+        String uri = "/breaker/" + UUID.randomUUID();
+        add(uri);
+        Assert.assertNotNull(_redisCache.get(uri, MediaType.TEXT_PLAIN_TYPE));
+
+        Jedis jedis = _jedisPool.getResource();
+        try
+        {
+            Assert.assertEquals(_timeout, jedis.getClient().getSocket().getSoTimeout());
+        }
+        finally
+        {
+            jedis.close();
+        }
+    }
+
+    private void add( String uri )
+    {
+        CacheControl cc = new CacheControl();
+        cc.setMaxAge(60);
+        _redisCache.add(uri, MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<String, Object>(), "entity".getBytes(), "1");
+    }
+}
@@ -0,0 +1,131 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ScanParams;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Runs {@link RedisCacheIT} with every entity body deduplicated.
+ */
+public class RedisCacheDeduplicatedIT extends RedisCacheIT {
+
+    static final String BODY_KEYS = "cacheTest:" + RedisCache.BODY_KEY_PREFIX + "*";
+
+    @Override
+    protected RedisCache createRedisCache( JedisPool jedisPool )
+    {
+        RedisCacheConfig config = new RedisCacheConfig();
+        config.setDeduplicationThresholdBytes(1);
+        return new RedisCache(jedisPool, "cacheTest", new BinaryCacheEntryCodec(), config);
+    }
+
+    @Test
+    public void testSharedBody()
+    {
+        _redisCache.add("/dedup?a=1", MediaType.TEXT_PLAIN_TYPE, maxAge(60), new MultivaluedHashMap<String, Object>(),
+                "same entity".getBytes(), "1");
+        _redisCache.add("/dedup?a=2", MediaType.TEXT_PLAIN_TYPE, maxAge(60), new MultivaluedHashMap<String, Object>(),
+                "same entity".getBytes(), "1");
+        _redisCache.add("/dedup/other", MediaType.TEXT_PLAIN_TYPE, maxAge(60), new MultivaluedHashMap<String, Object>(),
+                "other entity".getBytes(), "2");
+
+        Assert.assertEquals(2, bodyKeys().size());
+        Assert.assertEquals("same entity", new String(_redisCache.get("/dedup?a=1", MediaType.TEXT_PLAIN_TYPE).getCached()));
+        Assert.assertEquals("same entity", new String(_redisCache.get("/dedup?a=2", MediaType.TEXT_PLAIN_TYPE).getCached()));
+        Assert.assertEquals("other entity", new String(_redisCache.get("/dedup/other", MediaType.TEXT_PLAIN_TYPE).getCached()));
+
+        // removing one URI leaves the shared body to the other
+        _redisCache.remove("/dedup?a=1");
+        Assert.assertEquals("same entity", new String(_redisCache.get("/dedup?a=2", MediaType.TEXT_PLAIN_TYPE).getCached()));
+    }
+
+    @Test
+    public void testBodyOutlivesReferences()
+    {
+        _redisCache.add("/dedup/short", MediaType.TEXT_PLAIN_TYPE, maxAge(60), new MultivaluedHashMap<String, Object>(),
+                "shared".getBytes(), "1");
+        _redisCache.add("/dedup/long", MediaType.TEXT_PLAIN_TYPE, maxAge(600), new MultivaluedHashMap<String, Object>(),
+                "shared".getBytes(), "1");
+        _redisCache.add("/dedup/shorter", MediaType.TEXT_PLAIN_TYPE, maxAge(30), new MultivaluedHashMap<String, Object>(),
+                "shared".getBytes(), "1");
+
+        Jedis jedis = _jedisPool.getResource();
+        try
+        {
+            List<String> bodies = bodyKeys();
+            Assert.assertEquals(1, bodies.size());
+            Assert.assertTrue(jedis.ttl(bodies.get(0)) > 60);
+        }
+        finally
+        {
+            jedis.close();
+        }
+    }
+
+    @Test
+    public void testMissingBodyIsMiss()
+    {
+        _redisCache.add("/dedup/missing", MediaType.TEXT_PLAIN_TYPE, maxAge(60), new MultivaluedHashMap<String, Object>(),
+                "some entity bytes".getBytes(), "1");
+
+        Jedis jedis = _jedisPool.getResource();
+        try
+        {
+            List<String> bodies = bodyKeys();
+            Assert.assertEquals(1, bodies.size());
+            jedis.del(bodies.get(0));
+        }
+        finally
+        {
+            jedis.close();
+        }
+
+        Assert.assertNull(_redisCache.get("/dedup/missing", MediaType.TEXT_PLAIN_TYPE));
+        // the head is held by the reference
+        Assert.assertEquals("1", _redisCache.getHead("/dedup/missing", Collections.singletonList(MediaType.TEXT_PLAIN_TYPE)).getEtag());
+    }
+
+    private static List<String> bodyKeys()
+    {
+        Jedis jedis = _jedisPool.getResource();
+        try
+        {
+            return jedis.scan("0", new ScanParams().match(BODY_KEYS).count(1000)).getResult();
+        }
+        finally
+        {
+            jedis.close();
+        }
+    }
+
+    private static CacheControl maxAge( int seconds )
+    {
+        CacheControl cc = new CacheControl();
+        cc.setMaxAge(seconds);
+        return cc;
+    }
+}
@@ -0,0 +1,33 @@
+package com.samolsen.resteasy.cache.redis;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Runs {@link RedisCacheIT} with variants stored in a single hash per URI.
+ */
+public class RedisCacheHashLayoutIT extends RedisCacheIT {
+
+    @Override
+    protected RedisCache createRedisCache( JedisPool jedisPool )
+    {
+        RedisCacheConfig config = new RedisCacheConfig();
+        config.setStorageLayout(StorageLayout.HASH);
+        return new RedisCache(jedisPool, "cacheTest", new BinaryCacheEntryCodec(), config);
+    }
+}
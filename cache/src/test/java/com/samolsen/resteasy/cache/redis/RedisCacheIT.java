@@ -7,6 +7,7 @@ import org.jboss.resteasy.client.ClientResponse;
 import org.jboss.resteasy.plugins.cache.server.ServerCacheFeature;
 import org.jboss.resteasy.test.BaseResourceTest;
 import org.junit.After;
+import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -15,8 +16,15 @@ import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Feature;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.ResourceBundle;
@@ -35,8 +43,8 @@ public class RedisCacheIT extends BaseResourceTest {
     private static int PLAIN_COUNT = 0;
     private static int HTML_COUNT = 0;
 
-    private static RedisCache _redisCache;
-    private static JedisPool _jedisPool;
+    static RedisCache _redisCache;
+    static JedisPool _jedisPool;
 
     @Path("/cache")
     public static class MyService {
@@ -95,10 +103,19 @@ public class RedisCacheIT extends BaseResourceTest {
     }
 
 
+    /**
+     * Creates the cache and registers its feature once per class. The deployment is shared by the
+     * tests of a class, and a feature registered per test would add another cache filter each time.
+     */
     @Before
     public void setUp()
             throws Exception
     {
+        if( _redisCache != null )
+        {
+            return;
+        }
+
         ResourceBundle bundle = ResourceBundle.getBundle("redis");
         String host = bundle.getString("host");
         int port = Integer.parseInt(bundle.getString("port"));
@@ -110,10 +127,8 @@ public class RedisCacheIT extends BaseResourceTest {
         }
 
         _jedisPool = new JedisPool(new JedisPoolConfig(), host, port, timeout, password);
-        _redisCache = new RedisCache(_jedisPool, "cacheTest");
-        ServerCacheFeature cacheFeature = new ServerCacheFeature(_redisCache);
-
-        getProviderFactory().register(cacheFeature);
+        _redisCache = createRedisCache(_jedisPool);
+        getProviderFactory().register(createCacheFeature(_redisCache));
         getProviderFactory().register(JacksonJsonProvider.class);
         addPerRequestResource(MyService.class);
     }
@@ -124,6 +139,31 @@ public class RedisCacheIT extends BaseResourceTest {
         _redisCache.clear();
     }
 
+    @AfterClass
+    public static void closeRedisCache()
+    {
+        if( _redisCache != null )
+        {
+            _redisCache.close();
+            _redisCache = null;
+        }
+        if( _jedisPool != null )
+        {
+            _jedisPool.close();
+            _jedisPool = null;
+        }
+    }
+
+    protected RedisCache createRedisCache( JedisPool jedisPool )
+    {
+        return new RedisCache(jedisPool, "cacheTest");
+    }
+
+    protected Feature createCacheFeature( RedisCache redisCache )
+    {
+        return new ServerCacheFeature(redisCache);
+    }
+
     @Test
     public void testNoCacheHitValidation()
             throws Exception
@@ -381,6 +421,43 @@ public class RedisCacheIT extends BaseResourceTest {
         }
     }
 
+    @Test
+    public void testGetAfterScriptFlush()
+            throws Exception
+    {
+        PLAIN_COUNT = 0;
+        {
+            ClientRequest request = new ClientRequest(generateURL("/cache/accepts"));
+            request.accept("text/plain");
+            ClientResponse<String> response = request.get(String.class);
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals("plain" + 1, response.getEntity());
+        }
+
+        Jedis jedis = null;
+        try
+        {
+            jedis = _jedisPool.getResource();
+            jedis.scriptFlush();
+        }
+        finally
+        {
+            if( jedis != null )
+            {
+                jedis.close();
+            }
+        }
+
+        // the lookup script is reloaded, and the cached entry is still returned
+        {
+            ClientRequest request = new ClientRequest(generateURL("/cache/accepts"));
+            request.accept("text/plain");
+            ClientResponse<String> response = request.get(String.class);
+            Assert.assertEquals(200, response.getStatus());
+            Assert.assertEquals("plain" + 1, response.getEntity());
+        }
+    }
+
     @Test
     public void testDeletePrefixedKeys()
     {
@@ -423,4 +500,45 @@ public class RedisCacheIT extends BaseResourceTest {
 
     }
 
+    @Test
+    public void testGetHead()
+    {
+        CacheControl cc = new CacheControl();
+        cc.setMaxAge(60);
+        MultivaluedMap<String, Object> headers = new MultivaluedHashMap<String, Object>();
+        headers.add("X-Custom", "value");
+        _redisCache.add("/head", MediaType.TEXT_PLAIN_TYPE, cc, headers, "plain entity".getBytes(), "1");
+        _redisCache.add("/head", MediaType.TEXT_HTML_TYPE, cc, headers, "html entity".getBytes(), "2");
+
+        CacheEntryHead head = _redisCache.getHead("/head",
+                Arrays.asList(MediaType.valueOf("text/plain;q=0.5"), MediaType.TEXT_HTML_TYPE));
+        Assert.assertNotNull(head);
+        Assert.assertEquals("2", head.getEtag());
+        Assert.assertEquals(MediaType.TEXT_HTML_TYPE, head.getMediaType());
+        Assert.assertEquals("value", head.getHeaders().getFirst("X-Custom"));
+
+        Assert.assertNull(_redisCache.getHead("/head", Collections.singletonList(MediaType.APPLICATION_JSON_TYPE)));
+        Assert.assertNull(_redisCache.getHead("/missing", Collections.<MediaType>emptyList()));
+    }
+
+    @Test
+    public void testRemoveAll()
+    {
+        CacheControl cc = new CacheControl();
+        cc.setMaxAge(60);
+        MultivaluedMap<String, Object> headers = new MultivaluedHashMap<String, Object>();
+        _redisCache.add("/remove/a", MediaType.TEXT_PLAIN_TYPE, cc, headers, "a".getBytes(), "1");
+        _redisCache.add("/remove/a", MediaType.TEXT_HTML_TYPE, cc, headers, "a".getBytes(), "1");
+        _redisCache.add("/remove/ab", MediaType.TEXT_PLAIN_TYPE, cc, headers, "ab".getBytes(), "1");
+        _redisCache.add("/remove/b", MediaType.TEXT_PLAIN_TYPE, cc, headers, "b".getBytes(), "1");
+
+        _redisCache.removeAll(Arrays.asList("/remove/a", "/remove/b"));
+
+        Assert.assertNull(_redisCache.get("/remove/a", MediaType.TEXT_PLAIN_TYPE));
+        Assert.assertNull(_redisCache.get("/remove/a", MediaType.TEXT_HTML_TYPE));
+        Assert.assertNull(_redisCache.get("/remove/b", MediaType.TEXT_PLAIN_TYPE));
+        // shares a prefix with a removed URI
+        Assert.assertNotNull(_redisCache.get("/remove/ab", MediaType.TEXT_PLAIN_TYPE));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,187 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisPubSub;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Near cache invalidations published by {@link RedisCache#removeAll}.
+ *
+ * Integration test requires Redis to be running. Connection configuration in
+ * src/test/resources/redis.properties
+ */
+public class RedisCacheNearCacheIT {
+
+    private JedisPool _jedisPool;
+    private RedisCache _redisCache;
+
+    @Before
+    public void setUp()
+    {
+        _jedisPool = pool();
+
+        RedisCacheConfig config = new RedisCacheConfig();
+        config.setNearCacheMaxBytes(1024 * 1024);
+        _redisCache = new RedisCache(_jedisPool, "cacheTest", new BinaryCacheEntryCodec(), config);
+    }
+
+    @After
+    public void tearDown()
+    {
+        _redisCache.clear();
+        _redisCache.close();
+        _jedisPool.close();
+    }
+
+    @Test
+    public void testCloseAfterStartReleasesConnection()
+            throws InterruptedException
+    {
+        JedisPool jedisPool = pool();
+        try
+        {
+            for( int i = 0; i < 20; i++ )
+            {
+                NearCache nearCache = new NearCache(jedisPool, "cacheTest:" + RedisCache.INVALIDATION_CHANNEL, 1024);
+                nearCache.start();
+                // closed while the subscription is being made
+                while( jedisPool.getNumActive() == 0 )
+                {
+                    Thread.yield();
+                }
+                nearCache.close();
+            }
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while( jedisPool.getNumActive() > 0 && System.currentTimeMillis() < deadline )
+            {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(0, jedisPool.getNumActive());
+        }
+        finally
+        {
+            jedisPool.close();
+        }
+    }
+
+    @Test
+    public void testInvalidationFollowsRemovalAfterScriptFlush()
+            throws InterruptedException
+    {
+        // scripts missing from Redis are re-run one at a time, so the last is removed well after the first
+        CacheControl cc = new CacheControl();
+        cc.setMaxAge(60);
+        List<String> uris = new ArrayList<String>();
+        for( int i = 0; i < 100; i++ )
+        {
+            uris.add("/near/flushed/" + i);
+            _redisCache.add(uris.get(i), MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<String, Object>(), "entity".getBytes(), "1");
+        }
+        final String entryKey = SetVariantStore.entryKey(_redisCache.toCacheKey(uris.get(99)), MediaType.TEXT_PLAIN_TYPE);
+
+        Jedis jedis = _jedisPool.getResource();
+        try
+        {
+            Assert.assertTrue(jedis.exists(entryKey));
+            // the removal script is re-run after the rest of the pipeline has run
+            jedis.scriptFlush();
+        }
+        finally
+        {
+            jedis.close();
+        }
+
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        final CountDownLatch invalidated = new CountDownLatch(1);
+        final AtomicBoolean existedWhenInvalidated = new AtomicBoolean();
+        final JedisPubSub subscriber = new JedisPubSub() {
+            @Override
+            public void onSubscribe( String channel,
+                                     int subscribedChannels )
+            {
+                subscribed.countDown();
+            }
+
+            @Override
+            public void onMessage( String channel,
+                                   String message )
+            {
+                Jedis jedis = _jedisPool.getResource();
+                try
+                {
+                    existedWhenInvalidated.set(jedis.exists(entryKey));
+                }
+                finally
+                {
+                    jedis.close();
+                }
+                invalidated.countDown();
+                unsubscribe();
+            }
+        };
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                Jedis jedis = _jedisPool.getResource();
+                try
+                {
+                    jedis.subscribe(subscriber, "cacheTest:" + RedisCache.INVALIDATION_CHANNEL);
+                }
+                finally
+                {
+                    jedis.close();
+                }
+            }
+        });
+        thread.start();
+        Assert.assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+
+        _redisCache.removeAll(uris);
+
+        Assert.assertTrue(invalidated.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(existedWhenInvalidated.get());
+        thread.join(5000);
+    }
+
+    private static JedisPool pool()
+    {
+        ResourceBundle bundle = ResourceBundle.getBundle("redis");
+        String password = bundle.getString("password");
+        return new JedisPool(new JedisPoolConfig(), bundle.getString("host"),
+                Integer.parseInt(bundle.getString("port")), Integer.parseInt(bundle.getString("timeout")),
+                "".equals(password) ? null : password);
+    }
+}
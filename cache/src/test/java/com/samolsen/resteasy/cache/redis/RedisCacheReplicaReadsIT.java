@@ -0,0 +1,90 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import java.util.Collections;
+import java.util.ResourceBundle;
+import java.util.UUID;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Reads served by a replica. The replica is a second pool on the same server, always read from as
+ * there is no fallback to the primary.
+ *
+ * Integration test requires Redis to be running. Connection configuration in
+ * src/test/resources/redis.properties
+ */
+public class RedisCacheReplicaReadsIT {
+
+    private JedisPool _jedisPool;
+    private JedisPool _replicaPool;
+    private RedisCache _redisCache;
+
+    @Before
+    public void setUp()
+    {
+        _jedisPool = pool();
+        _replicaPool = pool();
+
+        RedisCacheConfig config = new RedisCacheConfig();
+        config.setReadReplicas(Collections.singletonList(_replicaPool));
+        config.setReplicaFallbackToPrimary(false);
+        config.setVariantIndexMaxUris(100);
+        _redisCache = new RedisCache(_jedisPool, "cacheTest", new BinaryCacheEntryCodec(), config);
+    }
+
+    @After
+    public void tearDown()
+    {
+        _redisCache.clear();
+        _redisCache.close();
+        _replicaPool.close();
+        _jedisPool.close();
+    }
+
+    @Test
+    public void testReplicaReadNotIndexed()
+    {
+        String uri = "/replica/" + UUID.randomUUID();
+        CacheControl cc = new CacheControl();
+        cc.setMaxAge(60);
+        _redisCache.add(uri, MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<String, Object>(), "entity".getBytes(), "1");
+        _redisCache._variantIndex.invalidate(_redisCache.toCacheKey(uri));
+
+        Assert.assertNotNull(_redisCache.get(uri, MediaType.TEXT_PLAIN_TYPE));
+        // a lagging replica could return a variant just removed on the primary
+        Assert.assertNull(_redisCache._variantIndex.get(_redisCache.toCacheKey(uri)));
+    }
+
+    private static JedisPool pool()
+    {
+        ResourceBundle bundle = ResourceBundle.getBundle("redis");
+        String password = bundle.getString("password");
+        return new JedisPool(new JedisPoolConfig(), bundle.getString("host"),
+                Integer.parseInt(bundle.getString("port")), Integer.parseInt(bundle.getString("timeout")),
+                "".equals(password) ? null : password);
+    }
+}
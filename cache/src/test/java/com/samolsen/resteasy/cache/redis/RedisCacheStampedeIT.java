@@ -0,0 +1,118 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jboss.resteasy.plugins.cache.server.ServerCache;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Runs {@link RedisCacheIT} with stampede protection, and tests stale entries are served while
+ * an entry is regenerated.
+ */
+public class RedisCacheStampedeIT extends RedisCacheIT {
+
+    private static RedisCache _stampedeCache;
+
+    @Override
+    protected RedisCache createRedisCache( JedisPool jedisPool )
+    {
+        RedisCacheConfig config = new RedisCacheConfig();
+        config.setStampedeLeaseMillis(2000);
+        config.setStaleRetentionSeconds(5);
+        _stampedeCache = new RedisCache(jedisPool, "cacheTest", new BinaryCacheEntryCodec(), config);
+        return _stampedeCache;
+    }
+
+    @Test
+    public void testStaleServedWhileRegenerating()
+            throws Exception
+    {
+        CacheControl cc = new CacheControl();
+        cc.setMaxAge(1);
+        _stampedeCache.add("/stampede", MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<String, Object>(), "old".getBytes(), "1");
+
+        Thread.sleep(1100);
+
+        // the first caller takes the lease
+        Assert.assertNull(_stampedeCache.get("/stampede", MediaType.TEXT_PLAIN_TYPE));
+
+        ServerCache.Entry stale = _stampedeCache.get("/stampede", MediaType.TEXT_PLAIN_TYPE);
+        Assert.assertNotNull(stale);
+        Assert.assertFalse(stale.isExpired());
+        Assert.assertEquals("old", new String(stale.getCached()));
+
+        cc.setMaxAge(60);
+        _stampedeCache.add("/stampede", MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<String, Object>(), "new".getBytes(), "2");
+
+        ServerCache.Entry fresh = _stampedeCache.get("/stampede", MediaType.TEXT_PLAIN_TYPE);
+        Assert.assertNotNull(fresh);
+        Assert.assertEquals("new", new String(fresh.getCached()));
+    }
+
+    @Test
+    public void testJitterKeptWithRetention()
+    {
+        RedisCacheConfig config = new RedisCacheConfig();
+        config.setStampedeLeaseMillis(2000);
+        config.setStaleRetentionSeconds(30);
+        config.setTtlJitterSeconds(10);
+        RedisCache jitteredCache = new RedisCache(_jedisPool, "cacheTest", new BinaryCacheEntryCodec(), config);
+
+        CacheControl cc = new CacheControl();
+        cc.setMaxAge(60);
+        boolean jittered = false;
+        Jedis jedis = _jedisPool.getResource();
+        try
+        {
+            for( int i = 0; i < 20; i++ )
+            {
+                String uri = "/jitter/" + i;
+                jitteredCache.add(uri, MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<String, Object>(), "entity".getBytes(), "1");
+
+                ServerCache.Entry entry = jitteredCache.get(uri, MediaType.TEXT_PLAIN_TYPE);
+                Assert.assertNotNull(entry);
+                int expires = ( (CacheEntry) entry ).getExpirationInSeconds();
+                Assert.assertTrue(expires >= 49 && expires <= 60);
+                jittered |= expires < 59;
+
+                // retention is added after the jitter
+                long ttl = jedis.ttl(SetVariantStore.entryKey("cacheTest:" + uri, MediaType.TEXT_PLAIN_TYPE));
+                Assert.assertTrue(Math.abs(ttl - ( expires + 30 )) <= 1);
+            }
+        }
+        finally
+        {
+            jedis.close();
+            jitteredCache.close();
+        }
+        Assert.assertTrue(jittered);
+    }
+
+    @Test
+    public void testUncachedUriNotLeased()
+    {
+        Assert.assertNull(_stampedeCache.get("/never-cached", MediaType.TEXT_PLAIN_TYPE));
+        Assert.assertNull(_stampedeCache.get("/never-cached", MediaType.TEXT_PLAIN_TYPE));
+    }
+}
@@ -0,0 +1,150 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.jboss.resteasy.client.ClientRequest;
+import org.jboss.resteasy.client.ClientResponse;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Feature;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import java.util.Arrays;
+
+import static org.jboss.resteasy.test.TestPortProvider.generateURL;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Runs {@link RedisCacheIT} through {@link RedisCacheFeature}, with the variant index enabled, along
+ * with requests only that feature serves from the cache.
+ */
+public class RedisCacheVariantIndexIT extends RedisCacheIT {
+
+    @Override
+    protected RedisCache createRedisCache( JedisPool jedisPool )
+    {
+        RedisCacheConfig config = new RedisCacheConfig();
+        config.setVariantIndexMaxUris(100);
+        config.setVariantIndexTtlMillis(60000);
+        return new RedisCache(jedisPool, "cacheTest", new BinaryCacheEntryCodec(), config);
+    }
+
+    @Override
+    protected Feature createCacheFeature( RedisCache redisCache )
+    {
+        return new RedisCacheFeature(redisCache);
+    }
+
+    @Test
+    public void testQualityValues()
+            throws Exception
+    {
+        String plain = get("/cache/accepts", "text/plain");
+        String html = get("/cache/accepts", "text/html");
+        Assert.assertTrue(plain.startsWith("plain"));
+        Assert.assertTrue(html.startsWith("html"));
+
+        // served from the cache
+        Assert.assertEquals(html, get("/cache/accepts", "text/plain;q=0.5, text/html"));
+        Assert.assertEquals(plain, get("/cache/accepts", "text/html;q=0.5, text/plain"));
+        // equally preferred, in header order
+        Assert.assertEquals(html, get("/cache/accepts", "text/html, text/plain"));
+        Assert.assertEquals(plain, get("/cache/accepts", "text/plain, text/html"));
+    }
+
+    @Test
+    public void testHeadRequest()
+            throws Exception
+    {
+        ClientRequest get = new ClientRequest(generateURL("/cache/accepts"));
+        get.header("Accept", "text/plain");
+        ClientResponse<String> getResponse = get.get(String.class);
+        Assert.assertEquals(200, getResponse.getStatus());
+        String etag = getResponse.getResponseHeaders().getFirst(HttpHeaders.ETAG);
+        Assert.assertNotNull(etag);
+        getResponse.releaseConnection();
+
+        // answered from the cached metadata. The resource would produce a new entity, and etag.
+        ClientRequest head = new ClientRequest(generateURL("/cache/accepts"));
+        head.header("Accept", "text/plain");
+        ClientResponse<?> headResponse = head.head();
+        Assert.assertEquals(200, headResponse.getStatus());
+        Assert.assertEquals(etag, headResponse.getResponseHeaders().getFirst(HttpHeaders.ETAG));
+        Assert.assertNotNull(headResponse.getResponseHeaders().getFirst(HttpHeaders.CACHE_CONTROL));
+        headResponse.releaseConnection();
+    }
+
+    @Test
+    public void testIndexedLookup()
+    {
+        CacheControl cc = new CacheControl();
+        cc.setMaxAge(60);
+        _redisCache.add("/indexed", MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<String, Object>(), "plain".getBytes(), "1");
+        _redisCache.add("/indexed", MediaType.TEXT_HTML_TYPE, cc, new MultivaluedHashMap<String, Object>(), "html".getBytes(), "2");
+
+        // the first lookup reads every variant and indexes them
+        Assert.assertEquals("html", new String(_redisCache.get("/indexed", MediaType.TEXT_HTML_TYPE).getCached()));
+        Assert.assertEquals(1, _redisCache._variantIndex.size());
+
+        Assert.assertEquals("plain", new String(_redisCache.get("/indexed",
+                Arrays.asList(MediaType.TEXT_PLAIN_TYPE, MediaType.TEXT_HTML_TYPE)).getCached()));
+
+        _redisCache.remove("/indexed");
+        Assert.assertEquals(0, _redisCache._variantIndex.size());
+        Assert.assertNull(_redisCache.get("/indexed", MediaType.TEXT_HTML_TYPE));
+    }
+
+    @Test
+    public void testIndexedChunkedLookup()
+    {
+        RedisCacheConfig config = new RedisCacheConfig();
+        config.setVariantIndexMaxUris(100);
+        config.setVariantIndexTtlMillis(60000);
+        config.setChunkThresholdBytes(1);
+        config.setChunkSizeBytes(7);
+        RedisCache redisCache = new RedisCache(_jedisPool, "cacheTest", new BinaryCacheEntryCodec(), config);
+        try
+        {
+            CacheControl cc = new CacheControl();
+            cc.setMaxAge(60);
+            redisCache.add("/indexed/chunked", MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<String, Object>(),
+                    "chunked plain".getBytes(), "1");
+
+            Assert.assertEquals("chunked plain", new String(redisCache.get("/indexed/chunked", MediaType.TEXT_PLAIN_TYPE).getCached()));
+            // read through the index
+            Assert.assertEquals("chunked plain", new String(redisCache.get("/indexed/chunked", MediaType.TEXT_PLAIN_TYPE).getCached()));
+        }
+        finally
+        {
+            redisCache.close();
+        }
+    }
+
+    private static String get( String path,
+                               String accept )
+            throws Exception
+    {
+        ClientRequest request = new ClientRequest(generateURL(path));
+        request.header("Accept", accept);
+        ClientResponse<String> response = request.get(String.class);
+        Assert.assertEquals(200, response.getStatus());
+        return response.getEntity();
+    }
+}
@@ -0,0 +1,121 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ResourceBundle;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+/**
+ * Writes queued behind, and removed or cleared before they reach Redis.
+ *
+ * Integration test requires Redis to be running. Connection configuration in
+ * src/test/resources/redis.properties
+ */
+public class RedisCacheWriteBehindIT {
+
+    private static final int COUNT = 50;
+
+    private JedisPool _jedisPool;
+    private RedisCache _redisCache;
+
+    @Before
+    public void setUp()
+    {
+        ResourceBundle bundle = ResourceBundle.getBundle("redis");
+        String password = bundle.getString("password");
+        _jedisPool = new JedisPool(new JedisPoolConfig(), bundle.getString("host"),
+                Integer.parseInt(bundle.getString("port")), Integer.parseInt(bundle.getString("timeout")),
+                "".equals(password) ? null : password);
+
+        RedisCacheConfig config = new RedisCacheConfig();
+        config.setWriteBehindQueueCapacity(COUNT);
+        _redisCache = new RedisCache(_jedisPool, "cacheTest", new BinaryCacheEntryCodec(), config);
+    }
+
+    @After
+    public void tearDown()
+    {
+        _redisCache.clear();
+        _redisCache.close();
+        _jedisPool.close();
+    }
+
+    @Test
+    public void testRemovedNotWritten()
+            throws InterruptedException
+    {
+        List<String> uris = addAll();
+        _redisCache.removeAll(uris);
+        awaitDrained();
+
+        for( String uri : uris )
+        {
+            Assert.assertNull(_redisCache.get(uri, MediaType.TEXT_PLAIN_TYPE));
+        }
+    }
+
+    @Test
+    public void testClearedNotWritten()
+            throws InterruptedException
+    {
+        List<String> uris = addAll();
+        _redisCache.clear();
+        awaitDrained();
+
+        for( String uri : uris )
+        {
+            Assert.assertNull(_redisCache.get(uri, MediaType.TEXT_PLAIN_TYPE));
+        }
+    }
+
+    private List<String> addAll()
+    {
+        CacheControl cc = new CacheControl();
+        cc.setMaxAge(60);
+        String[] uris = new String[COUNT];
+        for( int i = 0; i < COUNT; i++ )
+        {
+            uris[i] = "/write-behind/" + i;
+            _redisCache.add(uris[i], MediaType.TEXT_PLAIN_TYPE, cc, new MultivaluedHashMap<String, Object>(), "entity".getBytes(), "1");
+        }
+        return Arrays.asList(uris);
+    }
+
+    private void awaitDrained()
+            throws InterruptedException
+    {
+        WriteBehindQueue queue = _redisCache.getWriteBehindQueue();
+        long deadline = System.currentTimeMillis() + 5000;
+        while( queue.getWrittenCount() + queue.getDroppedCount() + queue.getFailedCount() < COUNT
+                && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(COUNT, queue.getWrittenCount() + queue.getDroppedCount());
+    }
+}
@@ -0,0 +1,183 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Pool;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class ReplicaReadsTest {
+
+    // never started, so no connection is made
+    final JedisPool _primary = new JedisPool();
+    final JedisPool _a = new JedisPool();
+    final JedisPool _b = new JedisPool();
+    final JedisPool _c = new JedisPool();
+
+    @Test
+    public void testRoundRobinSkipsUnhealthy()
+    {
+        ReplicaReads replicaReads = replicaReads(ReplicaSelection.ROUND_ROBIN, true);
+        healthy(replicaReads, true, false, true);
+
+        Set<Pool<Jedis>> selected = new HashSet<Pool<Jedis>>();
+        for( int i = 0; i < 6; i++ )
+        {
+            selected.add(replicaReads.select());
+        }
+        Assert.assertEquals(new HashSet<Pool<Jedis>>(Arrays.asList(_a, _c)), selected);
+    }
+
+    @Test
+    public void testLeastLatency()
+    {
+        ReplicaReads replicaReads = replicaReads(ReplicaSelection.LEAST_LATENCY, true);
+        healthy(replicaReads, true, true, true);
+        List<ReplicaReads.Replica> replicas = replicaReads.replicas();
+        replicas.get(0)._latencyNanos = 300;
+        replicas.get(1)._latencyNanos = 100;
+        replicas.get(2)._latencyNanos = 200;
+
+        for( int i = 0; i < 3; i++ )
+        {
+            Assert.assertSame(_b, replicaReads.select());
+        }
+
+        replicaReads.failed(_b);
+        Assert.assertSame(_c, replicaReads.select());
+    }
+
+    @Test
+    public void testFallbackToPrimary()
+    {
+        ReplicaReads fallback = replicaReads(ReplicaSelection.ROUND_ROBIN, true);
+        healthy(fallback, false, false, false);
+        Assert.assertNull(fallback.select());
+
+        ReplicaReads noFallback = replicaReads(ReplicaSelection.ROUND_ROBIN, false);
+        healthy(noFallback, false, false, false);
+        Assert.assertNotNull(noFallback.select());
+    }
+
+    @Test
+    public void testParseReplicaLags()
+    {
+        String info = "# Replication\r\n" +
+                      "role:master\r\n" +
+                      "connected_slaves:2\r\n" +
+                      "slave0:ip=10.0.0.2,port=6380,state=online,offset=1234,lag=0\r\n" +
+                      "slave1:ip=10.0.0.3,port=6380,state=online,offset=1200,lag=12\r\n" +
+                      "master_repl_offset:1234\r\n";
+
+        Map<String, Long> lags = ReplicaReads.parseReplicaLags(info);
+
+        Assert.assertEquals(2, lags.size());
+        Assert.assertEquals(Long.valueOf(0), lags.get("10.0.0.2:6380"));
+        Assert.assertEquals(Long.valueOf(12), lags.get("10.0.0.3:6380"));
+    }
+
+    @Test
+    public void testIsLinkUp()
+    {
+        Assert.assertTrue(ReplicaReads.isLinkUp("# Replication\r\nrole:slave\r\nmaster_link_status:up\r\n"));
+        Assert.assertFalse(ReplicaReads.isLinkUp("# Replication\r\nrole:slave\r\nmaster_link_status:down\r\n"));
+        Assert.assertFalse(ReplicaReads.isLinkUp("# Replication\r\nrole:master\r\n"));
+    }
+
+    @Test
+    public void testParseAddress()
+    {
+        Assert.assertEquals(new HostAndPort("10.0.0.1", 26379), ReplicaReads.parseAddress("10.0.0.1:26379"));
+        for( String address : Arrays.asList("10.0.0.1", ":26379", "10.0.0.1:", "10.0.0.1:port", "10.0.0.1:70000") )
+        {
+            try
+            {
+                ReplicaReads.parseAddress(address);
+                Assert.fail(address);
+            }
+            catch( IllegalArgumentException e )
+            {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSentinelAddressValidated()
+    {
+        new RedisCacheConfig().setReadReplicaSentinels("mymaster", Collections.singleton("10.0.0.1"));
+    }
+
+    @Test
+    public void testMonitorSurvivesFailedCheck()
+            throws InterruptedException
+    {
+        final AtomicInteger checks = new AtomicInteger();
+        ReplicaReads replicaReads = new ReplicaReads(_primary, Collections.<JedisPool>emptyList(),
+                ReplicaSelection.ROUND_ROBIN, 0, true) {
+            @Override
+            void check()
+            {
+                checks.incrementAndGet();
+                throw new IllegalStateException("Check failed");
+            }
+        };
+
+        // the first check runs in start, and is logged rather than thrown
+        replicaReads.start();
+        try
+        {
+            long deadline = System.currentTimeMillis() + 5000;
+            while( checks.get() < 3 && System.currentTimeMillis() < deadline )
+            {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(checks.get() >= 3);
+        }
+        finally
+        {
+            replicaReads.close();
+        }
+    }
+
+    private ReplicaReads replicaReads( ReplicaSelection selection,
+                                       boolean fallbackToPrimary )
+    {
+        return new ReplicaReads(_primary, Arrays.asList(_a, _b, _c), selection, 10, fallbackToPrimary);
+    }
+
+    private static void healthy( ReplicaReads replicaReads,
+                                 boolean... healthy )
+    {
+        List<ReplicaReads.Replica> replicas = replicaReads.replicas();
+        for( int i = 0; i < healthy.length; i++ )
+        {
+            replicas.get(i)._healthy = healthy[i];
+        }
+    }
+
+}
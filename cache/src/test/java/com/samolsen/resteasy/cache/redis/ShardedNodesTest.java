@@ -0,0 +1,120 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class ShardedNodesTest {
+
+    static final int KEYS = 100000;
+
+    @Test
+    public void testKeysSpreadEvenly()
+    {
+        ShardedNodes nodes = new ShardedNodes(shards(4), ShardedNodes.DEFAULT_VIRTUAL_NODES);
+
+        Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+        for( int i = 0; i < KEYS; i++ )
+        {
+            String name = nodes.shardFor(key(i))._name;
+            Integer count = counts.get(name);
+            counts.put(name, count == null ? 1 : count + 1);
+        }
+
+        double ringShares = 0;
+        for( ShardedNodes.Shard shard : nodes.shards() )
+        {
+            double fraction = (double) counts.get(shard._name) / KEYS;
+            Assert.assertEquals(shard._name, 0.25, fraction, 0.05);
+            Assert.assertEquals(shard._name, shard._ringShare, fraction, 0.01);
+            ringShares += shard._ringShare;
+        }
+        Assert.assertEquals(1.0, ringShares, 1e-9);
+    }
+
+    @Test
+    public void testAddingShardMovesOneNth()
+    {
+        ShardedNodes before = new ShardedNodes(shards(4), ShardedNodes.DEFAULT_VIRTUAL_NODES);
+        ShardedNodes after = new ShardedNodes(shards(5), ShardedNodes.DEFAULT_VIRTUAL_NODES);
+
+        int moved = 0;
+        for( int i = 0; i < KEYS; i++ )
+        {
+            String from = before.shardFor(key(i))._name;
+            String to = after.shardFor(key(i))._name;
+            if( !from.equals(to) )
+            {
+                // keys only move to the new shard
+                Assert.assertEquals("shard-4", to);
+                moved++;
+            }
+        }
+        Assert.assertEquals(0.2, (double) moved / KEYS, 0.05);
+    }
+
+    @Test
+    public void testRemovingShardMovesOnlyItsKeys()
+    {
+        Map<String, JedisPool> shards = shards(4);
+        ShardedNodes before = new ShardedNodes(shards, ShardedNodes.DEFAULT_VIRTUAL_NODES);
+        shards.remove("shard-1");
+        ShardedNodes after = new ShardedNodes(shards, ShardedNodes.DEFAULT_VIRTUAL_NODES);
+
+        for( int i = 0; i < KEYS; i++ )
+        {
+            String from = before.shardFor(key(i))._name;
+            if( !from.equals("shard-1") )
+            {
+                Assert.assertEquals(from, after.shardFor(key(i))._name);
+            }
+        }
+    }
+
+    @Test
+    public void testRoutingCounted()
+    {
+        ShardedNodes nodes = new ShardedNodes(shards(2), ShardedNodes.DEFAULT_VIRTUAL_NODES);
+        nodes.poolFor("a");
+        nodes.poolFor("a");
+
+        ShardedNodes.Shard shard = nodes.shardFor("a");
+        Assert.assertEquals(2, shard._operations.get());
+        Assert.assertSame(shard._pool, nodes.poolFor("a"));
+    }
+
+    private static Map<String, JedisPool> shards( int count )
+    {
+        // never used, so no connection is made
+        Map<String, JedisPool> shards = new LinkedHashMap<String, JedisPool>();
+        for( int i = 0; i < count; i++ )
+        {
+            shards.put("shard-" + i, new JedisPool());
+        }
+        return shards;
+    }
+
+    private static String key( int i )
+    {
+        return "namespace:/resources/" + i;
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.samolsen.resteasy.cache.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class VariantIndexTest {
+
+    @Test
+    public void testPutAndAdded()
+    {
+        VariantIndex index = new VariantIndex(10, 60000);
+        Assert.assertNull(index.get("key"));
+
+        index.put("key", Collections.singletonList(MediaType.TEXT_PLAIN_TYPE), index.epoch());
+        Assert.assertEquals(Collections.singletonList(MediaType.TEXT_PLAIN_TYPE), index.get("key"));
+
+        index.added("key", MediaType.TEXT_HTML_TYPE);
+        index.added("key", MediaType.TEXT_HTML_TYPE);
+        Assert.assertEquals(Arrays.asList(MediaType.TEXT_PLAIN_TYPE, MediaType.TEXT_HTML_TYPE), index.get("key"));
+
+        // only indexed keys are updated
+        index.added("other", MediaType.TEXT_HTML_TYPE);
+        Assert.assertNull(index.get("other"));
+    }
+
+    @Test
+    public void testInvalidatedWhileReading()
+    {
+        VariantIndex index = new VariantIndex(10, 60000);
+        long epoch = index.epoch();
+        index.invalidate("key");
+        index.put("key", Collections.singletonList(MediaType.TEXT_PLAIN_TYPE), epoch);
+
+        Assert.assertNull(index.get("key"));
+    }
+
+    @Test
+    public void testExpires()
+            throws Exception
+    {
+        VariantIndex index = new VariantIndex(10, 20);
+        index.put("key", Collections.singletonList(MediaType.TEXT_PLAIN_TYPE), index.epoch());
+        Thread.sleep(30);
+
+        Assert.assertNull(index.get("key"));
+        Assert.assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed()
+    {
+        VariantIndex index = new VariantIndex(2, 60000);
+        index.put("a", Collections.singletonList(MediaType.TEXT_PLAIN_TYPE), index.epoch());
+        index.put("b", Collections.singletonList(MediaType.TEXT_PLAIN_TYPE), index.epoch());
+        Assert.assertNotNull(index.get("a"));
+
+        index.put("c", Collections.singletonList(MediaType.TEXT_PLAIN_TYPE), index.epoch());
+
+        Assert.assertNotNull(index.get("a"));
+        Assert.assertNull(index.get("b"));
+        Assert.assertNotNull(index.get("c"));
+    }
+}
@@ -0,0 +1,213 @@
+package com.samolsen.resteasy.cache.redis;
+
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import javax.ws.rs.core.MediaType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Copyright (c) 2015, Sam Olsen
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ * ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ * OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+public class WriteBehindQueueTest {
+
+    @Test
+    public void testDropWhenFull()
+    {
+        // never started, so nothing is drained
+        WriteBehindQueue queue = queue(OverflowPolicy.DROP);
+
+        Assert.assertTrue(enqueue(queue));
+        Assert.assertTrue(enqueue(queue));
+        Assert.assertFalse(enqueue(queue));
+
+        Assert.assertEquals(2, queue.getQueueDepth());
+        Assert.assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testBlockInterrupted()
+    {
+        WriteBehindQueue queue = queue(OverflowPolicy.BLOCK);
+        enqueue(queue);
+        enqueue(queue);
+
+        Thread.currentThread().interrupt();
+        try
+        {
+            Assert.assertFalse(enqueue(queue));
+            Assert.assertTrue(Thread.currentThread().isInterrupted());
+        }
+        finally
+        {
+            Thread.interrupted();
+        }
+        Assert.assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testCloseDropsUnwritten()
+    {
+        WriteBehindQueue queue = queue(OverflowPolicy.DROP);
+        enqueue(queue);
+        enqueue(queue);
+
+        queue.close(0);
+
+        Assert.assertEquals(0, queue.getQueueDepth());
+        Assert.assertEquals(2, queue.getDroppedCount());
+        Assert.assertFalse(enqueue(queue));
+        Assert.assertEquals(3, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testDrainsPastStoreFailure()
+            throws InterruptedException
+    {
+        JedisPool pool = new JedisPool() {
+            @Override
+            public Jedis getResource()
+            {
+                // never connected, as the store fails first
+                return new Jedis("localhost", 1);
+            }
+        };
+        VariantStore store = new SetVariantStore(60) {
+            @Override
+            public void write( @NotNull ScriptPipeline pipeline,
+                               @NotNull String uriCacheKey,
+                               @NotNull MediaType mediaType,
+                               int ttlSeconds,
+                               @NotNull byte[] encoded )
+            {
+                throw new IllegalStateException("Store failed");
+            }
+        };
+        WriteBehindQueue queue = new WriteBehindQueue(new SingleNode(pool), store, null, null, 2, OverflowPolicy.BLOCK, 10);
+        queue.start();
+        try
+        {
+            enqueue(queue);
+            enqueue(queue);
+            awaitFailed(queue, 2);
+
+            // the writer thread survived
+            enqueue(queue);
+            enqueue(queue);
+            awaitFailed(queue, 4);
+            Assert.assertEquals(0, queue.getQueueDepth());
+            Assert.assertEquals(0, queue.getWrittenCount());
+        }
+        finally
+        {
+            queue.close(0);
+        }
+    }
+
+    @Test
+    public void testDiscardedNotWritten()
+    {
+        List<String> written = Collections.synchronizedList(new ArrayList<String>());
+        WriteBehindQueue queue = recordingQueue(written);
+        queue.enqueue("removed", MediaType.TEXT_PLAIN_TYPE, 60, new byte[0]);
+        queue.enqueue("kept", MediaType.TEXT_PLAIN_TYPE, 60, new byte[0]);
+        queue.enqueue("removed", MediaType.TEXT_HTML_TYPE, 60, new byte[0]);
+
+        queue.discard(Collections.singletonList("removed"));
+        Assert.assertEquals(1, queue.getQueueDepth());
+
+        // queued after the removal
+        queue.enqueue("removed", MediaType.TEXT_PLAIN_TYPE, 60, new byte[0]);
+        queue.start();
+        queue.close(5000);
+
+        Assert.assertEquals(Arrays.asList("kept", "removed"), written);
+        Assert.assertEquals(2, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testDiscardAll()
+    {
+        List<String> written = Collections.synchronizedList(new ArrayList<String>());
+        WriteBehindQueue queue = recordingQueue(written);
+        queue.enqueue("a", MediaType.TEXT_PLAIN_TYPE, 60, new byte[0]);
+        queue.enqueue("b", MediaType.TEXT_PLAIN_TYPE, 60, new byte[0]);
+
+        queue.discardAll();
+        queue.enqueue("c", MediaType.TEXT_PLAIN_TYPE, 60, new byte[0]);
+        queue.start();
+        queue.close(5000);
+
+        Assert.assertEquals(Collections.singletonList("c"), written);
+        Assert.assertEquals(2, queue.getDroppedCount());
+    }
+
+    /**
+     * @param written keys written, in order. Nothing is sent to Redis.
+     */
+    private static WriteBehindQueue recordingQueue( final List<String> written )
+    {
+        JedisPool pool = new JedisPool() {
+            @Override
+            public Jedis getResource()
+            {
+                // never connected, as nothing is pipelined
+                return new Jedis("localhost", 1);
+            }
+        };
+        VariantStore store = new SetVariantStore(60) {
+            @Override
+            public void write( @NotNull ScriptPipeline pipeline,
+                               @NotNull String uriCacheKey,
+                               @NotNull MediaType mediaType,
+                               int ttlSeconds,
+                               @NotNull byte[] encoded )
+            {
+                written.add(uriCacheKey);
+            }
+        };
+        return new WriteBehindQueue(new SingleNode(pool), store, null, null, 4, OverflowPolicy.BLOCK, 10);
+    }
+
+    private static void awaitFailed( WriteBehindQueue queue,
+                                     long failed )
+            throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while( queue.getFailedCount() < failed && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(failed, queue.getFailedCount());
+    }
+
+    private static WriteBehindQueue queue( OverflowPolicy overflowPolicy )
+    {
+        return new WriteBehindQueue(new SingleNode(new JedisPool()), new SetVariantStore(60), null, null, 2, overflowPolicy, 10);
+    }
+
+    private static boolean enqueue( WriteBehindQueue queue )
+    {
+        return queue.enqueue("key", MediaType.TEXT_PLAIN_TYPE, 60, new byte[0]);
+    }
+
+}